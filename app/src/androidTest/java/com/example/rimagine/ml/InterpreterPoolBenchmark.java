@@ -0,0 +1,93 @@
+package com.example.rimagine.ml;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeNoException;
+
+/**
+ * Throughput of 1..N pooled interpreters on the device, with the cores split evenly between
+ * them. Results are logged under {@code InterpreterPoolBenchmark}:
+ *
+ * <pre>adb logcat -s InterpreterPoolBenchmark</pre>
+ */
+@RunWith(AndroidJUnit4.class)
+public class InterpreterPoolBenchmark {
+    private static final String TAG = "InterpreterPoolBenchmark";
+    private static final int WARMUP_PER_INTERPRETER = 3;
+    private static final int REQUESTS = 48;
+
+    @Test
+    public void throughputByPoolSize() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        MappedByteBuffer model;
+        try {
+            model = TFLiteModelRunner.loadModel(context);
+        } catch (IOException e) {
+            assumeNoException("Model asset is not bundled", e);
+            return;
+        }
+
+        Bitmap image = Bitmap.createBitmap(1280, 960, Bitmap.Config.ARGB_8888);
+        image.eraseColor(Color.GRAY);
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        for (int size = 1; size <= cores; size++) {
+            int threads = Math.max(1, cores / size);
+            try (InterpreterPool pool = new InterpreterPool(model, size, DelegateConfig.xnnpack(threads))) {
+                run(pool, image, WARMUP_PER_INTERPRETER * size);
+                long start = System.nanoTime();
+                int completed = run(pool, image, REQUESTS);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                assertEquals(REQUESTS, completed);
+                Log.i(TAG, String.format(Locale.US, "interpreters=%d threads=%d throughput=%.2f img/s",
+                        size, threads, REQUESTS / seconds));
+            }
+        }
+        image.recycle();
+    }
+
+    /** Runs {@code requests} inferences from one client thread per pooled interpreter. */
+    private static int run(InterpreterPool pool, Bitmap image, int requests) throws InterruptedException {
+        AtomicInteger remaining = new AtomicInteger(requests);
+        AtomicInteger completed = new AtomicInteger();
+        List<Thread> clients = new ArrayList<>();
+        for (int i = 0; i < pool.size(); i++) {
+            clients.add(new Thread(() -> {
+                while (remaining.getAndDecrement() > 0) {
+                    try {
+                        if (pool.runInference(image).isSuccess()) {
+                            completed.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }));
+        }
+        for (Thread client : clients) {
+            client.start();
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        return completed.get();
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.rimagine.ml;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs every bundled model variant on the fixed image set in the test assets under
+ * {@code parity/} and compares its detections with the float32 reference. Results are
+ * logged under {@code ModelVariantParity}:
+ *
+ * <pre>adb logcat -s ModelVariantParity</pre>
+ */
+@RunWith(AndroidJUnit4.class)
+public class ModelVariantParityTest {
+    private static final String TAG = "ModelVariantParity";
+    private static final String IMAGE_DIR = "parity";
+    private static final float MATCH_IOU = 0.5f;
+    private static final float MIN_RECALL = 0.9f;
+    private static final float MAX_SCORE_DELTA = 0.1f;
+
+    @Test
+    public void variantsMatchFloat32Reference() throws Exception {
+        Context target = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Context testContext = InstrumentationRegistry.getInstrumentation().getContext();
+        List<Bitmap> images = loadImages(testContext);
+        assumeTrue("No parity images bundled", !images.isEmpty());
+        List<DetectionResult> reference = run(target, ModelVariant.FLOAT32, images);
+        assumeTrue("Float32 model is not bundled", reference != null);
+
+        for (ModelVariant variant : ModelVariant.values()) {
+            if (variant == ModelVariant.FLOAT32) {
+                continue;
+            }
+            List<DetectionResult> results = run(target, variant, images);
+            if (results == null) {
+                Log.i(TAG, variant + ": not bundled");
+                continue;
+            }
+            DetectionParity parity = DetectionParity.empty();
+            for (int i = 0; i < images.size(); i++) {
+                parity = parity.plus(DetectionParity.compare(reference.get(i), results.get(i), MATCH_IOU));
+            }
+            Log.i(TAG, variant + " vs FLOAT32 on " + images.size() + " images: " + parity);
+            assertTrue(variant + " recall " + parity.getRecall(), parity.getRecall() >= MIN_RECALL);
+            assertTrue(variant + " score delta " + parity.getMaxScoreDelta(),
+                    parity.getMaxScoreDelta() <= MAX_SCORE_DELTA);
+        }
+
+        for (Bitmap image : images) {
+            image.recycle();
+        }
+    }
+
+    private static List<Bitmap> loadImages(Context context) throws IOException {
+        List<Bitmap> images = new ArrayList<>();
+        String[] names = context.getAssets().list(IMAGE_DIR);
+        if (names == null) {
+            return images;
+        }
+        for (String name : names) {
+            try (InputStream in = context.getAssets().open(IMAGE_DIR + "/" + name)) {
+                Bitmap bitmap = BitmapFactory.decodeStream(in);
+                if (bitmap != null) {
+                    images.add(bitmap);
+                }
+            }
+        }
+        return images;
+    }
+
+    /** Detections of {@code variant} for every image, or null when the variant is not bundled. */
+    private static List<DetectionResult> run(Context context, ModelVariant variant, List<Bitmap> images) {
+        MappedByteBuffer model;
+        try {
+            model = TFLiteModelRunner.loadModel(context, variant);
+        } catch (IOException e) {
+            return null;
+        }
+        // CPU only, so differences come from the weights and not from the delegate
+        TFLiteModelRunner runner = new TFLiteModelRunner(model, DelegateConfig.xnnpack(2));
+        try {
+            assertTrue(variant + " failed to initialise", runner.getInputWidth() > 0);
+            Log.i(TAG, variant + " input " + runner.getInputFormat());
+            List<DetectionResult> results = new ArrayList<>();
+            for (Bitmap image : images) {
+                DetectionResult result = runner.runInference(image);
+                assertTrue(variant + ": " + result.getErrorMessage(), result.isSuccess());
+                results.add(result);
+            }
+            return results;
+        } finally {
+            runner.close();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.rimagine.ml;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNoException;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Accuracy against latency of single-pass and tiled inference on the image set in the test
+ * assets under {@code parity/}. When an image has a YOLO label file next to it
+ * ({@code name.txt}: {@code class cx cy w h} per line, normalized) recall is measured against
+ * it; otherwise against the densest tiling. Results are logged under {@code TiledInference}:
+ *
+ * <pre>adb logcat -s TiledInference</pre>
+ */
+@RunWith(AndroidJUnit4.class)
+public class TiledInferenceBenchmark {
+    private static final String TAG = "TiledInference";
+    private static final String IMAGE_DIR = "parity";
+    private static final float MATCH_IOU = 0.5f;
+
+    @Test
+    public void accuracyVersusLatency() throws Exception {
+        Context target = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Context testContext = InstrumentationRegistry.getInstrumentation().getContext();
+        MappedByteBuffer model;
+        try {
+            model = TFLiteModelRunner.loadModel(target);
+        } catch (IOException e) {
+            assumeNoException("Model asset is not bundled", e);
+            return;
+        }
+        List<String> names = new ArrayList<>();
+        List<Bitmap> images = new ArrayList<>();
+        String[] files = testContext.getAssets().list(IMAGE_DIR);
+        for (String name : files != null ? files : new String[0]) {
+            if (name.endsWith(".txt")) {
+                continue;
+            }
+            try (InputStream in = testContext.getAssets().open(IMAGE_DIR + "/" + name)) {
+                Bitmap bitmap = BitmapFactory.decodeStream(in);
+                if (bitmap != null) {
+                    names.add(name);
+                    images.add(bitmap);
+                }
+            }
+        }
+        assumeTrue("No benchmark images bundled", !images.isEmpty());
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        try (InterpreterPool pool = new InterpreterPool(model, Math.max(1, Math.min(4, cores / 2)),
+                DelegateConfig.xnnpack(2))) {
+            int input = Math.max(pool.getInputWidth(), pool.getInputHeight());
+            Map<String, TiledInferenceConfig> configs = new LinkedHashMap<>();
+            configs.put("tiles 2x input", new TiledInferenceConfig.Builder().setTileSize(2 * input).build());
+            configs.put("tiles 1.5x input", new TiledInferenceConfig.Builder().setTileSize(input * 3 / 2).build());
+            configs.put("tiles 1x input", new TiledInferenceConfig.Builder().setTileSize(input).build());
+            configs.put("tiles 1x input, no full pass", new TiledInferenceConfig.Builder()
+                    .setTileSize(input).setIncludeFullImage(false).build());
+            configs.put("tiles 1x input, sequential", new TiledInferenceConfig.Builder()
+                    .setTileSize(input).setParallelism(1).build());
+
+            // The densest tiling stands in for ground truth where an image has no labels
+            List<DetectionResult> densest = new ArrayList<>();
+            TiledDetector densestDetector = new TiledDetector(pool,
+                    new TiledInferenceConfig.Builder().setTileSize(input).setOverlap(0.3f).build());
+            for (Bitmap image : images) {
+                densest.add(densestDetector.detect(image));
+            }
+            List<DetectionResult> references = new ArrayList<>();
+            for (int i = 0; i < images.size(); i++) {
+                DetectionResult labelled = readLabels(testContext, names.get(i), images.get(i));
+                references.add(labelled != null ? labelled : densest.get(i));
+            }
+
+            report("single pass", references, images, image -> pool.runInference(image));
+            for (Map.Entry<String, TiledInferenceConfig> entry : configs.entrySet()) {
+                TiledDetector detector = new TiledDetector(pool, entry.getValue());
+                report(entry.getKey(), references, images, detector::detect);
+            }
+        } finally {
+            for (Bitmap image : images) {
+                image.recycle();
+            }
+        }
+    }
+
+    private interface Detect {
+        DetectionResult run(Bitmap image) throws InterruptedException;
+    }
+
+    private static void report(String name, List<DetectionResult> references, List<Bitmap> images, Detect detect)
+            throws InterruptedException {
+        detect.run(images.get(0));
+        DetectionParity parity = DetectionParity.empty();
+        long start = System.nanoTime();
+        for (int i = 0; i < images.size(); i++) {
+            DetectionResult result = detect.run(images.get(i));
+            assertTrue(name + ": " + result.getErrorMessage(), result.isSuccess());
+            parity = parity.plus(DetectionParity.compare(references.get(i), result, MATCH_IOU));
+        }
+        double millisPerImage = (System.nanoTime() - start) / 1e6 / images.size();
+        Log.i(TAG, String.format(Locale.US, "%-30s %8.1f ms/img  recall=%.3f  extra=%d",
+                name, millisPerImage, parity.getRecall(), parity.getExtra()));
+    }
+
+    /** Ground truth from {@code parity/<image>.txt}, or null when the image has none. */
+    private static DetectionResult readLabels(Context context, String imageName, Bitmap image) throws IOException {
+        String labelName = IMAGE_DIR + "/" + imageName.substring(0, imageName.lastIndexOf('.')) + ".txt";
+        DetectionBuffer boxes = new DetectionBuffer();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(context.getAssets().open(labelName)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+");
+                if (fields.length < 5) {
+                    continue;
+                }
+                float cx = Float.parseFloat(fields[1]) * image.getWidth();
+                float cy = Float.parseFloat(fields[2]) * image.getHeight();
+                float halfW = Float.parseFloat(fields[3]) * image.getWidth() / 2;
+                float halfH = Float.parseFloat(fields[4]) * image.getHeight() / 2;
+                boxes.add(cx - halfW, cy - halfH, cx + halfW, cy + halfH, 1f, Integer.parseInt(fields[0]));
+            }
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        return DetectionResult.of(boxes, new String[0], image.getWidth(), image.getHeight(), 0, 0, 0);
+    }
+}
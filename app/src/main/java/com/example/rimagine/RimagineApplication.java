@@ -0,0 +1,69 @@
+package com.example.rimagine;
+
+import android.app.Application;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.rimagine.ml.DetectionCache;
+import com.example.rimagine.ml.DetectionStore;
+import com.example.rimagine.ml.InferenceScheduler;
+import com.example.rimagine.ml.InterpreterPool;
+import com.example.rimagine.ml.ModelRegistry;
+
+import java.io.File;
+
+public class RimagineApplication extends Application {
+    private static final String TAG = "RimagineApplication";
+    private static final boolean PREWARM_MODEL = true;
+    private static final long CACHE_MEMORY_BYTES = 512L * 1024;
+    private static final long CACHE_DISK_BYTES = 8L * 1024 * 1024;
+    private static final int MAX_BACKGROUND_REQUESTS = 16;
+
+    private ModelRegistry modelRegistry;
+    private DetectionStore detectionStore;
+    private DetectionCache detectionCache;
+    private InferenceScheduler inferenceScheduler;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        modelRegistry = new ModelRegistry(this);
+        // Opening is lazy; the database file is only touched on the first query or insert
+        detectionStore = new DetectionStore(this);
+        detectionCache = new DetectionCache(new File(getCacheDir(), "detections"),
+                CACHE_MEMORY_BYTES, CACHE_DISK_BYTES);
+        // One worker per pooled interpreter; more would only queue on the pool
+        inferenceScheduler = new InferenceScheduler(InterpreterPool.defaultSize(), MAX_BACKGROUND_REQUESTS);
+        if (PREWARM_MODEL) {
+            modelRegistry.prewarm();
+        }
+        Log.i(TAG, "Application created " + (SystemClock.uptimeMillis() - Process.getStartUptimeMillis())
+                + " ms after process start");
+    }
+
+    public ModelRegistry getModelRegistry() {
+        return modelRegistry;
+    }
+
+    public DetectionStore getDetectionStore() {
+        return detectionStore;
+    }
+
+    public DetectionCache getDetectionCache() {
+        return detectionCache;
+    }
+
+    public InferenceScheduler getInferenceScheduler() {
+        return inferenceScheduler;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        modelRegistry.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            detectionCache.trimMemory();
+        }
+    }
+}
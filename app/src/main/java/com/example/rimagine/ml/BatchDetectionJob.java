@@ -0,0 +1,246 @@
+package com.example.rimagine.ml;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.rimagine.RimagineApplication;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the disk detector over a list of gallery images using a {@link BatchPipeline}.
+ *
+ * Images are hashed and decoded on a small IO pool and inferred on one thread per pooled
+ * interpreter, each of which steps aside while interactive requests are pending on the
+ * {@link InferenceScheduler}. An inference thread runs whatever images are already decoded
+ * in one batched call, see {@link TFLiteModelRunner#runBatch(List)}; images the
+ * {@link DetectionCache} already knows skip both decoding and inference. Results are
+ * appended as JSON lines to {@code batch_<timestamp>.jsonl} by the writer thread, which also
+ * stores them in the {@link DetectionStore} a few dozen per transaction. Progress is
+ * published through {@link #getProgress()}.
+ */
+public class BatchDetectionJob {
+    private static final String TAG = "BatchDetectionJob";
+    private static final int DECODE_THREADS = 2;
+    // Decoded images are about the model input size, so a few waiting cost little memory
+    private static final int QUEUE_CAPACITY = 4;
+    private static final int MAX_BATCH = 4;
+    private static final int STORE_BATCH = 32;
+    // Long enough for a tiled still; after that the batch takes its turn on the fair pool
+    private static final long MAX_YIELD_MILLIS = 2_000;
+
+    private final Context context;
+    private final List<Uri> uris;
+    private final MutableLiveData<BatchProgress> progress = new MutableLiveData<>();
+    private final BatchPipeline<Uri, Decoded, Inferred> pipeline;
+    private final File outputFile;
+    private final DetectionStore store;
+    private final DetectionCache cache;
+    private final InferenceScheduler scheduler;
+    private final List<DetectionStore.Record> pendingRecords = new ArrayList<>();
+    private RefCountedHolder<InterpreterPool>.Handle interpreterPool;
+    private BufferedWriter output;
+
+    /** A decoded image, or the cached result that made decoding unnecessary. */
+    private static final class Decoded {
+        final SampledImageDecoder.Decoded image;
+        final DetectionResult cached;
+        final String contentHash;
+        final String cacheKey;
+
+        Decoded(SampledImageDecoder.Decoded image, DetectionResult cached, String contentHash, String cacheKey) {
+            this.image = image;
+            this.cached = cached;
+            this.contentHash = contentHash;
+            this.cacheKey = cacheKey;
+        }
+
+        void recycle() {
+            if (image != null) {
+                image.recycle();
+            }
+        }
+    }
+
+    private static final class Inferred {
+        final DetectionResult result;
+        final boolean fromCache;
+        final String contentHash;
+        final String cacheKey;
+
+        Inferred(DetectionResult result, boolean fromCache, String contentHash, String cacheKey) {
+            this.result = result;
+            this.fromCache = fromCache;
+            this.contentHash = contentHash;
+            this.cacheKey = cacheKey;
+        }
+    }
+
+    public BatchDetectionJob(Context context, List<Uri> uris) {
+        this.context = context.getApplicationContext();
+        this.uris = uris;
+        this.outputFile = new File(this.context.getFilesDir(), "batch_" + System.currentTimeMillis() + ".jsonl");
+        this.store = DetectionStore.get(this.context);
+        this.cache = ((RimagineApplication) this.context).getDetectionCache();
+        this.scheduler = ((RimagineApplication) this.context).getInferenceScheduler();
+        this.pipeline = new BatchPipeline.Builder<Uri, Decoded, Inferred>(
+                this::decode, decoded -> inferAll(Collections.singletonList(decoded)).get(0), this::write)
+                .setBatchInference(this::inferAll, MAX_BATCH)
+                .setDecodeThreads(DECODE_THREADS)
+                .setInferenceThreads(InterpreterPool.defaultSize())
+                .setQueueCapacity(QUEUE_CAPACITY)
+                .setDiscarder(Decoded::recycle)
+                .setProgressListener(this::onProgress)
+                .build();
+    }
+
+    public LiveData<BatchProgress> getProgress() {
+        return progress;
+    }
+
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    public void start() throws IOException {
+        output = new BufferedWriter(new FileWriter(outputFile));
+        // Shares the app-wide pool, so interactive requests queue fairly alongside the batch
+        interpreterPool = ModelRegistry.get(context).acquirePool();
+        pipeline.start(uris);
+    }
+
+    public void cancel() {
+        pipeline.cancel();
+    }
+
+    private Decoded decode(Uri uri) throws Exception {
+        InterpreterPool pool = interpreterPool.get();
+        String contentHash = DetectionStore.contentHash(context.getContentResolver(), uri);
+        String cacheKey = ModelRegistry.get(context).cacheKey(contentHash, DetectionCache.SINGLE_PASS);
+        DetectionResult cached = cacheKey != null ? cache.get(cacheKey) : null;
+        if (cached != null) {
+            return new Decoded(null, cached, contentHash, cacheKey);
+        }
+        SampledImageDecoder.Decoded image = SampledImageDecoder.decode(context.getContentResolver(), uri,
+                pool.getInputWidth(), pool.getInputHeight());
+        return new Decoded(image, null, contentHash, cacheKey);
+    }
+
+    private List<Inferred> inferAll(List<Decoded> batch) throws Exception {
+        List<Inferred> inferred = new ArrayList<>(batch.size());
+        List<Bitmap> images = new ArrayList<>(batch.size());
+        for (Decoded decoded : batch) {
+            if (decoded.cached == null) {
+                images.add(decoded.image.getBitmap());
+            }
+        }
+        List<DetectionResult> results = Collections.emptyList();
+        if (!images.isEmpty()) {
+            // Lets a photo the user is waiting for take the next free interpreter
+            scheduler.awaitInteractiveIdle(MAX_YIELD_MILLIS, TimeUnit.MILLISECONDS);
+            results = interpreterPool.get().runBatch(images);
+        }
+        int next = 0;
+        for (Decoded decoded : batch) {
+            if (decoded.cached != null) {
+                inferred.add(new Inferred(decoded.cached, true, decoded.contentHash, decoded.cacheKey));
+            } else {
+                // Boxes are written in the pixels of the original image
+                inferred.add(new Inferred(results.get(next++).mapped(decoded.image.getToOriginal()), false,
+                        decoded.contentHash, decoded.cacheKey));
+            }
+        }
+        return inferred;
+    }
+
+    private void write(Uri uri, Inferred inferred) throws IOException, JSONException {
+        DetectionResult result = inferred.result;
+        // A failed image in a batch does not fail the others, so it is counted here
+        if (!result.isSuccess()) {
+            throw new IOException(result.getErrorMessage());
+        }
+        JSONArray detections = new JSONArray();
+        for (int i = 0; i < result.size(); i++) {
+            detections.put(new JSONObject()
+                    .put("label", result.getLabel(i))
+                    .put("class_id", result.getClassId(i))
+                    .put("score", result.getScore(i))
+                    .put("box", new JSONArray()
+                            .put(result.getLeft(i))
+                            .put(result.getTop(i))
+                            .put(result.getRight(i))
+                            .put(result.getBottom(i))));
+        }
+        JSONObject line = new JSONObject()
+                .put("uri", uri.toString())
+                .put("width", result.getImageWidth())
+                .put("height", result.getImageHeight())
+                .put("inference_ms", result.getInferenceNanos() / 1e6)
+                .put("detections", detections);
+        output.write(line.toString());
+        output.newLine();
+
+        // Cached here rather than on the inference threads, which have better things to do
+        if (!inferred.fromCache && inferred.cacheKey != null) {
+            try {
+                cache.put(inferred.cacheKey, result);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not cache result for " + uri + ": " + e.getMessage());
+            }
+        }
+
+        pendingRecords.add(new DetectionStore.Record(uri.toString(), inferred.contentHash,
+                ModelRegistry.get(context).getModelVersion(), result, System.currentTimeMillis()));
+        if (pendingRecords.size() >= STORE_BATCH) {
+            flushRecords();
+        }
+    }
+
+    /** Stores the buffered records in one transaction. Writer thread only, or after it has stopped. */
+    private void flushRecords() {
+        if (pendingRecords.isEmpty()) {
+            return;
+        }
+        try {
+            store.insertAll(pendingRecords);
+        } catch (RuntimeException e) {
+            // The JSON lines are still written; losing the history is not worth failing the batch
+            Log.e(TAG, "Could not store " + pendingRecords.size() + " results: " + e.getMessage(), e);
+        }
+        pendingRecords.clear();
+    }
+
+    private void onProgress(BatchProgress snapshot) {
+        progress.postValue(snapshot);
+        if (!snapshot.isFinished()) {
+            return;
+        }
+        // Called once by the last pipeline thread, after every stage has stopped
+        flushRecords();
+        try {
+            output.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing batch output: " + e.getMessage(), e);
+        }
+        interpreterPool.close();
+        Log.d(TAG, "Batch " + snapshot.getState() + ": " + snapshot.getWritten() + " written, "
+                + snapshot.getFailed() + " failed, inference utilization "
+                + snapshot.getInferenceUtilization(pipeline.getInferenceThreads()));
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.rimagine.ml;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Letterboxes a bitmap into the model input and fills the input tensor.
+ *
+ * The image keeps its aspect ratio and is centred on {@link Letterbox#PAD_COLOR}. The scaled
+ * bitmap, its canvas and the tensor buffers are created once per model shape and reused, and
+ * the {@link Letterbox} is only recomputed when the source size changes, so steady-state calls
+ * do not allocate. The padding is repainted only when the letterbox layout changes. Large
+ * inputs are converted in row stripes on the common fork-join pool. For batched inference
+ * the tensor can hold several images, each letterboxed into its own slot.
+ */
+public class BitmapPreprocessor {
+    private final Paint scalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Rect destRect = new Rect();
+    private final InferenceMetrics metrics = InferenceMetrics.get();
+
+    private InputTensorBuffer tensor;
+    private Bitmap scaledBitmap;
+    private Canvas scaledCanvas;
+    private Letterbox letterbox;
+
+    private final TensorFormat format;
+    private final ModelMetadata metadata;
+    private int batchCapacity = 1;
+
+    public BitmapPreprocessor(int width, int height) {
+        this(width, height, TensorFormat.float32(), ModelMetadata.DEFAULT);
+    }
+
+    public BitmapPreprocessor(int width, int height, TensorFormat format, ModelMetadata metadata) {
+        this.format = format;
+        this.metadata = metadata;
+        // Replaces the last image instead of blending a translucent source over it
+        scalePaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+        ensureShape(width, height);
+    }
+
+    /**
+     * (Re)allocates the reusable buffers if the model shape changed.
+     */
+    public void ensureShape(int width, int height) {
+        if (tensor != null && tensor.matches(width, height)) {
+            return;
+        }
+        release();
+        tensor = new InputTensorBuffer(width, height, format, metadata.getMean(), metadata.getStd(), batchCapacity);
+        scaledBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        scaledCanvas = new Canvas(scaledBitmap);
+        letterbox = null;
+    }
+
+    /** Makes room for {@code capacity} images in the tensor, for {@link #processSlot}. */
+    public void ensureBatchCapacity(int capacity) {
+        if (capacity <= batchCapacity) {
+            return;
+        }
+        int width = tensor.getWidth();
+        int height = tensor.getHeight();
+        batchCapacity = capacity;
+        tensor = new InputTensorBuffer(width, height, format, metadata.getMean(), metadata.getStd(), batchCapacity);
+    }
+
+    public int getBatchCapacity() {
+        return batchCapacity;
+    }
+
+    public ByteBuffer process(Bitmap source) {
+        return process(source, null);
+    }
+
+    /**
+     * Letterboxes only {@code region} of {@code source} into the tensor, without copying the
+     * region out first; a null region uses the whole bitmap. {@link #getLetterbox()} then
+     * describes the mapping back to region pixels.
+     */
+    public ByteBuffer process(Bitmap source, Rect region) {
+        draw(source, region);
+        long start = System.nanoTime();
+        tensor.fillFromPixels(ForkJoinPool.commonPool());
+        metrics.record(InferenceMetrics.Stage.TENSOR_FILL, System.nanoTime() - start);
+        return tensor.batch(1);
+    }
+
+    /**
+     * Letterboxes {@code region} of {@code source}, or all of it if null, into image
+     * {@code slot} of the batch, and returns the geometry of that image. Pass the filled
+     * slots to the interpreter with {@link #batch}.
+     */
+    public Letterbox processSlot(Bitmap source, Rect region, int slot) {
+        draw(source, region);
+        long start = System.nanoTime();
+        tensor.fillSlot(slot);
+        metrics.record(InferenceMetrics.Stage.TENSOR_FILL, System.nanoTime() - start);
+        return letterbox;
+    }
+
+    /** The first {@code count} slots, sized exactly for an input resized to that batch. */
+    public ByteBuffer batch(int count) {
+        return tensor.batch(count);
+    }
+
+    /** Scales {@code region} of {@code source} into the letterbox and reads back its pixels. */
+    private void draw(Bitmap source, Rect region) {
+        int width = tensor.getWidth();
+        int height = tensor.getHeight();
+        int sourceWidth = region != null ? region.width() : source.getWidth();
+        int sourceHeight = region != null ? region.height() : source.getHeight();
+
+        if (letterbox == null || !letterbox.matches(sourceWidth, sourceHeight, width, height)) {
+            Letterbox next = Letterbox.fit(sourceWidth, sourceHeight, width, height);
+            if (!next.sameLayout(letterbox)) {
+                scaledBitmap.eraseColor(Letterbox.PAD_COLOR);
+                destRect.set(next.getPadLeft(), next.getPadTop(),
+                        next.getPadLeft() + next.getContentWidth(), next.getPadTop() + next.getContentHeight());
+            }
+            letterbox = next;
+        }
+        long start = System.nanoTime();
+        scaledCanvas.drawBitmap(source, region, destRect, scalePaint);
+        scaledBitmap.getPixels(tensor.pixels(), 0, width, 0, 0, width, height);
+        metrics.record(InferenceMetrics.Stage.RESIZE, System.nanoTime() - start);
+    }
+
+    /** Geometry of the last {@link #process} call. */
+    public Letterbox getLetterbox() {
+        return letterbox;
+    }
+
+    public void release() {
+        if (scaledBitmap != null) {
+            scaledBitmap.recycle();
+            scaledBitmap = null;
+        }
+        scaledCanvas = null;
+        tensor = null;
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.rimagine.ml;
+
+import android.util.Log;
+
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Runs the model of one {@link PipelineStage} on batches of crops, on the CPU.
+ *
+ * The input's batch dimension is resized to the number of crops whenever that changes, so
+ * all crops of an image cost one interpreter call per {@link PipelineStage#getMaxBatch()}
+ * instead of one per detection. Calls are serialized.
+ */
+public final class CropModelRunner implements AutoCloseable {
+    private static final String TAG = "CropModelRunner";
+
+    private final PipelineStage stage;
+    private final ModelMetadata metadata;
+    private final String[] outputLabels;
+    private final int inputWidth;
+    private final int inputHeight;
+    private final TensorFormat inputFormat;
+    private final TensorFormat outputFormat;
+    private final int outputSize;
+    private final ByteBuffer outputBuffer;
+    private Interpreter interpreter;
+    private int batchSize;
+
+    /**
+     * @throws IllegalArgumentException if the model cannot be loaded or does not take one RGB
+     *                                  image per batch element
+     */
+    public CropModelRunner(ByteBuffer model, PipelineStage stage, DelegateConfig config) {
+        this.stage = stage;
+        this.metadata = ModelMetadataReader.readEmbedded(model);
+        this.outputLabels = ModelMetadataReader.readEmbeddedLabels(model);
+        Interpreter.Options options = new Interpreter.Options();
+        if (config.getNumThreads() > 0) {
+            options.setNumThreads(config.getNumThreads());
+        }
+        options.setUseXNNPACK(true);
+        interpreter = new Interpreter(model, options);
+
+        Tensor input = interpreter.getInputTensor(0);
+        int[] inputShape = input.shape();
+        if (inputShape.length != 4 || inputShape[3] != 3) {
+            interpreter.close();
+            throw new IllegalArgumentException(stage.getName() + " takes " + Arrays.toString(inputShape)
+                    + ", not a batch of RGB images");
+        }
+        batchSize = inputShape[0];
+        inputHeight = inputShape[1];
+        inputWidth = inputShape[2];
+        inputFormat = TFLiteModelRunner.formatOf(input);
+
+        // Everything after the batch dimension is one crop's output, read back flat
+        Tensor output = interpreter.getOutputTensor(0);
+        int[] outputShape = output.shape();
+        int size = 1;
+        for (int i = 1; i < outputShape.length; i++) {
+            size *= outputShape[i];
+        }
+        outputSize = size;
+        outputFormat = TFLiteModelRunner.formatOf(output);
+        outputBuffer = ByteBuffer.allocateDirect(stage.getMaxBatch() * outputSize * outputFormat.getBytesPerElement());
+        outputBuffer.order(ByteOrder.nativeOrder());
+        Log.d(TAG, stage.getName() + ": input " + inputWidth + "x" + inputHeight + " " + inputFormat
+                + ", " + outputSize + " outputs " + outputFormat + ", " + outputLabels.length + " labels");
+    }
+
+    public PipelineStage getStage() {
+        return stage;
+    }
+
+    public int getInputWidth() {
+        return inputWidth;
+    }
+
+    public int getInputHeight() {
+        return inputHeight;
+    }
+
+    public TensorFormat getInputFormat() {
+        return inputFormat;
+    }
+
+    /** Normalization of the input pixels. */
+    public ModelMetadata getMetadata() {
+        return metadata;
+    }
+
+    /** Class names of a classifier's outputs, or empty if the model has none. */
+    public String[] getOutputLabels() {
+        return outputLabels;
+    }
+
+    /** Values per crop. */
+    public int getOutputSize() {
+        return outputSize;
+    }
+
+    /**
+     * Key of the crop tensor this model reads; stages with the same key and the same crops
+     * can be fed from one buffer.
+     */
+    public String inputKey() {
+        return inputWidth + "x" + inputHeight + ":" + inputFormat + ":" + metadata.getMean() + "/" + metadata.getStd()
+                + ":" + stage.getMaxBatch();
+    }
+
+    /**
+     * Runs the first {@code count} crops of {@code crops} in one call and writes the outputs
+     * of crop {@code i}, dequantized, into {@code outputs[i]}.
+     */
+    public synchronized void run(InputTensorBuffer crops, int count, float[][] outputs) {
+        if (interpreter == null) {
+            throw new IllegalStateException(stage.getName() + " is closed");
+        }
+        if (count != batchSize) {
+            interpreter.resizeInput(0, new int[]{count, inputHeight, inputWidth, 3});
+            interpreter.allocateTensors();
+            batchSize = count;
+        }
+        outputBuffer.rewind();
+        interpreter.run(crops.batch(count), outputBuffer);
+        outputBuffer.rewind();
+        for (int i = 0; i < count; i++) {
+            float[] values = outputs[i];
+            for (int j = 0; j < outputSize; j++) {
+                values[j] = outputFormat.isQuantized()
+                        ? outputFormat.dequantize(outputFormat.toQuantized(outputBuffer.get()))
+                        : outputBuffer.getFloat();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (interpreter != null) {
+            interpreter.close();
+            interpreter = null;
+        }
+    }
+}
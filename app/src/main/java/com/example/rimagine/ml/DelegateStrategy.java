@@ -0,0 +1,114 @@
+package com.example.rimagine.ml;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Build;
+import android.util.Log;
+
+import org.tensorflow.lite.gpu.CompatibilityList;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Chooses interpreter delegates from an on-device calibration, remembered per device build
+ * and model hash in {@link SharedPreferences}.
+ *
+ * Until a calibration has been stored the XNNPACK fallback is used, so the first launch never
+ * waits for calibration to finish. The new choice applies the next time the model is loaded.
+ */
+public final class DelegateStrategy {
+    private static final String TAG = "DelegateStrategy";
+    private static final String PREFS = "delegate_calibration";
+    private static final int WARMUP_RUNS = 1;
+    private static final int TIMED_RUNS = 3;
+
+    private final SharedPreferences prefs;
+    private final String key;
+    private final int cores = Runtime.getRuntime().availableProcessors();
+
+    /** {@code modelHash} is the model's {@link ContentHash}. */
+    public DelegateStrategy(Context context, String modelHash) {
+        if (modelHash == null) {
+            throw new IllegalStateException("Model hash is not known before the model is loaded");
+        }
+        this.prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        this.key = modelHash.substring(0, 16) + "@" + Build.FINGERPRINT;
+    }
+
+    public boolean isCalibrated() {
+        return prefs.contains(key + ".best");
+    }
+
+    /** Backend for a single interpreter that should answer as fast as possible. */
+    public DelegateConfig getLatencyConfig() {
+        DelegateConfig stored = DelegateConfig.decode(prefs.getString(key + ".best", null));
+        return stored != null ? stored : DelegateSelector.fallback(cores);
+    }
+
+    /** CPU backend for pooled interpreters, with the pool's own thread split. */
+    public DelegateConfig getPoolConfig(int threadsPerInterpreter) {
+        DelegateConfig stored = DelegateConfig.decode(prefs.getString(key + ".cpu", null));
+        DelegateConfig cpu = stored != null ? stored : DelegateSelector.fallback(cores);
+        return cpu.withThreads(threadsPerInterpreter);
+    }
+
+    /** Times every available backend on {@code model} and stores the winners. Blocks for seconds. */
+    public DelegateSelector.Calibration calibrate(ByteBuffer model) {
+        List<DelegateConfig> candidates = DelegateSelector.candidates(cores,
+                Build.VERSION.SDK_INT >= Build.VERSION_CODES.P, isGpuAvailable());
+        Bitmap input = Bitmap.createBitmap(640, 480, Bitmap.Config.ARGB_8888);
+        input.eraseColor(Color.GRAY);
+        DelegateSelector.Calibration calibration;
+        try {
+            calibration = DelegateSelector.calibrate(candidates, config -> measure(model, config, input), cores);
+        } finally {
+            input.recycle();
+        }
+
+        prefs.edit()
+                .putString(key + ".best", calibration.getBest().encode())
+                .putString(key + ".cpu", calibration.getBestCpu().encode())
+                .apply();
+        for (Map.Entry<DelegateConfig, Long> timing : calibration.getTimings().entrySet()) {
+            Log.d(TAG, timing.getKey() + ": " + timing.getValue() / 1000 + " us");
+        }
+        Log.i(TAG, "Calibrated " + calibration.getTimings().size() + "/" + candidates.size()
+                + " backends, best " + calibration.getBest() + ", best CPU " + calibration.getBestCpu());
+        return calibration;
+    }
+
+    private static long measure(ByteBuffer model, DelegateConfig config, Bitmap input) {
+        TFLiteModelRunner runner = new TFLiteModelRunner(model, config);
+        try {
+            // A runner that fell back to the CPU must not be credited to the accelerator
+            if (runner.getInputWidth() <= 0 || !config.equals(runner.getDelegateConfig())) {
+                throw new IllegalStateException(config + " is not available");
+            }
+            long[] samples = new long[TIMED_RUNS];
+            for (int i = 0; i < WARMUP_RUNS + TIMED_RUNS; i++) {
+                DetectionResult result = runner.runInference(input);
+                if (!result.isSuccess()) {
+                    throw new IllegalStateException(result.getErrorMessage());
+                }
+                if (i >= WARMUP_RUNS) {
+                    samples[i - WARMUP_RUNS] = result.getInferenceNanos();
+                }
+            }
+            return DelegateSelector.median(samples);
+        } finally {
+            runner.close();
+        }
+    }
+
+    private static boolean isGpuAvailable() {
+        try {
+            return new CompatibilityList().isDelegateSupportedOnThisDevice();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.rimagine.ml;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.util.Log;
+
+import com.example.rimagine.BuildConfig;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs the declared second-stage models on the detections of an image.
+ *
+ * Every stage crops the detections it applies to and sends them to its model in batches, one
+ * interpreter call per batch, so a second model adds a few calls per image rather than one
+ * per detection. Consecutive stages that take the same crops at the same input read one
+ * shared crop buffer, filled once per batch. Crop buffers, a tensor with room for a full batch
+ * and the bitmap crops are scaled into, are pooled by input shape and reused across runs.
+ * Concurrent runs take separate buffers and queue on the stage models.
+ */
+public final class DetectionPipeline implements AutoCloseable {
+    private static final String TAG = "DetectionPipeline";
+
+    private final List<CropModelRunner> runners;
+    private final CropBufferPool<CropBuffer> buffers = new CropBufferPool<>(2, CropBuffer::release);
+    private final InferenceMetrics metrics = InferenceMetrics.get();
+
+    /** One batch of crops in a model's input format, and the bitmap each crop is drawn into. */
+    private static final class CropBuffer {
+        private final InputTensorBuffer tensor;
+        private final Bitmap bitmap;
+        private final Canvas canvas;
+        private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        private final Rect source = new Rect();
+        private final Rect dest = new Rect();
+        private final int[] region = new int[4];
+
+        CropBuffer(CropModelRunner runner) {
+            ModelMetadata metadata = runner.getMetadata();
+            tensor = new InputTensorBuffer(runner.getInputWidth(), runner.getInputHeight(), runner.getInputFormat(),
+                    metadata.getMean(), metadata.getStd(), runner.getStage().getMaxBatch());
+            bitmap = Bitmap.createBitmap(runner.getInputWidth(), runner.getInputHeight(), Bitmap.Config.ARGB_8888);
+            canvas = new Canvas(bitmap);
+            // Replaces the last crop instead of blending a translucent source over it
+            paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+        }
+
+        /**
+         * Letterboxes the crop of detection {@code i} into batch {@code slot}.
+         *
+         * @return the mapping from normalized model input to image pixels
+         */
+        CoordinateTransform crop(Bitmap image, DetectionResult detections, int i, PipelineStage stage, int slot) {
+            stage.cropRegion(detections, i, image.getWidth(), image.getHeight(), region);
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            Letterbox letterbox = Letterbox.fit(region[2] - region[0], region[3] - region[1], width, height);
+            if (letterbox.getContentWidth() < width || letterbox.getContentHeight() < height) {
+                bitmap.eraseColor(Letterbox.PAD_COLOR);
+            }
+            source.set(region[0], region[1], region[2], region[3]);
+            dest.set(letterbox.getPadLeft(), letterbox.getPadTop(),
+                    letterbox.getPadLeft() + letterbox.getContentWidth(),
+                    letterbox.getPadTop() + letterbox.getContentHeight());
+            canvas.drawBitmap(image, source, dest, paint);
+            bitmap.getPixels(tensor.pixels(), 0, width, 0, 0, width, height);
+            tensor.fillSlot(slot);
+            return letterbox.getOutputToSource().then(new CoordinateTransform(1f, 1f, region[0], region[1],
+                    image.getWidth(), image.getHeight()));
+        }
+
+        void release() {
+            bitmap.recycle();
+        }
+    }
+
+    /** @param runners the stage models, in the order the stages were declared */
+    public DetectionPipeline(List<CropModelRunner> runners) {
+        this.runners = new ArrayList<>(runners);
+    }
+
+    public boolean isEmpty() {
+        return runners.isEmpty();
+    }
+
+    public List<PipelineStage> getStages() {
+        List<PipelineStage> stages = new ArrayList<>(runners.size());
+        for (CropModelRunner runner : runners) {
+            stages.add(runner.getStage());
+        }
+        return stages;
+    }
+
+    /**
+     * Runs every stage on {@code detections}, which are in the pixels of {@code image}. A stage
+     * whose model fails is logged and left out of the results.
+     */
+    public List<StageResult> run(Bitmap image, DetectionResult detections) {
+        if (runners.isEmpty() || !detections.isSuccess()) {
+            return Collections.emptyList();
+        }
+        List<StageResult> results = new ArrayList<>(runners.size());
+        int first = 0;
+        while (first < runners.size()) {
+            int end = first + 1;
+            while (end < runners.size() && sharesCrops(runners.get(first), runners.get(end))) {
+                end++;
+            }
+            try {
+                runGroup(image, detections, runners.subList(first, end), results);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Stage " + runners.get(first).getStage().getName() + " failed: " + e.getMessage(), e);
+                metrics.increment(InferenceMetrics.Counter.ERRORS);
+            }
+            first = end;
+        }
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, StageResult.summarize(results));
+        }
+        return results;
+    }
+
+    private static boolean sharesCrops(CropModelRunner a, CropModelRunner b) {
+        return a.getStage().sharesCropsWith(b.getStage()) && a.inputKey().equals(b.inputKey());
+    }
+
+    /** Crops once for a group of stages sharing their crops, and runs each model per batch. */
+    private void runGroup(Bitmap image, DetectionResult detections, List<CropModelRunner> group,
+                          List<StageResult> results) {
+        CropModelRunner lead = group.get(0);
+        PipelineStage stage = lead.getStage();
+        int maxBatch = stage.getMaxBatch();
+        StageResult.Builder[] builders = new StageResult.Builder[group.size()];
+        float[][][] outputs = new float[group.size()][][];
+        for (int s = 0; s < group.size(); s++) {
+            CropModelRunner runner = group.get(s);
+            builders[s] = new StageResult.Builder(runner.getStage(), detections.size(), runner.getOutputLabels());
+            outputs[s] = new float[maxBatch][runner.getOutputSize()];
+        }
+        int[] batch = new int[maxBatch];
+        CoordinateTransform[] toImage = new CoordinateTransform[maxBatch];
+
+        String key = lead.inputKey();
+        CropBuffer buffer = buffers.acquire(key, () -> new CropBuffer(lead));
+        try {
+            int count = 0;
+            long cropStart = System.nanoTime();
+            for (int i = 0; i < detections.size(); i++) {
+                if (!stage.appliesTo(detections, i)) {
+                    continue;
+                }
+                toImage[count] = buffer.crop(image, detections, i, stage, count);
+                batch[count++] = i;
+                if (count == maxBatch || !hasMore(stage, detections, i + 1)) {
+                    long cropNanos = System.nanoTime() - cropStart;
+                    metrics.record(InferenceMetrics.Stage.CROP, cropNanos);
+                    // The shared crops are charged to the stage that made them
+                    builders[0].addCrops(count, cropNanos);
+                    for (int s = 1; s < group.size(); s++) {
+                        builders[s].addCrops(count, 0L);
+                    }
+                    for (int s = 0; s < group.size(); s++) {
+                        long invokeStart = System.nanoTime();
+                        group.get(s).run(buffer.tensor, count, outputs[s]);
+                        long invokeNanos = System.nanoTime() - invokeStart;
+                        metrics.record(InferenceMetrics.Stage.STAGE_INVOKE, invokeNanos);
+                        builders[s].addInvocation(invokeNanos);
+                        for (int slot = 0; slot < count; slot++) {
+                            builders[s].setOutput(batch[slot], outputs[s][slot], toImage[slot]);
+                        }
+                    }
+                    count = 0;
+                    cropStart = System.nanoTime();
+                }
+            }
+        } finally {
+            buffers.release(key, buffer);
+        }
+        for (StageResult.Builder builder : builders) {
+            results.add(builder.build());
+        }
+    }
+
+    private static boolean hasMore(PipelineStage stage, DetectionResult detections, int from) {
+        for (int i = from; i < detections.size(); i++) {
+            if (stage.appliesTo(detections, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        buffers.close();
+        for (CropModelRunner runner : runners) {
+            runner.close();
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package com.example.rimagine.ml;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.rimagine.BuildConfig;
+import com.example.rimagine.RimagineApplication;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Persistent per-image detections in SQLite: source URI, content hash, model version,
+ * boxes, classes, scores and stage timings.
+ *
+ * One row per image, with its detection count and best score kept alongside so a page of
+ * the history needs no aggregate; one row per box, indexed by class and score. Inserts are
+ * grouped into one transaction per call. The connection is shared and serialized by SQLite,
+ * so the store can be used from any thread, but never from the main thread.
+ */
+public final class DetectionStore {
+    private static final String TAG = "DetectionStore";
+    private static final String DATABASE = "detections.db";
+    private static final int VERSION = 1;
+
+    /** One processed image, as handed to {@link #insertAll}. Boxes are in original-image pixels. */
+    public static final class Record {
+        private final String uri;
+        private final String contentHash;
+        private final String modelVersion;
+        private final DetectionResult result;
+        private final long createdAt;
+
+        public Record(String uri, String contentHash, String modelVersion, DetectionResult result, long createdAt) {
+            this.uri = uri;
+            this.contentHash = contentHash;
+            this.modelVersion = modelVersion;
+            this.result = result;
+            this.createdAt = createdAt;
+        }
+
+        public String getUri() {
+            return uri;
+        }
+
+        public DetectionResult getResult() {
+            return result;
+        }
+    }
+
+    /** Summary of a stored image, for listing without loading its boxes. */
+    public static final class Entry {
+        private final long id;
+        private final String uri;
+        private final String contentHash;
+        private final String modelVersion;
+        private final int width;
+        private final int height;
+        private final int detectionCount;
+        private final float bestScore;
+        private final long totalNanos;
+        private final long createdAt;
+
+        Entry(long id, String uri, String contentHash, String modelVersion, int width, int height,
+              int detectionCount, float bestScore, long totalNanos, long createdAt) {
+            this.id = id;
+            this.uri = uri;
+            this.contentHash = contentHash;
+            this.modelVersion = modelVersion;
+            this.width = width;
+            this.height = height;
+            this.detectionCount = detectionCount;
+            this.bestScore = bestScore;
+            this.totalNanos = totalNanos;
+            this.createdAt = createdAt;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getUri() {
+            return uri;
+        }
+
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        public String getModelVersion() {
+            return modelVersion;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getDetectionCount() {
+            return detectionCount;
+        }
+
+        public float getBestScore() {
+            return bestScore;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+    }
+
+    /** A page of entries and the query for the one after it, or null at the end. */
+    public static final class Page {
+        private final List<Entry> entries;
+        private final DetectionQuery next;
+
+        Page(List<Entry> entries, DetectionQuery next) {
+            this.entries = entries;
+            this.next = next;
+        }
+
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        public DetectionQuery getNext() {
+            return next;
+        }
+    }
+
+    private static final String[] ENTRY_COLUMNS = {"_id", "uri", "content_hash", "model_version", "width",
+            "height", "detection_count", "best_score", "preprocess_ns + inference_ns + postprocess_ns",
+            "created_at"};
+
+    private final Helper helper;
+
+    public DetectionStore(Context context) {
+        this.helper = new Helper(context.getApplicationContext());
+    }
+
+    public static DetectionStore get(Context context) {
+        return ((RimagineApplication) context.getApplicationContext()).getDetectionStore();
+    }
+
+    /** SHA-256 of the bytes behind {@code uri}, so the same photo gets the same key from any provider. */
+    public static String contentHash(ContentResolver resolver, Uri uri) throws IOException {
+        try (InputStream in = resolver.openInputStream(uri)) {
+            if (in == null) {
+                throw new IOException("Could not open " + uri);
+            }
+            return ContentHash.of(in);
+        }
+    }
+
+    public long insert(Record record) {
+        return insertAll(Collections.singletonList(record)).get(0);
+    }
+
+    /** Inserts every record in one transaction and returns their image ids, in order. */
+    public List<Long> insertAll(List<Record> records) {
+        long start = System.nanoTime();
+        List<Long> ids = new ArrayList<>(records.size());
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.beginTransaction();
+        try (SQLiteStatement image = db.compileStatement("INSERT INTO images (uri, content_hash, model_version,"
+                + " width, height, detection_count, best_score, preprocess_ns, inference_ns, postprocess_ns,"
+                + " created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+             SQLiteStatement box = db.compileStatement("INSERT INTO detections (image_id, class_id, label,"
+                     + " score, box_left, box_top, box_right, box_bottom) VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (Record record : records) {
+                DetectionResult result = record.result;
+                float bestScore = 0f;
+                for (int i = 0; i < result.size(); i++) {
+                    bestScore = Math.max(bestScore, result.getScore(i));
+                }
+                image.clearBindings();
+                image.bindString(1, record.uri);
+                bindNullable(image, 2, record.contentHash);
+                image.bindString(3, record.modelVersion);
+                image.bindLong(4, result.getImageWidth());
+                image.bindLong(5, result.getImageHeight());
+                image.bindLong(6, result.size());
+                image.bindDouble(7, bestScore);
+                image.bindLong(8, result.getPreprocessNanos());
+                image.bindLong(9, result.getInferenceNanos());
+                image.bindLong(10, result.getPostprocessNanos());
+                image.bindLong(11, record.createdAt);
+                long imageId = image.executeInsert();
+
+                for (int i = 0; i < result.size(); i++) {
+                    box.bindLong(1, imageId);
+                    box.bindLong(2, result.getClassId(i));
+                    box.bindString(3, result.getLabel(i));
+                    box.bindDouble(4, result.getScore(i));
+                    box.bindDouble(5, result.getLeft(i));
+                    box.bindDouble(6, result.getTop(i));
+                    box.bindDouble(7, result.getRight(i));
+                    box.bindDouble(8, result.getBottom(i));
+                    box.executeInsert();
+                }
+                ids.add(imageId);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        long elapsed = System.nanoTime() - start;
+        InferenceMetrics.get().record(InferenceMetrics.Stage.PERSIST, elapsed);
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Stored " + records.size() + " images in " + elapsed / 1_000_000 + " ms");
+        }
+        return ids;
+    }
+
+    public Page queryImages(DetectionQuery query) {
+        List<Entry> entries = new ArrayList<>();
+        SQLiteDatabase db = helper.getReadableDatabase();
+        try (Cursor cursor = db.query("images", ENTRY_COLUMNS, query.selection(), query.selectionArgs(),
+                null, null, "created_at DESC, _id DESC", Integer.toString(query.getLimit()))) {
+            while (cursor.moveToNext()) {
+                entries.add(new Entry(cursor.getLong(0), cursor.getString(1), cursor.getString(2),
+                        cursor.getString(3), cursor.getInt(4), cursor.getInt(5), cursor.getInt(6),
+                        cursor.getFloat(7), cursor.getLong(8), cursor.getLong(9)));
+            }
+        }
+        DetectionQuery next = null;
+        if (entries.size() == query.getLimit()) {
+            Entry last = entries.get(entries.size() - 1);
+            next = query.after(last.createdAt, last.id);
+        }
+        return new Page(entries, next);
+    }
+
+    /** The boxes of one stored image, or null if there is no such image. */
+    public DetectionResult loadResult(long imageId) {
+        SQLiteDatabase db = helper.getReadableDatabase();
+        String[] args = {Long.toString(imageId)};
+        int width;
+        int height;
+        long preprocessNanos;
+        long inferenceNanos;
+        long postprocessNanos;
+        try (Cursor cursor = db.query("images", new String[]{"width", "height", "preprocess_ns", "inference_ns",
+                "postprocess_ns"}, "_id = ?", args, null, null, null)) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            width = cursor.getInt(0);
+            height = cursor.getInt(1);
+            preprocessNanos = cursor.getLong(2);
+            inferenceNanos = cursor.getLong(3);
+            postprocessNanos = cursor.getLong(4);
+        }
+
+        DetectionBuffer boxes = new DetectionBuffer();
+        List<String> labels = new ArrayList<>();
+        try (Cursor cursor = db.query("detections", new String[]{"class_id", "label", "score", "box_left",
+                "box_top", "box_right", "box_bottom"}, "image_id = ?", args, null, null, "score DESC")) {
+            while (cursor.moveToNext()) {
+                int classId = cursor.getInt(0);
+                while (labels.size() <= classId) {
+                    labels.add("Class " + labels.size());
+                }
+                labels.set(classId, cursor.getString(1));
+                boxes.add(cursor.getFloat(3), cursor.getFloat(4), cursor.getFloat(5), cursor.getFloat(6),
+                        cursor.getFloat(2), classId);
+            }
+        }
+        return DetectionResult.of(boxes, labels.toArray(new String[0]), width, height,
+                preprocessNanos, inferenceNanos, postprocessNanos);
+    }
+
+    public long count() {
+        return DatabaseUtils.queryNumEntries(helper.getReadableDatabase(), "images");
+    }
+
+    public void close() {
+        helper.close();
+    }
+
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    private static final class Helper extends SQLiteOpenHelper {
+        Helper(Context context) {
+            super(context, DATABASE, null, VERSION);
+            // Readers on the UI's background thread do not wait for a batch transaction
+            setWriteAheadLoggingEnabled(true);
+        }
+
+        @Override
+        public void onConfigure(SQLiteDatabase db) {
+            db.setForeignKeyConstraintsEnabled(true);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE images ("
+                    + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "uri TEXT NOT NULL, "
+                    + "content_hash TEXT, "
+                    + "model_version TEXT NOT NULL, "
+                    + "width INTEGER NOT NULL, "
+                    + "height INTEGER NOT NULL, "
+                    + "detection_count INTEGER NOT NULL, "
+                    + "best_score REAL NOT NULL, "
+                    + "preprocess_ns INTEGER NOT NULL, "
+                    + "inference_ns INTEGER NOT NULL, "
+                    + "postprocess_ns INTEGER NOT NULL, "
+                    + "created_at INTEGER NOT NULL)");
+            db.execSQL("CREATE TABLE detections ("
+                    + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                    + "image_id INTEGER NOT NULL REFERENCES images(_id) ON DELETE CASCADE, "
+                    + "class_id INTEGER NOT NULL, "
+                    + "label TEXT NOT NULL, "
+                    + "score REAL NOT NULL, "
+                    + "box_left REAL NOT NULL, "
+                    + "box_top REAL NOT NULL, "
+                    + "box_right REAL NOT NULL, "
+                    + "box_bottom REAL NOT NULL)");
+            db.execSQL("CREATE INDEX detections_class_score ON detections (class_id, score)");
+            db.execSQL("CREATE INDEX detections_image ON detections (image_id)");
+            db.execSQL("CREATE INDEX images_created ON images (created_at, _id)");
+            db.execSQL("CREATE INDEX images_content_hash ON images (content_hash)");
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // No released schema before version 1
+        }
+    }
+}
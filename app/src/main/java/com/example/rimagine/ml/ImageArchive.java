@@ -0,0 +1,78 @@
+package com.example.rimagine.ml;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+import android.webkit.MimeTypeMap;
+
+import com.example.rimagine.BuildConfig;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps copies of processed images in app storage, bounded by an {@link ImageRetentionPolicy}.
+ *
+ * Copies go channel to channel, so the bytes never pass through a Java buffer. They are
+ * written under a temporary name and renamed when complete, so a half-written file is never
+ * mistaken for an archived image.
+ */
+public final class ImageArchive {
+    private static final String TAG = "ImageArchive";
+    private static final String PREFIX = "image_";
+    private static final String PARTIAL_PREFIX = ".partial_";
+    private static final long TRANSFER_CHUNK = 8L * 1024 * 1024;
+
+    private final File dir;
+    private final ImageRetentionPolicy policy;
+
+    public static ImageRetentionPolicy defaultPolicy() {
+        return new ImageRetentionPolicy(20, 100L * 1024 * 1024, TimeUnit.DAYS.toMillis(7));
+    }
+
+    public ImageArchive(File dir, ImageRetentionPolicy policy) {
+        this.dir = dir;
+        this.policy = policy;
+    }
+
+    public File archive(ContentResolver resolver, Uri uri) throws IOException {
+        String extension = MimeTypeMap.getSingleton().getExtensionFromMimeType(resolver.getType(uri));
+        File target = new File(dir, PREFIX + System.currentTimeMillis() + "." + (extension != null ? extension : "jpg"));
+        File partial = new File(dir, PARTIAL_PREFIX + target.getName());
+
+        ParcelFileDescriptor pfd = resolver.openFileDescriptor(uri, "r");
+        if (pfd == null) {
+            throw new IOException("Could not open " + uri);
+        }
+        try (FileChannel in = new ParcelFileDescriptor.AutoCloseInputStream(pfd).getChannel();
+             FileChannel out = new FileOutputStream(partial).getChannel()) {
+            long position = 0;
+            long transferred;
+            while ((transferred = out.transferFrom(in, position, TRANSFER_CHUNK)) > 0) {
+                position += transferred;
+            }
+        } catch (IOException e) {
+            partial.delete();
+            throw e;
+        }
+        if (!partial.renameTo(target)) {
+            partial.delete();
+            throw new IOException("Could not move archived image into place");
+        }
+
+        int pruned = prune();
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Archived " + uri + " as " + target.getName() + ", pruned " + pruned);
+        }
+        return target;
+    }
+
+    /** Applies the retention policy to everything archived so far, including older copies. */
+    public int prune() {
+        return policy.prune(dir, PREFIX, System.currentTimeMillis());
+    }
+}
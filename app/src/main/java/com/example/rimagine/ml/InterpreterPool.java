@@ -0,0 +1,127 @@
+package com.example.rimagine.ml;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * N {@link TFLiteModelRunner}s over one memory-mapped model, leased to one caller at a time.
+ *
+ * The model file is mapped once and shared; every runner owns its interpreter, tensors and
+ * scratch buffers, so leased runners can be used concurrently. Pooled interpreters run on
+ * the CPU with a fixed thread count each, which lets independent requests spread across
+ * cores instead of queueing behind a single interpreter.
+ */
+public final class InterpreterPool implements AutoCloseable {
+    private static final String TAG = "InterpreterPool";
+    public static final int DEFAULT_THREADS_PER_INTERPRETER = 2;
+    private static final int MAX_DEFAULT_SIZE = 4;
+
+    private final ResourcePool<TFLiteModelRunner> pool;
+    private final int threadsPerInterpreter;
+    private final int inputWidth;
+    private final int inputHeight;
+
+    /** Pool sized so that all interpreters together use roughly every core once. */
+    public static int defaultSize() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(MAX_DEFAULT_SIZE, cores / DEFAULT_THREADS_PER_INTERPRETER));
+    }
+
+    public static InterpreterPool create(Context context) throws IOException {
+        return create(context, defaultSize(), DEFAULT_THREADS_PER_INTERPRETER);
+    }
+
+    public static InterpreterPool create(Context context, int size, int threadsPerInterpreter) throws IOException {
+        return new InterpreterPool(TFLiteModelRunner.loadModel(context), size,
+                DelegateConfig.xnnpack(threadsPerInterpreter));
+    }
+
+    /**
+     * @param config CPU backend and thread count used by every pooled interpreter
+     */
+    public InterpreterPool(ByteBuffer model, int size, DelegateConfig config) throws IOException {
+        this(model, size, config, ModelMetadataReader.readEmbedded(model));
+    }
+
+    /**
+     * @param config   CPU backend and thread count used by every pooled interpreter
+     * @param metadata labels and normalization shared by every pooled interpreter
+     */
+    public InterpreterPool(ByteBuffer model, int size, DelegateConfig config, ModelMetadata metadata)
+            throws IOException {
+        int threadsPerInterpreter = config.getNumThreads();
+        if (size <= 0 || threadsPerInterpreter <= 0 || !config.isCpuOnly()) {
+            throw new IllegalArgumentException("Invalid pool shape " + size + "x" + config);
+        }
+        long start = System.nanoTime();
+        List<TFLiteModelRunner> runners = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            TFLiteModelRunner runner = new TFLiteModelRunner(model, config, metadata);
+            runners.add(runner);
+            if (runner.getInputWidth() <= 0) {
+                for (TFLiteModelRunner created : runners) {
+                    created.close();
+                }
+                throw new IOException("Could not create interpreter " + i + " of " + size);
+            }
+        }
+        this.pool = new ResourcePool<>(runners, TFLiteModelRunner::close);
+        this.threadsPerInterpreter = threadsPerInterpreter;
+        this.inputWidth = runners.get(0).getInputWidth();
+        this.inputHeight = runners.get(0).getInputHeight();
+        Log.d(TAG, "Created " + size + " interpreters x " + config + " in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    public int size() {
+        return pool.size();
+    }
+
+    public int getThreadsPerInterpreter() {
+        return threadsPerInterpreter;
+    }
+
+    public int getInputWidth() {
+        return inputWidth;
+    }
+
+    public int getInputHeight() {
+        return inputHeight;
+    }
+
+    /** Blocks until a runner is free; waiters are served first come, first served. */
+    public ResourcePool<TFLiteModelRunner>.Lease acquire() throws InterruptedException {
+        return pool.acquire();
+    }
+
+    public ResourcePool<TFLiteModelRunner>.Lease tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        return pool.tryAcquire(timeout, unit);
+    }
+
+    /** Leases a runner for a single inference and returns it straight away. */
+    public DetectionResult runInference(Bitmap image) throws InterruptedException {
+        try (ResourcePool<TFLiteModelRunner>.Lease lease = pool.acquire()) {
+            return lease.get().runInference(image);
+        }
+    }
+
+    /** Leases a runner for one {@link TFLiteModelRunner#runBatch(List)} call. */
+    public List<DetectionResult> runBatch(List<Bitmap> images) throws InterruptedException {
+        try (ResourcePool<TFLiteModelRunner>.Lease lease = pool.acquire()) {
+            return lease.get().runBatch(images);
+        }
+    }
+
+    /** Closes idle interpreters now and leased ones when their lease is returned. */
+    @Override
+    public void close() {
+        pool.close();
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.rimagine.ml;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.tensorflow.lite.support.metadata.MetadataExtractor;
+import org.tensorflow.lite.support.metadata.schema.AssociatedFile;
+import org.tensorflow.lite.support.metadata.schema.AssociatedFileType;
+import org.tensorflow.lite.support.metadata.schema.NormalizationOptions;
+import org.tensorflow.lite.support.metadata.schema.ProcessUnit;
+import org.tensorflow.lite.support.metadata.schema.ProcessUnitOptions;
+import org.tensorflow.lite.support.metadata.schema.TensorMetadata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * Reads {@link ModelMetadata} for a bundled model.
+ *
+ * A sidecar JSON asset next to the model wins, so a retrained model can be described without
+ * re-exporting it; otherwise labels and normalization come from the TFLite metadata embedded in
+ * the model, and {@link ModelMetadata#DEFAULT} fills whatever neither provides. Sidecars are
+ * looked up as {@code <model>.json} and then {@code model.json}:
+ *
+ * <pre>{"labels": ["back_disk", "front_disk"], "mean": 0, "std": 255}</pre>
+ *
+ * An Ultralytics-style {@code "names": {"0": "back_disk"}} map is accepted in place of
+ * {@code labels}.
+ */
+public final class ModelMetadataReader {
+    private static final String TAG = "ModelMetadataReader";
+    private static final String SHARED_SIDECAR = "model.json";
+    private static final String[] EXPORTER_METADATA_FILES = {"metadata.json", "metadata.txt", "metadata.yaml"};
+
+    private ModelMetadataReader() {
+    }
+
+    public static ModelMetadata read(Context context, ModelVariant variant, ByteBuffer model) {
+        ModelMetadata embedded = readEmbedded(model);
+        String modelAsset = variant.getAssetName();
+        String[] sidecars = {modelAsset.substring(0, modelAsset.lastIndexOf('.')) + ".json", SHARED_SIDECAR};
+        for (String sidecar : sidecars) {
+            try (InputStream in = context.getAssets().open(sidecar)) {
+                ModelMetadata metadata = parseSidecar(readText(in), embedded, sidecar);
+                Log.d(TAG, "Metadata for " + variant + ": " + metadata);
+                return metadata;
+            } catch (FileNotFoundException e) {
+                // No sidecar under this name
+            } catch (IOException | JSONException | IllegalArgumentException e) {
+                Log.w(TAG, "Ignoring unreadable sidecar " + sidecar + ": " + e.getMessage());
+            }
+        }
+        Log.d(TAG, "Metadata for " + variant + ": " + embedded);
+        return embedded;
+    }
+
+    /** Metadata embedded in the model file, with {@link ModelMetadata#DEFAULT} for anything missing. */
+    public static ModelMetadata readEmbedded(ByteBuffer model) {
+        ModelMetadata metadata = ModelMetadata.DEFAULT;
+        MetadataExtractor extractor;
+        try {
+            extractor = new MetadataExtractor(model.duplicate());
+        } catch (Exception e) {
+            Log.w(TAG, "Could not parse model metadata: " + e.getMessage());
+            return metadata;
+        }
+
+        if (extractor.hasMetadata()) {
+            TensorMetadata input = extractor.getInputTensorMetadata(0);
+            NormalizationOptions normalization = input != null ? normalizationOf(input) : null;
+            if (normalization != null && normalization.meanLength() > 0 && normalization.stdLength() > 0) {
+                if (normalization.meanLength() > 1 || normalization.stdLength() > 1) {
+                    Log.w(TAG, "Per-channel normalization is applied with the first channel's values");
+                }
+                metadata = metadata.withNormalization(normalization.mean(0), normalization.std(0), "metadata");
+            }
+        }
+
+        String labelFile = labelFileName(extractor);
+        String[] labels = readLabels(extractor, labelFile);
+        if (labels.length > 0) {
+            metadata = metadata.withLabels(labels, "metadata:" + labelFile);
+        }
+        return metadata;
+    }
+
+    /**
+     * Class labels packed into the model file, or none. For second-stage models, whose
+     * outputs are not the detector's classes.
+     */
+    public static String[] readEmbeddedLabels(ByteBuffer model) {
+        try {
+            MetadataExtractor extractor = new MetadataExtractor(model.duplicate());
+            return readLabels(extractor, labelFileName(extractor));
+        } catch (Exception e) {
+            Log.w(TAG, "Could not parse model metadata: " + e.getMessage());
+            return new String[0];
+        }
+    }
+
+    private static String[] readLabels(MetadataExtractor extractor, String labelFile) {
+        if (labelFile == null) {
+            return new String[0];
+        }
+        try (InputStream in = extractor.getAssociatedFile(labelFile)) {
+            return ModelMetadata.parseLabels(readText(in));
+        } catch (Exception e) {
+            Log.w(TAG, "Could not read " + labelFile + ": " + e.getMessage());
+            return new String[0];
+        }
+    }
+
+    private static NormalizationOptions normalizationOf(TensorMetadata tensor) {
+        for (int i = 0; i < tensor.processUnitsLength(); i++) {
+            ProcessUnit unit = tensor.processUnits(i);
+            if (unit.optionsType() == ProcessUnitOptions.NormalizationOptions) {
+                return (NormalizationOptions) unit.options(new NormalizationOptions());
+            }
+        }
+        return null;
+    }
+
+    /** Label file attached to the output tensor, or a metadata dump appended by the exporter. */
+    private static String labelFileName(MetadataExtractor extractor) {
+        if (extractor.hasMetadata() && extractor.getOutputTensorCount() > 0) {
+            TensorMetadata output = extractor.getOutputTensorMetadata(0);
+            for (int i = 0; output != null && i < output.associatedFilesLength(); i++) {
+                AssociatedFile file = output.associatedFiles(i);
+                if (file.type() == AssociatedFileType.TENSOR_AXIS_LABELS) {
+                    return file.name();
+                }
+            }
+        }
+        Set<String> files;
+        try {
+            files = extractor.getAssociatedFileNames();
+        } catch (IllegalStateException e) {
+            // The model has no appended zip of associated files
+            return null;
+        }
+        for (String name : EXPORTER_METADATA_FILES) {
+            if (files.contains(name)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    private static ModelMetadata parseSidecar(String json, ModelMetadata base, String source) throws JSONException {
+        JSONObject root = new JSONObject(json);
+        ModelMetadata metadata = base;
+        String[] labels = null;
+        JSONArray labelArray = root.optJSONArray("labels");
+        if (labelArray != null) {
+            labels = new String[labelArray.length()];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = labelArray.getString(i);
+            }
+        } else if (root.has("names")) {
+            labels = ModelMetadata.parseLabels("names: " + root.get("names"));
+        }
+        if (labels != null && labels.length > 0) {
+            metadata = metadata.withLabels(labels, source);
+        }
+        if (root.has("mean") || root.has("std")) {
+            metadata = metadata.withNormalization((float) root.optDouble("mean", base.getMean()),
+                    (float) root.optDouble("std", base.getStd()), source);
+        }
+        return metadata;
+    }
+
+    private static String readText(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            out.write(chunk, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
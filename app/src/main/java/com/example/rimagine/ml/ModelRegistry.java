@@ -0,0 +1,254 @@
+package com.example.rimagine.ml;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.example.rimagine.RimagineApplication;
+
+import org.tensorflow.lite.support.common.FileUtil;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Process-wide cache of loaded models, owned by {@link RimagineApplication}.
+ *
+ * Screens take a handle in {@code onCreate} and close it in {@code onDestroy}; the model is
+ * mapped and the interpreters are built on first use and then kept across navigation.
+ * Unreferenced models are dropped when the system reports memory pressure.
+ */
+public final class ModelRegistry {
+    private static final String TAG = "ModelRegistry";
+
+    /**
+     * Second-stage models run on detected disks, each only if its asset is bundled. Both take
+     * the same crops, so they share one crop buffer when their inputs match.
+     */
+    static final List<PipelineStage> PIPELINE_STAGES = Arrays.asList(
+            new PipelineStage.Builder("disk_class", "disk_classifier.tflite", PipelineStage.Kind.CLASSIFIER)
+                    .setLabels("back_disk", "front_disk")
+                    .build(),
+            new PipelineStage.Builder("disk_keypoints", "disk_keypoints.tflite", PipelineStage.Kind.KEYPOINTS)
+                    .setLabels("back_disk", "front_disk")
+                    .build());
+
+    private final Context context;
+    private final RefCountedHolder<MappedByteBuffer> model;
+    private final RefCountedHolder<InterpreterPool> pool;
+    private final RefCountedHolder<TFLiteModelRunner> liveRunner;
+    private final RefCountedHolder<DetectionPipeline> pipeline;
+    private final ExecutorService background = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean firstDetectionLogged = new AtomicBoolean();
+    private DelegateStrategy delegateStrategy;
+    private volatile ModelMetadata metadata = ModelMetadata.DEFAULT;
+    private volatile String modelHash;
+    private volatile String modelVersion;
+
+    public ModelRegistry(Context context) {
+        this.context = context.getApplicationContext();
+        this.model = new RefCountedHolder<>(this::loadModel, null);
+        this.pool = new RefCountedHolder<>(this::createPool, InterpreterPool::close);
+        this.liveRunner = new RefCountedHolder<>(this::createLiveRunner, TFLiteModelRunner::close);
+        this.pipeline = new RefCountedHolder<>(this::createPipeline, DetectionPipeline::close);
+    }
+
+    public static ModelRegistry get(Context context) {
+        return ((RimagineApplication) context.getApplicationContext()).getModelRegistry();
+    }
+
+    /** Shared CPU interpreter pool for stills and batches. */
+    public RefCountedHolder<InterpreterPool>.Handle acquirePool() {
+        return pool.acquire();
+    }
+
+    /** Single GPU-backed runner for the camera stream. */
+    public RefCountedHolder<TFLiteModelRunner>.Handle acquireLiveRunner() {
+        return liveRunner.acquire();
+    }
+
+    /** Second-stage models for stills; empty when none of them is bundled. */
+    public RefCountedHolder<DetectionPipeline>.Handle acquirePipeline() {
+        return pipeline.acquire();
+    }
+
+    /**
+     * Loads the pool in the background and runs one dummy inference on every interpreter, so
+     * the first real request does not pay for tensor allocation and kernel preparation.
+     */
+    public void prewarm() {
+        RefCountedHolder<InterpreterPool>.Handle handle = pool.acquire();
+        background.execute(() -> {
+            long start = SystemClock.elapsedRealtime();
+            Bitmap dummy = null;
+            try {
+                InterpreterPool interpreters = handle.get();
+                dummy = Bitmap.createBitmap(interpreters.getInputWidth(), interpreters.getInputHeight(),
+                        Bitmap.Config.ARGB_8888);
+                dummy.eraseColor(Color.BLACK);
+                List<ResourcePool<TFLiteModelRunner>.Lease> leases = new ArrayList<>();
+                try {
+                    for (int i = 0; i < interpreters.size(); i++) {
+                        ResourcePool<TFLiteModelRunner>.Lease lease = interpreters.acquire();
+                        leases.add(lease);
+                        lease.get().runInference(dummy);
+                    }
+                } finally {
+                    for (ResourcePool<TFLiteModelRunner>.Lease lease : leases) {
+                        lease.close();
+                    }
+                }
+                Log.d(TAG, "Prewarmed " + interpreters.size() + " interpreters in "
+                        + (SystemClock.elapsedRealtime() - start) + " ms");
+            } catch (Exception e) {
+                Log.w(TAG, "Prewarm failed: " + e.getMessage(), e);
+            } finally {
+                if (dummy != null) {
+                    dummy.recycle();
+                }
+                handle.close();
+            }
+        });
+        background.execute(this::calibrateIfNeeded);
+    }
+
+    /** Runs the first-launch delegate calibration; later launches reuse the stored choice. */
+    private void calibrateIfNeeded() {
+        try (RefCountedHolder<MappedByteBuffer>.Handle buffer = model.acquire()) {
+            MappedByteBuffer loaded = buffer.get();
+            DelegateStrategy strategy = strategyFor();
+            if (!strategy.isCalibrated()) {
+                strategy.calibrate(loaded);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Delegate calibration failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Variant and content-hash prefix of the mapped model, such as {@code int8-3f2a9c01d4e7},
+     * or null before it has been loaded. Stored with every result so results from different
+     * models are never mixed up.
+     */
+    public String getModelVersion() {
+        return modelVersion;
+    }
+
+    /**
+     * {@link DetectionCache} key for an image with {@code contentHash} run through the current
+     * model in {@code mode}, or null while no model has been loaded.
+     */
+    public String cacheKey(String contentHash, String mode) {
+        String version = modelVersion;
+        return version != null
+                ? DetectionCache.key(contentHash, version, mode + ";" + TFLiteModelRunner.postprocessSettings())
+                : null;
+    }
+
+    /** Logs, once per process, how long it took from process start to the first detection. */
+    public void onDetection(DetectionResult result) {
+        if (result.isSuccess() && firstDetectionLogged.compareAndSet(false, true)) {
+            Log.i(TAG, "Time to first detection: " + sinceProcessStart() + " ms after process start ("
+                    + result.getTotalNanos() / 1_000_000 + " ms in the detector)");
+        }
+    }
+
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            boolean released = pool.releaseIfIdle();
+            released |= liveRunner.releaseIfIdle();
+            released |= pipeline.releaseIfIdle();
+            released |= model.releaseIfIdle();
+            if (released) {
+                Log.d(TAG, "Released idle models on trim level " + level);
+            }
+        }
+    }
+
+    private static long sinceProcessStart() {
+        return SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+    }
+
+    private MappedByteBuffer loadModel() throws Exception {
+        long start = SystemClock.elapsedRealtime();
+        ModelVariant variant = TFLiteModelRunner.selectVariant(context);
+        MappedByteBuffer buffer = TFLiteModelRunner.loadModel(context, variant);
+        metadata = ModelMetadataReader.read(context, variant, buffer);
+        modelHash = ContentHash.of(buffer);
+        modelVersion = variant.name().toLowerCase(Locale.US) + "-" + modelHash.substring(0, 12);
+        Log.d(TAG, "Mapped " + variant + " model in " + (SystemClock.elapsedRealtime() - start) + " ms");
+        return buffer;
+    }
+
+    /** Only valid once the model is loaded, as the stored choice is keyed by its hash. */
+    private synchronized DelegateStrategy strategyFor() {
+        if (delegateStrategy == null) {
+            delegateStrategy = new DelegateStrategy(context, modelHash);
+        }
+        return delegateStrategy;
+    }
+
+    private InterpreterPool createPool() throws Exception {
+        try (RefCountedHolder<MappedByteBuffer>.Handle buffer = model.acquire()) {
+            long start = SystemClock.elapsedRealtime();
+            MappedByteBuffer loaded = buffer.get();
+            DelegateConfig config = strategyFor()
+                    .getPoolConfig(InterpreterPool.DEFAULT_THREADS_PER_INTERPRETER);
+            InterpreterPool created = new InterpreterPool(loaded, InterpreterPool.defaultSize(),
+                    config, metadata);
+            Log.i(TAG, "Interpreter pool ready in " + (SystemClock.elapsedRealtime() - start) + " ms, "
+                    + sinceProcessStart() + " ms after process start");
+            return created;
+        }
+    }
+
+    private TFLiteModelRunner createLiveRunner() throws Exception {
+        try (RefCountedHolder<MappedByteBuffer>.Handle buffer = model.acquire()) {
+            long start = SystemClock.elapsedRealtime();
+            MappedByteBuffer loaded = buffer.get();
+            TFLiteModelRunner runner = new TFLiteModelRunner(loaded, strategyFor().getLatencyConfig(), metadata);
+            if (runner.getInputWidth() <= 0) {
+                runner.close();
+                throw new IllegalStateException("Could not create live interpreter");
+            }
+            Log.i(TAG, "Live runner ready with " + runner.getDelegateConfig() + " in "
+                    + (SystemClock.elapsedRealtime() - start) + " ms");
+            return runner;
+        }
+    }
+
+    private DetectionPipeline createPipeline() throws IOException {
+        String[] assets = context.getAssets().list("");
+        Set<String> names = new HashSet<>(Arrays.asList(assets != null ? assets : new String[0]));
+        List<CropModelRunner> runners = new ArrayList<>();
+        for (PipelineStage stage : PIPELINE_STAGES) {
+            if (!names.contains(stage.getAssetName())) {
+                continue;
+            }
+            try {
+                MappedByteBuffer buffer = FileUtil.loadMappedFile(context, stage.getAssetName());
+                runners.add(new CropModelRunner(buffer, stage,
+                        DelegateConfig.xnnpack(InterpreterPool.DEFAULT_THREADS_PER_INTERPRETER)));
+            } catch (IOException | IllegalArgumentException e) {
+                Log.w(TAG, "Skipping stage " + stage.getName() + ": " + e.getMessage(), e);
+            }
+        }
+        Log.i(TAG, "Detection pipeline with " + runners.size() + " of " + PIPELINE_STAGES.size() + " stages");
+        return new DetectionPipeline(runners);
+    }
+}
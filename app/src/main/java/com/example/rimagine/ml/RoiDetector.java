@@ -0,0 +1,146 @@
+package com.example.rimagine.ml;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import com.example.rimagine.BuildConfig;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * Refines earlier detections by running the model again on the regions around them only.
+ *
+ * The regions come from a {@link RoiPlan} and are decoded one at a time with
+ * {@link BitmapRegionDecoder}, so neither the full-resolution photo nor a downsampled copy of
+ * it is ever decoded: a disk that was a few pixels wide in the first, whole-image pass reaches
+ * the model at its native size. The per-region boxes are merged like tiles and reported in
+ * the pixels of the upright original, as the earlier ones were.
+ */
+public final class RoiDetector {
+    private static final String TAG = "RoiDetector";
+
+    private final InterpreterPool pool;
+    private final RoiInferenceConfig config;
+
+    public RoiDetector(InterpreterPool pool, RoiInferenceConfig config) {
+        this.pool = pool;
+        this.config = config;
+    }
+
+    /** Plans regions around {@code prior}, which must be in the pixels of the upright original. */
+    public RoiPlan planFor(DetectionResult prior) {
+        return RoiPlan.of(prior, prior.getImageWidth(), prior.getImageHeight(),
+                Math.max(pool.getInputWidth(), pool.getInputHeight()), config);
+    }
+
+    /**
+     * Detects on every region of {@code plan} in the image at {@code uri}. Callers check
+     * {@link RoiPlan#isWorthwhile()} first; a full pass is cheaper otherwise.
+     */
+    public DetectionResult detect(ContentResolver resolver, Uri uri, RoiPlan plan)
+            throws IOException, InterruptedException {
+        try (ParcelFileDescriptor pfd = resolver.openFileDescriptor(uri, "r")) {
+            if (pfd == null) {
+                throw new IOException("Could not open " + uri);
+            }
+            FileDescriptor fd = pfd.getFileDescriptor();
+            if (SampledImageDecoder.isSeekable(fd)) {
+                int orientation = SampledImageDecoder.readOrientation(SampledImageDecoder.descriptorSource(fd));
+                SampledImageDecoder.rewind(fd);
+                return detect(newRegionDecoder(fd), orientation, uri, plan);
+            }
+        }
+        // Providers that hand out pipes: the region decoder then buffers the whole stream
+        SampledImageDecoder.StreamOpener opener = () -> {
+            InputStream in = resolver.openInputStream(uri);
+            if (in == null) {
+                throw new IOException("Could not open " + uri);
+            }
+            return in;
+        };
+        int orientation = SampledImageDecoder.readOrientation(SampledImageDecoder.streamSource(opener));
+        try (InputStream in = opener.open()) {
+            return detect(newRegionDecoder(in), orientation, uri, plan);
+        }
+    }
+
+    // The non-deprecated overloads need API 31
+    @SuppressWarnings("deprecation")
+    private static BitmapRegionDecoder newRegionDecoder(FileDescriptor fd) throws IOException {
+        return BitmapRegionDecoder.newInstance(fd, false);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static BitmapRegionDecoder newRegionDecoder(InputStream in) throws IOException {
+        return BitmapRegionDecoder.newInstance(in, false);
+    }
+
+    private DetectionResult detect(BitmapRegionDecoder decoder, int orientation, Uri uri, RoiPlan plan)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        try {
+            int storedWidth = decoder.getWidth();
+            int storedHeight = decoder.getHeight();
+            boolean swap = BitmapSampling.swapsAxes(orientation);
+            int uprightWidth = swap ? storedHeight : storedWidth;
+            int uprightHeight = swap ? storedWidth : storedHeight;
+            if (uprightWidth != plan.getImageWidth() || uprightHeight != plan.getImageHeight()) {
+                return DetectionResult.error("Regions were planned for a " + plan.getImageWidth() + "x"
+                        + plan.getImageHeight() + " image, " + uri + " is " + uprightWidth + "x" + uprightHeight);
+            }
+
+            TileMerger merger = new TileMerger(config.getMergeThreshold());
+            String[] labels;
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            int[] stored = new int[4];
+            Rect region = new Rect();
+            try (ResourcePool<TFLiteModelRunner>.Lease lease = pool.acquire()) {
+                TFLiteModelRunner runner = lease.get();
+                labels = runner.getMetadata().getLabels();
+                for (int i = 0; i < plan.size(); i++) {
+                    long decodeStart = System.nanoTime();
+                    BitmapSampling.storedRegion(orientation, storedWidth, storedHeight, plan.left(i), plan.top(i),
+                            plan.left(i) + plan.width(i), plan.top(i) + plan.height(i), stored);
+                    region.set(stored[0], stored[1], stored[2], stored[3]);
+                    options.inSampleSize = plan.sampleSize(i);
+                    Bitmap crop = decoder.decodeRegion(region, options);
+                    if (crop == null) {
+                        throw new IOException("Could not decode region " + region.toShortString() + " of " + uri);
+                    }
+                    crop = SampledImageDecoder.applyOrientation(crop, orientation);
+                    InferenceMetrics.get().record(InferenceMetrics.Stage.DECODE, System.nanoTime() - decodeStart);
+
+                    DetectionResult result = runner.runInference(crop);
+                    CoordinateTransform toOriginal = new CoordinateTransform(
+                            plan.width(i) / (float) crop.getWidth(), plan.height(i) / (float) crop.getHeight(),
+                            plan.left(i), plan.top(i), plan.getImageWidth(), plan.getImageHeight());
+                    crop.recycle();
+                    if (!result.isSuccess()) {
+                        return result;
+                    }
+                    merger.add(result.mapped(toOriginal), 0, 0);
+                }
+            }
+
+            DetectionResult merged = merger.merge(labels, plan.getImageWidth(), plan.getImageHeight());
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, String.format(Locale.US, "%d regions (%.0f%% of %dx%d): %d boxes -> %d in %d ms",
+                        plan.size(), plan.getCoverage() * 100f, plan.getImageWidth(), plan.getImageHeight(),
+                        merger.getCollected(), merged.size(), (System.nanoTime() - start) / 1_000_000));
+            }
+            return merged;
+        } finally {
+            decoder.recycle();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.example.rimagine.ml;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import com.example.rimagine.BuildConfig;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes images at roughly the model input size instead of full resolution.
+ *
+ * The bounds are read first, {@code inSampleSize} is picked so the decoded bitmap is still at
+ * least as large as the model input, and the EXIF orientation is applied to the small bitmap.
+ * The returned transform maps boxes found on that bitmap back to the upright original.
+ */
+public final class SampledImageDecoder {
+    private static final String TAG = "SampledImageDecoder";
+
+    public static final class Decoded {
+        private final Bitmap bitmap;
+        private final CoordinateTransform toOriginal;
+
+        Decoded(Bitmap bitmap, CoordinateTransform toOriginal) {
+            this.bitmap = bitmap;
+            this.toOriginal = toOriginal;
+        }
+
+        public Bitmap getBitmap() {
+            return bitmap;
+        }
+
+        /** Maps decoded-bitmap coordinates to the upright original image. */
+        public CoordinateTransform getToOriginal() {
+            return toOriginal;
+        }
+
+        public int getOriginalWidth() {
+            return toOriginal.getTargetWidth();
+        }
+
+        public int getOriginalHeight() {
+            return toOriginal.getTargetHeight();
+        }
+
+        public void recycle() {
+            bitmap.recycle();
+        }
+    }
+
+    /** Where the encoded bytes come from; each call starts reading from the beginning. */
+    interface Source {
+        Bitmap decode(BitmapFactory.Options options) throws IOException;
+
+        ExifInterface readExif() throws IOException;
+    }
+
+    interface StreamOpener {
+        InputStream open() throws IOException;
+    }
+
+    private SampledImageDecoder() {
+    }
+
+    /**
+     * Decodes straight from the content provider's file descriptor, without copying the image
+     * into app storage first. Providers that hand out pipes fall back to reopening the stream.
+     */
+    public static Decoded decode(ContentResolver resolver, Uri uri, int reqWidth, int reqHeight) throws IOException {
+        try (ParcelFileDescriptor pfd = resolver.openFileDescriptor(uri, "r")) {
+            if (pfd == null) {
+                throw new IOException("Could not open " + uri);
+            }
+            FileDescriptor fd = pfd.getFileDescriptor();
+            if (isSeekable(fd)) {
+                return decode(descriptorSource(fd), uri, reqWidth, reqHeight);
+            }
+        }
+        return decode(streamSource(() -> {
+            InputStream in = resolver.openInputStream(uri);
+            if (in == null) {
+                throw new IOException("Could not open " + uri);
+            }
+            return in;
+        }), uri, reqWidth, reqHeight);
+    }
+
+    private static Decoded decode(Source source, Object name, int reqWidth, int reqHeight) throws IOException {
+        long start = System.nanoTime();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        source.decode(options);
+        int rawWidth = options.outWidth;
+        int rawHeight = options.outHeight;
+        if (rawWidth <= 0 || rawHeight <= 0) {
+            throw new IOException("Could not read image bounds of " + name);
+        }
+
+        int orientation = readOrientation(source);
+        boolean swap = BitmapSampling.swapsAxes(orientation);
+        int uprightWidth = swap ? rawHeight : rawWidth;
+        int uprightHeight = swap ? rawWidth : rawHeight;
+
+        // The request is for the upright image; sampling happens on the stored one
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = swap
+                ? BitmapSampling.inSampleSize(rawWidth, rawHeight, reqHeight, reqWidth)
+                : BitmapSampling.inSampleSize(rawWidth, rawHeight, reqWidth, reqHeight);
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap bitmap = source.decode(options);
+        if (bitmap == null) {
+            throw new IOException("Could not decode " + name);
+        }
+        bitmap = applyOrientation(bitmap, orientation);
+        InferenceMetrics.get().record(InferenceMetrics.Stage.DECODE, System.nanoTime() - start);
+
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Decoded " + rawWidth + "x" + rawHeight + " at 1/" + options.inSampleSize
+                    + " -> " + bitmap.getWidth() + "x" + bitmap.getHeight() + ", orientation " + orientation);
+        }
+        return new Decoded(bitmap, CoordinateTransform.scale(bitmap.getWidth(), bitmap.getHeight(),
+                uprightWidth, uprightHeight));
+    }
+
+    static Source streamSource(StreamOpener opener) {
+        return new Source() {
+            @Override
+            public Bitmap decode(BitmapFactory.Options options) throws IOException {
+                try (InputStream in = opener.open()) {
+                    return BitmapFactory.decodeStream(in, null, options);
+                }
+            }
+
+            @Override
+            public ExifInterface readExif() throws IOException {
+                try (InputStream in = opener.open()) {
+                    return new ExifInterface(in);
+                }
+            }
+        };
+    }
+
+    static Source descriptorSource(FileDescriptor fd) {
+        return new Source() {
+            @Override
+            public Bitmap decode(BitmapFactory.Options options) throws IOException {
+                rewind(fd);
+                return BitmapFactory.decodeFileDescriptor(fd, null, options);
+            }
+
+            @Override
+            public ExifInterface readExif() throws IOException {
+                rewind(fd);
+                return new ExifInterface(fd);
+            }
+        };
+    }
+
+    static boolean isSeekable(FileDescriptor fd) {
+        try {
+            Os.lseek(fd, 0, OsConstants.SEEK_CUR);
+            return true;
+        } catch (ErrnoException e) {
+            return false;
+        }
+    }
+
+    static void rewind(FileDescriptor fd) throws IOException {
+        try {
+            Os.lseek(fd, 0, OsConstants.SEEK_SET);
+        } catch (ErrnoException e) {
+            throw new IOException("Could not rewind image descriptor", e);
+        }
+    }
+
+    static int readOrientation(Source source) {
+        try {
+            return source.readExif().getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read EXIF orientation: " + e.getMessage());
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    static Bitmap applyOrientation(Bitmap bitmap, int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.setRotate(-90);
+                break;
+            default:
+                return bitmap;
+        }
+        Bitmap upright = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (upright != bitmap) {
+            bitmap.recycle();
+        }
+        return upright;
+    }
+}
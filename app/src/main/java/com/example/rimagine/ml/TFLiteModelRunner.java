@@ -2,357 +2,488 @@ package com.example.rimagine.ml;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.RectF;
-import android.net.Uri;
+import android.graphics.Rect;
 import android.util.Log;
 
+import com.example.rimagine.BuildConfig;
+
+import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
 import org.tensorflow.lite.gpu.CompatibilityList;
 import org.tensorflow.lite.gpu.GpuDelegate;
+import org.tensorflow.lite.nnapi.NnApiDelegate;
 import org.tensorflow.lite.support.common.FileUtil;
-import org.tensorflow.lite.support.common.ops.NormalizeOp;
-import org.tensorflow.lite.support.image.ImageProcessor;
-import org.tensorflow.lite.support.image.TensorImage;
-import org.tensorflow.lite.support.image.ops.ResizeOp;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Locale;
+import java.util.Set;
 
+/**
+ * Runs the disk detector on one interpreter. Calls are serialized, so a runner shared between
+ * screens is never entered twice at once; use {@link InterpreterPool} for parallel inference.
+ * CPU runners can also take several images per interpreter call, see {@link #runBatch}.
+ */
 public class TFLiteModelRunner implements AutoCloseable {
     private static final String TAG = "TFLiteModelRunner";
-    private static final String MODEL_FILE = "best_float32.tflite";
-    private static final float CONFIDENCE_THRESHOLD = 0.6f; // Lower threshold for more detections
-    private static final String[] CLASS_LABELS = {"back_disk", "front_disk", "front_disk"}; // Add your class labels here
+    private static final float CONFIDENCE_THRESHOLD = 0.25f; // Same default as the Ultralytics predictor
     private static final float IOU_THRESHOLD = 0.2f; // IoU threshold for NMS
+    private static final int MAX_BATCH = 8;
+    // Caps the batch input tensor at a few float32 or a full batch of 8-bit images
+    private static final int MAX_BATCH_INPUT_BYTES = 16 * 1024 * 1024;
+    // Longest one batched call may hold the interpreter while a still could be waiting for it
+    private static final long BATCH_LATENCY_BUDGET_MS = 500;
 
-    private final Context context;
     private Interpreter interpreter;
-    private ImageProcessor imageProcessor;
     private GpuDelegate gpuDelegate;
+    private NnApiDelegate nnApiDelegate;
+    private DelegateConfig delegateConfig;
+    private BitmapPreprocessor preprocessor;
+    private YoloOutputDecoder outputDecoder;
+    private ByteBuffer outputBuffer;
+    private FloatBuffer outputFloats;
+    private float[] flatOutput;
+    private byte[] quantizedOutput;
+    private TensorFormat inputFormat;
+    private TensorFormat outputFormat;
+    private ModelMetadata metadata;
+    private CoordinateTransform stretchToImage;
+    private final DetectionBuffer candidates = new DetectionBuffer();
+    private final DetectionBuffer detections = new DetectionBuffer();
+    private final NonMaxSuppression nms = new NonMaxSuppression(NonMaxSuppression.Mode.PER_CLASS, IOU_THRESHOLD);
+    private final InferenceMetrics metrics = InferenceMetrics.get();
     private int modelInputWidth;
     private int modelInputHeight;
+    private int batchSize;
+    private BatchSizeController batchSizer;
 
     public TFLiteModelRunner(Context context) {
-        this.context = context;
-        initializeInterpreter();
+        this(loadModelQuietly(context), DelegateConfig.of(DelegateConfig.Accelerator.GPU, 0));
+    }
+
+    /**
+     * Builds a runner over an already loaded model. Several runners can share one mapped
+     * model buffer; each gets its own interpreter and tensors. If the requested delegate
+     * cannot be created the runner falls back to XNNPACK on the CPU.
+     */
+    public TFLiteModelRunner(ByteBuffer model, DelegateConfig config) {
+        this(model, config, null);
+    }
+
+    /**
+     * @param metadata labels and normalization for the model, or null to read them from the
+     *                 metadata embedded in {@code model}
+     */
+    public TFLiteModelRunner(ByteBuffer model, DelegateConfig config, ModelMetadata metadata) {
+        if (model != null) {
+            this.metadata = metadata != null ? metadata : ModelMetadataReader.readEmbedded(model);
+            initializeInterpreter(model, config);
+        }
+    }
+
+    /**
+     * The fixed post-processing thresholds, for keying cached results: a change to either
+     * invalidates every result computed with the old value.
+     */
+    public static String postprocessSettings() {
+        return String.format(Locale.US, "conf=%.3f,iou=%.3f", CONFIDENCE_THRESHOLD, IOU_THRESHOLD);
+    }
+
+    /** Memory-maps the preferred bundled variant so it can be shared between interpreters. */
+    public static MappedByteBuffer loadModel(Context context) throws IOException {
+        return loadModel(context, selectVariant(context));
+    }
+
+    public static MappedByteBuffer loadModel(Context context, ModelVariant variant) throws IOException {
+        Log.d(TAG, "Loading model file: " + variant.getAssetName());
+        return FileUtil.loadMappedFile(context, variant.getAssetName());
+    }
+
+    /** First bundled variant in {@link ModelVariant#PREFERENCE} order. */
+    public static ModelVariant selectVariant(Context context) throws IOException {
+        String[] assets = context.getAssets().list("");
+        Set<String> names = new HashSet<>(Arrays.asList(assets != null ? assets : new String[0]));
+        return ModelVariant.firstAvailable(names, ModelVariant.PREFERENCE);
     }
 
-    private void initializeInterpreter() {
+    private static MappedByteBuffer loadModelQuietly(Context context) {
         try {
-            Log.d(TAG, "Starting interpreter initialization");
-            Interpreter.Options options = new Interpreter.Options();
-            
-            // Try to initialize GPU delegate if available
-            try {
-                CompatibilityList compatList = new CompatibilityList();
-                if (compatList.isDelegateSupportedOnThisDevice()) {
-                    gpuDelegate = new GpuDelegate();
-                    options.addDelegate(gpuDelegate);
-                    Log.d(TAG, "GPU delegate added successfully");
-                } else {
-                    Log.d(TAG, "GPU delegate not supported on this device");
+            return loadModel(context);
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading model file: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /** The configuration the interpreter actually runs with, after any fallback. */
+    public DelegateConfig getDelegateConfig() {
+        return delegateConfig;
+    }
+
+    private void createInterpreter(ByteBuffer model, DelegateConfig config) {
+        Interpreter.Options options = new Interpreter.Options();
+        if (config.getNumThreads() > 0) {
+            options.setNumThreads(config.getNumThreads());
+        }
+        options.setUseXNNPACK(config.getAccelerator() == DelegateConfig.Accelerator.XNNPACK);
+        switch (config.getAccelerator()) {
+            case NNAPI:
+                nnApiDelegate = new NnApiDelegate();
+                options.addDelegate(nnApiDelegate);
+                break;
+            case GPU:
+                if (!new CompatibilityList().isDelegateSupportedOnThisDevice()) {
+                    throw new IllegalStateException("GPU delegate not supported on this device");
                 }
+                gpuDelegate = new GpuDelegate();
+                options.addDelegate(gpuDelegate);
+                break;
+            default:
+                break;
+        }
+        interpreter = new Interpreter(model, options);
+        delegateConfig = config;
+    }
+
+    private void closeDelegates() {
+        if (gpuDelegate != null) {
+            gpuDelegate.close();
+            gpuDelegate = null;
+        }
+        if (nnApiDelegate != null) {
+            nnApiDelegate.close();
+            nnApiDelegate = null;
+        }
+    }
+
+    private void initializeInterpreter(ByteBuffer model, DelegateConfig config) {
+        try {
+            Log.d(TAG, "Starting interpreter initialization with " + config);
+            try {
+                createInterpreter(model, config);
             } catch (Exception e) {
-                Log.w(TAG, "GPU acceleration not available: " + e.getMessage());
+                if (config.isCpuOnly()) {
+                    throw e;
+                }
+                Log.w(TAG, config + " not available, falling back to the CPU: " + e.getMessage());
+                closeDelegates();
+                createInterpreter(model, DelegateConfig.xnnpack(config.getNumThreads()));
             }
+            Log.d(TAG, "Interpreter created with " + delegateConfig);
 
-            // Load model file
-            Log.d(TAG, "Loading model file: " + MODEL_FILE);
-            interpreter = new Interpreter(FileUtil.loadMappedFile(context, MODEL_FILE), options);
-            Log.d(TAG, "Model file loaded successfully");
-            
             // Get model input dimensions
             int[] inputShape = interpreter.getInputTensor(0).shape();
+            batchSize = inputShape[0];
             modelInputHeight = inputShape[1];
             modelInputWidth = inputShape[2];
             Log.d(TAG, "Model input dimensions: " + modelInputWidth + "x" + modelInputHeight);
-            
-            // Initialize image processor with normalization
-            imageProcessor = new ImageProcessor.Builder()
-                    .add(new NormalizeOp(127.5f, 127.5f))
-                    .build();
-            Log.d(TAG, "Image processor initialized");
+            inputFormat = formatOf(interpreter.getInputTensor(0));
+            Log.d(TAG, "Model input format: " + inputFormat);
+            preprocessor = new BitmapPreprocessor(modelInputWidth, modelInputHeight, inputFormat, metadata);
+
+            // Output is [1, 4 + numClasses, numAnchors]; read it back as one flat array
+            Tensor outputTensor = interpreter.getOutputTensor(0);
+            int[] outputShape = outputTensor.shape();
+            outputFormat = formatOf(outputTensor);
+            outputDecoder = new YoloOutputDecoder(outputShape[1] - 4, outputShape[2]);
+            outputBuffer = ByteBuffer.allocateDirect(outputDecoder.outputSize() * outputFormat.getBytesPerElement());
+            outputBuffer.order(ByteOrder.nativeOrder());
+            if (outputFormat.isQuantized()) {
+                quantizedOutput = new byte[outputDecoder.outputSize()];
+            } else {
+                outputFloats = outputBuffer.asFloatBuffer();
+                flatOutput = new float[outputDecoder.outputSize()];
+            }
+            Log.d(TAG, "Model output shape: " + Arrays.toString(outputShape) + ", format " + outputFormat);
+
+            // Resizing the batch would rebuild a GPU or NNAPI delegate, so only CPU runners batch
+            if (delegateConfig.isCpuOnly()) {
+                int imageBytes = modelInputWidth * modelInputHeight * 3 * inputFormat.getBytesPerElement();
+                int maxBatch = Math.max(1, Math.min(MAX_BATCH, MAX_BATCH_INPUT_BYTES / imageBytes));
+                batchSizer = new BatchSizeController(maxBatch, BATCH_LATENCY_BUDGET_MS * 1_000_000L);
+            }
+            if (metadata.getLabels().length != outputDecoder.getNumClasses()) {
+                Log.w(TAG, "Model has " + outputDecoder.getNumClasses() + " classes but "
+                        + metadata.getLabels().length + " labels from " + metadata.getSource());
+            }
 
             Log.d(TAG, "TFLite interpreter initialized successfully");
-        } catch (IOException e) {
-            Log.e(TAG, "Error initializing TFLite interpreter: " + e.getMessage(), e);
         } catch (Exception e) {
             Log.e(TAG, "Unexpected error initializing TFLite interpreter: " + e.getMessage(), e);
         }
     }
 
-    public Map<String, Object> runInference(Bitmap inputImage) {
-        Map<String, Object> result = new HashMap<>();
-        
+    public int getInputWidth() {
+        return modelInputWidth;
+    }
+
+    public int getInputHeight() {
+        return modelInputHeight;
+    }
+
+    /** Element type the input tensor expects; camera frames must be converted to it. */
+    public TensorFormat getInputFormat() {
+        return inputFormat;
+    }
+
+    /** Labels and input normalization the runner was built with. */
+    public ModelMetadata getMetadata() {
+        return metadata;
+    }
+
+    static TensorFormat formatOf(Tensor tensor) {
+        DataType type = tensor.dataType();
+        switch (type) {
+            case FLOAT32:
+                return TensorFormat.float32();
+            case UINT8:
+            case INT8:
+                Tensor.QuantizationParams params = tensor.quantizationParams();
+                return TensorFormat.quantized(type == DataType.UINT8
+                                ? TensorFormat.DataType.UINT8 : TensorFormat.DataType.INT8,
+                        params.getScale(), params.getZeroPoint());
+            default:
+                throw new IllegalArgumentException("Unsupported tensor type " + type);
+        }
+    }
+
+    public synchronized DetectionResult runInference(Bitmap inputImage) {
         if (interpreter == null) {
-            result.put("status", "error");
-            result.put("message", "Interpreter is not initialized");
-            return result;
+            return DetectionResult.error("Interpreter is not initialized");
         }
 
         try {
-            Log.d(TAG, "Starting inference process");
-            Log.d(TAG, "Input image size: " + inputImage.getWidth() + "x" + inputImage.getHeight());
-
-            // Create input tensor buffer
-            int[] inputShape = interpreter.getInputTensor(0).shape();
-            Log.d(TAG, "Input tensor shape: " + java.util.Arrays.toString(inputShape));
-            
-            // Calculate buffer size based on model input shape
-            int batchSize = inputShape[0];
-            int height = modelInputHeight;
-            int width = modelInputWidth;
-            int channels = inputShape[3];
-            
-            Log.d(TAG, String.format("Creating buffer for: batch=%d, height=%d, width=%d, channels=%d", 
-                                    batchSize, height, width, channels));
-            
-            ByteBuffer inputBuffer = ByteBuffer.allocateDirect(batchSize * height * width * channels * 4);
-            inputBuffer.order(ByteOrder.nativeOrder());
-            
-            // Create a scaled bitmap for model input
-            Bitmap scaledBitmap = Bitmap.createScaledBitmap(inputImage, width, height, true);
-            
-            // Convert bitmap to byte buffer
-            int[] pixels = new int[width * height];
-            scaledBitmap.getPixels(pixels, 0, width, 0, 0, width, height);
-            
-            Log.d(TAG, "Buffer capacity: " + inputBuffer.capacity() + " bytes");
-            Log.d(TAG, "Number of pixels: " + pixels.length);
-            
-            // Process each pixel
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    int pixel = pixels[y * width + x];
-                    
-                    // Extract RGB values and normalize to [0, 1]
-                    float r = ((pixel >> 16) & 0xFF) / 255.0f;
-                    float g = ((pixel >> 8) & 0xFF) / 255.0f;
-                    float b = (pixel & 0xFF) / 255.0f;
-                    
-                    // Add to buffer
-                    inputBuffer.putFloat(r);
-                    inputBuffer.putFloat(g);
-                    inputBuffer.putFloat(b);
-                }
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "Running inference on " + inputImage.getWidth() + "x" + inputImage.getHeight());
             }
-            
-            inputBuffer.rewind();
-            
-            // Clean up scaled bitmap
-            scaledBitmap.recycle();
-            
-            Log.d(TAG, "Input buffer size: " + inputBuffer.capacity() + " bytes");
-            
-            // Get output tensor shape
-            int[] outputShape = interpreter.getOutputTensor(0).shape();
-            Log.d(TAG, "Model output shape: " + java.util.Arrays.toString(outputShape));
-
-            // Create output array with correct shape [1, 8, 8400]
-            float[][][] outputArray = new float[1][8][8400];
-
-            // Run inference
-            Object[] inputs = new Object[]{inputBuffer};
-            Map<Integer, Object> outputs = new HashMap<>();
-            outputs.put(0, outputArray);
-
-            interpreter.runForMultipleInputsOutputs(inputs, outputs);
-
-            // Save the processed image
-            String outputPath = saveProcessedImage(inputImage, outputArray);
-            
-            // Return success result
-            result.put("status", "success");
-            result.put("output_image", outputPath);
-            result.put("raw_output", outputArray);
-            result.put("output_shape", outputShape);
-            
-            return result;
+
+            // Scale and convert into the reusable input tensor
+            long start = System.nanoTime();
+            ByteBuffer inputBuffer = preprocessor.process(inputImage);
+            long preprocessNanos = System.nanoTime() - start;
+
+            return detect(inputBuffer, preprocessor.getLetterbox().getOutputToSource(), preprocessNanos);
         } catch (Exception e) {
             Log.e(TAG, "Error running inference: " + e.getMessage(), e);
-            result.put("status", "error");
-            result.put("message", "Error running inference: " + e.getMessage());
-            return result;
+            metrics.increment(InferenceMetrics.Counter.ERRORS);
+            return DetectionResult.error("Error running inference: " + e.getMessage());
         }
     }
 
-    private String saveProcessedImage(Bitmap inputImage, float[][][] detections) throws IOException {
-        // Create a mutable copy of the input image to draw on
-        Bitmap outputBitmap = inputImage.copy(Bitmap.Config.ARGB_8888, true);
-        Canvas canvas = new Canvas(outputBitmap);
-        
-        // Setup paint for drawing boxes
-        Paint boxPaint = new Paint();
-        boxPaint.setStyle(Paint.Style.STROKE);
-        boxPaint.setStrokeWidth(Math.max(inputImage.getWidth(), inputImage.getHeight()) / 150f);
-        boxPaint.setColor(Color.RED);
-        
-        // Setup paint for text
-        Paint textPaint = new Paint();
-        textPaint.setColor(Color.RED);
-        textPaint.setTextSize(Math.max(inputImage.getWidth(), inputImage.getHeight()) / 30f);
-        textPaint.setStyle(Paint.Style.FILL);
-        textPaint.setShadowLayer(5.0f, 0f, 0f, Color.BLACK);
-        
-        float imageWidth = inputImage.getWidth();
-        float imageHeight = inputImage.getHeight();
-        
-        // Process detections
-        float[][] predictions = detections[0]; // [8, 8400]
-        
-        Log.d(TAG, "Processing " + predictions[0].length + " potential detections");
-        Log.d(TAG, String.format("Image dimensions: %.0fx%.0f", imageWidth, imageHeight));
-        
-        // List to store all valid detections
-        List<Detection> validDetections = new ArrayList<>();
-        
-        // First pass: collect all valid detections
-        for (int i = 0; i < predictions[0].length; i++) {
-            // Find the highest confidence among all classes
-            float maxConfidence = 0;
-            int bestClass = -1;
-            for (int c = 4; c < predictions.length; c++) {
-                if (predictions[c][i] > maxConfidence) {
-                    maxConfidence = predictions[c][i];
-                    bestClass = c - 4;
-                }
+    /**
+     * Runs the model on {@code region} of {@code inputImage}, e.g. one tile of a large photo.
+     * Boxes are in region pixels, with the region's top-left corner at the origin.
+     */
+    public synchronized DetectionResult runInference(Bitmap inputImage, Rect region) {
+        if (interpreter == null) {
+            return DetectionResult.error("Interpreter is not initialized");
+        }
+
+        try {
+            long start = System.nanoTime();
+            ByteBuffer inputBuffer = preprocessor.process(inputImage, region);
+            long preprocessNanos = System.nanoTime() - start;
+
+            return detect(inputBuffer, preprocessor.getLetterbox().getOutputToSource(), preprocessNanos);
+        } catch (Exception e) {
+            Log.e(TAG, "Error running inference: " + e.getMessage(), e);
+            metrics.increment(InferenceMetrics.Counter.ERRORS);
+            return DetectionResult.error("Error running inference: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs the model on an input tensor that was already filled by the caller, e.g. from a
+     * camera frame. Boxes are scaled to {@code imageWidth x imageHeight}.
+     */
+    public synchronized DetectionResult runInference(ByteBuffer inputTensor, int imageWidth, int imageHeight) {
+        if (interpreter == null) {
+            return DetectionResult.error("Interpreter is not initialized");
+        }
+
+        try {
+            if (stretchToImage == null || stretchToImage.getTargetWidth() != imageWidth
+                    || stretchToImage.getTargetHeight() != imageHeight) {
+                stretchToImage = CoordinateTransform.scale(1, 1, imageWidth, imageHeight);
             }
-            
-            // Only consider detections above confidence threshold
-            if (maxConfidence > CONFIDENCE_THRESHOLD) {
-                // Extract bounding box coordinates
-                float x = predictions[0][i] * imageWidth; // Center X
-                float y = predictions[1][i] * imageHeight; // Center Y
-                float w = predictions[2][i] * imageWidth; // Width
-                float h = predictions[3][i] * imageHeight; // Height
-                
-                // Calculate corner coordinates
-                float left = x - (w / 2);
-                float top = y - (h / 2);
-                float right = x + (w / 2);
-                float bottom = y + (h / 2);
-                
-                // Ensure coordinates are within image bounds
-                left = Math.max(0, Math.min(left, imageWidth));
-                top = Math.max(0, Math.min(top, imageHeight));
-                right = Math.max(0, Math.min(right, imageWidth));
-                bottom = Math.max(0, Math.min(bottom, imageHeight));
-                
-                validDetections.add(new Detection(left, top, right, bottom, maxConfidence, bestClass));
+            return detect(inputTensor, stretchToImage, 0);
+        } catch (Exception e) {
+            Log.e(TAG, "Error running inference: " + e.getMessage(), e);
+            metrics.increment(InferenceMetrics.Counter.ERRORS);
+            return DetectionResult.error("Error running inference: " + e.getMessage());
+        }
+    }
+
+    /** Images the next {@link #runBatch} call puts into one interpreter call. */
+    public int getPreferredBatchSize() {
+        return batchSizer != null ? batchSizer.getBatchSize() : 1;
+    }
+
+    /**
+     * Runs the model on several images with as few interpreter calls as the latency budget
+     * allows. Per call, the input's batch dimension is resized to the number of images, the
+     * images are letterboxed into one contiguous tensor and each image's slice of the output
+     * is decoded on its own. How many images go into a call adapts to the measured cost, see
+     * {@link BatchSizeController}. Runners on a GPU or NNAPI delegate run the images one by one.
+     *
+     * @return one result per image, in order
+     */
+    public synchronized List<DetectionResult> runBatch(List<Bitmap> images) {
+        return inferAll(images, null);
+    }
+
+    /**
+     * Like {@link #runBatch(List)} for regions of one image, e.g. tiles of a large photo.
+     * Boxes are in region pixels, with each region's top-left corner at the origin.
+     */
+    public synchronized List<DetectionResult> runBatch(Bitmap image, List<Rect> regions) {
+        return inferAll(Collections.nCopies(regions.size(), image), regions);
+    }
+
+    private List<DetectionResult> inferAll(List<Bitmap> images, List<Rect> regions) {
+        List<DetectionResult> results = new ArrayList<>(images.size());
+        if (interpreter == null || batchSizer == null) {
+            for (int i = 0; i < images.size(); i++) {
+                results.add(regions != null
+                        ? runInference(images.get(i), regions.get(i))
+                        : runInference(images.get(i)));
             }
+            return results;
         }
-        
-        // Sort detections by confidence
-        Collections.sort(validDetections, (a, b) -> Float.compare(b.confidence, a.confidence));
-        
-        // Apply Non-Maximum Suppression
-        List<Detection> nmsDetections = new ArrayList<>();
-        boolean[] suppressed = new boolean[validDetections.size()];
-        
-        for (int i = 0; i < validDetections.size(); i++) {
-            if (suppressed[i]) continue;
-            
-            Detection detection = validDetections.get(i);
-            nmsDetections.add(detection);
-            
-            // Suppress overlapping detections of the same class
-            for (int j = i + 1; j < validDetections.size(); j++) {
-                if (suppressed[j]) continue;
-                
-                Detection other = validDetections.get(j);
-                if (detection.classId == other.classId && calculateIoU(detection, other) > IOU_THRESHOLD) {
-                    suppressed[j] = true;
+
+        try {
+            CoordinateTransform[] toImage = new CoordinateTransform[batchSizer.getMaxBatch()];
+            long[] preprocessNanos = new long[batchSizer.getMaxBatch()];
+            int next = 0;
+            while (next < images.size()) {
+                int count = Math.min(batchSizer.getBatchSize(), images.size() - next);
+                long callStart = System.nanoTime();
+                preprocessor.ensureBatchCapacity(count);
+                for (int slot = 0; slot < count; slot++) {
+                    long start = System.nanoTime();
+                    Letterbox letterbox = preprocessor.processSlot(images.get(next + slot),
+                            regions != null ? regions.get(next + slot) : null, slot);
+                    toImage[slot] = letterbox.getOutputToSource();
+                    preprocessNanos[slot] = System.nanoTime() - start;
                 }
+                resizeBatch(count);
+
+                long start = System.nanoTime();
+                outputBuffer.rewind();
+                interpreter.run(preprocessor.batch(count), outputBuffer);
+                long inferenceNanos = System.nanoTime() - start;
+                metrics.record(InferenceMetrics.Stage.INVOKE, inferenceNanos);
+                for (int slot = 0; slot < count; slot++) {
+                    results.add(decode(slot, toImage[slot], preprocessNanos[slot], inferenceNanos / count));
+                }
+                // Decoding is included, as the interpreter stays leased for all of it
+                batchSizer.record(count, System.nanoTime() - callStart);
+                next += count;
+            }
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "Ran " + images.size() + " images, " + batchSizer);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error running batch inference: " + e.getMessage(), e);
+            metrics.increment(InferenceMetrics.Counter.ERRORS);
+            DetectionResult error = DetectionResult.error("Error running batch inference: " + e.getMessage());
+            while (results.size() < images.size()) {
+                results.add(error);
             }
         }
-        
-        // Draw the filtered detections
-        for (Detection detection : nmsDetections) {
-            Log.d(TAG, String.format("Final Detection: class=%d, conf=%.2f, box=[%.1f, %.1f, %.1f, %.1f]",
-                detection.classId, detection.confidence, detection.left, detection.top, detection.right, detection.bottom));
-            
-            // Draw bounding box
-            canvas.drawRect(new RectF(detection.left, detection.top, detection.right, detection.bottom), boxPaint);
-            
-            // Draw class label and confidence
-            String label = String.format("%s %.2f", 
-                detection.classId < CLASS_LABELS.length ? CLASS_LABELS[detection.classId] : "Class " + detection.classId,
-                detection.confidence);
-                
-            float textWidth = textPaint.measureText(label);
-            Paint bgPaint = new Paint();
-            bgPaint.setColor(Color.argb(160, 0, 0, 0));
-            canvas.drawRect(detection.left, detection.top - textPaint.getTextSize(), 
-                          detection.left + textWidth, detection.top, bgPaint);
-            canvas.drawText(label, detection.left, detection.top - textPaint.getTextSize()/4, textPaint);
+        return results;
+    }
+
+    /** Resizes the input's batch dimension, growing the output buffer with it, when it changes. */
+    private void resizeBatch(int count) {
+        if (count == batchSize) {
+            return;
         }
-        
-        // Save the processed image
-        String outputFileName = "processed_" + System.currentTimeMillis() + ".jpg";
-        File outputFile = new File(context.getFilesDir(), outputFileName);
-        
-        try (FileOutputStream out = new FileOutputStream(outputFile)) {
-            outputBitmap.compress(Bitmap.CompressFormat.JPEG, 100, out);
+        interpreter.resizeInput(0, new int[]{count, modelInputHeight, modelInputWidth, 3});
+        interpreter.allocateTensors();
+        batchSize = count;
+        int outputBytes = count * outputDecoder.outputSize() * outputFormat.getBytesPerElement();
+        if (outputBuffer.capacity() < outputBytes) {
+            outputBuffer = ByteBuffer.allocateDirect(outputBytes);
+            outputBuffer.order(ByteOrder.nativeOrder());
+            if (!outputFormat.isQuantized()) {
+                outputFloats = outputBuffer.asFloatBuffer();
+            }
         }
-        
-        // Clean up
-        outputBitmap.recycle();
-        
-        return outputFile.getAbsolutePath();
     }
 
-    private static class Detection {
-        float left, top, right, bottom;
-        float confidence;
-        int classId;
-
-        Detection(float left, float top, float right, float bottom, float confidence, int classId) {
-            this.left = left;
-            this.top = top;
-            this.right = right;
-            this.bottom = bottom;
-            this.confidence = confidence;
-            this.classId = classId;
-        }
+    private DetectionResult detect(ByteBuffer inputBuffer, CoordinateTransform outputToImage, long preprocessNanos) {
+        resizeBatch(1);
+
+        // Run inference
+        long start = System.nanoTime();
+        outputBuffer.rewind();
+        interpreter.run(inputBuffer, outputBuffer);
+        long inferenceNanos = System.nanoTime() - start;
+        metrics.record(InferenceMetrics.Stage.INVOKE, inferenceNanos);
+        return decode(0, outputToImage, preprocessNanos, inferenceNanos);
     }
 
-    private float calculateIoU(Detection a, Detection b) {
-        float intersectionLeft = Math.max(a.left, b.left);
-        float intersectionTop = Math.max(a.top, b.top);
-        float intersectionRight = Math.min(a.right, b.right);
-        float intersectionBottom = Math.min(a.bottom, b.bottom);
-        
-        if (intersectionRight < intersectionLeft || intersectionBottom < intersectionTop) {
-            return 0.0f;
+    /** Decodes the output of image {@code element} of the last call into boxes in image pixels. */
+    private DetectionResult decode(int element, CoordinateTransform outputToImage, long preprocessNanos,
+                                   long inferenceNanos) {
+        int imageWidth = outputToImage.getTargetWidth();
+        int imageHeight = outputToImage.getTargetHeight();
+        long start = System.nanoTime();
+        int offset = element * outputDecoder.outputSize();
+
+        // Copy the raw output into the flat array the decoder walks and decode all anchors
+        // above the confidence threshold, in source-image pixels
+        int candidateCount;
+        if (quantizedOutput != null) {
+            outputBuffer.position(offset);
+            outputBuffer.get(quantizedOutput);
+            candidateCount = outputDecoder.decodeQuantized(quantizedOutput, outputFormat, CONFIDENCE_THRESHOLD,
+                    outputToImage, candidates);
+        } else {
+            outputFloats.position(offset);
+            outputFloats.get(flatOutput);
+            candidateCount = outputDecoder.decode(flatOutput, CONFIDENCE_THRESHOLD, outputToImage, candidates);
+        }
+
+        long decoded = System.nanoTime();
+
+        // Apply Non-Maximum Suppression, then clamp only the survivors to the image
+        int detectionCount = nms.apply(candidates, detections);
+        detections.clampTo(imageWidth, imageHeight);
+        long postprocessed = System.nanoTime();
+
+        metrics.record(InferenceMetrics.Stage.OUTPUT_DECODE, decoded - start);
+        metrics.record(InferenceMetrics.Stage.NMS, postprocessed - decoded);
+        metrics.increment(InferenceMetrics.Counter.INFERENCES);
+        metrics.add(InferenceMetrics.Counter.DETECTIONS, detectionCount);
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Kept " + detectionCount + " of " + candidateCount + " candidate detections");
         }
-        
-        float intersectionArea = (intersectionRight - intersectionLeft) * (intersectionBottom - intersectionTop);
-        float aArea = (a.right - a.left) * (a.bottom - a.top);
-        float bArea = (b.right - b.left) * (b.bottom - b.top);
-        
-        return intersectionArea / (aArea + bArea - intersectionArea);
+
+        return DetectionResult.of(detections, metadata.getLabels(), imageWidth, imageHeight,
+                preprocessNanos, inferenceNanos, postprocessed - start);
     }
 
     @Override
-    public void close() {
+    public synchronized void close() {
         if (interpreter != null) {
             interpreter.close();
             interpreter = null;
         }
-        if (gpuDelegate != null) {
-            gpuDelegate.close();
+        closeDelegates();
+        if (preprocessor != null) {
+            preprocessor.release();
+            preprocessor = null;
         }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,189 @@
+package com.example.rimagine.ml;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.util.Log;
+
+import com.example.rimagine.BuildConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Sliced inference for small objects in large photos, in the manner of SAHI.
+ *
+ * The image is cut into overlapping tiles of about the model input size, so a disk keeps its
+ * native resolution instead of being squashed with the rest of the photo into one input.
+ * Tiles are spread over the pooled interpreters, each worker holding one lease for the whole
+ * run and taking several tiles per batched interpreter call, and the per-tile detections are
+ * merged with cross-tile NMS. Optionally the whole image is run once as well, for objects
+ * larger than a tile. The workers besides the caller run on threads shared by every detector,
+ * one per interpreter of a default-sized pool.
+ */
+public final class TiledDetector {
+    private static final String TAG = "TiledDetector";
+    private static final int FULL_IMAGE = -1;
+    private static final ThreadPoolExecutor HELPERS = newHelpers(InterpreterPool.defaultSize());
+
+    private final InterpreterPool pool;
+    private final TiledInferenceConfig config;
+
+    public TiledDetector(InterpreterPool pool, TiledInferenceConfig config) {
+        this.pool = pool;
+        this.config = config;
+    }
+
+    public TileGrid planFor(int imageWidth, int imageHeight) {
+        int tileSize = config.tileSizeFor(Math.max(pool.getInputWidth(), pool.getInputHeight()));
+        return TileGrid.of(imageWidth, imageHeight, tileSize, config.getOverlap());
+    }
+
+    /**
+     * Detects on every tile of {@code image} and returns the merged boxes in its pixels.
+     * Blocks the caller, which also works through tiles.
+     */
+    public DetectionResult detect(Bitmap image) throws InterruptedException {
+        long start = System.nanoTime();
+        TileGrid grid = planFor(image.getWidth(), image.getHeight());
+        boolean fullImage = config.isIncludeFullImage() && grid.size() > 1;
+        int jobs = grid.size() + (fullImage ? 1 : 0);
+        int parallelism = config.getParallelism() > 0 ? config.getParallelism() : pool.size();
+        int workerCount = Math.max(1, Math.min(jobs, parallelism));
+
+        TileMerger merger = new TileMerger(config.getMergeThreshold());
+        AtomicInteger nextJob = new AtomicInteger();
+        AtomicReference<String> error = new AtomicReference<>();
+        AtomicReference<String[]> labels = new AtomicReference<>();
+        Runnable work = () -> {
+            try (ResourcePool<TFLiteModelRunner>.Lease lease = pool.acquire()) {
+                TFLiteModelRunner runner = lease.get();
+                labels.compareAndSet(null, runner.getMetadata().getLabels());
+                List<Rect> regions = new ArrayList<>();
+                // Leaves work for the other workers rather than taking every tile in one batch
+                int share = (jobs + workerCount - 1) / workerCount;
+                while (error.get() == null) {
+                    int chunk = Math.max(1, Math.min(runner.getPreferredBatchSize(), share));
+                    int first = nextJob.getAndAdd(chunk);
+                    if (first >= jobs) {
+                        break;
+                    }
+                    regions.clear();
+                    for (int job = first; job < Math.min(jobs, first + chunk); job++) {
+                        int tile = fullImage ? job - 1 : job;
+                        if (tile == FULL_IMAGE) {
+                            DetectionResult result = runner.runInference(image);
+                            if (!result.isSuccess()) {
+                                error.compareAndSet(null, result.getErrorMessage());
+                                return;
+                            }
+                            merger.add(result, 0, 0);
+                        } else {
+                            regions.add(new Rect(grid.left(tile), grid.top(tile),
+                                    grid.left(tile) + grid.width(tile), grid.top(tile) + grid.height(tile)));
+                        }
+                    }
+                    List<DetectionResult> results = runner.runBatch(image, regions);
+                    for (int i = 0; i < results.size(); i++) {
+                        DetectionResult result = results.get(i);
+                        if (!result.isSuccess()) {
+                            error.compareAndSet(null, result.getErrorMessage());
+                            return;
+                        }
+                        merger.add(result, regions.get(i).left, regions.get(i).top);
+                    }
+                }
+            } catch (InterruptedException e) {
+                error.compareAndSet(null, "Interrupted");
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        List<Future<?>> helpers = new ArrayList<>();
+        for (int i = 1; i < workerCount; i++) {
+            helpers.add(HELPERS.submit(work));
+        }
+        work.run();
+        try {
+            awaitAll(helpers);
+        } catch (InterruptedException e) {
+            // Stops the helpers after their current batch; they hold leases on the pool
+            error.compareAndSet(null, "Interrupted");
+            awaitAllUninterruptibly(helpers);
+            throw e;
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (error.get() != null) {
+            return DetectionResult.error(error.get());
+        }
+
+        DetectionResult merged = merger.merge(labels.get(), image.getWidth(), image.getHeight());
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, String.format(Locale.US, "%d tiles (%dx%d%s) on %d workers: %d boxes -> %d in %d ms",
+                    grid.size(), grid.getColumns(), grid.getRows(), fullImage ? " + full image" : "", workerCount,
+                    merger.getCollected(), merged.size(), (System.nanoTime() - start) / 1_000_000));
+        }
+        return merged;
+    }
+
+    /** Waits for the helpers that started; those still queued behind other runs are dropped. */
+    private static void awaitAll(List<Future<?>> futures) throws InterruptedException {
+        for (Future<?> future : futures) {
+            // Every job has been taken by the time the caller's own share is done
+            if (HELPERS.remove((Runnable) future)) {
+                continue;
+            }
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Tile worker failed", e.getCause());
+            }
+        }
+    }
+
+    private static void awaitAllUninterruptibly(List<Future<?>> futures) {
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            if (HELPERS.remove((Runnable) future)) {
+                continue;
+            }
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ThreadPoolExecutor newHelpers(int threads) {
+        AtomicInteger count = new AtomicInteger(1);
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "tile-inference-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), factory);
+        // Idle between tiled runs, which are rare
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.rimagine.ui.Photo;
+
+import android.app.Application;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
+
+import com.example.rimagine.ml.BatchDetectionJob;
+import com.example.rimagine.ml.BatchProgress;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Owns the running batch job so it survives configuration changes.
+ */
+public class BatchViewModel extends AndroidViewModel {
+    private static final String TAG = "BatchViewModel";
+
+    private final MediatorLiveData<BatchProgress> progress = new MediatorLiveData<>();
+    private BatchDetectionJob job;
+
+    public BatchViewModel(@NonNull Application application) {
+        super(application);
+    }
+
+    public LiveData<BatchProgress> getProgress() {
+        return progress;
+    }
+
+    public boolean isRunning() {
+        BatchProgress current = progress.getValue();
+        return job != null && (current == null || !current.isFinished());
+    }
+
+    public boolean startBatch(List<Uri> uris) {
+        if (isRunning() || uris.isEmpty()) {
+            return false;
+        }
+        if (job != null) {
+            progress.removeSource(job.getProgress());
+        }
+        job = new BatchDetectionJob(getApplication(), uris);
+        progress.addSource(job.getProgress(), progress::setValue);
+        try {
+            job.start();
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Could not start batch: " + e.getMessage(), e);
+            progress.removeSource(job.getProgress());
+            job = null;
+            return false;
+        }
+    }
+
+    public void cancelBatch() {
+        if (job != null) {
+            job.cancel();
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        cancelBatch();
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.rimagine.ui.Photo;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.View;
+
+import androidx.annotation.Nullable;
+
+import com.example.rimagine.ml.DetectionResult;
+import com.example.rimagine.ml.InferenceMetrics;
+
+import java.util.Locale;
+
+/**
+ * Transparent view that draws detection boxes on top of the image they were computed for.
+ *
+ * Boxes stay in source-image pixels; they are mapped onto the view with the same
+ * fit-center / fill-center transform the underlying ImageView or PreviewView uses, so the
+ * source bitmap is never copied or re-encoded.
+ */
+public class DetectionOverlayView extends View {
+
+    public enum ScaleMode {
+        FIT_CENTER,
+        FILL_CENTER
+    }
+
+    private final Paint boxPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint labelBackgroundPaint = new Paint();
+    private final Matrix imageToView = new Matrix();
+    private final RectF sourceRect = new RectF();
+    private final RectF viewRect = new RectF();
+    private final RectF box = new RectF();
+
+    private DetectionResult result;
+    private ScaleMode scaleMode = ScaleMode.FIT_CENTER;
+
+    public DetectionOverlayView(Context context) {
+        this(context, null);
+    }
+
+    public DetectionOverlayView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        float density = getResources().getDisplayMetrics().density;
+
+        boxPaint.setStyle(Paint.Style.STROKE);
+        boxPaint.setStrokeWidth(2f * density);
+        boxPaint.setColor(Color.RED);
+
+        textPaint.setColor(Color.RED);
+        textPaint.setTextSize(14f * density);
+        textPaint.setStyle(Paint.Style.FILL);
+        textPaint.setShadowLayer(5.0f, 0f, 0f, Color.BLACK);
+
+        labelBackgroundPaint.setColor(Color.argb(160, 0, 0, 0));
+    }
+
+    public void setScaleMode(ScaleMode scaleMode) {
+        this.scaleMode = scaleMode;
+        invalidate();
+    }
+
+    public void setResult(@Nullable DetectionResult result) {
+        this.result = result;
+        invalidate();
+    }
+
+    public void clear() {
+        setResult(null);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        DetectionResult current = result;
+        if (current == null || !current.isSuccess() || current.size() == 0
+                || current.getImageWidth() == 0 || current.getImageHeight() == 0) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        updateTransform(current.getImageWidth(), current.getImageHeight());
+        float textSize = textPaint.getTextSize();
+        for (int i = 0; i < current.size(); i++) {
+            box.set(current.getLeft(i), current.getTop(i), current.getRight(i), current.getBottom(i));
+            imageToView.mapRect(box);
+            canvas.drawRect(box, boxPaint);
+
+            String label = current.isTracked()
+                    ? String.format(Locale.US, "#%d %s %.2f", current.getTrackId(i), current.getLabel(i),
+                            current.getScore(i))
+                    : String.format(Locale.US, "%s %.2f", current.getLabel(i), current.getScore(i));
+            float textWidth = textPaint.measureText(label);
+            canvas.drawRect(box.left, box.top - textSize, box.left + textWidth, box.top, labelBackgroundPaint);
+            canvas.drawText(label, box.left, box.top - textSize / 4, textPaint);
+        }
+        InferenceMetrics.get().record(InferenceMetrics.Stage.RENDER, System.nanoTime() - start);
+    }
+
+    private void updateTransform(int imageWidth, int imageHeight) {
+        float contentWidth = getWidth() - getPaddingLeft() - getPaddingRight();
+        float contentHeight = getHeight() - getPaddingTop() - getPaddingBottom();
+        float scale = scaleMode == ScaleMode.FIT_CENTER
+                ? Math.min(contentWidth / imageWidth, contentHeight / imageHeight)
+                : Math.max(contentWidth / imageWidth, contentHeight / imageHeight);
+
+        sourceRect.set(0, 0, imageWidth, imageHeight);
+        float dx = getPaddingLeft() + (contentWidth - imageWidth * scale) / 2f;
+        float dy = getPaddingTop() + (contentHeight - imageHeight * scale) / 2f;
+        viewRect.set(dx, dy, dx + imageWidth * scale, dy + imageHeight * scale);
+        imageToView.setRectToRect(sourceRect, viewRect, Matrix.ScaleToFit.FILL);
+    }
+}
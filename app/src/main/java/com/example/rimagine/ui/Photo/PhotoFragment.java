@@ -5,17 +5,15 @@ import android.animation.ObjectAnimator;
 import android.annotation.SuppressLint;
 import android.content.ContentValues;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.MediaStore;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.animation.OvershootInterpolator;
 import android.widget.ImageView;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.activity.result.ActivityResultCallback;
@@ -25,13 +23,16 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.navigation.fragment.NavHostFragment;
 
 import com.example.rimagine.R;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.button.MaterialButton;
+import com.google.android.material.switchmaterial.SwitchMaterial;
 
-import com.example.rimagine.ml.TFLiteModelRunner;
-import java.util.Map;
+import com.example.rimagine.ml.BatchProgress;
+import com.example.rimagine.ml.StageResult;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -39,18 +40,25 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
+import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class PhotoFragment extends Fragment {
+    private static final String TAG = "PhotoFragment";
 
     private ImageView photoImageView;
+    private DetectionOverlayView detectionOverlay;
     private FloatingActionButton galleryFab;
     private FloatingActionButton cameraFab;
+    private FloatingActionButton liveFab;
     private MaterialButton processButton;
-    private Uri imageUri;
-    private TFLiteModelRunner modelRunner;
+    private TextView batchStatus;
+    private SwitchMaterial tiledSwitch;
+    private BatchViewModel batchViewModel;
+    private PhotoViewModel photoViewModel;
+    private Uri cameraUri;
 
     private final ActivityResultLauncher<String> requestPermissionLauncher =
             registerForActivityResult(new ActivityResultContracts.RequestPermission(), isGranted -> {
@@ -63,8 +71,9 @@ public class PhotoFragment extends Fragment {
 
     private final ActivityResultLauncher<Uri> cameraLauncher =
             registerForActivityResult(new ActivityResultContracts.TakePicture(), success -> {
-                if (success && imageUri != null) {
-                    showImage(imageUri);
+                if (success && cameraUri != null) {
+                    photoViewModel.setImageUri(cameraUri);
+                    showImage(cameraUri);
                 }
             });
 
@@ -73,24 +82,24 @@ public class PhotoFragment extends Fragment {
                 @Override
                 public void onActivityResult(Uri uri) {
                     if (uri != null) {
-                        imageUri = uri;  // Store the gallery image URI
+                        photoViewModel.setImageUri(uri);
                         showImage(uri);
                     }
                 }
             });
 
+    private final ActivityResultLauncher<String> batchGalleryLauncher =
+            registerForActivityResult(new ActivityResultContracts.GetMultipleContents(), uris -> {
+                if (uris != null && !uris.isEmpty()) {
+                    startBatch(uris);
+                }
+            });
+
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        modelRunner = new TFLiteModelRunner(requireContext());
-    }
-
-    @Override
-    public void onDestroy() {
-        super.onDestroy();
-        if (modelRunner != null) {
-            modelRunner.close();
-        }
+        batchViewModel = new ViewModelProvider(this).get(BatchViewModel.class);
+        photoViewModel = new ViewModelProvider(this).get(PhotoViewModel.class);
     }
 
     @Nullable
@@ -100,16 +109,31 @@ public class PhotoFragment extends Fragment {
         View view = inflater.inflate(R.layout.fragment_photo_layout, container, false);
 
         photoImageView = view.findViewById(R.id.photoImageView);
+        detectionOverlay = view.findViewById(R.id.detectionOverlay);
         galleryFab = view.findViewById(R.id.galleryFab);
         cameraFab = view.findViewById(R.id.cameraFab);
+        liveFab = view.findViewById(R.id.liveFab);
         processButton = view.findViewById(R.id.processButton);
+        batchStatus = view.findViewById(R.id.batchStatus);
+        tiledSwitch = view.findViewById(R.id.tiledSwitch);
 
         // Initially disable the process button until an image is selected
         processButton.setEnabled(false);
         processButton.setAlpha(0.6f);
 
+        // Recreated after a configuration change: show the image again, and its result if the
+        // observer below does not replace it with the decoded bitmap
+        Uri selected = photoViewModel.getImageUri();
+        if (selected != null) {
+            photoImageView.setImageURI(selected);
+            processButton.setEnabled(true);
+            processButton.setAlpha(1f);
+        }
+
         setupClickListeners();
         animateButtons();
+        batchViewModel.getProgress().observe(getViewLifecycleOwner(), this::showBatchProgress);
+        photoViewModel.getOutcome().observe(getViewLifecycleOwner(), this::showOutcome);
 
         return view;
     }
@@ -120,15 +144,36 @@ public class PhotoFragment extends Fragment {
             openGallery();
         });
         
+        // Long press picks several images and runs them as a batch
+        galleryFab.setOnLongClickListener(v -> {
+            animateButtonClick(v);
+            batchGalleryLauncher.launch("image/*");
+            return true;
+        });
+        
+        batchStatus.setOnClickListener(v -> batchViewModel.cancelBatch());
+        
         cameraFab.setOnClickListener(v -> {
             animateButtonClick(v);
             checkCameraPermissionAndOpenCamera();
         });
         
+        liveFab.setOnClickListener(v -> {
+            animateButtonClick(v);
+            NavHostFragment.findNavController(this).navigate(R.id.liveDetectionFragment);
+        });
+        
         processButton.setOnClickListener(v -> {
             animateButtonClick(v);
             processImage();
         });
+
+        // Long press re-runs the model around the boxes already found, at full resolution
+        processButton.setOnLongClickListener(v -> {
+            animateButtonClick(v);
+            refineImage();
+            return true;
+        });
     }
 
     private void animateButtons() {
@@ -139,6 +184,10 @@ public class PhotoFragment extends Fragment {
         cameraFab.setScaleX(0f);
         cameraFab.setScaleY(0f);
         cameraFab.setAlpha(0f);
+        
+        liveFab.setScaleX(0f);
+        liveFab.setScaleY(0f);
+        liveFab.setAlpha(0f);
 
         galleryFab.animate()
                 .scaleX(1f)
@@ -157,6 +206,15 @@ public class PhotoFragment extends Fragment {
                 .setStartDelay(400)
                 .setInterpolator(new OvershootInterpolator())
                 .start();
+
+        liveFab.animate()
+                .scaleX(1f)
+                .scaleY(1f)
+                .alpha(1f)
+                .setDuration(300)
+                .setStartDelay(200)
+                .setInterpolator(new OvershootInterpolator())
+                .start();
     }
 
     private void animateButtonClick(View view) {
@@ -175,6 +233,8 @@ public class PhotoFragment extends Fragment {
     }
 
     private void showImage(Uri uri) {
+        detectionOverlay.clear();
+
         // Fade out current image
         photoImageView.animate()
                 .alpha(0f)
@@ -201,6 +261,30 @@ public class PhotoFragment extends Fragment {
         galleryLauncher.launch("image/*");
     }
 
+    private void startBatch(List<Uri> uris) {
+        if (batchViewModel.startBatch(uris)) {
+            Toast.makeText(requireContext(), "Processing " + uris.size() + " images...", Toast.LENGTH_SHORT).show();
+        } else {
+            Toast.makeText(requireContext(), "A batch is already running", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void showBatchProgress(BatchProgress progress) {
+        if (progress == null) {
+            batchStatus.setVisibility(View.GONE);
+            return;
+        }
+        batchStatus.setVisibility(View.VISIBLE);
+        if (!progress.isFinished()) {
+            batchStatus.setText(String.format(Locale.US, "Batch %d/%d · tap to cancel",
+                    progress.getCompleted(), progress.getTotal()));
+            return;
+        }
+        String state = progress.getState() == BatchProgress.State.CANCELLED ? "cancelled" : "done";
+        batchStatus.setText(String.format(Locale.US, "Batch %s: %d processed, %d failed",
+                state, progress.getWritten(), progress.getFailed()));
+    }
+
     private void checkCameraPermissionAndOpenCamera() {
         if (ContextCompat.checkSelfPermission(requireContext(), Manifest.permission.CAMERA)
                 == PackageManager.PERMISSION_GRANTED) {
@@ -215,17 +299,21 @@ public class PhotoFragment extends Fragment {
         values.put(MediaStore.Images.Media.TITLE, "New Picture");
         values.put(MediaStore.Images.Media.DESCRIPTION, "From Camera");
 
-        imageUri = requireContext().getContentResolver()
+        cameraUri = requireContext().getContentResolver()
                 .insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
 
-        cameraLauncher.launch(imageUri);
+        cameraLauncher.launch(cameraUri);
     }
 
     private void processImage() {
-        if (imageUri == null) {
+        if (photoViewModel.getImageUri() == null) {
             Toast.makeText(requireContext(), "Please select an image first", Toast.LENGTH_SHORT).show();
             return;
         }
+        // A second tap while the same image is still being processed is ignored
+        if (!photoViewModel.detect(tiledSwitch.isChecked())) {
+            return;
+        }
 
         // Animate the process button
         @SuppressLint("ObjectAnimatorBinding") ObjectAnimator rotationAnimator = ObjectAnimator.ofFloat(
@@ -235,94 +323,44 @@ public class PhotoFragment extends Fragment {
 
         // Show processing toast
         Toast.makeText(requireContext(), "Processing image...", Toast.LENGTH_SHORT).show();
+    }
 
-        // Run inference in a background thread
-        new Thread(() -> {
-            try {
-                // Copy the image to our app's files directory
-                String imagePath = copyImageToAppFiles(imageUri);
-                if (imagePath == null) {
-                    throw new IOException("Could not copy image file");
-                }
-
-                // Convert image path to Bitmap
-                Bitmap bitmap = BitmapFactory.decodeFile(imagePath);
-                if (bitmap == null) {
-                    throw new IOException("Could not decode image file");
-                }
-
-                // Run the TFLite model
-                Map<String, Object> result = modelRunner.runInference(bitmap);
-
-                // Show the result on the main thread
-                requireActivity().runOnUiThread(() -> {
-                    try {
-                        if ("success".equals(result.get("status"))) {
-                            String processedImagePath = (String) result.get("output_image");
-                            
-                            // Update the ImageView with the processed image
-                            Bitmap processedBitmap = BitmapFactory.decodeFile(processedImagePath);
-                            if (processedBitmap != null) {
-                                photoImageView.setImageBitmap(processedBitmap);
-                                Toast.makeText(requireContext(), "Processing completed successfully", Toast.LENGTH_SHORT).show();
-                            } else {
-                                Toast.makeText(requireContext(), "Error loading processed image", Toast.LENGTH_SHORT).show();
-                            }
-                        } else {
-                            String errorMessage = (String) result.get("message");
-                            Toast.makeText(requireContext(), "Error: " + errorMessage, Toast.LENGTH_SHORT).show();
-                        }
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        Toast.makeText(requireContext(), 
-                            "Error displaying results: " + e.getMessage(), 
-                            Toast.LENGTH_LONG).show();
-                    }
-                });
-
-            } catch (Exception e) {
-                e.printStackTrace();
-                requireActivity().runOnUiThread(() -> {
-                    Toast.makeText(requireContext(), 
-                        "Error processing image: " + e.getMessage(), 
-                        Toast.LENGTH_LONG).show();
-                });
-            }
-        }).start();
+    private void refineImage() {
+        PhotoViewModel.Outcome previous = photoViewModel.getOutcome().getValue();
+        if (previous == null || !previous.isSuccess()) {
+            Toast.makeText(requireContext(), "Process the image first", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        // Already refining
+        if (!photoViewModel.refine()) {
+            return;
+        }
+        Toast.makeText(requireContext(), "Refining detections...", Toast.LENGTH_SHORT).show();
     }
 
-    /**
-     * Copies the image from the given Uri to the app's files directory
-     * @return The path to the copied image file, or null if copying failed
-     */
-    private String copyImageToAppFiles(Uri sourceUri) {
-        try {
-            // Create a unique filename for the image
-            String timestamp = String.valueOf(System.currentTimeMillis());
-            String filename = "image_" + timestamp + ".jpg";
-            File destFile = new File(requireContext().getFilesDir(), filename);
-            
-            // Copy the image data
-            InputStream in = requireContext().getContentResolver().openInputStream(sourceUri);
-            if (in == null) {
-                return null;
-            }
-            
-            OutputStream out = new FileOutputStream(destFile);
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            
-            while ((bytesRead = in.read(buffer)) != -1) {
-                out.write(buffer, 0, bytesRead);
+    private void showOutcome(PhotoViewModel.Outcome outcome) {
+        if (outcome == null) {
+            return;
+        }
+        boolean firstTime = outcome.markReported();
+        if (!outcome.isSuccess()) {
+            if (firstTime) {
+                Toast.makeText(requireContext(), "Error: " + outcome.getErrorMessage(), Toast.LENGTH_LONG).show();
             }
-            
-            in.close();
-            out.close();
-            
-            return destFile.getAbsolutePath();
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
+            return;
+        }
+        // Draw the boxes over the decoded bitmap instead of re-encoding it; a cached or refined
+        // result keeps the image already shown
+        if (outcome.getBitmap() != null) {
+            photoImageView.setImageBitmap(outcome.getBitmap());
+        }
+        detectionOverlay.setResult(outcome.getResult());
+        if (firstTime) {
+            Toast.makeText(requireContext(), "Found " + outcome.getResult().size() + " detections"
+                    + (outcome.isCached() ? " (cached)" : "") + " in " + outcome.getElapsedNanos() / 1_000_000
+                    + " ms" + (outcome.getStageResults().isEmpty() ? ""
+                    : "\n" + StageResult.summarize(outcome.getStageResults())),
+                    Toast.LENGTH_SHORT).show();
         }
     }
 
@@ -0,0 +1,375 @@
+package com.example.rimagine.ui.Photo;
+
+import android.app.Application;
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.rimagine.RimagineApplication;
+import com.example.rimagine.ml.DetectionCache;
+import com.example.rimagine.ml.DetectionPipeline;
+import com.example.rimagine.ml.DetectionResult;
+import com.example.rimagine.ml.DetectionStore;
+import com.example.rimagine.ml.ImageArchive;
+import com.example.rimagine.ml.InferenceScheduler;
+import com.example.rimagine.ml.InterpreterPool;
+import com.example.rimagine.ml.ModelRegistry;
+import com.example.rimagine.ml.RefCountedHolder;
+import com.example.rimagine.ml.RoiDetector;
+import com.example.rimagine.ml.RoiInferenceConfig;
+import com.example.rimagine.ml.RoiPlan;
+import com.example.rimagine.ml.SampledImageDecoder;
+import com.example.rimagine.ml.StageResult;
+import com.example.rimagine.ml.TiledDetector;
+import com.example.rimagine.ml.TiledInferenceConfig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs still-image detection for {@link PhotoFragment} on the app's {@link InferenceScheduler}
+ * and keeps the selected image and its last result across configuration changes.
+ *
+ * Asking again for the request that is already running does nothing; asking for another
+ * image or mode, or picking a new image, cancels the one in flight. A result can be refined
+ * by running the model again on the regions around its boxes only. Fresh results also carry
+ * the outputs of any bundled second-stage models on the detected objects.
+ */
+public class PhotoViewModel extends AndroidViewModel {
+    private static final String TAG = "PhotoViewModel";
+    private static final TiledInferenceConfig TILED_CONFIG = TiledInferenceConfig.defaults();
+    private static final RoiInferenceConfig ROI_CONFIG = RoiInferenceConfig.defaults();
+
+    /** The result of one request, or why it failed. */
+    public static final class Outcome {
+        private final Uri uri;
+        private final DetectionResult result;
+        private final Bitmap bitmap;
+        private final boolean cached;
+        private final long elapsedNanos;
+        private final String errorMessage;
+        private final String contentHash;
+        private final String cacheKey;
+        private final List<StageResult> stageResults;
+        private final AtomicBoolean reported = new AtomicBoolean();
+
+        private Outcome(Uri uri, DetectionResult result, Bitmap bitmap, boolean cached, long elapsedNanos,
+                        String errorMessage, String contentHash, String cacheKey,
+                        List<StageResult> stageResults) {
+            this.uri = uri;
+            this.result = result;
+            this.bitmap = bitmap;
+            this.cached = cached;
+            this.elapsedNanos = elapsedNanos;
+            this.errorMessage = errorMessage;
+            this.contentHash = contentHash;
+            this.cacheKey = cacheKey;
+            this.stageResults = stageResults;
+        }
+
+        static Outcome failed(Uri uri, String errorMessage) {
+            return new Outcome(uri, null, null, false, 0L, errorMessage, null, null,
+                    Collections.emptyList());
+        }
+
+        public boolean isSuccess() {
+            return errorMessage == null && result.isSuccess();
+        }
+
+        public Uri getUri() {
+            return uri;
+        }
+
+        public DetectionResult getResult() {
+            return result;
+        }
+
+        /** The decoded image the boxes were found on, or null for a cached or refined result. */
+        public Bitmap getBitmap() {
+            return bitmap;
+        }
+
+        /** Second-stage outputs, in the original photo's pixels; empty for a cached or refined result. */
+        public List<StageResult> getStageResults() {
+            return stageResults;
+        }
+
+        public boolean isCached() {
+            return cached;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public String getErrorMessage() {
+            return errorMessage != null ? errorMessage : result.getErrorMessage();
+        }
+
+        /** True only the first time, so a recreated screen does not announce an old result again. */
+        public boolean markReported() {
+            return reported.compareAndSet(false, true);
+        }
+    }
+
+    private final ModelRegistry modelRegistry;
+    private final InferenceScheduler scheduler;
+    private final DetectionCache cache;
+    private final DetectionStore store;
+    private final ImageArchive imageArchive;
+    // Caching, archiving and storing a result, kept off the scheduler's inference threads
+    private final ExecutorService io = Executors.newSingleThreadExecutor();
+    private final RefCountedHolder<InterpreterPool>.Handle interpreterPool;
+    private final RefCountedHolder<DetectionPipeline>.Handle pipeline;
+    private final MutableLiveData<Outcome> outcome = new MutableLiveData<>();
+    private volatile Uri imageUri;
+    // Guarded by this; the running tasks, plus one for this model until it is cleared
+    private int handleUsers = 1;
+    // Main thread only
+    private InferenceScheduler.Request<Outcome> current;
+
+    public PhotoViewModel(@NonNull Application application) {
+        super(application);
+        RimagineApplication app = (RimagineApplication) application;
+        modelRegistry = app.getModelRegistry();
+        scheduler = app.getInferenceScheduler();
+        cache = app.getDetectionCache();
+        store = app.getDetectionStore();
+        imageArchive = new ImageArchive(application.getFilesDir(), ImageArchive.defaultPolicy());
+        // Only takes a reference; the shared pool is loaded on first use off the main thread
+        interpreterPool = modelRegistry.acquirePool();
+        pipeline = modelRegistry.acquirePipeline();
+    }
+
+    public LiveData<Outcome> getOutcome() {
+        return outcome;
+    }
+
+    public Uri getImageUri() {
+        return imageUri;
+    }
+
+    /** A new image supersedes whatever was running for the previous one. */
+    public void setImageUri(Uri uri) {
+        imageUri = uri;
+        cancel();
+        outcome.setValue(null);
+    }
+
+    /**
+     * Detects objects in the selected image, unless that exact request is already running.
+     *
+     * @return false if nothing new was started
+     */
+    public boolean detect(boolean tiled) {
+        Uri uri = imageUri;
+        if (uri == null) {
+            return false;
+        }
+        String key = uri + "#" + (tiled ? TILED_CONFIG.toString() : DetectionCache.SINGLE_PASS);
+        ContentResolver resolver = getApplication().getContentResolver();
+        return submit(key, uri, request -> run(request, resolver, uri, tiled));
+    }
+
+    /**
+     * Runs the model again, at native resolution, on the regions around the boxes of the last
+     * result for the selected image, unless that is already running.
+     *
+     * @return false if there is no result to refine or nothing new was started
+     */
+    public boolean refine() {
+        Uri uri = imageUri;
+        Outcome previous = outcome.getValue();
+        if (uri == null || previous == null || !previous.isSuccess() || !uri.equals(previous.uri)) {
+            return false;
+        }
+        DetectionResult prior = previous.result;
+        ContentResolver resolver = getApplication().getContentResolver();
+        return submit(uri + "#" + ROI_CONFIG, uri, request -> refine(request, resolver, uri, prior));
+    }
+
+    private boolean submit(String key, Uri uri, InferenceScheduler.Task<Outcome> task) {
+        if (current != null && !current.isDone() && current.getKey().equals(key)) {
+            return false;
+        }
+        cancel();
+        ContentResolver resolver = getApplication().getContentResolver();
+        InferenceScheduler.Task<Outcome> guarded = request -> {
+            // The handles stay open until the last task that started on them is done
+            if (!retainHandles()) {
+                throw new CancellationException(key);
+            }
+            try {
+                return task.run(request);
+            } finally {
+                releaseHandles();
+            }
+        };
+        current = scheduler.submit(key, InferenceScheduler.Priority.INTERACTIVE, guarded,
+                new InferenceScheduler.Listener<Outcome>() {
+                    @Override
+                    public void onResult(Outcome result) {
+                        // Finished just as another image was picked
+                        if (uri.equals(imageUri)) {
+                            outcome.postValue(result);
+                        }
+                        // Kept once the result is already on its way to the UI
+                        try {
+                            io.execute(() -> persist(resolver, result));
+                        } catch (RejectedExecutionException e) {
+                            // Delivered just as the model was cleared
+                            Log.w(TAG, "Dropped result for " + uri + ": view model cleared");
+                        }
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        Log.e(TAG, "Detection failed for " + uri + ": " + e.getMessage(), e);
+                        if (uri.equals(imageUri)) {
+                            outcome.postValue(Outcome.failed(uri, e.getMessage()));
+                        }
+                    }
+                });
+        return true;
+    }
+
+    public void cancel() {
+        if (current != null) {
+            current.cancel();
+            current = null;
+        }
+    }
+
+    private Outcome run(InferenceScheduler.Request<Outcome> request, ContentResolver resolver, Uri uri,
+                        boolean tiled) throws Exception {
+        long start = System.nanoTime();
+        InterpreterPool pool = interpreterPool.get();
+        DetectionPipeline stages = pipeline.get();
+
+        // An image processed before, by the same model in the same mode, needs neither
+        // decoding nor inference. Only boxes are cached, so with second-stage models the
+        // image is always decoded and its objects cropped again
+        String contentHash = DetectionStore.contentHash(resolver, uri);
+        String cacheKey = modelRegistry.cacheKey(contentHash,
+                tiled ? TILED_CONFIG.toString() : DetectionCache.SINGLE_PASS);
+        DetectionResult cached = cacheKey != null && stages.isEmpty() ? cache.get(cacheKey) : null;
+        if (cached != null) {
+            return new Outcome(uri, cached, null, true, System.nanoTime() - start, null, contentHash, cacheKey,
+                    Collections.emptyList());
+        }
+        request.throwIfCancelled();
+
+        // Decode straight from the provider, upright, instead of copying and decoding the
+        // full-resolution file: at about the model input size, or large enough to tile
+        SampledImageDecoder.Decoded decoded = tiled
+                ? SampledImageDecoder.decode(resolver, uri,
+                        TILED_CONFIG.getMinImageSide(), TILED_CONFIG.getMinImageSide())
+                : SampledImageDecoder.decode(resolver, uri, pool.getInputWidth(), pool.getInputHeight());
+        if (request.isCancelled()) {
+            decoded.recycle();
+            request.throwIfCancelled();
+        }
+        Bitmap bitmap = decoded.getBitmap();
+
+        // Run the TFLite model on the next free pooled interpreter, or on every tile across
+        // the pool, then report the boxes in the original photo's pixels
+        DetectionResult detected = tiled
+                ? new TiledDetector(pool, TILED_CONFIG).detect(bitmap)
+                : pool.runInference(bitmap);
+        List<StageResult> stageResults = new ArrayList<>();
+        for (StageResult stage : stages.run(bitmap, detected)) {
+            stageResults.add(stage.mapped(decoded.getToOriginal()));
+        }
+        DetectionResult result = detected.mapped(decoded.getToOriginal());
+        modelRegistry.onDetection(result);
+        return new Outcome(uri, result, bitmap, false, System.nanoTime() - start, null, contentHash, cacheKey,
+                stageResults);
+    }
+
+    private Outcome refine(InferenceScheduler.Request<Outcome> request, ContentResolver resolver, Uri uri,
+                           DetectionResult prior) throws Exception {
+        long start = System.nanoTime();
+        RoiDetector detector = new RoiDetector(interpreterPool.get(), ROI_CONFIG);
+        RoiPlan plan = detector.planFor(prior);
+        if (!plan.isWorthwhile()) {
+            // Nothing to go on, or so much that one tiled pass over the image costs less
+            return run(request, resolver, uri, true);
+        }
+        String contentHash = DetectionStore.contentHash(resolver, uri);
+        request.throwIfCancelled();
+
+        // Decodes and runs only the regions; the boxes come back in the original photo's
+        // pixels. Not cached, as the result depends on the one it refined
+        DetectionResult result = detector.detect(resolver, uri, plan);
+        modelRegistry.onDetection(result);
+        return new Outcome(uri, result, null, false, System.nanoTime() - start, null, contentHash, null,
+                Collections.emptyList());
+    }
+
+    /** Caches, archives and stores a fresh result. I/O thread. */
+    private void persist(ContentResolver resolver, Outcome result) {
+        if (result.cached || !result.isSuccess()) {
+            return;
+        }
+        if (result.cacheKey != null) {
+            try {
+                cache.put(result.cacheKey, result.result);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not cache detections: " + e.getMessage(), e);
+            }
+        }
+        try {
+            imageArchive.archive(resolver, result.uri);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not archive image: " + e.getMessage(), e);
+        }
+        try {
+            store.insert(new DetectionStore.Record(result.uri.toString(), result.contentHash,
+                    modelRegistry.getModelVersion(), result.result, System.currentTimeMillis()));
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not store detections: " + e.getMessage(), e);
+        }
+    }
+
+    private synchronized boolean retainHandles() {
+        if (handleUsers == 0) {
+            return false;
+        }
+        handleUsers++;
+        return true;
+    }
+
+    /** Closes the handles once this model is cleared and no task is still using them. */
+    private void releaseHandles() {
+        synchronized (this) {
+            if (--handleUsers > 0) {
+                return;
+            }
+        }
+        interpreterPool.close();
+        pipeline.close();
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        // A task already running cannot be stopped midway; it closes the handles when done
+        cancel();
+        releaseHandles();
+        // Results already handed over are still kept
+        io.shutdown();
+    }
+}
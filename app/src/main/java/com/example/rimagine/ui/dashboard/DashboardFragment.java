@@ -9,29 +9,58 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.rimagine.databinding.FragmentDashboardBinding;
 
+/**
+ * History of stored detections, loading further pages as the list nears its end.
+ */
 public class DashboardFragment extends Fragment {
+    private static final int PREFETCH_DISTANCE = 10;
 
     private FragmentDashboardBinding binding;
+    private DashboardViewModel dashboardViewModel;
 
     public View onCreateView(@NonNull LayoutInflater inflater,
                              ViewGroup container, Bundle savedInstanceState) {
-        DashboardViewModel dashboardViewModel =
-                new ViewModelProvider(this).get(DashboardViewModel.class);
+        dashboardViewModel = new ViewModelProvider(this).get(DashboardViewModel.class);
 
         binding = FragmentDashboardBinding.inflate(inflater, container, false);
         View root = binding.getRoot();
 
         final TextView textView = binding.textDashboard;
         dashboardViewModel.getText().observe(getViewLifecycleOwner(), textView::setText);
+
+        DetectionHistoryAdapter adapter = new DetectionHistoryAdapter();
+        LinearLayoutManager layoutManager = new LinearLayoutManager(requireContext());
+        RecyclerView list = binding.detectionList;
+        list.setLayoutManager(layoutManager);
+        list.setAdapter(adapter);
+        list.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy > 0 && layoutManager.findLastVisibleItemPosition()
+                        >= adapter.getItemCount() - PREFETCH_DISTANCE) {
+                    dashboardViewModel.loadMore();
+                }
+            }
+        });
+        dashboardViewModel.getEntries().observe(getViewLifecycleOwner(), adapter::submit);
         return root;
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+        // Results from the photo screen or a batch may have been stored meanwhile
+        dashboardViewModel.refresh();
+    }
+
     @Override
     public void onDestroyView() {
         super.onDestroyView();
         binding = null;
     }
-}
\ No newline at end of file
+}
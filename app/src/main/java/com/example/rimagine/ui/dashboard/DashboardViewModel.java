@@ -1,19 +1,98 @@
 package com.example.rimagine.ui.dashboard;
 
+import android.app.Application;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
-import androidx.lifecycle.ViewModel;
 
-public class DashboardViewModel extends ViewModel {
+import com.example.rimagine.ml.DetectionQuery;
+import com.example.rimagine.ml.DetectionStore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-    private final MutableLiveData<String> mText;
+/**
+ * Pages through the stored detection history, newest first, off the main thread.
+ */
+public class DashboardViewModel extends AndroidViewModel {
+    private static final String TAG = "DashboardViewModel";
+    private static final int PAGE_SIZE = 30;
 
-    public DashboardViewModel() {
-        mText = new MutableLiveData<>();
-        mText.setValue("This is dashboard fragment");
+    private final DetectionStore store;
+    private final ExecutorService io = Executors.newSingleThreadExecutor();
+    private final MutableLiveData<List<DetectionStore.Entry>> entries = new MutableLiveData<>();
+    private final MutableLiveData<String> mText = new MutableLiveData<>();
+    private final AtomicBoolean pageQueued = new AtomicBoolean();
+    // Touched only on the io thread
+    private final List<DetectionStore.Entry> loaded = new ArrayList<>();
+    private DetectionQuery next;
+
+    public DashboardViewModel(@NonNull Application application) {
+        super(application);
+        store = DetectionStore.get(application);
     }
 
+    public LiveData<List<DetectionStore.Entry>> getEntries() {
+        return entries;
+    }
+
+    /** Status line: empty history, load errors or the number of stored images. */
     public LiveData<String> getText() {
         return mText;
     }
-}
\ No newline at end of file
+
+    /** Drops what is loaded and reads the first page again, picking up new results. */
+    public void refresh() {
+        io.execute(() -> {
+            loaded.clear();
+            next = DetectionQuery.all(PAGE_SIZE);
+            loadPage(true);
+        });
+    }
+
+    /** Appends the next page, if there is one and none is already on its way. */
+    public void loadMore() {
+        if (!pageQueued.compareAndSet(false, true)) {
+            return;
+        }
+        io.execute(() -> {
+            try {
+                loadPage(false);
+            } finally {
+                pageQueued.set(false);
+            }
+        });
+    }
+
+    private void loadPage(boolean first) {
+        if (next == null) {
+            return;
+        }
+        try {
+            DetectionStore.Page page = store.queryImages(next);
+            loaded.addAll(page.getEntries());
+            next = page.getNext();
+            entries.postValue(Collections.unmodifiableList(new ArrayList<>(loaded)));
+            if (first) {
+                long total = store.count();
+                mText.postValue(total == 0 ? "No detections stored yet" : total + " images");
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Could not load detections: " + e.getMessage(), e);
+            mText.postValue("Could not load detections");
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        io.shutdown();
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.rimagine.ui.dashboard;
+
+import android.text.format.DateUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.rimagine.R;
+import com.example.rimagine.ml.DetectionStore;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * One row per stored image: when, how many detections and how confident, and which model.
+ */
+class DetectionHistoryAdapter extends RecyclerView.Adapter<DetectionHistoryAdapter.Holder> {
+    private List<DetectionStore.Entry> entries = Collections.emptyList();
+
+    DetectionHistoryAdapter() {
+        setHasStableIds(true);
+    }
+
+    void submit(List<DetectionStore.Entry> entries) {
+        this.entries = entries;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getItemCount() {
+        return entries.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return entries.get(position).getId();
+    }
+
+    @NonNull
+    @Override
+    public Holder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_detection_entry, parent, false);
+        return new Holder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull Holder holder, int position) {
+        DetectionStore.Entry entry = entries.get(position);
+        holder.title.setText(String.format(Locale.US, "%d detections, best %.2f",
+                entry.getDetectionCount(), entry.getBestScore()));
+        holder.details.setText(String.format(Locale.US, "%s  ·  %dx%d  ·  %d ms  ·  %s",
+                DateUtils.getRelativeTimeSpanString(entry.getCreatedAt()), entry.getWidth(), entry.getHeight(),
+                entry.getTotalNanos() / 1_000_000, entry.getModelVersion()));
+    }
+
+    static final class Holder extends RecyclerView.ViewHolder {
+        final TextView title;
+        final TextView details;
+
+        Holder(View view) {
+            super(view);
+            title = view.findViewById(R.id.entry_title);
+            details = view.findViewById(R.id.entry_details);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.rimagine.ui.live;
+
+import android.Manifest;
+import android.content.pm.PackageManager;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+import androidx.camera.core.Preview;
+import androidx.camera.core.resolutionselector.AspectRatioStrategy;
+import androidx.camera.core.resolutionselector.ResolutionSelector;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.camera.view.PreviewView;
+import androidx.core.content.ContextCompat;
+import androidx.fragment.app.Fragment;
+import androidx.navigation.fragment.NavHostFragment;
+
+import com.example.rimagine.R;
+import com.example.rimagine.ml.DetectionResult;
+import com.example.rimagine.ml.LiveFrameProcessor;
+import com.example.rimagine.ml.ModelRegistry;
+import com.example.rimagine.ml.ObjectTracker;
+import com.example.rimagine.ml.RefCountedHolder;
+import com.example.rimagine.ml.TFLiteModelRunner;
+import com.example.rimagine.ml.YuvFrame;
+import com.example.rimagine.ui.Photo.DetectionOverlayView;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Streams CameraX frames through the detector and draws the boxes over the preview.
+ * The model runs on every few frames; an {@link ObjectTracker} fills in the rest. The live
+ * runner is built on the inference thread, and the camera starts once it is ready.
+ */
+public class LiveDetectionFragment extends Fragment {
+    private static final String TAG = "LiveDetectionFragment";
+    private static final int DETECT_EVERY_FRAMES = 3;
+
+    private PreviewView previewView;
+    private DetectionOverlayView overlay;
+    private TextView statsView;
+
+    private ModelRegistry modelRegistry;
+    private RefCountedHolder<TFLiteModelRunner>.Handle modelRunner;
+    // Set on the main thread once the runner is ready; read by the analyzer after that
+    private volatile LiveFrameProcessor frameProcessor;
+    private boolean destroyed;
+    private ExecutorService analysisExecutor;
+    private ExecutorService inferenceExecutor;
+    private ProcessCameraProvider cameraProvider;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final YuvFrame frame = new YuvFrame();
+
+    private long statsWindowStart;
+    private int statsWindowFrames;
+
+    private final ActivityResultLauncher<String> requestPermissionLauncher =
+            registerForActivityResult(new ActivityResultContracts.RequestPermission(), isGranted -> {
+                if (isGranted) {
+                    startCamera();
+                } else {
+                    Toast.makeText(requireContext(), "Camera permission is required", Toast.LENGTH_SHORT).show();
+                    NavHostFragment.findNavController(this).popBackStack();
+                }
+            });
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        modelRegistry = ModelRegistry.get(requireContext());
+        modelRunner = modelRegistry.acquireLiveRunner();
+        analysisExecutor = Executors.newSingleThreadExecutor();
+        inferenceExecutor = Executors.newSingleThreadExecutor();
+        // Cached by the registry, so only the first visit pays for mapping the model and
+        // building the interpreter, but that is still too slow for the main thread
+        inferenceExecutor.execute(this::loadModel);
+    }
+
+    private void loadModel() {
+        LiveFrameProcessor processor = null;
+        try {
+            TFLiteModelRunner runner = modelRunner.get();
+            processor = new LiveFrameProcessor(runner.getInputWidth(), runner.getInputHeight(),
+                    runner.getInputFormat(), runner.getMetadata(), runner::runInference, this::onResult,
+                    inferenceExecutor);
+            processor.setTracker(new ObjectTracker(), DETECT_EVERY_FRAMES);
+        } catch (Exception e) {
+            Log.e(TAG, "Live model is not available: " + e.getMessage(), e);
+        }
+        LiveFrameProcessor loaded = processor;
+        mainHandler.post(() -> onModelLoaded(loaded));
+    }
+
+    /** Main thread. {@code processor} is null if the model could not be loaded. */
+    private void onModelLoaded(@Nullable LiveFrameProcessor processor) {
+        if (destroyed) {
+            if (processor != null) {
+                processor.close();
+            }
+            return;
+        }
+        if (processor == null) {
+            if (statsView != null) {
+                statsView.setText(R.string.live_model_unavailable);
+                Toast.makeText(requireContext(), "Model is not available", Toast.LENGTH_SHORT).show();
+            }
+            return;
+        }
+        frameProcessor = processor;
+        if (previewView != null) {
+            startWhenPermitted();
+        }
+    }
+
+    @Nullable
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container,
+                             @Nullable Bundle savedInstanceState) {
+        View view = inflater.inflate(R.layout.fragment_live_detection, container, false);
+        previewView = view.findViewById(R.id.previewView);
+        overlay = view.findViewById(R.id.liveOverlay);
+        statsView = view.findViewById(R.id.liveStats);
+        overlay.setScaleMode(DetectionOverlayView.ScaleMode.FILL_CENTER);
+        return view;
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        if (frameProcessor == null) {
+            statsView.setText(R.string.live_model_loading);
+            return;
+        }
+        startWhenPermitted();
+    }
+
+    private void startWhenPermitted() {
+        if (ContextCompat.checkSelfPermission(requireContext(), Manifest.permission.CAMERA)
+                == PackageManager.PERMISSION_GRANTED) {
+            startCamera();
+        } else {
+            requestPermissionLauncher.launch(Manifest.permission.CAMERA);
+        }
+    }
+
+    private void startCamera() {
+        ListenableFuture<ProcessCameraProvider> providerFuture = ProcessCameraProvider.getInstance(requireContext());
+        providerFuture.addListener(() -> {
+            try {
+                cameraProvider = providerFuture.get();
+                bindUseCases();
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to start camera: " + e.getMessage(), e);
+                Toast.makeText(requireContext(), "Could not start camera", Toast.LENGTH_SHORT).show();
+            }
+        }, ContextCompat.getMainExecutor(requireContext()));
+    }
+
+    private void bindUseCases() {
+        if (previewView == null) {
+            return;
+        }
+        // Preview and analysis share an aspect ratio so overlay boxes line up with the preview
+        ResolutionSelector resolutionSelector = new ResolutionSelector.Builder()
+                .setAspectRatioStrategy(AspectRatioStrategy.RATIO_4_3_FALLBACK_AUTO_STRATEGY)
+                .build();
+
+        Preview preview = new Preview.Builder()
+                .setResolutionSelector(resolutionSelector)
+                .build();
+        preview.setSurfaceProvider(previewView.getSurfaceProvider());
+
+        ImageAnalysis analysis = new ImageAnalysis.Builder()
+                .setResolutionSelector(resolutionSelector)
+                .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                .setOutputImageFormat(ImageAnalysis.OUTPUT_IMAGE_FORMAT_YUV_420_888)
+                .build();
+        analysis.setAnalyzer(analysisExecutor, this::analyze);
+
+        cameraProvider.unbindAll();
+        cameraProvider.bindToLifecycle(getViewLifecycleOwner(), CameraSelector.DEFAULT_BACK_CAMERA,
+                preview, analysis);
+    }
+
+    private void analyze(@NonNull ImageProxy image) {
+        try {
+            ImageProxy.PlaneProxy[] planes = image.getPlanes();
+            frame.set(image.getWidth(), image.getHeight(),
+                    image.getImageInfo().getRotationDegrees(), image.getImageInfo().getTimestamp(),
+                    planes[0].getBuffer(), planes[0].getRowStride(), planes[0].getPixelStride(),
+                    planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride());
+            frameProcessor.onFrame(frame);
+        } finally {
+            // The frame is already converted, so the camera can reuse the image right away
+            image.close();
+        }
+    }
+
+    private void onResult(DetectionResult result, long timestampNanos) {
+        modelRegistry.onDetection(result);
+        mainHandler.post(() -> {
+            if (overlay == null) {
+                return;
+            }
+            overlay.setResult(result);
+            updateStats();
+        });
+    }
+
+    private void updateStats() {
+        long now = SystemClock.elapsedRealtime();
+        if (statsWindowStart == 0) {
+            statsWindowStart = now;
+        }
+        statsWindowFrames++;
+        long elapsed = now - statsWindowStart;
+        if (elapsed >= 1000) {
+            float fps = statsWindowFrames * 1000f / elapsed;
+            statsView.setText(String.format(Locale.US, "%.1f fps · %d inferred · %d tracked · %d dropped",
+                    fps, frameProcessor.getProcessedFrames(), frameProcessor.getTrackedFrames(),
+                    frameProcessor.getDroppedFrames()));
+            statsWindowStart = now;
+            statsWindowFrames = 0;
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (cameraProvider != null) {
+            cameraProvider.unbindAll();
+        }
+        previewView = null;
+        overlay = null;
+        statsView = null;
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        destroyed = true;
+        if (frameProcessor != null) {
+            frameProcessor.close();
+        }
+        analysisExecutor.shutdown();
+        // Queued behind any in-flight frame, so the runner is not released mid-inference
+        inferenceExecutor.execute(modelRunner::close);
+        inferenceExecutor.shutdown();
+    }
+}
@@ -1,6 +1,9 @@
 package com.example.rimagine.ui.notifications;
 
+import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -12,26 +15,60 @@ import androidx.lifecycle.ViewModelProvider;
 
 import com.example.rimagine.databinding.FragmentNotificationsBinding;
 
+/**
+ * Live view of per-stage detection latencies and counters, with JSON export.
+ */
 public class NotificationsFragment extends Fragment {
+    private static final long REFRESH_INTERVAL_MS = 1000;
 
     private FragmentNotificationsBinding binding;
+    private NotificationsViewModel notificationsViewModel;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            notificationsViewModel.refresh();
+            handler.postDelayed(this, REFRESH_INTERVAL_MS);
+        }
+    };
 
     public View onCreateView(@NonNull LayoutInflater inflater,
                              ViewGroup container, Bundle savedInstanceState) {
-        NotificationsViewModel notificationsViewModel =
-                new ViewModelProvider(this).get(NotificationsViewModel.class);
+        notificationsViewModel = new ViewModelProvider(this).get(NotificationsViewModel.class);
 
         binding = FragmentNotificationsBinding.inflate(inflater, container, false);
         View root = binding.getRoot();
 
         final TextView textView = binding.textNotifications;
         notificationsViewModel.getText().observe(getViewLifecycleOwner(), textView::setText);
+        binding.exportMetricsButton.setOnClickListener(v -> exportMetrics());
+        binding.resetMetricsButton.setOnClickListener(v -> notificationsViewModel.reset());
         return root;
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+        handler.post(refresh);
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        handler.removeCallbacks(refresh);
+    }
+
+    private void exportMetrics() {
+        Intent send = new Intent(Intent.ACTION_SEND)
+                .setType("application/json")
+                .putExtra(Intent.EXTRA_SUBJECT, "Rimagine inference metrics")
+                .putExtra(Intent.EXTRA_TEXT, notificationsViewModel.exportJson());
+        startActivity(Intent.createChooser(send, "Export metrics"));
+    }
+
     @Override
     public void onDestroyView() {
         super.onDestroyView();
         binding = null;
     }
-}
\ No newline at end of file
+}
@@ -1,19 +1,47 @@
 package com.example.rimagine.ui.notifications;
 
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
-import androidx.lifecycle.ViewModel;
 
-public class NotificationsViewModel extends ViewModel {
+import com.example.rimagine.RimagineApplication;
+import com.example.rimagine.ml.DetectionCache;
+import com.example.rimagine.ml.InferenceMetrics;
+
+import java.util.Locale;
+
+/**
+ * Text form of the {@link InferenceMetrics}, refreshed on request.
+ */
+public class NotificationsViewModel extends AndroidViewModel {
 
-    private final MutableLiveData<String> mText;
+    private final MutableLiveData<String> mText = new MutableLiveData<>();
+    private final InferenceMetrics metrics = InferenceMetrics.get();
 
-    public NotificationsViewModel() {
-        mText = new MutableLiveData<>();
-        mText.setValue("This is notifications fragment");
+    public NotificationsViewModel(@NonNull Application application) {
+        super(application);
+        refresh();
     }
 
     public LiveData<String> getText() {
         return mText;
     }
-}
\ No newline at end of file
+
+    public void refresh() {
+        DetectionCache cache = ((RimagineApplication) getApplication()).getDetectionCache();
+        mText.setValue(metrics.format() + String.format(Locale.US, "%ncache hits      %d memory, %d disk, %d misses",
+                cache.getMemoryHits(), cache.getDiskHits(), cache.getMisses()));
+    }
+
+    public String exportJson() {
+        return metrics.toJson();
+    }
+
+    public void reset() {
+        metrics.reset();
+        refresh();
+    }
+}
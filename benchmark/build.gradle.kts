@@ -0,0 +1,47 @@
+// JMH benchmarks for the :core hot paths, on a plain JVM with synthetic tensors and pixels.
+//
+//   ./gradlew :benchmark:jmh -PjmhTag=$(git rev-parse --short HEAD)
+//   ./gradlew :benchmark:jmhCompare -Pbaseline=results/abc1234.csv -Pcandidate=results/def5678.csv
+//
+// Results are written as CSV under benchmark/results/, one file per tag, so two commits can
+// be compared with jmhCompare or a plain diff. -PjmhInclude=<regex> runs a subset.
+plugins {
+    id("java")
+    id("me.champeau.jmh")
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    jmh(project(":core"))
+    testImplementation("junit:junit:4.13.2")
+}
+
+jmh {
+    val tag = providers.gradleProperty("jmhTag").getOrElse("latest")
+    providers.gradleProperty("jmhInclude").orNull?.let { includes.add(it) }
+    resultFormat.set("CSV")
+    resultsFile.set(layout.projectDirectory.file("results/$tag.csv"))
+    benchmarkMode.add("avgt")
+    timeUnit.set("us")
+    fork.set(1)
+    warmupIterations.set(3)
+    warmup.set("1s")
+    iterations.set(5)
+    timeOnIteration.set("1s")
+}
+
+tasks.register<JavaExec>("jmhCompare") {
+    group = "benchmark"
+    description = "Prints the change of every benchmark between two JMH CSV result files."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("com.example.rimagine.benchmark.CompareResults")
+    workingDir = projectDir
+    args(
+        providers.gradleProperty("baseline").getOrElse("results/baseline.csv"),
+        providers.gradleProperty("candidate").getOrElse("results/latest.csv")
+    )
+}
@@ -0,0 +1,126 @@
+package com.example.rimagine.ml;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link NonMaxSuppression} against the previous boxed, sort-and-scan implementation, and the
+ * pairwise overlap measures on their own.
+ */
+@State(Scope.Thread)
+public class NonMaxSuppressionBenchmark {
+    private static final float IOU_THRESHOLD = 0.2f;
+
+    @Param({"100", "1000", "8000"})
+    public int candidates;
+
+    private DetectionBuffer in;
+    private NonMaxSuppression nms;
+    private final DetectionBuffer out = new DetectionBuffer();
+
+    @Setup
+    public void setUp() {
+        in = SyntheticData.candidates(candidates, 3);
+        nms = new NonMaxSuppression(NonMaxSuppression.Mode.PER_CLASS, IOU_THRESHOLD);
+        nms.setMaxCandidates(candidates);
+        nms.setMaxDetections(candidates);
+    }
+
+    @Benchmark
+    public int gridNms() {
+        return nms.apply(in, out);
+    }
+
+    @Benchmark
+    public int legacyNms() {
+        return legacyNms(in).size();
+    }
+
+    /** Every pair among the first 100 candidates. */
+    @Benchmark
+    public float iou() {
+        float sum = 0f;
+        int n = Math.min(100, in.size());
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                sum += NonMaxSuppression.iou(in, a, b);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float ios() {
+        float sum = 0f;
+        int n = Math.min(100, in.size());
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                sum += NonMaxSuppression.ios(in, a, b);
+            }
+        }
+        return sum;
+    }
+
+    // --- previous implementation from TFLiteModelRunner.saveProcessedImage ----------------
+
+    private static class Detection {
+        float left, top, right, bottom;
+        float confidence;
+        int classId;
+
+        Detection(float left, float top, float right, float bottom, float confidence, int classId) {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+            this.confidence = confidence;
+            this.classId = classId;
+        }
+    }
+
+    private static List<Detection> legacyNms(DetectionBuffer candidates) {
+        List<Detection> validDetections = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            validDetections.add(new Detection(candidates.left(i), candidates.top(i), candidates.right(i),
+                    candidates.bottom(i), candidates.score(i), candidates.classId(i)));
+        }
+        Collections.sort(validDetections, (a, b) -> Float.compare(b.confidence, a.confidence));
+
+        List<Detection> nmsDetections = new ArrayList<>();
+        boolean[] suppressed = new boolean[validDetections.size()];
+        for (int i = 0; i < validDetections.size(); i++) {
+            if (suppressed[i]) continue;
+            Detection detection = validDetections.get(i);
+            nmsDetections.add(detection);
+            for (int j = i + 1; j < validDetections.size(); j++) {
+                if (suppressed[j]) continue;
+                Detection other = validDetections.get(j);
+                if (detection.classId == other.classId && calculateIoU(detection, other) > IOU_THRESHOLD) {
+                    suppressed[j] = true;
+                }
+            }
+        }
+        return nmsDetections;
+    }
+
+    private static float calculateIoU(Detection a, Detection b) {
+        float intersectionLeft = Math.max(a.left, b.left);
+        float intersectionTop = Math.max(a.top, b.top);
+        float intersectionRight = Math.min(a.right, b.right);
+        float intersectionBottom = Math.min(a.bottom, b.bottom);
+        if (intersectionRight < intersectionLeft || intersectionBottom < intersectionTop) {
+            return 0.0f;
+        }
+        float intersectionArea = (intersectionRight - intersectionLeft) * (intersectionBottom - intersectionTop);
+        float aArea = (a.right - a.left) * (a.bottom - a.top);
+        float bArea = (b.right - b.left) * (b.bottom - b.top);
+        return intersectionArea / (aArea + bArea - intersectionArea);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.rimagine.ml;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Decoding a YOLOv8 head of 8400 anchors into candidates, float and int8, for a sparse and a
+ * crowded scene.
+ */
+@State(Scope.Thread)
+public class OutputDecodeBenchmark {
+    private static final int CLASSES = 2;
+    private static final int ANCHORS = 8400;
+    private static final float THRESHOLD = 0.25f;
+
+    @Param({"0.001", "0.05"})
+    public float positiveFraction;
+
+    private final YoloOutputDecoder decoder = new YoloOutputDecoder(CLASSES, ANCHORS);
+    private final DetectionBuffer out = new DetectionBuffer();
+    private final TensorFormat int8 = TensorFormat.quantized(TensorFormat.DataType.INT8, 1f / 255f, -128);
+    private final CoordinateTransform toImage = Letterbox.fit(4000, 3000, 640, 640).getOutputToSource();
+    private float[] output;
+    private byte[] quantized;
+
+    @Setup
+    public void setUp() {
+        output = SyntheticData.yoloOutput(CLASSES, ANCHORS, positiveFraction);
+        quantized = SyntheticData.quantize(output, int8);
+    }
+
+    @Benchmark
+    public int decodeFloat() {
+        return decoder.decode(output, THRESHOLD, toImage, out);
+    }
+
+    @Benchmark
+    public int decodeInt8() {
+        return decoder.decodeQuantized(quantized, int8, THRESHOLD, toImage, out);
+    }
+}
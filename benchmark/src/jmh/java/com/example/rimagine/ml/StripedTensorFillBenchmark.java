@@ -0,0 +1,56 @@
+package com.example.rimagine.ml;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * ARGB pixels to tensor on the calling thread alone and in row stripes on a fork-join pool,
+ * at the regular and the high-resolution model input sizes.
+ */
+@State(Scope.Thread)
+public class StripedTensorFillBenchmark {
+
+    @Param({"640", "1280"})
+    public int size;
+
+    @Param({"FLOAT32", "UINT8"})
+    public String format;
+
+    private InputTensorBuffer tensor;
+    private int[] pixels;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() {
+        TensorFormat tensorFormat = "FLOAT32".equals(format)
+                ? TensorFormat.float32()
+                : TensorFormat.quantized(TensorFormat.DataType.UINT8, 1f / 255f, 0);
+        tensor = new InputTensorBuffer(size, size, tensorFormat, 0f, 255f);
+        pixels = SyntheticData.pixels(size, size);
+        pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public ByteBuffer sequential() {
+        System.arraycopy(pixels, 0, tensor.pixels(), 0, pixels.length);
+        return tensor.fillFromPixels();
+    }
+
+    @Benchmark
+    public ByteBuffer striped() {
+        System.arraycopy(pixels, 0, tensor.pixels(), 0, pixels.length);
+        return tensor.fillFromPixels(pool);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.rimagine.ml;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/** Deterministic inputs for the benchmarks, so runs on different commits see the same data. */
+final class SyntheticData {
+    static final long SEED = 42L;
+
+    private SyntheticData() {
+    }
+
+    /** Opaque ARGB pixels with random colour. */
+    static int[] pixels(int width, int height) {
+        Random random = new Random(SEED);
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        return pixels;
+    }
+
+    /** Planar YUV_420_888 frame with random luma and chroma, as the camera would deliver it. */
+    static YuvFrame frame(int width, int height, int rotation) {
+        Random random = new Random(SEED);
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        ByteBuffer yPlane = randomPlane(random, width * height);
+        ByteBuffer uPlane = randomPlane(random, chromaWidth * chromaHeight);
+        ByteBuffer vPlane = randomPlane(random, chromaWidth * chromaHeight);
+        return new YuvFrame().set(width, height, rotation, 0L, yPlane, width, 1, uPlane, vPlane, chromaWidth, 1);
+    }
+
+    private static ByteBuffer randomPlane(Random random, int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        ByteBuffer plane = ByteBuffer.allocateDirect(size);
+        plane.put(bytes);
+        plane.rewind();
+        return plane;
+    }
+
+    /**
+     * Float head of {@code numClasses} classes over {@code numAnchors} anchors in which roughly
+     * {@code positiveFraction} of the anchors score above 0.5 and the rest stay below 0.1.
+     */
+    static float[] yoloOutput(int numClasses, int numAnchors, float positiveFraction) {
+        Random random = new Random(SEED);
+        float[] output = new float[(4 + numClasses) * numAnchors];
+        for (int i = 0; i < numAnchors; i++) {
+            output[i] = random.nextFloat();
+            output[numAnchors + i] = random.nextFloat();
+            output[2 * numAnchors + i] = 0.02f + random.nextFloat() * 0.1f;
+            output[3 * numAnchors + i] = 0.02f + random.nextFloat() * 0.1f;
+            boolean positive = random.nextFloat() < positiveFraction;
+            int winner = random.nextInt(numClasses);
+            for (int c = 0; c < numClasses; c++) {
+                float score = positive && c == winner ? 0.5f + random.nextFloat() * 0.5f : random.nextFloat() * 0.1f;
+                output[(4 + c) * numAnchors + i] = score;
+            }
+        }
+        return output;
+    }
+
+    /** {@link #yoloOutput} quantized to {@code format}. */
+    static byte[] quantize(float[] output, TensorFormat format) {
+        byte[] quantized = new byte[output.length];
+        for (int i = 0; i < output.length; i++) {
+            quantized[i] = (byte) format.quantize(output[i]);
+        }
+        return quantized;
+    }
+
+    /** Candidates clustered the way a detector emits them: several overlapping boxes per object. */
+    static DetectionBuffer candidates(int count, int classes) {
+        Random random = new Random(SEED);
+        DetectionBuffer buffer = new DetectionBuffer(count);
+        int clusters = Math.max(1, count / 20);
+        float[] cx = new float[clusters];
+        float[] cy = new float[clusters];
+        for (int c = 0; c < clusters; c++) {
+            cx[c] = 50 + random.nextFloat() * 1180;
+            cy[c] = 50 + random.nextFloat() * 1180;
+        }
+        for (int i = 0; i < count; i++) {
+            int c = random.nextInt(clusters);
+            float x = cx[c] + (float) random.nextGaussian() * 8;
+            float y = cy[c] + (float) random.nextGaussian() * 8;
+            float w = 30 + random.nextFloat() * 40;
+            float h = 30 + random.nextFloat() * 40;
+            buffer.add(x - w / 2, y - h / 2, x + w / 2, y + h / 2,
+                    0.3f + random.nextFloat() * 0.7f, random.nextInt(classes));
+        }
+        return buffer;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.rimagine.ml;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pixel-to-tensor conversion at the model input size: ARGB pixels from a letterboxed bitmap,
+ * and camera YUV frames converted straight into the tensor.
+ */
+@State(Scope.Thread)
+public class TensorFillBenchmark {
+    private static final int SIZE = 640;
+
+    @Param({"FLOAT32", "UINT8", "INT8"})
+    public String format;
+
+    private InputTensorBuffer tensor;
+    private int[] pixels;
+    private YuvFrame frame;
+    private final YuvToTensorConverter converter = new YuvToTensorConverter();
+
+    @Setup
+    public void setUp() {
+        TensorFormat.DataType type = TensorFormat.DataType.valueOf(format);
+        TensorFormat tensorFormat = type == TensorFormat.DataType.FLOAT32
+                ? TensorFormat.float32()
+                : TensorFormat.quantized(type, 1f / 255f, type == TensorFormat.DataType.INT8 ? -128 : 0);
+        tensor = new InputTensorBuffer(SIZE, SIZE, tensorFormat, 0f, 255f);
+        pixels = SyntheticData.pixels(SIZE, SIZE);
+        frame = SyntheticData.frame(SIZE, SIZE, 90);
+    }
+
+    @Benchmark
+    public ByteBuffer fillFromPixels() {
+        System.arraycopy(pixels, 0, tensor.pixels(), 0, pixels.length);
+        return tensor.fillFromPixels();
+    }
+
+    @Benchmark
+    public ByteBuffer convertYuvFrame() {
+        return converter.convert(frame, tensor);
+    }
+}
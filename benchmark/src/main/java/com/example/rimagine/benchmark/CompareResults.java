@@ -0,0 +1,166 @@
+package com.example.rimagine.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares two JMH CSV result files, benchmark by benchmark and parameter set by parameter
+ * set. A change counts only when the scores are further apart than their combined 99.9%
+ * error; anything inside that is reported as noise.
+ *
+ * {@code java CompareResults baseline.csv candidate.csv}
+ */
+public final class CompareResults {
+
+    /** One row of a JMH CSV file. */
+    static final class Result {
+        final String key;
+        final double score;
+        final double error;
+        final String unit;
+
+        Result(String key, double score, double error, String unit) {
+            this.key = key;
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+        }
+    }
+
+    private CompareResults() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CompareResults <baseline.csv> <candidate.csv>");
+            System.exit(2);
+        }
+        Map<String, Result> baseline = read(args[0]);
+        Map<String, Result> candidate = read(args[1]);
+        for (String line : compare(baseline, candidate)) {
+            System.out.println(line);
+        }
+    }
+
+    private static Map<String, Result> read(String path) throws IOException {
+        try (Reader in = new InputStreamReader(Files.newInputStream(Paths.get(path)), StandardCharsets.UTF_8)) {
+            return parse(in);
+        }
+    }
+
+    /** Results keyed by benchmark name plus its parameters, in file order. */
+    static Map<String, Result> parse(Reader in) throws IOException {
+        BufferedReader reader = new BufferedReader(in);
+        String headerLine = reader.readLine();
+        if (headerLine == null) {
+            throw new IOException("Empty result file");
+        }
+        List<String> header = splitCsv(headerLine);
+        int benchmark = header.indexOf("Benchmark");
+        int score = header.indexOf("Score");
+        int error = header.indexOf("Score Error (99.9%)");
+        int unit = header.indexOf("Unit");
+        if (benchmark < 0 || score < 0 || error < 0 || unit < 0) {
+            throw new IOException("Not a JMH CSV result file: " + headerLine);
+        }
+
+        Map<String, Result> results = new LinkedHashMap<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            List<String> fields = splitCsv(line);
+            StringBuilder key = new StringBuilder(shortName(fields.get(benchmark)));
+            for (int i = 0; i < header.size() && i < fields.size(); i++) {
+                String column = header.get(i);
+                if (column.startsWith("Param: ") && !fields.get(i).isEmpty()) {
+                    key.append(' ').append(column.substring("Param: ".length())).append('=').append(fields.get(i));
+                }
+            }
+            results.put(key.toString(), new Result(key.toString(), parseNumber(fields.get(score)),
+                    parseNumber(fields.get(error)), fields.get(unit)));
+        }
+        return results;
+    }
+
+    /** One formatted line per benchmark in either file. */
+    static List<String> compare(Map<String, Result> baseline, Map<String, Result> candidate) {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.US, "%-60s %12s %12s %9s  %s", "Benchmark", "Baseline", "Candidate",
+                "Change", "Unit"));
+        for (Result before : baseline.values()) {
+            Result after = candidate.get(before.key);
+            if (after == null) {
+                lines.add(String.format(Locale.US, "%-60s %12.3f %12s %9s  %s", before.key, before.score, "-",
+                        "removed", before.unit));
+                continue;
+            }
+            double change = (after.score - before.score) / before.score * 100.0;
+            boolean significant = Math.abs(after.score - before.score) > error(before) + error(after);
+            lines.add(String.format(Locale.US, "%-60s %12.3f %12.3f %+8.1f%%  %s%s", before.key, before.score,
+                    after.score, change, after.unit, significant ? "" : "  (within error)"));
+        }
+        for (Result after : candidate.values()) {
+            if (!baseline.containsKey(after.key)) {
+                lines.add(String.format(Locale.US, "%-60s %12s %12.3f %9s  %s", after.key, "-", after.score,
+                        "new", after.unit));
+            }
+        }
+        return lines;
+    }
+
+    private static double error(Result result) {
+        // JMH reports NaN when there were too few iterations to estimate it
+        return Double.isNaN(result.error) ? 0.0 : result.error;
+    }
+
+    private static String shortName(String benchmark) {
+        String prefix = "com.example.rimagine.ml.";
+        return benchmark.startsWith(prefix) ? benchmark.substring(prefix.length()) : benchmark;
+    }
+
+    private static double parseNumber(String field) {
+        // Written with the JVM's default locale, so a decimal comma is possible
+        return field.isEmpty() ? Double.NaN : Double.parseDouble(field.replace(',', '.'));
+    }
+
+    /** Splits one CSV line, honouring double-quoted fields and doubled quotes inside them. */
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.rimagine.benchmark;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompareResultsTest {
+    private static final String HEADER = "\"Benchmark\",\"Mode\",\"Threads\",\"Samples\",\"Score\","
+            + "\"Score Error (99.9%)\",\"Unit\",\"Param: candidates\"\n";
+
+    @Test
+    public void splitCsv_handlesQuotedCommasAndQuotes() {
+        assertEquals(Arrays.asList("a,b", "c\"d", "", "e"), CompareResults.splitCsv("\"a,b\",\"c\"\"d\",,e"));
+    }
+
+    @Test
+    public void parse_keysRowsByBenchmarkAndParams() throws IOException {
+        Map<String, CompareResults.Result> results = CompareResults.parse(new StringReader(HEADER
+                + "\"com.example.rimagine.ml.NonMaxSuppressionBenchmark.gridNms\",\"avgt\",1,5,12.5,0.5,\"us/op\",100\n"
+                + "\"com.example.rimagine.ml.NonMaxSuppressionBenchmark.gridNms\",\"avgt\",1,5,140.25,3.0,\"us/op\",1000\n"));
+
+        assertEquals(2, results.size());
+        CompareResults.Result result = results.get("NonMaxSuppressionBenchmark.gridNms candidates=1000");
+        assertEquals(140.25, result.score, 1e-9);
+        assertEquals(3.0, result.error, 1e-9);
+        assertEquals("us/op", result.unit);
+    }
+
+    @Test
+    public void compare_flagsOnlyChangesBeyondTheError() throws IOException {
+        Map<String, CompareResults.Result> baseline = CompareResults.parse(new StringReader(HEADER
+                + "\"a.fast\",\"avgt\",1,5,100.0,2.0,\"us/op\",10\n"
+                + "\"a.noisy\",\"avgt\",1,5,100.0,20.0,\"us/op\",10\n"
+                + "\"a.gone\",\"avgt\",1,5,1.0,0.1,\"us/op\",10\n"));
+        Map<String, CompareResults.Result> candidate = CompareResults.parse(new StringReader(HEADER
+                + "\"a.fast\",\"avgt\",1,5,50.0,2.0,\"us/op\",10\n"
+                + "\"a.noisy\",\"avgt\",1,5,90.0,20.0,\"us/op\",10\n"
+                + "\"a.added\",\"avgt\",1,5,1.0,0.1,\"us/op\",10\n"));
+
+        List<String> lines = CompareResults.compare(baseline, candidate);
+
+        assertEquals(5, lines.size());
+        assertTrue(lines.get(1), lines.get(1).contains("-50.0%") && !lines.get(1).contains("within error"));
+        assertTrue(lines.get(2), lines.get(2).contains("-10.0%") && lines.get(2).contains("within error"));
+        assertTrue(lines.get(3), lines.get(3).startsWith("a.gone") && lines.get(3).contains("removed"));
+        assertTrue(lines.get(4), lines.get(4).startsWith("a.added") && lines.get(4).contains("new"));
+    }
+}
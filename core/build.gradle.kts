@@ -0,0 +1,14 @@
+// Pure-Java detection math shared by the app and the JMH benchmarks: tensor filling, output
+// decoding, NMS, geometry, caching and metrics. Nothing here may depend on Android.
+plugins {
+    id("java-library")
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+dependencies {
+    testImplementation("junit:junit:4.13.2")
+}
@@ -0,0 +1,417 @@
+package com.example.rimagine.ml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Three-stage batch pipeline: decode on an IO pool, infer on dedicated thread(s), write on
+ * a single writer thread.
+ *
+ * Stages are connected by small bounded queues, so decoding runs ahead of inference just far
+ * enough to keep the interpreter busy without holding more than a few decoded images in
+ * memory. Blocking calls poll the cancellation flag instead of relying on interrupts, which
+ * keeps an in-flight interpreter call or file write from being torn down mid-way.
+ * With a {@link BatchInference}, an inference thread takes every decoded item that is already
+ * waiting, up to the batch limit, and infers them in one call; it never waits for a batch to
+ * fill. Each instance runs once.
+ */
+public final class BatchPipeline<I, D, R> {
+
+    public interface Decoder<I, D> {
+        D decode(I item) throws Exception;
+    }
+
+    public interface Inference<D, R> {
+        R infer(D decoded) throws Exception;
+    }
+
+    /** Infers several decoded items at once, returning one result per item, in order. */
+    public interface BatchInference<D, R> {
+        List<R> inferAll(List<D> decoded) throws Exception;
+    }
+
+    public interface Writer<I, R> {
+        void write(I item, R result) throws Exception;
+    }
+
+    /** Releases a decoded item once inference is done with it, or when it is dropped on cancel. */
+    public interface Discarder<D> {
+        void discard(D decoded);
+    }
+
+    public interface ProgressListener {
+        void onProgress(BatchProgress progress);
+    }
+
+    public static final class Builder<I, D, R> {
+        private final Decoder<I, D> decoder;
+        private final Inference<D, R> inference;
+        private final Writer<I, R> writer;
+        private BatchInference<D, R> batchInference;
+        private int maxBatch = 1;
+        private int decodeThreads = 2;
+        private int inferenceThreads = 1;
+        private int queueCapacity = 2;
+        private Discarder<D> discarder;
+        private ProgressListener listener;
+
+        public Builder(Decoder<I, D> decoder, Inference<D, R> inference, Writer<I, R> writer) {
+            this.decoder = decoder;
+            this.inference = inference;
+            this.writer = writer;
+        }
+
+        /**
+         * Infers up to {@code maxBatch} decoded items per call with {@code batchInference},
+         * in place of the per-item inference. The queue capacity bounds how many items can
+         * be waiting, so it should be at least {@code maxBatch}.
+         */
+        public Builder<I, D, R> setBatchInference(BatchInference<D, R> batchInference, int maxBatch) {
+            this.batchInference = batchInference;
+            this.maxBatch = Math.max(1, maxBatch);
+            return this;
+        }
+
+        public Builder<I, D, R> setDecodeThreads(int decodeThreads) {
+            this.decodeThreads = Math.max(1, decodeThreads);
+            return this;
+        }
+
+        public Builder<I, D, R> setInferenceThreads(int inferenceThreads) {
+            this.inferenceThreads = Math.max(1, inferenceThreads);
+            return this;
+        }
+
+        /** Capacity of each inter-stage queue. */
+        public Builder<I, D, R> setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = Math.max(1, queueCapacity);
+            return this;
+        }
+
+        public Builder<I, D, R> setDiscarder(Discarder<D> discarder) {
+            this.discarder = discarder;
+            return this;
+        }
+
+        public Builder<I, D, R> setProgressListener(ProgressListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public BatchPipeline<I, D, R> build() {
+            return new BatchPipeline<>(this);
+        }
+    }
+
+    private static final long POLL_MILLIS = 50;
+
+    private static final class Entry<I, T> {
+        final I item;
+        final T value;
+
+        Entry(I item, T value) {
+            this.item = item;
+            this.value = value;
+        }
+    }
+
+    private final Entry<I, D> endOfDecoded = new Entry<>(null, null);
+    private final Entry<I, R> endOfResults = new Entry<>(null, null);
+
+    private final Decoder<I, D> decoder;
+    private final Inference<D, R> inference;
+    private final Writer<I, R> writer;
+    private final BatchInference<D, R> batchInference;
+    private final int maxBatch;
+    private final Discarder<D> discarder;
+    private final ProgressListener listener;
+    private final int decodeThreads;
+    private final int inferenceThreads;
+    private final BlockingQueue<Entry<I, D>> decodedQueue;
+    private final BlockingQueue<Entry<I, R>> resultQueue;
+
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private final AtomicInteger decodersRemaining = new AtomicInteger();
+    private final AtomicInteger inferenceRemaining = new AtomicInteger();
+    private final AtomicInteger threadsRemaining = new AtomicInteger();
+    private final AtomicInteger decoded = new AtomicInteger();
+    private final AtomicInteger inferred = new AtomicInteger();
+    private final AtomicInteger written = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong inferenceBusyNanos = new AtomicLong();
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    private List<I> items;
+    private long startNanos;
+    private volatile long endNanos;
+    private volatile boolean cancelled;
+    private volatile boolean started;
+    private volatile boolean done;
+
+    private BatchPipeline(Builder<I, D, R> builder) {
+        this.decoder = builder.decoder;
+        this.inference = builder.inference;
+        this.writer = builder.writer;
+        this.batchInference = builder.batchInference;
+        this.maxBatch = builder.batchInference != null ? builder.maxBatch : 1;
+        this.discarder = builder.discarder;
+        this.listener = builder.listener;
+        this.decodeThreads = builder.decodeThreads;
+        this.inferenceThreads = builder.inferenceThreads;
+        this.decodedQueue = new ArrayBlockingQueue<>(builder.queueCapacity);
+        this.resultQueue = new ArrayBlockingQueue<>(builder.queueCapacity);
+    }
+
+    public int getInferenceThreads() {
+        return inferenceThreads;
+    }
+
+    public synchronized void start(List<I> items) {
+        if (started) {
+            throw new IllegalStateException("Pipeline already started");
+        }
+        started = true;
+        this.items = new ArrayList<>(items);
+        startNanos = System.nanoTime();
+
+        decodersRemaining.set(decodeThreads);
+        inferenceRemaining.set(inferenceThreads);
+        threadsRemaining.set(decodeThreads + inferenceThreads + 1);
+
+        publish();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < decodeThreads; i++) {
+            threads.add(new Thread(this::decodeLoop, "batch-decode-" + i));
+        }
+        for (int i = 0; i < inferenceThreads; i++) {
+            threads.add(new Thread(this::inferenceLoop, "batch-inference-" + i));
+        }
+        threads.add(new Thread(this::writeLoop, "batch-writer"));
+        for (Thread thread : threads) {
+            thread.start();
+        }
+    }
+
+    /** Stops handing out new items; items already in a stage finish or are discarded. */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    public BatchProgress snapshot() {
+        BatchProgress.State state;
+        long end;
+        if (done) {
+            state = cancelled ? BatchProgress.State.CANCELLED : BatchProgress.State.COMPLETED;
+            end = endNanos;
+        } else {
+            state = BatchProgress.State.RUNNING;
+            end = System.nanoTime();
+        }
+        int total = items == null ? 0 : items.size();
+        return new BatchProgress(state, total, decoded.get(), inferred.get(), written.get(), failed.get(),
+                started ? end - startNanos : 0, inferenceBusyNanos.get());
+    }
+
+    // --- stages ----------------------------------------------------------------------------
+
+    private void decodeLoop() {
+        try {
+            while (!cancelled) {
+                int index = nextIndex.getAndIncrement();
+                if (index >= items.size()) {
+                    break;
+                }
+                I item = items.get(index);
+                D value;
+                try {
+                    value = decoder.decode(item);
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    publish();
+                    continue;
+                }
+                if (!offer(decodedQueue, new Entry<>(item, value))) {
+                    discard(value);
+                    break;
+                }
+                decoded.incrementAndGet();
+            }
+        } finally {
+            if (decodersRemaining.decrementAndGet() == 0) {
+                for (int i = 0; i < inferenceThreads; i++) {
+                    offer(decodedQueue, endOfDecoded);
+                }
+            }
+            threadFinished();
+        }
+    }
+
+    private void inferenceLoop() {
+        List<Entry<I, D>> batch = new ArrayList<>(maxBatch);
+        List<D> values = new ArrayList<>(maxBatch);
+        boolean ended = false;
+        try {
+            while (!ended) {
+                Entry<I, D> entry = poll(decodedQueue);
+                if (entry == null || entry == endOfDecoded) {
+                    break;
+                }
+                batch.clear();
+                batch.add(entry);
+                // Takes whatever else is decoded already, without waiting for a full batch
+                while (batch.size() < maxBatch) {
+                    Entry<I, D> next = decodedQueue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == endOfDecoded) {
+                        ended = true;
+                        break;
+                    }
+                    batch.add(next);
+                }
+                values.clear();
+                for (Entry<I, D> taken : batch) {
+                    values.add(taken.value);
+                }
+                List<R> results;
+                long start = System.nanoTime();
+                try {
+                    results = infer(values);
+                } catch (Exception e) {
+                    failed.addAndGet(batch.size());
+                    publish();
+                    continue;
+                } finally {
+                    inferenceBusyNanos.addAndGet(System.nanoTime() - start);
+                    for (Entry<I, D> taken : batch) {
+                        discard(taken.value);
+                    }
+                }
+                inferred.addAndGet(batch.size());
+                boolean delivered = true;
+                for (int i = 0; i < batch.size() && delivered; i++) {
+                    delivered = offer(resultQueue, new Entry<>(batch.get(i).item, results.get(i)));
+                }
+                if (!delivered) {
+                    break;
+                }
+            }
+        } finally {
+            if (inferenceRemaining.decrementAndGet() == 0) {
+                offer(resultQueue, endOfResults);
+            }
+            threadFinished();
+        }
+    }
+
+    private List<R> infer(List<D> values) throws Exception {
+        if (batchInference == null) {
+            return Collections.singletonList(inference.infer(values.get(0)));
+        }
+        List<R> results = batchInference.inferAll(values);
+        if (results.size() != values.size()) {
+            throw new IllegalStateException(results.size() + " results for " + values.size() + " items");
+        }
+        return results;
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                Entry<I, R> entry = poll(resultQueue);
+                if (entry == null || entry == endOfResults) {
+                    break;
+                }
+                try {
+                    writer.write(entry.item, entry.value);
+                    written.incrementAndGet();
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                }
+                publish();
+            }
+        } finally {
+            threadFinished();
+        }
+    }
+
+    private void threadFinished() {
+        if (threadsRemaining.decrementAndGet() != 0) {
+            return;
+        }
+        // Last thread out releases anything stranded in the queues by a cancel
+        Entry<I, D> stranded;
+        while ((stranded = decodedQueue.poll()) != null) {
+            if (stranded != endOfDecoded) {
+                discard(stranded.value);
+            }
+        }
+        resultQueue.clear();
+        endNanos = System.nanoTime();
+        done = true;
+        publish();
+        finished.countDown();
+    }
+
+    // --- helpers ---------------------------------------------------------------------------
+
+    /** Blocks until there is room, giving up (and returning false) once cancelled. */
+    private <T> boolean offer(BlockingQueue<T> queue, T value) {
+        try {
+            while (!queue.offer(value, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (cancelled) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /** Blocks until an element arrives, returning null once cancelled. */
+    private <T> T poll(BlockingQueue<T> queue) {
+        try {
+            while (!cancelled) {
+                T value = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (value != null) {
+                    return value;
+                }
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private void discard(D value) {
+        if (discarder != null && value != null) {
+            discarder.discard(value);
+        }
+    }
+
+    private void publish() {
+        if (listener != null) {
+            listener.onProgress(snapshot());
+        }
+    }
+}
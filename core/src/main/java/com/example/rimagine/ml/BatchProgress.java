@@ -0,0 +1,85 @@
+package com.example.rimagine.ml;
+
+/**
+ * Immutable snapshot of a {@link BatchPipeline} run.
+ */
+public final class BatchProgress {
+
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        CANCELLED
+    }
+
+    private final State state;
+    private final int total;
+    private final int decoded;
+    private final int inferred;
+    private final int written;
+    private final int failed;
+    private final long elapsedNanos;
+    private final long inferenceBusyNanos;
+
+    public BatchProgress(State state, int total, int decoded, int inferred, int written, int failed,
+                         long elapsedNanos, long inferenceBusyNanos) {
+        this.state = state;
+        this.total = total;
+        this.decoded = decoded;
+        this.inferred = inferred;
+        this.written = written;
+        this.failed = failed;
+        this.elapsedNanos = elapsedNanos;
+        this.inferenceBusyNanos = inferenceBusyNanos;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isFinished() {
+        return state != State.RUNNING;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getDecoded() {
+        return decoded;
+    }
+
+    public int getInferred() {
+        return inferred;
+    }
+
+    public int getWritten() {
+        return written;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    /** Items that reached a final state, either written or failed. */
+    public int getCompleted() {
+        return written + failed;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public long getInferenceBusyNanos() {
+        return inferenceBusyNanos;
+    }
+
+    /**
+     * Fraction of wall time the inference stage spent running the model, per inference thread.
+     */
+    public float getInferenceUtilization(int inferenceThreads) {
+        if (elapsedNanos <= 0 || inferenceThreads <= 0) {
+            return 0f;
+        }
+        return Math.min(1f, inferenceBusyNanos / (float) (elapsedNanos * inferenceThreads));
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.rimagine.ml;
+
+import java.util.Locale;
+
+/**
+ * Picks how many inputs go into one interpreter call, so that a call stays within a latency
+ * budget.
+ *
+ * Bigger batches spread the per-call overhead over more images, but also hold the
+ * interpreter longer, and a photo the user is waiting for queues behind the whole call. The
+ * controller keeps a moving average of the cost per input, measured on the batches actually
+ * run, and sizes the next batch to fit the budget. It shrinks at once after a call that ran
+ * over and grows at most twofold per call, so one fast batch cannot send it to the cap.
+ * Thread-safe.
+ */
+public final class BatchSizeController {
+    private static final double SMOOTHING = 0.3;
+
+    private final int maxBatch;
+    private final long budgetNanos;
+    // Guarded by this
+    private int batchSize = 1;
+    private double perInputNanos = -1;
+
+    /**
+     * @param maxBatch    most inputs the caller can hold in one call
+     * @param budgetNanos longest a single call should take
+     */
+    public BatchSizeController(int maxBatch, long budgetNanos) {
+        if (maxBatch <= 0 || budgetNanos <= 0) {
+            throw new IllegalArgumentException("Invalid batch limits: " + maxBatch + ", " + budgetNanos + " ns");
+        }
+        this.maxBatch = maxBatch;
+        this.budgetNanos = budgetNanos;
+    }
+
+    public int getMaxBatch() {
+        return maxBatch;
+    }
+
+    public long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    /** Inputs to put into the next call; starts at one until a call has been measured. */
+    public synchronized int getBatchSize() {
+        return batchSize;
+    }
+
+    /** Smoothed cost of one input, or -1 before the first call. */
+    public synchronized double getPerInputNanos() {
+        return perInputNanos;
+    }
+
+    /** Records a call that ran {@code inputs} inputs in {@code nanos}. */
+    public synchronized void record(int inputs, long nanos) {
+        if (inputs <= 0) {
+            return;
+        }
+        double sample = nanos / (double) inputs;
+        perInputNanos = perInputNanos < 0 ? sample : perInputNanos + SMOOTHING * (sample - perInputNanos);
+        int fit = fit(perInputNanos);
+        if (nanos > budgetNanos) {
+            // The average lags behind a slowdown; the last call alone says how much fits now
+            batchSize = Math.min(fit, fit(sample));
+        } else {
+            batchSize = Math.min(fit, batchSize * 2);
+        }
+    }
+
+    private int fit(double nanosPerInput) {
+        if (nanosPerInput <= 0) {
+            return maxBatch;
+        }
+        return (int) Math.max(1, Math.min(maxBatch, Math.floor(budgetNanos / nanosPerInput)));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "batch %d of %d, %.1f ms/input, budget %d ms",
+                batchSize, maxBatch, perInputNanos / 1e6, budgetNanos / 1_000_000);
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.rimagine.ml;
+
+/**
+ * Decode-size arithmetic shared by the image decoders, kept free of Android types.
+ */
+public final class BitmapSampling {
+
+    private BitmapSampling() {
+    }
+
+    /**
+     * Largest power-of-two {@code inSampleSize} that still leaves both sides at least as large
+     * as requested, so the model never sees an upscaled image.
+     */
+    public static int inSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int sampleSize = 1;
+        if (reqWidth <= 0 || reqHeight <= 0) {
+            return sampleSize;
+        }
+        while (width / (sampleSize * 2) >= reqWidth && height / (sampleSize * 2) >= reqHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /** EXIF orientations 5 to 8 (transpose, rotate 90, transverse, rotate 270) swap width and height. */
+    public static boolean swapsAxes(int exifOrientation) {
+        return exifOrientation >= 5 && exifOrientation <= 8;
+    }
+
+    /**
+     * Maps the rectangle {@code [left, right) x [top, bottom)} of the upright image to the
+     * pixels of the image as stored, which is {@code storedWidth x storedHeight} and shown after
+     * applying {@code exifOrientation}. Writes left, top, right, bottom into {@code out}.
+     */
+    public static void storedRegion(int exifOrientation, int storedWidth, int storedHeight,
+                                    int left, int top, int right, int bottom, int[] out) {
+        int x0;
+        int y0;
+        int x1;
+        int y1;
+        switch (exifOrientation) {
+            case 2: // Flip horizontal
+                x0 = storedWidth - left;
+                x1 = storedWidth - right;
+                y0 = top;
+                y1 = bottom;
+                break;
+            case 3: // Rotate 180
+                x0 = storedWidth - left;
+                x1 = storedWidth - right;
+                y0 = storedHeight - top;
+                y1 = storedHeight - bottom;
+                break;
+            case 4: // Flip vertical
+                x0 = left;
+                x1 = right;
+                y0 = storedHeight - top;
+                y1 = storedHeight - bottom;
+                break;
+            case 5: // Transpose
+                x0 = top;
+                x1 = bottom;
+                y0 = left;
+                y1 = right;
+                break;
+            case 6: // Rotate 90
+                x0 = top;
+                x1 = bottom;
+                y0 = storedHeight - left;
+                y1 = storedHeight - right;
+                break;
+            case 7: // Transverse
+                x0 = storedWidth - top;
+                x1 = storedWidth - bottom;
+                y0 = storedHeight - left;
+                y1 = storedHeight - right;
+                break;
+            case 8: // Rotate 270
+                x0 = storedWidth - top;
+                x1 = storedWidth - bottom;
+                y0 = left;
+                y1 = right;
+                break;
+            default:
+                x0 = left;
+                x1 = right;
+                y0 = top;
+                y1 = bottom;
+                break;
+        }
+        out[0] = Math.min(x0, x1);
+        out[1] = Math.min(y0, y1);
+        out[2] = Math.max(x0, x1);
+        out[3] = Math.max(y0, y1);
+    }
+}
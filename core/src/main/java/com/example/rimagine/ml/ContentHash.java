@@ -0,0 +1,59 @@
+package com.example.rimagine.ml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 fingerprints of images and models, as lowercase hex.
+ *
+ * Identifies content rather than a path or URI, so the same photo picked twice, or through a
+ * different provider, gets the same key.
+ */
+public final class ContentHash {
+    private static final int CHUNK = 64 * 1024;
+
+    private ContentHash() {
+    }
+
+    /** Hashes {@code buffer} from its start to its limit, whatever its position, without moving it. */
+    public static String of(ByteBuffer buffer) {
+        MessageDigest digest = sha256();
+        ByteBuffer view = buffer.duplicate();
+        view.rewind();
+        digest.update(view);
+        return hex(digest.digest());
+    }
+
+    /** Hashes {@code in} to its end; the caller closes it. */
+    public static String of(InputStream in) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] chunk = new byte[CHUNK];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            digest.update(chunk, 0, read);
+        }
+        return hex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java and Android runtime is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[i * 2] = digits[(bytes[i] >> 4) & 0xF];
+            out[i * 2 + 1] = digits[bytes[i] & 0xF];
+        }
+        return new String(out);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.rimagine.ml;
+
+/**
+ * Axis-aligned mapping from one image space to another: {@code x' = x * scaleX + offsetX}.
+ *
+ * Used to take boxes found on a downsampled or padded model input back to the pixels of the
+ * image the user actually picked.
+ */
+public final class CoordinateTransform {
+    private final float scaleX;
+    private final float scaleY;
+    private final float offsetX;
+    private final float offsetY;
+    private final int targetWidth;
+    private final int targetHeight;
+
+    public CoordinateTransform(float scaleX, float scaleY, float offsetX, float offsetY,
+                               int targetWidth, int targetHeight) {
+        this.scaleX = scaleX;
+        this.scaleY = scaleY;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+    }
+
+    public static CoordinateTransform identity(int width, int height) {
+        return new CoordinateTransform(1f, 1f, 0f, 0f, width, height);
+    }
+
+    /** Stretches a {@code fromWidth x fromHeight} image onto {@code toWidth x toHeight}. */
+    public static CoordinateTransform scale(int fromWidth, int fromHeight, int toWidth, int toHeight) {
+        return new CoordinateTransform(toWidth / (float) fromWidth, toHeight / (float) fromHeight,
+                0f, 0f, toWidth, toHeight);
+    }
+
+    public float mapX(float x) {
+        return x * scaleX + offsetX;
+    }
+
+    public float mapY(float y) {
+        return y * scaleY + offsetY;
+    }
+
+    /** Applies this transform, then {@code next}. */
+    public CoordinateTransform then(CoordinateTransform next) {
+        return new CoordinateTransform(scaleX * next.scaleX, scaleY * next.scaleY,
+                offsetX * next.scaleX + next.offsetX, offsetY * next.scaleY + next.offsetY,
+                next.targetWidth, next.targetHeight);
+    }
+
+    public boolean isIdentity() {
+        return scaleX == 1f && scaleY == 1f && offsetX == 0f && offsetY == 0f;
+    }
+
+    public float getScaleX() {
+        return scaleX;
+    }
+
+    public float getScaleY() {
+        return scaleY;
+    }
+
+    public float getOffsetX() {
+        return offsetX;
+    }
+
+    public float getOffsetY() {
+        return offsetY;
+    }
+
+    public int getTargetWidth() {
+        return targetWidth;
+    }
+
+    public int getTargetHeight() {
+        return targetHeight;
+    }
+}
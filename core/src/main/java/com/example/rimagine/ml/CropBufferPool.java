@@ -0,0 +1,81 @@
+package com.example.rimagine.ml;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Idle crop buffers kept between runs, keyed by the input shape they were made for.
+ *
+ * A pipeline run takes one buffer per crop shape and gives it back when done, so steady-state
+ * runs reuse the same tensors and scratch bitmaps; concurrent runs get buffers of their own.
+ * At most {@code maxIdlePerKey} buffers of a shape are kept, extra ones are released.
+ */
+public final class CropBufferPool<T> {
+
+    public interface Factory<T> {
+        T create();
+    }
+
+    private final int maxIdlePerKey;
+    private final ResourcePool.Releaser<T> releaser;
+    // Guarded by this
+    private final Map<String, ArrayDeque<T>> idle = new HashMap<>();
+    private boolean closed;
+
+    public CropBufferPool(int maxIdlePerKey, ResourcePool.Releaser<T> releaser) {
+        this.maxIdlePerKey = Math.max(1, maxIdlePerKey);
+        this.releaser = releaser;
+    }
+
+    /** An idle buffer for {@code key}, or a new one from {@code factory}. */
+    public T acquire(String key, Factory<T> factory) {
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Crop buffer pool is closed");
+            }
+            ArrayDeque<T> buffers = idle.get(key);
+            if (buffers != null && !buffers.isEmpty()) {
+                return buffers.pop();
+            }
+        }
+        return factory.create();
+    }
+
+    public void release(String key, T buffer) {
+        synchronized (this) {
+            if (!closed) {
+                ArrayDeque<T> buffers = idle.get(key);
+                if (buffers == null) {
+                    buffers = new ArrayDeque<>();
+                    idle.put(key, buffers);
+                }
+                if (buffers.size() < maxIdlePerKey) {
+                    buffers.push(buffer);
+                    return;
+                }
+            }
+        }
+        releaser.release(buffer);
+    }
+
+    public synchronized int idleCount(String key) {
+        ArrayDeque<T> buffers = idle.get(key);
+        return buffers != null ? buffers.size() : 0;
+    }
+
+    /** Releases every idle buffer; buffers still in use are released when given back. */
+    public void close() {
+        Map<String, ArrayDeque<T>> dropped;
+        synchronized (this) {
+            closed = true;
+            dropped = new HashMap<>(idle);
+            idle.clear();
+        }
+        for (ArrayDeque<T> buffers : dropped.values()) {
+            for (T buffer : buffers) {
+                releaser.release(buffer);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.rimagine.ml;
+
+/**
+ * How an interpreter executes: which backend and, for the CPU backends, how many threads.
+ */
+public final class DelegateConfig {
+
+    public enum Accelerator {
+        /** Builtin TFLite kernels, XNNPACK disabled. */
+        CPU,
+        XNNPACK,
+        NNAPI,
+        GPU
+    }
+
+    private final Accelerator accelerator;
+    private final int numThreads;
+
+    private DelegateConfig(Accelerator accelerator, int numThreads) {
+        this.accelerator = accelerator;
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * @param numThreads CPU threads, or 0 to keep the TFLite default
+     */
+    public static DelegateConfig of(Accelerator accelerator, int numThreads) {
+        if (numThreads < 0) {
+            throw new IllegalArgumentException("numThreads must not be negative: " + numThreads);
+        }
+        return new DelegateConfig(accelerator, numThreads);
+    }
+
+    public static DelegateConfig cpu(int numThreads) {
+        return of(Accelerator.CPU, numThreads);
+    }
+
+    public static DelegateConfig xnnpack(int numThreads) {
+        return of(Accelerator.XNNPACK, numThreads);
+    }
+
+    public Accelerator getAccelerator() {
+        return accelerator;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /** True for configurations that never leave the CPU and are therefore always available. */
+    public boolean isCpuOnly() {
+        return accelerator == Accelerator.CPU || accelerator == Accelerator.XNNPACK;
+    }
+
+    /** Same backend with a different thread count. */
+    public DelegateConfig withThreads(int numThreads) {
+        return of(accelerator, numThreads);
+    }
+
+    public String encode() {
+        return accelerator.name() + ":" + numThreads;
+    }
+
+    /** Parses {@link #encode()} output; returns null for anything it does not recognise. */
+    public static DelegateConfig decode(String encoded) {
+        if (encoded == null) {
+            return null;
+        }
+        int colon = encoded.indexOf(':');
+        if (colon < 0) {
+            return null;
+        }
+        try {
+            return of(Accelerator.valueOf(encoded.substring(0, colon)),
+                    Integer.parseInt(encoded.substring(colon + 1)));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DelegateConfig)) {
+            return false;
+        }
+        DelegateConfig other = (DelegateConfig) o;
+        return accelerator == other.accelerator && numThreads == other.numThreads;
+    }
+
+    @Override
+    public int hashCode() {
+        return accelerator.hashCode() * 31 + numThreads;
+    }
+
+    @Override
+    public String toString() {
+        return numThreads > 0 ? accelerator + "x" + numThreads : accelerator.toString();
+    }
+}
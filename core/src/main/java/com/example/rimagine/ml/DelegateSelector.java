@@ -0,0 +1,129 @@
+package com.example.rimagine.ml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Picks the fastest {@link DelegateConfig} for this device by timing each candidate.
+ *
+ * Candidates that fail to initialise or run are skipped, so a broken accelerator driver only
+ * costs a failed trial. The CPU variants are always candidates, which makes calibration work
+ * on devices without any accelerator.
+ */
+public final class DelegateSelector {
+
+    /** Runs the model under {@code config} and returns a representative latency. */
+    public interface Trial {
+        long measureNanos(DelegateConfig config) throws Exception;
+    }
+
+    public static final class Calibration {
+        private final DelegateConfig best;
+        private final DelegateConfig bestCpu;
+        private final Map<DelegateConfig, Long> timings;
+
+        public Calibration(DelegateConfig best, DelegateConfig bestCpu, Map<DelegateConfig, Long> timings) {
+            this.best = best;
+            this.bestCpu = bestCpu;
+            this.timings = Collections.unmodifiableMap(new LinkedHashMap<>(timings));
+        }
+
+        /** Fastest configuration overall, for a single latency-bound interpreter. */
+        public DelegateConfig getBest() {
+            return best;
+        }
+
+        /** Fastest CPU-only configuration, for pools of interpreters that share the cores. */
+        public DelegateConfig getBestCpu() {
+            return bestCpu;
+        }
+
+        /** Measured latency per candidate that ran successfully, in trial order. */
+        public Map<DelegateConfig, Long> getTimings() {
+            return timings;
+        }
+    }
+
+    private DelegateSelector() {
+    }
+
+    /** Used when nothing could be measured. */
+    public static DelegateConfig fallback(int cores) {
+        return DelegateConfig.xnnpack(Math.max(1, Math.min(4, cores)));
+    }
+
+    /**
+     * CPU with and without XNNPACK at 1, 2, 4 and all cores, plus NNAPI and GPU when the
+     * device reports them.
+     */
+    public static List<DelegateConfig> candidates(int cores, boolean nnapiAvailable, boolean gpuAvailable) {
+        Set<Integer> threadCounts = new LinkedHashSet<>();
+        for (int threads : Arrays.asList(1, 2, 4, cores)) {
+            if (threads >= 1 && threads <= Math.max(1, cores)) {
+                threadCounts.add(threads);
+            }
+        }
+        List<DelegateConfig> candidates = new ArrayList<>();
+        for (int threads : threadCounts) {
+            candidates.add(DelegateConfig.xnnpack(threads));
+        }
+        for (int threads : threadCounts) {
+            candidates.add(DelegateConfig.cpu(threads));
+        }
+        if (nnapiAvailable) {
+            candidates.add(DelegateConfig.of(DelegateConfig.Accelerator.NNAPI, 0));
+        }
+        if (gpuAvailable) {
+            candidates.add(DelegateConfig.of(DelegateConfig.Accelerator.GPU, 0));
+        }
+        return candidates;
+    }
+
+    public static Calibration calibrate(List<DelegateConfig> candidates, Trial trial, int cores) {
+        Map<DelegateConfig, Long> timings = new LinkedHashMap<>();
+        DelegateConfig best = null;
+        DelegateConfig bestCpu = null;
+        for (DelegateConfig candidate : candidates) {
+            long nanos;
+            try {
+                nanos = trial.measureNanos(candidate);
+            } catch (Exception e) {
+                continue;
+            }
+            if (nanos <= 0) {
+                continue;
+            }
+            timings.put(candidate, nanos);
+            if (best == null || nanos < timings.get(best)) {
+                best = candidate;
+            }
+            if (candidate.isCpuOnly() && (bestCpu == null || nanos < timings.get(bestCpu))) {
+                bestCpu = candidate;
+            }
+        }
+        DelegateConfig fallback = fallback(cores);
+        if (bestCpu == null) {
+            bestCpu = fallback;
+        }
+        if (best == null) {
+            best = bestCpu;
+        }
+        return new Calibration(best, bestCpu, timings);
+    }
+
+    /** Median of the samples; sorts {@code samples} in place. */
+    public static long median(long[] samples) {
+        if (samples.length == 0) {
+            return 0;
+        }
+        Arrays.sort(samples);
+        int mid = samples.length / 2;
+        return samples.length % 2 == 1 ? samples[mid] : (samples[mid - 1] + samples[mid]) / 2;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.rimagine.ml;
+
+import java.util.Arrays;
+
+/**
+ * Growable structure-of-arrays holding detected boxes in corner form.
+ *
+ * Reused between frames: {@link #clear()} resets the size but keeps the arrays,
+ * so once the capacity has grown to the busiest frame no further allocation happens.
+ */
+public final class DetectionBuffer {
+    private static final int DEFAULT_CAPACITY = 64;
+
+    float[] left;
+    float[] top;
+    float[] right;
+    float[] bottom;
+    float[] score;
+    int[] classId;
+    int size;
+
+    public DetectionBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public DetectionBuffer(int capacity) {
+        capacity = Math.max(1, capacity);
+        left = new float[capacity];
+        top = new float[capacity];
+        right = new float[capacity];
+        bottom = new float[capacity];
+        score = new float[capacity];
+        classId = new int[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public float left(int i) {
+        return left[i];
+    }
+
+    public float top(int i) {
+        return top[i];
+    }
+
+    public float right(int i) {
+        return right[i];
+    }
+
+    public float bottom(int i) {
+        return bottom[i];
+    }
+
+    public float score(int i) {
+        return score[i];
+    }
+
+    public int classId(int i) {
+        return classId[i];
+    }
+
+    public void add(float left, float top, float right, float bottom, float score, int classId) {
+        if (size == this.left.length) {
+            ensureCapacity(size * 2);
+        }
+        this.left[size] = left;
+        this.top[size] = top;
+        this.right[size] = right;
+        this.bottom[size] = bottom;
+        this.score[size] = score;
+        this.classId[size] = classId;
+        size++;
+    }
+
+    /**
+     * Clamps every box to {@code [0, width] x [0, height]}.
+     *
+     * @return the number of boxes
+     */
+    public int clampTo(float width, float height) {
+        for (int i = 0; i < size; i++) {
+            left[i] = Math.max(0f, Math.min(left[i], width));
+            top[i] = Math.max(0f, Math.min(top[i], height));
+            right[i] = Math.max(0f, Math.min(right[i], width));
+            bottom[i] = Math.max(0f, Math.min(bottom[i], height));
+        }
+        return size;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity <= left.length) {
+            return;
+        }
+        left = Arrays.copyOf(left, capacity);
+        top = Arrays.copyOf(top, capacity);
+        right = Arrays.copyOf(right, capacity);
+        bottom = Arrays.copyOf(bottom, capacity);
+        score = Arrays.copyOf(score, capacity);
+        classId = Arrays.copyOf(classId, capacity);
+    }
+}
@@ -0,0 +1,279 @@
+package com.example.rimagine.ml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Detections of already-processed images, keyed by image content, model version and
+ * post-processing settings, so picking the same photo again skips decoding and inference.
+ *
+ * A small in-memory LRU sits in front of a directory of compact binary files. Both tiers are
+ * bounded in bytes and drop the least recently used entries first; the disk tier's recency
+ * survives restarts through the files' modification times. Disk reads and writes happen under
+ * the cache lock, which is fine for entries of a few hundred bytes but means {@link #get} and
+ * {@link #put} must not be called from the main thread.
+ */
+public final class DetectionCache {
+    /** Mode for one pass over the whole image; tiled runs use their {@link TiledInferenceConfig}. */
+    public static final String SINGLE_PASS = "single";
+
+    private static final String SUFFIX = ".det";
+    private static final String PARTIAL_SUFFIX = ".partial";
+    private static final int FORMAT_VERSION = 1;
+    /** Rough heap cost of a result besides its boxes and labels. */
+    private static final int RESULT_OVERHEAD = 128;
+
+    private final File dir;
+    private final long maxMemoryBytes;
+    private final long maxDiskBytes;
+    private final LinkedHashMap<String, DetectionResult> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes;
+    private boolean diskIndexed;
+    private int memoryHits;
+    private int diskHits;
+    private int misses;
+
+    public DetectionCache(File dir, long maxMemoryBytes, long maxDiskBytes) {
+        if (maxMemoryBytes < 0 || maxDiskBytes < 0) {
+            throw new IllegalArgumentException("Cache limits must not be negative");
+        }
+        this.dir = dir;
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.maxDiskBytes = maxDiskBytes;
+    }
+
+    /**
+     * Cache key for an image with {@link ContentHash} {@code contentHash}, processed by
+     * {@code modelVersion} with the given post-processing {@code settings}.
+     */
+    public static String key(String contentHash, String modelVersion, String settings) {
+        String identity = contentHash + "|" + modelVersion + "|" + settings;
+        return ContentHash.of(ByteBuffer.wrap(identity.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** The cached result for {@code key}, or null. A disk hit is promoted to memory. */
+    public synchronized DetectionResult get(String key) {
+        DetectionResult cached = memory.get(key);
+        if (cached != null) {
+            memoryHits++;
+            return cached;
+        }
+        indexDisk();
+        if (disk.get(key) != null) {
+            File file = fileFor(key);
+            try {
+                cached = read(file);
+                file.setLastModified(System.currentTimeMillis());
+                putInMemory(key, cached);
+                diskHits++;
+                return cached;
+            } catch (IOException e) {
+                // Truncated or from an older format: drop it and recompute
+                removeFromDisk(key);
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    /** Caches a successful result in both tiers; errors are never cached. */
+    public synchronized void put(String key, DetectionResult result) throws IOException {
+        if (!result.isSuccess()) {
+            return;
+        }
+        putInMemory(key, result);
+        indexDisk();
+        File file = fileFor(key);
+        File partial = new File(dir, key + PARTIAL_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(partial)))) {
+            write(result, out);
+        } catch (IOException e) {
+            partial.delete();
+            throw e;
+        }
+        if (!partial.renameTo(file)) {
+            partial.delete();
+            throw new IOException("Could not move cache entry into place");
+        }
+        Long previous = disk.put(key, file.length());
+        diskBytes += file.length() - (previous != null ? previous : 0L);
+        trimDisk();
+    }
+
+    /** Drops the memory tier, keeping the disk tier. */
+    public synchronized void trimMemory() {
+        memory.clear();
+        memoryBytes = 0;
+    }
+
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public synchronized long getDiskBytes() {
+        indexDisk();
+        return diskBytes;
+    }
+
+    public synchronized int getMemoryHits() {
+        return memoryHits;
+    }
+
+    public synchronized int getDiskHits() {
+        return diskHits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    private void putInMemory(String key, DetectionResult result) {
+        DetectionResult previous = memory.put(key, result);
+        memoryBytes += weight(result) - (previous != null ? weight(previous) : 0L);
+        Iterator<Map.Entry<String, DetectionResult>> eldest = memory.entrySet().iterator();
+        while (memoryBytes > maxMemoryBytes && eldest.hasNext()) {
+            memoryBytes -= weight(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    /** Builds the disk index on first use, least recently used first. */
+    private void indexDisk() {
+        if (diskIndexed) {
+            return;
+        }
+        diskIndexed = true;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            return;
+        }
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<File> entries = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().endsWith(SUFFIX)) {
+                entries.add(file);
+            } else if (file.getName().endsWith(PARTIAL_SUFFIX)) {
+                file.delete();
+            }
+        }
+        entries.sort(Comparator.comparingLong(File::lastModified));
+        for (File file : entries) {
+            String name = file.getName();
+            disk.put(name.substring(0, name.length() - SUFFIX.length()), file.length());
+            diskBytes += file.length();
+        }
+        trimDisk();
+    }
+
+    private void trimDisk() {
+        Iterator<Map.Entry<String, Long>> eldest = disk.entrySet().iterator();
+        while (diskBytes > maxDiskBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            fileFor(entry.getKey()).delete();
+            diskBytes -= entry.getValue();
+            eldest.remove();
+        }
+    }
+
+    private void removeFromDisk(String key) {
+        Long size = disk.remove(key);
+        if (size != null) {
+            diskBytes -= size;
+        }
+        fileFor(key).delete();
+    }
+
+    private File fileFor(String key) {
+        return new File(dir, key + SUFFIX);
+    }
+
+    private static long weight(DetectionResult result) {
+        long bytes = RESULT_OVERHEAD + result.size() * 24L;
+        for (int i = 0; i < result.size(); i++) {
+            bytes += 2L * result.getLabel(i).length();
+        }
+        return bytes;
+    }
+
+    static void write(DetectionResult result, DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(result.getImageWidth());
+        out.writeInt(result.getImageHeight());
+        out.writeLong(result.getPreprocessNanos());
+        out.writeLong(result.getInferenceNanos());
+        out.writeLong(result.getPostprocessNanos());
+        // Only the labels the detections use, indexed by class id
+        String[] labels = new String[0];
+        for (int i = 0; i < result.size(); i++) {
+            int classId = result.getClassId(i);
+            if (classId >= labels.length) {
+                labels = Arrays.copyOf(labels, classId + 1);
+            }
+            labels[classId] = result.getLabel(i);
+        }
+        out.writeInt(labels.length);
+        for (String label : labels) {
+            out.writeUTF(label != null ? label : "");
+        }
+        out.writeInt(result.size());
+        for (int i = 0; i < result.size(); i++) {
+            out.writeFloat(result.getLeft(i));
+            out.writeFloat(result.getTop(i));
+            out.writeFloat(result.getRight(i));
+            out.writeFloat(result.getBottom(i));
+            out.writeFloat(result.getScore(i));
+            out.writeInt(result.getClassId(i));
+        }
+    }
+
+    static DetectionResult read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unknown cache format in " + file.getName());
+            }
+            int width = in.readInt();
+            int height = in.readInt();
+            long preprocessNanos = in.readLong();
+            long inferenceNanos = in.readLong();
+            long postprocessNanos = in.readLong();
+            int labelCount = in.readInt();
+            if (labelCount < 0) {
+                throw new IOException("Corrupt cache entry " + file.getName());
+            }
+            String[] labels = new String[labelCount];
+            for (int i = 0; i < labels.length; i++) {
+                labels[i] = in.readUTF();
+            }
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IOException("Corrupt cache entry " + file.getName());
+            }
+            DetectionBuffer boxes = new DetectionBuffer(count);
+            for (int i = 0; i < count; i++) {
+                boxes.add(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat(),
+                        in.readInt());
+            }
+            return DetectionResult.of(boxes, labels, width, height, preprocessNanos, inferenceNanos,
+                    postprocessNanos);
+        }
+    }
+}
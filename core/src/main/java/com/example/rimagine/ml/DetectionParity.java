@@ -0,0 +1,124 @@
+package com.example.rimagine.ml;
+
+import java.util.Locale;
+
+/**
+ * Compares the detections of a model variant against a reference run on the same image.
+ *
+ * Reference boxes are matched greedily, highest score first, to the unmatched candidate of the
+ * same class with the highest IoU above the threshold. Counts add up across images with
+ * {@link #plus(DetectionParity)}, so one instance can summarise a whole image set.
+ */
+public final class DetectionParity {
+    private final int matched;
+    private final int missed;
+    private final int extra;
+    private final float maxScoreDelta;
+    private final float minMatchedIou;
+
+    private DetectionParity(int matched, int missed, int extra, float maxScoreDelta, float minMatchedIou) {
+        this.matched = matched;
+        this.missed = missed;
+        this.extra = extra;
+        this.maxScoreDelta = maxScoreDelta;
+        this.minMatchedIou = minMatchedIou;
+    }
+
+    public static DetectionParity empty() {
+        return new DetectionParity(0, 0, 0, 0f, 1f);
+    }
+
+    public static DetectionParity compare(DetectionResult reference, DetectionResult candidate, float iouThreshold) {
+        int n = reference.size();
+        int m = candidate.size();
+        boolean[] referenceDone = new boolean[n];
+        boolean[] candidateTaken = new boolean[m];
+        int matched = 0;
+        float maxScoreDelta = 0f;
+        float minMatchedIou = 1f;
+
+        for (int step = 0; step < n; step++) {
+            int r = -1;
+            for (int i = 0; i < n; i++) {
+                if (!referenceDone[i] && (r < 0 || reference.getScore(i) > reference.getScore(r))) {
+                    r = i;
+                }
+            }
+            referenceDone[r] = true;
+
+            int bestCandidate = -1;
+            float bestIou = iouThreshold;
+            for (int j = 0; j < m; j++) {
+                if (candidateTaken[j] || candidate.getClassId(j) != reference.getClassId(r)) {
+                    continue;
+                }
+                float iou = iou(reference, r, candidate, j);
+                if (iou >= bestIou) {
+                    bestIou = iou;
+                    bestCandidate = j;
+                }
+            }
+            if (bestCandidate >= 0) {
+                candidateTaken[bestCandidate] = true;
+                matched++;
+                maxScoreDelta = Math.max(maxScoreDelta,
+                        Math.abs(reference.getScore(r) - candidate.getScore(bestCandidate)));
+                minMatchedIou = Math.min(minMatchedIou, bestIou);
+            }
+        }
+        return new DetectionParity(matched, n - matched, m - matched, maxScoreDelta, minMatchedIou);
+    }
+
+    public DetectionParity plus(DetectionParity other) {
+        return new DetectionParity(matched + other.matched, missed + other.missed, extra + other.extra,
+                Math.max(maxScoreDelta, other.maxScoreDelta), Math.min(minMatchedIou, other.minMatchedIou));
+    }
+
+    private static float iou(DetectionResult a, int i, DetectionResult b, int j) {
+        float left = Math.max(a.getLeft(i), b.getLeft(j));
+        float top = Math.max(a.getTop(i), b.getTop(j));
+        float right = Math.min(a.getRight(i), b.getRight(j));
+        float bottom = Math.min(a.getBottom(i), b.getBottom(j));
+        float intersection = Math.max(0f, right - left) * Math.max(0f, bottom - top);
+        float areaA = (a.getRight(i) - a.getLeft(i)) * (a.getBottom(i) - a.getTop(i));
+        float areaB = (b.getRight(j) - b.getLeft(j)) * (b.getBottom(j) - b.getTop(j));
+        float union = areaA + areaB - intersection;
+        return union > 0f ? intersection / union : 0f;
+    }
+
+    /** Reference detections the candidate found. */
+    public int getMatched() {
+        return matched;
+    }
+
+    /** Reference detections the candidate did not find. */
+    public int getMissed() {
+        return missed;
+    }
+
+    /** Candidate detections with no reference counterpart. */
+    public int getExtra() {
+        return extra;
+    }
+
+    public float getMaxScoreDelta() {
+        return maxScoreDelta;
+    }
+
+    /** Lowest IoU among matched pairs; 1 when nothing matched. */
+    public float getMinMatchedIou() {
+        return minMatchedIou;
+    }
+
+    /** Fraction of reference detections the candidate reproduced; 1 when the reference is empty. */
+    public float getRecall() {
+        int total = matched + missed;
+        return total == 0 ? 1f : matched / (float) total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "matched=%d missed=%d extra=%d recall=%.3f maxScoreDelta=%.3f minIoU=%.3f",
+                matched, missed, extra, getRecall(), maxScoreDelta, minMatchedIou);
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.rimagine.ml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of stored images, newest first, for {@link DetectionStore#queryImages}.
+ *
+ * Paging is by keyset: the next page starts strictly after the last entry's
+ * {@code (created_at, id)}, so it costs one index seek however deep the user scrolls and
+ * is not thrown off by rows inserted meanwhile.
+ */
+public final class DetectionQuery {
+    public static final int ANY_CLASS = -1;
+
+    private final int classId;
+    private final float minScore;
+    private final int limit;
+    private final long beforeCreatedAt;
+    private final long beforeId;
+
+    private DetectionQuery(int classId, float minScore, int limit, long beforeCreatedAt, long beforeId) {
+        this.classId = classId;
+        this.minScore = minScore;
+        this.limit = limit;
+        this.beforeCreatedAt = beforeCreatedAt;
+        this.beforeId = beforeId;
+    }
+
+    /** First page with every image. */
+    public static DetectionQuery all(int limit) {
+        return new Builder().setLimit(limit).build();
+    }
+
+    /** The page after the one that ended with the image {@code lastId}, created at {@code lastCreatedAt}. */
+    public DetectionQuery after(long lastCreatedAt, long lastId) {
+        return new DetectionQuery(classId, minScore, limit, lastCreatedAt, lastId);
+    }
+
+    public boolean isFirstPage() {
+        return beforeId == Long.MAX_VALUE;
+    }
+
+    public int getClassId() {
+        return classId;
+    }
+
+    public float getMinScore() {
+        return minScore;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /** SQL condition on the {@code images} table; the arguments come from {@link #selectionArgs()}. */
+    String selection() {
+        StringBuilder where = new StringBuilder();
+        if (classId != ANY_CLASS) {
+            // Served by the (class_id, score) index on detections
+            where.append("_id IN (SELECT image_id FROM detections WHERE class_id = ? AND score >= ?)");
+        } else if (minScore > 0f) {
+            where.append("best_score >= ?");
+        }
+        if (!isFirstPage()) {
+            if (where.length() > 0) {
+                where.append(" AND ");
+            }
+            where.append("(created_at < ? OR (created_at = ? AND _id < ?))");
+        }
+        return where.length() > 0 ? where.toString() : null;
+    }
+
+    String[] selectionArgs() {
+        List<String> args = new ArrayList<>();
+        if (classId != ANY_CLASS) {
+            args.add(Integer.toString(classId));
+            args.add(Float.toString(minScore));
+        } else if (minScore > 0f) {
+            args.add(Float.toString(minScore));
+        }
+        if (!isFirstPage()) {
+            args.add(Long.toString(beforeCreatedAt));
+            args.add(Long.toString(beforeCreatedAt));
+            args.add(Long.toString(beforeId));
+        }
+        return args.isEmpty() ? null : args.toArray(new String[0]);
+    }
+
+    public static final class Builder {
+        private int classId = ANY_CLASS;
+        private float minScore = 0f;
+        private int limit = 50;
+
+        /** Only images with at least one detection of {@code classId}; {@link #ANY_CLASS} for all. */
+        public Builder setClassId(int classId) {
+            this.classId = classId < 0 ? ANY_CLASS : classId;
+            return this;
+        }
+
+        /** Only images with a detection (of the chosen class) scoring at least {@code minScore}. */
+        public Builder setMinScore(float minScore) {
+            this.minScore = Math.max(0f, minScore);
+            return this;
+        }
+
+        public Builder setLimit(int limit) {
+            this.limit = Math.max(1, limit);
+            return this;
+        }
+
+        public DetectionQuery build() {
+            return new DetectionQuery(classId, minScore, limit, Long.MAX_VALUE, Long.MAX_VALUE);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.rimagine.ml;
+
+import java.util.Arrays;
+
+/**
+ * Immutable result of one inference call: boxes in source-image pixels, scores,
+ * class ids and per-stage timings. Results from an {@link ObjectTracker} also carry a
+ * track id per box.
+ */
+public final class DetectionResult {
+    private final String errorMessage;
+    private final int imageWidth;
+    private final int imageHeight;
+    private final int count;
+    private final float[] boxes; // left, top, right, bottom per detection
+    private final float[] scores;
+    private final int[] classIds;
+    private final String[] labels;
+    private final int[] trackIds; // null when not tracked
+    private final long preprocessNanos;
+    private final long inferenceNanos;
+    private final long postprocessNanos;
+
+    private DetectionResult(String errorMessage, int imageWidth, int imageHeight, int count,
+                            float[] boxes, float[] scores, int[] classIds, String[] labels, int[] trackIds,
+                            long preprocessNanos, long inferenceNanos, long postprocessNanos) {
+        this.errorMessage = errorMessage;
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        this.count = count;
+        this.boxes = boxes;
+        this.scores = scores;
+        this.classIds = classIds;
+        this.labels = labels;
+        this.trackIds = trackIds;
+        this.preprocessNanos = preprocessNanos;
+        this.inferenceNanos = inferenceNanos;
+        this.postprocessNanos = postprocessNanos;
+    }
+
+    /**
+     * Copies the first {@code detections.size()} entries so the buffer can be reused.
+     */
+    public static DetectionResult of(DetectionBuffer detections, String[] labels,
+                                     int imageWidth, int imageHeight,
+                                     long preprocessNanos, long inferenceNanos, long postprocessNanos) {
+        int n = detections.size();
+        float[] boxes = new float[n * 4];
+        for (int i = 0; i < n; i++) {
+            boxes[i * 4] = detections.left(i);
+            boxes[i * 4 + 1] = detections.top(i);
+            boxes[i * 4 + 2] = detections.right(i);
+            boxes[i * 4 + 3] = detections.bottom(i);
+        }
+        return new DetectionResult(null, imageWidth, imageHeight, n, boxes,
+                Arrays.copyOf(detections.score, n), Arrays.copyOf(detections.classId, n), labels, null,
+                preprocessNanos, inferenceNanos, postprocessNanos);
+    }
+
+    /**
+     * Tracked boxes, labelled and sized like {@code source}. {@code trackIds} must hold one id
+     * per box; timings are kept only if {@code source} was inferred for these very boxes.
+     */
+    static DetectionResult tracked(DetectionResult source, DetectionBuffer boxes, int[] trackIds,
+                                   boolean keepTimings) {
+        DetectionResult copy = of(boxes, source.labels, source.imageWidth, source.imageHeight,
+                keepTimings ? source.preprocessNanos : 0, keepTimings ? source.inferenceNanos : 0,
+                keepTimings ? source.postprocessNanos : 0);
+        return new DetectionResult(null, copy.imageWidth, copy.imageHeight, copy.count, copy.boxes, copy.scores,
+                copy.classIds, copy.labels, Arrays.copyOf(trackIds, copy.count), copy.preprocessNanos,
+                copy.inferenceNanos, copy.postprocessNanos);
+    }
+
+    public static DetectionResult error(String message) {
+        return new DetectionResult(message, 0, 0, 0, new float[0], new float[0], new int[0],
+                new String[0], null, 0, 0, 0);
+    }
+
+    /**
+     * Returns a copy with every box mapped through {@code transform}, sized to its target image.
+     */
+    public DetectionResult mapped(CoordinateTransform transform) {
+        if (!isSuccess()) {
+            return this;
+        }
+        float[] mappedBoxes = new float[count * 4];
+        for (int i = 0; i < count; i++) {
+            mappedBoxes[i * 4] = transform.mapX(boxes[i * 4]);
+            mappedBoxes[i * 4 + 1] = transform.mapY(boxes[i * 4 + 1]);
+            mappedBoxes[i * 4 + 2] = transform.mapX(boxes[i * 4 + 2]);
+            mappedBoxes[i * 4 + 3] = transform.mapY(boxes[i * 4 + 3]);
+        }
+        return new DetectionResult(null, transform.getTargetWidth(), transform.getTargetHeight(), count,
+                mappedBoxes, scores, classIds, labels, trackIds, preprocessNanos, inferenceNanos, postprocessNanos);
+    }
+
+    public boolean isSuccess() {
+        return errorMessage == null;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public float getLeft(int i) {
+        return boxes[i * 4];
+    }
+
+    public float getTop(int i) {
+        return boxes[i * 4 + 1];
+    }
+
+    public float getRight(int i) {
+        return boxes[i * 4 + 2];
+    }
+
+    public float getBottom(int i) {
+        return boxes[i * 4 + 3];
+    }
+
+    public float getScore(int i) {
+        return scores[i];
+    }
+
+    public int getClassId(int i) {
+        return classIds[i];
+    }
+
+    public String getLabel(int i) {
+        int classId = classIds[i];
+        return classId >= 0 && classId < labels.length ? labels[classId] : "Class " + classId;
+    }
+
+    public boolean isTracked() {
+        return trackIds != null;
+    }
+
+    /** Stable id of the object behind box {@code i}, or {@link ObjectTracker#NO_TRACK}. */
+    public int getTrackId(int i) {
+        return trackIds != null ? trackIds[i] : ObjectTracker.NO_TRACK;
+    }
+
+    public long getPreprocessNanos() {
+        return preprocessNanos;
+    }
+
+    public long getInferenceNanos() {
+        return inferenceNanos;
+    }
+
+    public long getPostprocessNanos() {
+        return postprocessNanos;
+    }
+
+    public long getTotalNanos() {
+        return preprocessNanos + inferenceNanos + postprocessNanos;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.rimagine.ml;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decides which archived images to delete: anything older than the maximum age, then the
+ * oldest files until both the file-count and byte budgets are met.
+ */
+public final class ImageRetentionPolicy {
+    private final int maxFiles;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+
+    public ImageRetentionPolicy(int maxFiles, long maxBytes, long maxAgeMillis) {
+        if (maxFiles < 0 || maxBytes < 0 || maxAgeMillis < 0) {
+            throw new IllegalArgumentException("Retention limits must not be negative");
+        }
+        this.maxFiles = maxFiles;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public int getMaxFiles() {
+        return maxFiles;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    /** Files from {@code files} that fall outside the policy at time {@code nowMillis}. */
+    public List<File> selectForDeletion(List<File> files, long nowMillis) {
+        List<File> newestFirst = new ArrayList<>(files);
+        Collections.sort(newestFirst, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+
+        List<File> expired = new ArrayList<>();
+        long keptBytes = 0;
+        int kept = 0;
+        for (File file : newestFirst) {
+            long size = file.length();
+            boolean tooOld = nowMillis - file.lastModified() > maxAgeMillis;
+            if (tooOld || kept >= maxFiles || keptBytes + size > maxBytes) {
+                expired.add(file);
+            } else {
+                kept++;
+                keptBytes += size;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Deletes the expired files in {@code dir} whose names start with {@code prefix}.
+     *
+     * @return the number of files deleted
+     */
+    public int prune(File dir, String prefix, long nowMillis) {
+        File[] files = dir.listFiles((parent, name) -> name.startsWith(prefix));
+        if (files == null) {
+            return 0;
+        }
+        int deleted = 0;
+        for (File file : selectForDeletion(Arrays.asList(files), nowMillis)) {
+            if (file.delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.rimagine.ml;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide latency histograms per detection stage and event counters.
+ *
+ * Recording is lock-free and allocation-free, so stages report unconditionally, in release
+ * builds too. Reading is for the metrics screen and exports; a snapshot taken while detection
+ * runs may be a few samples behind.
+ */
+public final class InferenceMetrics {
+
+    public enum Stage {
+        /** Encoded image to bitmap, including EXIF rotation. */
+        DECODE,
+        /** Bitmap letterboxed into the model input size. */
+        RESIZE,
+        /** Pixels converted and normalized into the input tensor, from a bitmap or a camera frame. */
+        TENSOR_FILL,
+        /** The interpreter call. */
+        INVOKE,
+        /** Raw model output decoded into candidate boxes. */
+        OUTPUT_DECODE,
+        NMS,
+        /** Detections cropped and converted into the input of a second-stage model. */
+        CROP,
+        /** A second-stage model call, once per batch of crops. */
+        STAGE_INVOKE,
+        /** Boxes drawn over an image or the camera preview. */
+        RENDER,
+        /** Results written to the detection store. */
+        PERSIST
+    }
+
+    public enum Counter {
+        INFERENCES,
+        DETECTIONS,
+        ERRORS,
+        DROPPED_FRAMES,
+        /** Live frames shown from the object tracker instead of the model. */
+        TRACKED_FRAMES
+    }
+
+    private static final InferenceMetrics INSTANCE = new InferenceMetrics();
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[Stage.values().length];
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private volatile long sinceMillis = System.currentTimeMillis();
+
+    InferenceMetrics() {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    public static InferenceMetrics get() {
+        return INSTANCE;
+    }
+
+    public void record(Stage stage, long nanos) {
+        stages[stage.ordinal()].record(nanos);
+    }
+
+    public void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    public void add(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    public LatencyHistogram.Snapshot snapshot(Stage stage) {
+        return stages[stage.ordinal()].snapshot();
+    }
+
+    public long count(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    /** Clears everything. Samples recorded concurrently may survive the reset. */
+    public void reset() {
+        for (LatencyHistogram stage : stages) {
+            stage.reset();
+        }
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+        sinceMillis = System.currentTimeMillis();
+    }
+
+    /** Wall-clock time of the last reset, or of process start. */
+    public long getSinceMillis() {
+        return sinceMillis;
+    }
+
+    /** Counters, then per stage sample count, mean, percentiles and max, in microseconds. */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\"since_ms\":").append(sinceMillis).append(",\"counters\":{");
+        for (Counter counter : Counter.values()) {
+            if (counter.ordinal() > 0) {
+                json.append(',');
+            }
+            json.append('"').append(name(counter)).append("\":").append(count(counter));
+        }
+        json.append("},\"stages_us\":{");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram.Snapshot snapshot = snapshot(stage);
+            if (stage.ordinal() > 0) {
+                json.append(',');
+            }
+            json.append('"').append(name(stage)).append("\":{\"count\":").append(snapshot.getCount())
+                    .append(",\"mean\":").append(snapshot.getMeanNanos() / 1_000);
+            for (double percentile : PERCENTILES) {
+                json.append(",\"p").append((int) percentile).append("\":")
+                        .append(snapshot.percentileNanos(percentile) / 1_000);
+            }
+            json.append(",\"max\":").append(snapshot.getMaxNanos() / 1_000).append('}');
+        }
+        return json.append("}}").toString();
+    }
+
+    /** Plain-text table for display, in milliseconds. */
+    public String format() {
+        StringBuilder text = new StringBuilder();
+        for (Counter counter : Counter.values()) {
+            text.append(String.format(Locale.US, "%-15s %d%n", name(counter), count(counter)));
+        }
+        text.append(String.format(Locale.US, "%n%-14s %6s %7s %7s %7s %7s%n", "stage (ms)", "n", "p50", "p90",
+                "p99", "max"));
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram.Snapshot snapshot = snapshot(stage);
+            text.append(String.format(Locale.US, "%-14s %6d %7.1f %7.1f %7.1f %7.1f%n", name(stage),
+                    snapshot.getCount(), snapshot.percentileNanos(50) / 1e6, snapshot.percentileNanos(90) / 1e6,
+                    snapshot.percentileNanos(99) / 1e6, snapshot.getMaxNanos() / 1e6));
+        }
+        return text.toString();
+    }
+
+    private static String name(Enum<?> value) {
+        return value.name().toLowerCase(Locale.US);
+    }
+}
@@ -0,0 +1,288 @@
+package com.example.rimagine.ml;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs detection requests on a fixed set of worker threads in two priority lanes.
+ *
+ * Queued interactive requests are always taken before queued background ones, and
+ * background work that runs on its own threads (a batch) can hold back with
+ * {@link #awaitInteractiveIdle} until the interactive lane is empty. A request submitted
+ * under the key of one that is still queued or running joins it instead of running twice.
+ * Cancelling never interrupts a worker, which may be inside an interpreter call: a running
+ * task sees {@link Request#isCancelled()} at its next check and its result is dropped.
+ * Listeners are called on the worker thread.
+ */
+public final class InferenceScheduler {
+
+    public enum Priority {
+        INTERACTIVE,
+        BACKGROUND
+    }
+
+    public interface Task<T> {
+        T run(Request<T> request) throws Exception;
+    }
+
+    public interface Listener<T> {
+        void onResult(T result);
+
+        void onError(Exception e);
+    }
+
+    private enum State {
+        QUEUED,
+        RUNNING,
+        DONE,
+        CANCELLED
+    }
+
+    /** A submitted task, shared by every caller that submitted the same key while it was pending. */
+    public final class Request<T> implements Runnable {
+        private final String key;
+        private final Priority priority;
+        private final long sequence;
+        private final Task<T> task;
+        // Guarded by this
+        private final List<Listener<T>> listeners = new ArrayList<>();
+        private State state = State.QUEUED;
+        private T result;
+        private Exception error;
+
+        private Request(String key, Priority priority, long sequence, Task<T> task) {
+            this.key = key;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        public synchronized boolean isCancelled() {
+            return state == State.CANCELLED;
+        }
+
+        public synchronized boolean isDone() {
+            return state == State.DONE || state == State.CANCELLED;
+        }
+
+        /** For tasks to call between stages. */
+        public void throwIfCancelled() {
+            if (isCancelled()) {
+                throw new CancellationException(key);
+            }
+        }
+
+        /** Drops the request for every caller that joined it; no listener is called. */
+        public void cancel() {
+            State previous;
+            synchronized (this) {
+                previous = state;
+                if (previous == State.DONE || previous == State.CANCELLED) {
+                    return;
+                }
+                state = State.CANCELLED;
+                listeners.clear();
+            }
+            if (previous == State.QUEUED) {
+                // A running request is finished by its worker
+                executor.remove(this);
+                finished(this);
+            }
+        }
+
+        private void addListener(Listener<T> listener) {
+            T done;
+            Exception failure;
+            synchronized (this) {
+                if (state == State.CANCELLED) {
+                    return;
+                }
+                if (state != State.DONE) {
+                    listeners.add(listener);
+                    return;
+                }
+                done = result;
+                failure = error;
+            }
+            deliver(listener, done, failure);
+        }
+
+        private synchronized boolean isPending() {
+            return state == State.QUEUED || state == State.RUNNING;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (state != State.QUEUED) {
+                    return;
+                }
+                state = State.RUNNING;
+            }
+            T value = null;
+            Exception failure = null;
+            List<Listener<T>> notify = null;
+            try {
+                value = task.run(this);
+            } catch (Exception e) {
+                failure = e;
+            } finally {
+                // Also on an Error, so a request never stays pending and holds back a batch
+                synchronized (this) {
+                    if (state != State.CANCELLED) {
+                        state = State.DONE;
+                        result = value;
+                        error = failure;
+                        notify = new ArrayList<>(listeners);
+                        listeners.clear();
+                    }
+                }
+                finished(this);
+            }
+            if (notify != null) {
+                for (Listener<T> listener : notify) {
+                    deliver(listener, value, failure);
+                }
+            }
+        }
+
+        private void deliver(Listener<T> listener, T value, Exception failure) {
+            if (failure != null) {
+                listener.onError(failure);
+            } else {
+                listener.onResult(value);
+            }
+        }
+    }
+
+    private static final Comparator<Runnable> ORDER = (a, b) -> {
+        Request<?> x = (Request<?>) a;
+        Request<?> y = (Request<?>) b;
+        int byPriority = x.priority.compareTo(y.priority);
+        return byPriority != 0 ? byPriority : Long.compare(x.sequence, y.sequence);
+    };
+
+    private final ThreadPoolExecutor executor;
+    private final int maxBackground;
+    private final AtomicLong sequence = new AtomicLong();
+    // Guarded by this
+    private final Map<String, Request<?>> pending = new HashMap<>();
+    private int interactive;
+    private int background;
+
+    /**
+     * @param threads worker threads shared by both lanes
+     * @param maxBackground background requests allowed to wait or run; interactive ones are
+     *                      not limited, callers keep them few by cancelling superseded ones
+     */
+    public InferenceScheduler(int threads, int maxBackground) {
+        this.maxBackground = maxBackground;
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "inference-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(11, ORDER), factory);
+    }
+
+    /**
+     * Queues {@code task}, or joins the request already pending under {@code key}.
+     *
+     * @throws RejectedExecutionException if the background lane is full or the scheduler is shut down
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Request<T> submit(String key, Priority priority, Task<T> task, Listener<T> listener) {
+        Request<T> request;
+        synchronized (this) {
+            Request<?> existing = pending.get(key);
+            if (existing != null && existing.isPending()) {
+                request = (Request<T>) existing;
+            } else {
+                if (executor.isShutdown()) {
+                    throw new RejectedExecutionException("Scheduler is shut down");
+                }
+                if (priority == Priority.BACKGROUND && background >= maxBackground) {
+                    throw new RejectedExecutionException("Background lane is full");
+                }
+                request = new Request<>(key, priority, sequence.getAndIncrement(), task);
+                pending.put(key, request);
+                if (priority == Priority.INTERACTIVE) {
+                    interactive++;
+                } else {
+                    background++;
+                }
+                executor.execute(request);
+            }
+        }
+        request.addListener(listener);
+        return request;
+    }
+
+    /**
+     * Blocks while interactive requests are queued or running, for at most {@code timeout}.
+     *
+     * @return true if the interactive lane is empty
+     */
+    public synchronized boolean awaitInteractiveIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (interactive > 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /** Cancels everything queued or running and stops the workers once they are idle. */
+    public void shutdown() {
+        List<Request<?>> requests;
+        synchronized (this) {
+            executor.shutdown();
+            requests = new ArrayList<>(pending.values());
+        }
+        for (Request<?> request : requests) {
+            request.cancel();
+        }
+    }
+
+    private synchronized void finished(Request<?> request) {
+        if (pending.get(request.key) == request) {
+            pending.remove(request.key);
+        }
+        if (request.priority == Priority.INTERACTIVE) {
+            interactive--;
+            if (interactive == 0) {
+                notifyAll();
+            }
+        } else {
+            background--;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package com.example.rimagine.ml;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * NHWC input tensor for one RGB image, or a batch of them, allocated once per model shape.
+ *
+ * Each 0..255 channel value is normalized as {@code (value - mean) / std}, [0, 1] by default.
+ * Float32 tensors receive the normalized value; 8-bit tensors receive it quantized with the
+ * tensor's scale and zero point. Both go through a 256-entry lookup table built
+ * once, so converting a channel is one array read.
+ *
+ * The direct buffer, the ARGB pixel scratch array and the per-row scratch arrays
+ * are all owned by this object, so filling the tensor for a new frame allocates nothing.
+ * Large inputs can be filled in horizontal stripes on a fork-join pool; each stripe has its
+ * own scratch rows and writes its own slice of the buffer. A batch tensor is filled one image
+ * slot at a time and handed to the interpreter as a buffer of exactly the filled slots.
+ * Not thread-safe: each interpreter should own its own instance.
+ */
+public final class InputTensorBuffer {
+    private static final int CHANNELS = 3;
+    /** Fewer pixels per stripe than this cost more to hand to another thread than they save. */
+    static final int MIN_STRIPE_PIXELS = 64 * 1024;
+
+    private final int width;
+    private final int height;
+    private final TensorFormat format;
+    private final int batchCapacity;
+    private final ByteBuffer byteBuffer;
+    private final ByteBuffer[] batchViews;
+    private final FloatBuffer floatBuffer;
+    private final int[] pixels;
+    private final int[] rgbRow;
+    private final float[] floatRow;
+    private final byte[] byteRow;
+    private final float[] floatLut;
+    private final byte[] byteLut;
+    private final Stripe whole;
+    private Stripe[] stripes = new Stripe[0];
+
+    /** Converts rows {@code [firstRow, endRow)} of {@link #pixels} into their slice of the tensor. */
+    private final class Stripe extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int firstRow;
+        private final int endRow;
+        private final int[] rgb;
+        private final float[] floats;
+        private final byte[] bytes;
+        private final FloatBuffer floatOut;
+        private final ByteBuffer byteOut;
+
+        Stripe(int firstRow, int endRow, int[] rgb, float[] floats, byte[] bytes,
+               FloatBuffer floatOut, ByteBuffer byteOut) {
+            this.firstRow = firstRow;
+            this.endRow = endRow;
+            this.rgb = rgb;
+            this.floats = floats;
+            this.bytes = bytes;
+            this.floatOut = floatOut;
+            this.byteOut = byteOut;
+        }
+
+        /** A stripe with its own scratch rows and view of the buffer, for another thread. */
+        Stripe(int firstRow, int endRow) {
+            this(firstRow, endRow, new int[width * CHANNELS],
+                    floatLut != null ? new float[width * CHANNELS] : null,
+                    byteLut != null ? new byte[width * CHANNELS] : null,
+                    floatBuffer != null ? floatBuffer.duplicate() : null,
+                    floatBuffer == null ? byteBuffer.duplicate() : null);
+        }
+
+        @Override
+        protected void compute() {
+            fill(0);
+        }
+
+        /** Writes the rows into the image starting at element {@code base} of the buffer. */
+        void fill(int base) {
+            int start = base + firstRow * width * CHANNELS;
+            if (floatOut != null) {
+                floatOut.position(start);
+            } else {
+                byteOut.position(start);
+            }
+            for (int y = firstRow; y < endRow; y++) {
+                int offset = y * width;
+                int j = 0;
+                for (int x = 0; x < width; x++) {
+                    int pixel = pixels[offset + x];
+                    rgb[j++] = (pixel >> 16) & 0xFF;
+                    rgb[j++] = (pixel >> 8) & 0xFF;
+                    rgb[j++] = pixel & 0xFF;
+                }
+                putRow(rgb, j, floats, bytes, floatOut, byteOut);
+            }
+        }
+    }
+
+    public InputTensorBuffer(int width, int height) {
+        this(width, height, TensorFormat.float32());
+    }
+
+    public InputTensorBuffer(int width, int height, TensorFormat format) {
+        this(width, height, format, 0f, 255f);
+    }
+
+    public InputTensorBuffer(int width, int height, TensorFormat format, float mean, float std) {
+        this(width, height, format, mean, std, 1);
+    }
+
+    /**
+     * @param batchCapacity images the buffer holds, for models whose batch dimension is
+     *                      resized to the number of inputs
+     */
+    public InputTensorBuffer(int width, int height, TensorFormat format, float mean, float std, int batchCapacity) {
+        if (width <= 0 || height <= 0 || batchCapacity <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid tensor size: " + batchCapacity + "x" + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.batchCapacity = batchCapacity;
+        this.byteBuffer = ByteBuffer.allocateDirect(
+                batchCapacity * width * height * CHANNELS * format.getBytesPerElement());
+        this.byteBuffer.order(ByteOrder.nativeOrder());
+        this.batchViews = new ByteBuffer[batchCapacity + 1];
+        this.batchViews[batchCapacity] = byteBuffer;
+        this.pixels = new int[width * height];
+        this.rgbRow = new int[width * CHANNELS];
+        if (format.isQuantized()) {
+            this.floatBuffer = null;
+            this.floatRow = null;
+            this.floatLut = null;
+            this.byteRow = new byte[width * CHANNELS];
+            this.byteLut = new byte[256];
+            for (int i = 0; i < 256; i++) {
+                byteLut[i] = (byte) format.quantize((i - mean) / std);
+            }
+        } else {
+            this.floatBuffer = byteBuffer.asFloatBuffer();
+            this.floatRow = new float[width * CHANNELS];
+            this.floatLut = new float[256];
+            for (int i = 0; i < 256; i++) {
+                floatLut[i] = (i - mean) / std;
+            }
+            this.byteRow = null;
+            this.byteLut = null;
+        }
+        this.whole = new Stripe(0, height, rgbRow, floatRow, byteRow,
+                floatBuffer, floatBuffer == null ? byteBuffer : null);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public TensorFormat getFormat() {
+        return format;
+    }
+
+    public int getBatchCapacity() {
+        return batchCapacity;
+    }
+
+    public boolean matches(int width, int height) {
+        return this.width == width && this.height == height;
+    }
+
+    public boolean matches(int width, int height, TensorFormat format) {
+        return matches(width, height) && this.format == format;
+    }
+
+    /**
+     * Scratch array the caller fills with ARGB pixels (row-major, stride == width)
+     * before calling {@link #fillFromPixels()} or {@link #fillSlot}.
+     */
+    public int[] pixels() {
+        return pixels;
+    }
+
+    /**
+     * Converts the pixels in {@link #pixels()} to the tensor's format and writes them
+     * into the tensor one row at a time.
+     *
+     * @return the backing buffer, rewound and ready to pass to the interpreter
+     */
+    public ByteBuffer fillFromPixels() {
+        whole.compute();
+        return buffer();
+    }
+
+    /**
+     * Like {@link #fillFromPixels()}, with the rows split into stripes run on {@code pool}
+     * and the calling thread. Inputs too small to be worth splitting are filled on the caller.
+     */
+    public ByteBuffer fillFromPixels(ForkJoinPool pool) {
+        int count = Math.min(Math.min(pool.getParallelism() + 1, height), width * height / MIN_STRIPE_PIXELS);
+        if (count <= 1) {
+            return fillFromPixels();
+        }
+        if (stripes.length != count) {
+            stripes = new Stripe[count];
+            for (int i = 0; i < count; i++) {
+                stripes[i] = new Stripe(height * i / count, height * (i + 1) / count);
+            }
+        }
+        for (int i = 1; i < count; i++) {
+            stripes[i].reinitialize();
+            pool.execute(stripes[i]);
+        }
+        stripes[0].reinitialize();
+        stripes[0].invoke();
+        for (int i = 1; i < count; i++) {
+            stripes[i].join();
+        }
+        return buffer();
+    }
+
+    /** Number of stripes the last parallel fill used. */
+    int getStripeCount() {
+        return stripes.length;
+    }
+
+    public ByteBuffer buffer() {
+        byteBuffer.rewind();
+        return byteBuffer;
+    }
+
+    /** Converts the pixels in {@link #pixels()} into image {@code slot} of the batch. */
+    public void fillSlot(int slot) {
+        if (slot < 0 || slot >= batchCapacity) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " of " + batchCapacity);
+        }
+        whole.fill(slot * width * height * CHANNELS);
+    }
+
+    /**
+     * The first {@code count} images as one buffer of exactly their size, rewound, since the
+     * interpreter wants the input buffer to match the resized tensor byte for byte. The
+     * views are created once per count and share the tensor's memory.
+     */
+    public ByteBuffer batch(int count) {
+        if (count <= 0 || count > batchCapacity) {
+            throw new IndexOutOfBoundsException("Batch of " + count + " in " + batchCapacity);
+        }
+        ByteBuffer view = batchViews[count];
+        if (view == null) {
+            ByteBuffer window = byteBuffer.duplicate();
+            window.position(0);
+            window.limit(count * width * height * CHANNELS * format.getBytesPerElement());
+            view = window.slice().order(ByteOrder.nativeOrder());
+            batchViews[count] = view;
+        }
+        view.rewind();
+        return view;
+    }
+
+    /** Resets the write position before a converter writes rows with {@link #putRgbRow}. */
+    void beginFill() {
+        if (floatBuffer != null) {
+            floatBuffer.clear();
+        } else {
+            byteBuffer.clear();
+        }
+    }
+
+    /** Appends {@code length} interleaved 8-bit RGB values, converted to the tensor format. */
+    void putRgbRow(int[] rgb, int length) {
+        putRow(rgb, length, floatRow, byteRow, floatBuffer, byteBuffer);
+    }
+
+    /** The one conversion kernel: a lookup per channel, then one bulk put for the row. */
+    private void putRow(int[] rgb, int length, float[] floats, byte[] bytes, FloatBuffer floatOut, ByteBuffer byteOut) {
+        if (floatOut != null) {
+            for (int i = 0; i < length; i++) {
+                floats[i] = floatLut[rgb[i]];
+            }
+            floatOut.put(floats, 0, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                bytes[i] = byteLut[rgb[i]];
+            }
+            byteOut.put(bytes, 0, length);
+        }
+    }
+
+    /** Scratch array holding one row of interleaved 8-bit RGB values. */
+    int[] rgbRowScratch() {
+        return rgbRow;
+    }
+}
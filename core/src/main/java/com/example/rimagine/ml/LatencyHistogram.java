@@ -0,0 +1,117 @@
+package com.example.rimagine.ml;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in nanoseconds, with log-linear buckets: four per power
+ * of two, so any percentile is reported within 25% of the true value.
+ *
+ * {@link #record} is a handful of atomic increments and never allocates, so it can sit on the
+ * inference hot path and be called from any number of threads. Snapshots read the buckets
+ * without stopping writers and may be off by the samples recorded while they run.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(0L, nanos);
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        long seen = max.get();
+        while (value > seen && !max.compareAndSet(seen, value)) {
+            seen = max.get();
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0L);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0L);
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        return new Snapshot(counts, total, sum.sum(), max.get());
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BITS) * SUB_BUCKETS + sub;
+    }
+
+    /** Largest value that falls into {@code bucket}. */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+        long sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        return ((SUB_BUCKETS + sub) * width) + width - 1;
+    }
+
+    /** Point-in-time copy of a histogram. */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMaxNanos() {
+            return max;
+        }
+
+        public long getMeanNanos() {
+            return count > 0 ? sum / count : 0L;
+        }
+
+        /** The value at or below which {@code percentile} percent of samples fall, 0 when empty. */
+        public long percentileNanos(double percentile) {
+            if (count == 0) {
+                return 0L;
+            }
+            long rank = Math.max(1L, (long) Math.ceil(count * Math.min(100.0, percentile) / 100.0));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
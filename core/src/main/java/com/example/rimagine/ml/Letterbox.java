@@ -0,0 +1,93 @@
+package com.example.rimagine.ml;
+
+/**
+ * Aspect-preserving fit of a source image into the model input, centred with padding on the
+ * short axis, as the detector was trained.
+ *
+ * Computed once per source size; {@link #getOutputToSource()} then takes normalized model
+ * output straight to source pixels with one multiply-add per coordinate.
+ */
+public final class Letterbox {
+    /** YOLO's padding grey. */
+    public static final int PAD_COLOR = 0xFF727272;
+
+    private final int sourceWidth;
+    private final int sourceHeight;
+    private final int inputWidth;
+    private final int inputHeight;
+    private final float scale;
+    private final int contentWidth;
+    private final int contentHeight;
+    private final int padLeft;
+    private final int padTop;
+    private final CoordinateTransform outputToSource;
+
+    private Letterbox(int sourceWidth, int sourceHeight, int inputWidth, int inputHeight) {
+        this.sourceWidth = sourceWidth;
+        this.sourceHeight = sourceHeight;
+        this.inputWidth = inputWidth;
+        this.inputHeight = inputHeight;
+        this.scale = Math.min(inputWidth / (float) sourceWidth, inputHeight / (float) sourceHeight);
+        this.contentWidth = Math.max(1, Math.min(inputWidth, Math.round(sourceWidth * scale)));
+        this.contentHeight = Math.max(1, Math.min(inputHeight, Math.round(sourceHeight * scale)));
+        this.padLeft = (inputWidth - contentWidth) / 2;
+        this.padTop = (inputHeight - contentHeight) / 2;
+        // normalized -> input pixels -> source pixels, using the drawn content size so rounding cancels
+        float scaleX = sourceWidth / (float) contentWidth;
+        float scaleY = sourceHeight / (float) contentHeight;
+        this.outputToSource = new CoordinateTransform(inputWidth * scaleX, inputHeight * scaleY,
+                -padLeft * scaleX, -padTop * scaleY, sourceWidth, sourceHeight);
+    }
+
+    public static Letterbox fit(int sourceWidth, int sourceHeight, int inputWidth, int inputHeight) {
+        if (sourceWidth <= 0 || sourceHeight <= 0 || inputWidth <= 0 || inputHeight <= 0) {
+            throw new IllegalArgumentException("Invalid letterbox " + sourceWidth + "x" + sourceHeight
+                    + " -> " + inputWidth + "x" + inputHeight);
+        }
+        return new Letterbox(sourceWidth, sourceHeight, inputWidth, inputHeight);
+    }
+
+    public boolean matches(int sourceWidth, int sourceHeight, int inputWidth, int inputHeight) {
+        return this.sourceWidth == sourceWidth && this.sourceHeight == sourceHeight
+                && this.inputWidth == inputWidth && this.inputHeight == inputHeight;
+    }
+
+    /** True when the drawn area is the same as {@code other}'s, so the padding is unchanged. */
+    public boolean sameLayout(Letterbox other) {
+        return other != null && other.inputWidth == inputWidth && other.inputHeight == inputHeight
+                && other.contentWidth == contentWidth && other.contentHeight == contentHeight;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    public int getPadLeft() {
+        return padLeft;
+    }
+
+    public int getPadTop() {
+        return padTop;
+    }
+
+    public int getContentWidth() {
+        return contentWidth;
+    }
+
+    public int getContentHeight() {
+        return contentHeight;
+    }
+
+    public int getSourceWidth() {
+        return sourceWidth;
+    }
+
+    public int getSourceHeight() {
+        return sourceHeight;
+    }
+
+    /** Maps normalized [0, 1] model output coordinates to source-image pixels. */
+    public CoordinateTransform getOutputToSource() {
+        return outputToSource;
+    }
+}
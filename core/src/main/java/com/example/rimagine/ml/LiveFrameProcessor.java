@@ -0,0 +1,195 @@
+package com.example.rimagine.ml;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keep-only-latest frame pipeline for live detection.
+ *
+ * The camera thread converts each frame straight into one of three input tensors and
+ * returns immediately, so the camera image can be closed without waiting for inference.
+ * A worker always runs the detector on the newest converted frame; a frame that is
+ * replaced before the worker picks it up is counted as dropped. Frames are never queued,
+ * so latency stays at one inference regardless of camera frame rate.
+ *
+ * With an {@link ObjectTracker} the model only sees every few frames. The frames in
+ * between are neither converted nor inferred; they get the tracker's extrapolated boxes,
+ * straight from the camera thread.
+ */
+public final class LiveFrameProcessor implements AutoCloseable {
+
+    public interface Detector {
+        DetectionResult detect(ByteBuffer inputTensor, int imageWidth, int imageHeight);
+    }
+
+    public interface Listener {
+        void onResult(DetectionResult result, long timestampNanos);
+    }
+
+    private static final class Slot {
+        final InputTensorBuffer tensor;
+        int imageWidth;
+        int imageHeight;
+        long timestampNanos;
+
+        Slot(int width, int height, TensorFormat format, ModelMetadata metadata) {
+            tensor = new InputTensorBuffer(width, height, format, metadata.getMean(), metadata.getStd());
+        }
+    }
+
+    private final Detector detector;
+    private final Listener listener;
+    private final Executor worker;
+    private final YuvToTensorConverter converter = new YuvToTensorConverter();
+    private final InferenceMetrics metrics = InferenceMetrics.get();
+
+    // Triple buffer: the producer owns writeIndex, the worker owns readIndex, readyIndex is swapped under lock
+    private final Object lock = new Object();
+    private final Slot[] slots = new Slot[3];
+    private int writeIndex = 0;
+    private int readyIndex = 1;
+    private int readIndex = 2;
+    private boolean readyFresh;
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicLong receivedFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicLong processedFrames = new AtomicLong();
+    private final AtomicLong trackedFrames = new AtomicLong();
+    private volatile boolean closed;
+
+    private ObjectTracker tracker;
+    private int detectEveryFrames = 1;
+    // Producer thread only
+    private int framesSinceDetection;
+
+    public LiveFrameProcessor(int tensorWidth, int tensorHeight, Detector detector,
+                              Listener listener, Executor worker) {
+        this(tensorWidth, tensorHeight, TensorFormat.float32(), ModelMetadata.DEFAULT, detector, listener, worker);
+    }
+
+    /**
+     * Converts frames straight into tensors of {@code format}, e.g. uint8 for a quantized model,
+     * normalized as {@code metadata} describes.
+     */
+    public LiveFrameProcessor(int tensorWidth, int tensorHeight, TensorFormat format, ModelMetadata metadata,
+                              Detector detector, Listener listener, Executor worker) {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot(tensorWidth, tensorHeight, format, metadata);
+        }
+        this.detector = detector;
+        this.listener = listener;
+        this.worker = worker;
+    }
+
+    /**
+     * Runs the detector on every {@code detectEveryFrames}-th frame only, or sooner when
+     * {@code tracker} is no longer sure of its predictions, and answers the other frames from
+     * {@code tracker}. Call before the first frame.
+     */
+    public void setTracker(ObjectTracker tracker, int detectEveryFrames) {
+        this.tracker = tracker;
+        this.detectEveryFrames = Math.max(1, detectEveryFrames);
+    }
+
+    /**
+     * Converts {@code frame} into the next free tensor and hands it to the worker.
+     * Must be called from a single producer thread; the frame's planes are not used
+     * after this returns.
+     */
+    public void onFrame(YuvFrame frame) {
+        if (closed) {
+            return;
+        }
+        receivedFrames.incrementAndGet();
+        if (tracker != null && !shouldDetect(frame.getTimestampNanos())) {
+            trackedFrames.incrementAndGet();
+            metrics.increment(InferenceMetrics.Counter.TRACKED_FRAMES);
+            DetectionResult predicted = tracker.predict(frame.getTimestampNanos());
+            if (predicted != null) {
+                listener.onResult(predicted, frame.getTimestampNanos());
+            }
+            return;
+        }
+
+        Slot slot = slots[writeIndex];
+        long start = System.nanoTime();
+        converter.convert(frame, slot.tensor);
+        metrics.record(InferenceMetrics.Stage.TENSOR_FILL, System.nanoTime() - start);
+        slot.imageWidth = frame.getUprightWidth();
+        slot.imageHeight = frame.getUprightHeight();
+        slot.timestampNanos = frame.getTimestampNanos();
+
+        synchronized (lock) {
+            int published = writeIndex;
+            writeIndex = readyIndex;
+            readyIndex = published;
+            if (readyFresh) {
+                droppedFrames.incrementAndGet();
+                metrics.increment(InferenceMetrics.Counter.DROPPED_FRAMES);
+            }
+            readyFresh = true;
+        }
+        if (draining.compareAndSet(false, true)) {
+            worker.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Slot slot;
+            synchronized (lock) {
+                if (!readyFresh || closed) {
+                    // Cleared under the lock so a frame published after this check reschedules the worker
+                    draining.set(false);
+                    return;
+                }
+                int taken = readyIndex;
+                readyIndex = readIndex;
+                readIndex = taken;
+                readyFresh = false;
+                slot = slots[readIndex];
+            }
+            DetectionResult result = detector.detect(slot.tensor.buffer(), slot.imageWidth, slot.imageHeight);
+            processedFrames.incrementAndGet();
+            if (tracker != null) {
+                result = tracker.update(result, slot.timestampNanos);
+            }
+            if (!closed) {
+                listener.onResult(result, slot.timestampNanos);
+            }
+        }
+    }
+
+    public long getReceivedFrames() {
+        return receivedFrames.get();
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    public long getProcessedFrames() {
+        return processedFrames.get();
+    }
+
+    /** Frames answered by the tracker without running the detector. */
+    public long getTrackedFrames() {
+        return trackedFrames.get();
+    }
+
+    private boolean shouldDetect(long timestampNanos) {
+        if (++framesSinceDetection < detectEveryFrames && !tracker.needsDetection(timestampNanos)) {
+            return false;
+        }
+        framesSinceDetection = 0;
+        return true;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.rimagine.ml;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Class labels and input normalization of a model. Tensor shapes and types come from the
+ * interpreter; this holds what the tensors cannot tell us.
+ *
+ * Pixels are normalized as {@code (value - mean) / std} for each 0..255 channel value, the
+ * convention of the TFLite metadata {@code NormalizationOptions}.
+ */
+public final class ModelMetadata {
+    /** Used when neither the model nor a sidecar file describes it. */
+    public static final ModelMetadata DEFAULT =
+            new ModelMetadata(new String[]{"back_disk", "front_disk"}, 0f, 255f, "default");
+
+    private static final Pattern NAMES_BLOCK = Pattern.compile("['\"]?names['\"]?\\s*:\\s*\\{([^}]*)\\}");
+    private static final Pattern NAME_ENTRY = Pattern.compile("['\"]?(\\d+)['\"]?\\s*:\\s*['\"]([^'\"]*)['\"]");
+
+    private final String[] labels;
+    private final float mean;
+    private final float std;
+    private final String source;
+
+    public ModelMetadata(String[] labels, float mean, float std, String source) {
+        if (std == 0f || Float.isNaN(std)) {
+            throw new IllegalArgumentException("Normalization std must be non-zero, got " + std);
+        }
+        this.labels = labels.clone();
+        this.mean = mean;
+        this.std = std;
+        this.source = source;
+    }
+
+    public ModelMetadata withLabels(String[] labels, String source) {
+        return new ModelMetadata(labels, mean, std, source);
+    }
+
+    public ModelMetadata withNormalization(float mean, float std, String source) {
+        return new ModelMetadata(labels, mean, std, source);
+    }
+
+    /** Shared with {@link DetectionResult}; callers must not modify it. */
+    public String[] getLabels() {
+        return labels;
+    }
+
+    public float getMean() {
+        return mean;
+    }
+
+    public float getStd() {
+        return std;
+    }
+
+    /** Where the metadata was read from, for logging. */
+    public String getSource() {
+        return source;
+    }
+
+    public float normalize(int value) {
+        return (value - mean) / std;
+    }
+
+    /**
+     * Parses a label file: one label per line, or an exporter metadata dump with a
+     * {@code names: {0: 'a', 1: 'b'}} map, as written by Ultralytics.
+     *
+     * @return the labels in class order, empty if none were found
+     */
+    public static String[] parseLabels(String text) {
+        Matcher block = NAMES_BLOCK.matcher(text);
+        if (block.find()) {
+            return parseNames(block.group(1));
+        }
+        List<String> labels = new ArrayList<>();
+        for (String line : text.split("\\r?\\n")) {
+            String label = line.trim();
+            if (!label.isEmpty()) {
+                labels.add(label);
+            }
+        }
+        return labels.toArray(new String[0]);
+    }
+
+    private static String[] parseNames(String entries) {
+        TreeMap<Integer, String> byIndex = new TreeMap<>();
+        Matcher entry = NAME_ENTRY.matcher(entries);
+        while (entry.find()) {
+            byIndex.put(Integer.parseInt(entry.group(1)), entry.group(2));
+        }
+        if (byIndex.isEmpty()) {
+            return new String[0];
+        }
+        String[] labels = new String[byIndex.lastKey() + 1];
+        for (int i = 0; i < labels.length; i++) {
+            String label = byIndex.get(i);
+            labels[i] = label != null ? label : "Class " + i;
+        }
+        return labels;
+    }
+
+    @Override
+    public String toString() {
+        return labels.length + " labels, mean=" + mean + ", std=" + std + " (" + source + ")";
+    }
+}
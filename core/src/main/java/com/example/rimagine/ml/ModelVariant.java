@@ -0,0 +1,41 @@
+package com.example.rimagine.ml;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Exported precisions of the disk detector. Each variant is a separate asset; the runner
+ * reads the actual tensor types from the model, so a variant only decides which file loads.
+ */
+public enum ModelVariant {
+    FLOAT32("best_float32.tflite"),
+    FLOAT16("best_float16.tflite"),
+    INT8("best_int8.tflite");
+
+    /** Smallest and fastest first; FLOAT32 is the reference the others are checked against. */
+    public static final List<ModelVariant> PREFERENCE = Arrays.asList(INT8, FLOAT16, FLOAT32);
+
+    private final String assetName;
+
+    ModelVariant(String assetName) {
+        this.assetName = assetName;
+    }
+
+    public String getAssetName() {
+        return assetName;
+    }
+
+    /**
+     * First variant in {@code preference} whose asset is bundled, or {@link #FLOAT32} when
+     * none of them are, so the error surfaces when that file fails to load.
+     */
+    public static ModelVariant firstAvailable(Collection<String> assets, List<ModelVariant> preference) {
+        for (ModelVariant variant : preference) {
+            if (assets.contains(variant.assetName)) {
+                return variant;
+            }
+        }
+        return FLOAT32;
+    }
+}
@@ -0,0 +1,466 @@
+package com.example.rimagine.ml;
+
+import java.util.Arrays;
+
+/**
+ * Greedy Non-Maximum Suppression over a {@link DetectionBuffer}.
+ *
+ * Candidates are reduced to the top {@code maxCandidates} by score with a bounded heap
+ * (O(n log k), no full sort), then checked against a uniform spatial grid so each box is
+ * only compared with boxes in the cells it covers. All state lives in primitive scratch
+ * arrays that are reused between calls. Not thread-safe.
+ */
+public final class NonMaxSuppression {
+
+    public enum Mode {
+        /** Hard suppression between boxes of the same class. */
+        PER_CLASS,
+        /** Hard suppression regardless of class. */
+        CLASS_AGNOSTIC,
+        /** Gaussian Soft-NMS between boxes of the same class: overlapping scores decay instead of dropping. */
+        SOFT
+    }
+
+    /** How the overlap between two boxes is measured against the threshold. */
+    public enum Overlap {
+        /** Intersection over union. */
+        IOU,
+        /**
+         * Intersection over the smaller box's area. A partial box cut off at a tile edge scores
+         * high against the full box it is part of, which IoU would keep as a duplicate.
+         */
+        IOS
+    }
+
+    private static final int DEFAULT_MAX_CANDIDATES = 1000;
+    private static final int DEFAULT_MAX_DETECTIONS = 300;
+    private static final float DEFAULT_SOFT_SIGMA = 0.5f;
+    private static final float DEFAULT_SOFT_SCORE_THRESHOLD = 0.001f;
+    private static final int MAX_GRID_SIDE = 64;
+    private static final float DONE = Float.NEGATIVE_INFINITY;
+
+    private final Mode mode;
+    private final float iouThreshold;
+    private int maxCandidates = DEFAULT_MAX_CANDIDATES;
+    private int maxDetections = DEFAULT_MAX_DETECTIONS;
+    private float softSigma = DEFAULT_SOFT_SIGMA;
+    private float softScoreThreshold = DEFAULT_SOFT_SCORE_THRESHOLD;
+    private Overlap overlap = Overlap.IOU;
+
+    // Top-k selection
+    private int[] heap = new int[0];
+    private float[] heapKey = new float[0];
+    private int[] order = new int[0];
+    private float[] workScore = new float[0];
+    private int[] visitStamp = new int[0];
+    private int stamp;
+
+    // Uniform grid: per-cell singly linked lists of box indices
+    private int[] cellHead = new int[0];
+    private int[] entryNext = new int[0];
+    private int[] entryBox = new int[0];
+    private int entryCount;
+    private int gridCols;
+    private int gridRows;
+    private float gridMinX;
+    private float gridMinY;
+    private float invCellWidth;
+    private float invCellHeight;
+
+    public NonMaxSuppression(Mode mode, float iouThreshold) {
+        this.mode = mode;
+        this.iouThreshold = iouThreshold;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public float getIouThreshold() {
+        return iouThreshold;
+    }
+
+    /** Number of highest-scoring candidates considered; the rest are dropped before suppression. */
+    public void setMaxCandidates(int maxCandidates) {
+        this.maxCandidates = Math.max(1, maxCandidates);
+    }
+
+    public void setMaxDetections(int maxDetections) {
+        this.maxDetections = Math.max(1, maxDetections);
+    }
+
+    public void setOverlap(Overlap overlap) {
+        this.overlap = overlap;
+    }
+
+    public Overlap getOverlap() {
+        return overlap;
+    }
+
+    /** Gaussian decay width and the score below which decayed boxes are discarded (Soft-NMS only). */
+    public void setSoftParameters(float sigma, float scoreThreshold) {
+        this.softSigma = sigma;
+        this.softScoreThreshold = scoreThreshold;
+    }
+
+    /**
+     * Suppresses overlapping boxes from {@code in} and writes the survivors to {@code out}
+     * in descending score order.
+     *
+     * @return the number of boxes kept
+     */
+    public int apply(DetectionBuffer in, DetectionBuffer out) {
+        out.clear();
+        int n = in.size();
+        if (n == 0) {
+            return 0;
+        }
+        int k = selectTopK(in, Math.min(n, maxCandidates));
+        buildGrid(in, k);
+        if (mode == Mode.SOFT) {
+            return applySoft(in, k, out);
+        }
+        return applyHard(in, k, out);
+    }
+
+    private int applyHard(DetectionBuffer in, int k, DetectionBuffer out) {
+        boolean classAware = mode == Mode.PER_CLASS;
+        int kept = 0;
+        for (int r = 0; r < k && kept < maxDetections; r++) {
+            int i = order[r];
+            if (overlapsKept(in, i, classAware)) {
+                continue;
+            }
+            insert(in, i);
+            out.add(in.left[i], in.top[i], in.right[i], in.bottom[i], in.score[i], in.classId[i]);
+            kept++;
+        }
+        return kept;
+    }
+
+    private boolean overlapsKept(DetectionBuffer in, int i, boolean classAware) {
+        int c0 = cellX(in.left[i]);
+        int c1 = cellX(in.right[i]);
+        int r0 = cellY(in.top[i]);
+        int r1 = cellY(in.bottom[i]);
+        int visit = nextStamp();
+        for (int row = r0; row <= r1; row++) {
+            for (int col = c0; col <= c1; col++) {
+                for (int e = cellHead[row * gridCols + col]; e >= 0; e = entryNext[e]) {
+                    int j = entryBox[e];
+                    if (visitStamp[j] == visit) {
+                        continue;
+                    }
+                    visitStamp[j] = visit;
+                    if (classAware && in.classId[j] != in.classId[i]) {
+                        continue;
+                    }
+                    if (overlap(in, i, j) > iouThreshold) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private int applySoft(DetectionBuffer in, int k, DetectionBuffer out) {
+        // Every candidate goes into the grid; selection uses a lazy max-heap since decay only lowers scores
+        for (int r = 0; r < k; r++) {
+            int i = order[r];
+            workScore[i] = in.score[i];
+            insert(in, i);
+        }
+        int heapSize = 0;
+        for (int r = 0; r < k; r++) {
+            heapSize = pushMax(order[r], in.score[order[r]], heapSize);
+        }
+
+        float invSigma = 1f / softSigma;
+        int kept = 0;
+        while (heapSize > 0 && kept < maxDetections) {
+            int i = heap[0];
+            float key = heapKey[0];
+            heapSize = popMax(heapSize);
+            float current = workScore[i];
+            if (current == DONE) {
+                continue;
+            }
+            if (current < key) {
+                // Stale entry: the score decayed after it was pushed
+                heapSize = pushMax(i, current, heapSize);
+                continue;
+            }
+            workScore[i] = DONE;
+            if (current < softScoreThreshold) {
+                continue;
+            }
+            out.add(in.left[i], in.top[i], in.right[i], in.bottom[i], current, in.classId[i]);
+            kept++;
+            decayNeighbours(in, i, invSigma);
+        }
+        return kept;
+    }
+
+    private void decayNeighbours(DetectionBuffer in, int i, float invSigma) {
+        int c0 = cellX(in.left[i]);
+        int c1 = cellX(in.right[i]);
+        int r0 = cellY(in.top[i]);
+        int r1 = cellY(in.bottom[i]);
+        int visit = nextStamp();
+        for (int row = r0; row <= r1; row++) {
+            for (int col = c0; col <= c1; col++) {
+                for (int e = cellHead[row * gridCols + col]; e >= 0; e = entryNext[e]) {
+                    int j = entryBox[e];
+                    if (visitStamp[j] == visit) {
+                        continue;
+                    }
+                    visitStamp[j] = visit;
+                    if (workScore[j] == DONE || in.classId[j] != in.classId[i]) {
+                        continue;
+                    }
+                    float amount = overlap(in, i, j);
+                    if (amount > 0f) {
+                        workScore[j] *= (float) Math.exp(-(amount * amount) * invSigma);
+                    }
+                }
+            }
+        }
+    }
+
+    // --- top-k selection -------------------------------------------------------------------
+
+    /**
+     * Fills {@code order[0..k)} with the indices of the k best-scoring boxes, best first.
+     * Ties are broken by the lower index so results are deterministic.
+     */
+    private int selectTopK(DetectionBuffer in, int k) {
+        ensureScratch(in.size(), k);
+        float[] score = in.score;
+        int n = in.size();
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            if (size < k) {
+                heap[size] = i;
+                siftUpMin(score, size);
+                size++;
+            } else if (better(score, i, heap[0])) {
+                heap[0] = i;
+                siftDownMin(score, 0, size);
+            }
+        }
+        // Popping the min-heap yields ascending order; fill from the back
+        for (int r = size - 1; r >= 0; r--) {
+            order[r] = heap[0];
+            heap[0] = heap[r];
+            siftDownMin(score, 0, r);
+        }
+        return size;
+    }
+
+    private static boolean better(float[] score, int a, int b) {
+        return score[a] > score[b] || (score[a] == score[b] && a < b);
+    }
+
+    private void siftUpMin(float[] score, int pos) {
+        int item = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (!better(score, heap[parent], item)) {
+                break;
+            }
+            heap[pos] = heap[parent];
+            pos = parent;
+        }
+        heap[pos] = item;
+    }
+
+    private void siftDownMin(float[] score, int pos, int size) {
+        int item = heap[pos];
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < size && better(score, heap[child], heap[right])) {
+                child = right;
+            }
+            if (!better(score, item, heap[child])) {
+                break;
+            }
+            heap[pos] = heap[child];
+            pos = child;
+        }
+        heap[pos] = item;
+    }
+
+    // --- max-heap keyed by working score (Soft-NMS) ----------------------------------------
+
+    private int pushMax(int index, float key, int size) {
+        int pos = size;
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (heapKey[parent] >= key) {
+                break;
+            }
+            heap[pos] = heap[parent];
+            heapKey[pos] = heapKey[parent];
+            pos = parent;
+        }
+        heap[pos] = index;
+        heapKey[pos] = key;
+        return size + 1;
+    }
+
+    private int popMax(int size) {
+        size--;
+        int item = heap[size];
+        float key = heapKey[size];
+        int pos = 0;
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < size && heapKey[right] > heapKey[child]) {
+                child = right;
+            }
+            if (key >= heapKey[child]) {
+                break;
+            }
+            heap[pos] = heap[child];
+            heapKey[pos] = heapKey[child];
+            pos = child;
+        }
+        if (size > 0) {
+            heap[pos] = item;
+            heapKey[pos] = key;
+        }
+        return size;
+    }
+
+    // --- spatial grid ----------------------------------------------------------------------
+
+    private void buildGrid(DetectionBuffer in, int k) {
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        float sumW = 0f;
+        float sumH = 0f;
+        for (int r = 0; r < k; r++) {
+            int i = order[r];
+            minX = Math.min(minX, in.left[i]);
+            minY = Math.min(minY, in.top[i]);
+            maxX = Math.max(maxX, in.right[i]);
+            maxY = Math.max(maxY, in.bottom[i]);
+            sumW += in.right[i] - in.left[i];
+            sumH += in.bottom[i] - in.top[i];
+        }
+        float extentX = Math.max(maxX - minX, 1e-6f);
+        float extentY = Math.max(maxY - minY, 1e-6f);
+        // Cells about one average box wide keep each box in a handful of cells
+        float cell = Math.max(Math.max(sumW, sumH) / k, 1e-6f);
+        gridCols = clamp((int) Math.ceil(extentX / cell), 1, MAX_GRID_SIDE);
+        gridRows = clamp((int) Math.ceil(extentY / cell), 1, MAX_GRID_SIDE);
+        gridMinX = minX;
+        gridMinY = minY;
+        invCellWidth = gridCols / extentX;
+        invCellHeight = gridRows / extentY;
+
+        int cells = gridCols * gridRows;
+        if (cellHead.length < cells) {
+            cellHead = new int[cells];
+        }
+        Arrays.fill(cellHead, 0, cells, -1);
+        entryCount = 0;
+    }
+
+    private void insert(DetectionBuffer in, int i) {
+        int c0 = cellX(in.left[i]);
+        int c1 = cellX(in.right[i]);
+        int r0 = cellY(in.top[i]);
+        int r1 = cellY(in.bottom[i]);
+        int needed = entryCount + (c1 - c0 + 1) * (r1 - r0 + 1);
+        if (needed > entryBox.length) {
+            int capacity = Math.max(needed, entryBox.length * 2);
+            entryBox = Arrays.copyOf(entryBox, capacity);
+            entryNext = Arrays.copyOf(entryNext, capacity);
+        }
+        for (int row = r0; row <= r1; row++) {
+            for (int col = c0; col <= c1; col++) {
+                int cellIndex = row * gridCols + col;
+                entryBox[entryCount] = i;
+                entryNext[entryCount] = cellHead[cellIndex];
+                cellHead[cellIndex] = entryCount;
+                entryCount++;
+            }
+        }
+    }
+
+    private int cellX(float x) {
+        return clamp((int) ((x - gridMinX) * invCellWidth), 0, gridCols - 1);
+    }
+
+    private int cellY(float y) {
+        return clamp((int) ((y - gridMinY) * invCellHeight), 0, gridRows - 1);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+
+    // --- helpers ---------------------------------------------------------------------------
+
+    private void ensureScratch(int n, int k) {
+        if (heap.length < Math.max(k, 1)) {
+            heap = new int[k];
+            heapKey = new float[k];
+            order = new int[k];
+        }
+        if (visitStamp.length < n) {
+            visitStamp = new int[n];
+            workScore = new float[n];
+            stamp = 0;
+        }
+    }
+
+    private int nextStamp() {
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(visitStamp, 0);
+            stamp = 1;
+        }
+        return stamp;
+    }
+
+    private float overlap(DetectionBuffer d, int a, int b) {
+        return overlap == Overlap.IOS ? ios(d, a, b) : iou(d, a, b);
+    }
+
+    static float ios(DetectionBuffer d, int a, int b) {
+        float interLeft = Math.max(d.left[a], d.left[b]);
+        float interTop = Math.max(d.top[a], d.top[b]);
+        float interRight = Math.min(d.right[a], d.right[b]);
+        float interBottom = Math.min(d.bottom[a], d.bottom[b]);
+        if (interRight < interLeft || interBottom < interTop) {
+            return 0f;
+        }
+        float inter = (interRight - interLeft) * (interBottom - interTop);
+        float areaA = (d.right[a] - d.left[a]) * (d.bottom[a] - d.top[a]);
+        float areaB = (d.right[b] - d.left[b]) * (d.bottom[b] - d.top[b]);
+        float smaller = Math.min(areaA, areaB);
+        return smaller > 0f ? inter / smaller : 0f;
+    }
+
+    static float iou(DetectionBuffer d, int a, int b) {
+        float interLeft = Math.max(d.left[a], d.left[b]);
+        float interTop = Math.max(d.top[a], d.top[b]);
+        float interRight = Math.min(d.right[a], d.right[b]);
+        float interBottom = Math.min(d.bottom[a], d.bottom[b]);
+        if (interRight < interLeft || interBottom < interTop) {
+            return 0f;
+        }
+        float inter = (interRight - interLeft) * (interBottom - interTop);
+        float areaA = (d.right[a] - d.left[a]) * (d.bottom[a] - d.top[a]);
+        float areaB = (d.right[b] - d.left[b]) * (d.bottom[b] - d.top[b]);
+        return inter / (areaA + areaB - inter);
+    }
+}
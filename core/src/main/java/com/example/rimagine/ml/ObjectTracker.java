@@ -0,0 +1,433 @@
+package com.example.rimagine.ml;
+
+import java.util.Arrays;
+
+/**
+ * SORT-style multi-object tracker for the live stream: constant-velocity Kalman filters
+ * matched to each new set of detections by IoU.
+ *
+ * A track filters its box centre, width and height, each as position and velocity with a
+ * 2x2 covariance in primitive arrays that are reused once they have grown, which is cheap
+ * enough for every camera frame. Detections are matched greedily by descending IoU within a class.
+ * A detection no track claims starts a tentative track, reported once it has been matched
+ * {@code minHits} times; a track missed more than {@code maxMisses} detection rounds in a
+ * row is dropped, a tentative one at its first miss.
+ *
+ * Between detections {@link #predict} extrapolates the tracks to a frame's timestamp without
+ * touching the filters, and {@link #needsDetection} reports when that extrapolation has
+ * become too uncertain to show, so the caller can run the model early. Calls are serialized,
+ * so the camera and inference threads can share one tracker.
+ */
+public final class ObjectTracker {
+    public static final int NO_TRACK = -1;
+
+    private static final int AXES = 4; // centre x, centre y, width, height
+    private static final int STATE = AXES * 2; // position and velocity per axis
+    private static final int COVARIANCE = AXES * 3; // var(p), cov(p, v), var(v) per axis
+    private static final double NANOS_PER_SECOND = 1e9;
+    // Index packing in the match keys
+    private static final int MAX_MATCHED = 0xFFFF;
+
+    public static final class Builder {
+        private float iouThreshold = 0.3f;
+        private int minHits = 2;
+        private int maxMisses = 3;
+        private float maxUncertainty = 0.15f;
+        private float accelerationNoise = 2f;
+        private float measurementNoise = 0.05f;
+        private float initialVelocity = 2f;
+
+        /** Least IoU between a predicted box and a detection for them to match. */
+        public Builder setIouThreshold(float iouThreshold) {
+            this.iouThreshold = iouThreshold;
+            return this;
+        }
+
+        /** Matches before a track is reported. */
+        public Builder setMinHits(int minHits) {
+            this.minHits = Math.max(1, minHits);
+            return this;
+        }
+
+        /** Detection rounds a confirmed track survives without a match. */
+        public Builder setMaxMisses(int maxMisses) {
+            this.maxMisses = Math.max(0, maxMisses);
+            return this;
+        }
+
+        /**
+         * Standard deviation of a predicted centre, relative to the box size, above which
+         * {@link #needsDetection} asks for the model to run.
+         */
+        public Builder setMaxUncertainty(float maxUncertainty) {
+            this.maxUncertainty = maxUncertainty;
+            return this;
+        }
+
+        /** Unmodelled acceleration, in box sizes per second squared. */
+        public Builder setAccelerationNoise(float accelerationNoise) {
+            this.accelerationNoise = accelerationNoise;
+            return this;
+        }
+
+        /** Detector jitter, in box sizes. */
+        public Builder setMeasurementNoise(float measurementNoise) {
+            this.measurementNoise = measurementNoise;
+            return this;
+        }
+
+        /** Speed a new track may turn out to have, in box sizes per second. */
+        public Builder setInitialVelocity(float initialVelocity) {
+            this.initialVelocity = initialVelocity;
+            return this;
+        }
+
+        public ObjectTracker build() {
+            return new ObjectTracker(this);
+        }
+    }
+
+    private final float iouThreshold;
+    private final int minHits;
+    private final int maxMisses;
+    private final float maxUncertainty;
+    private final double accelerationNoise;
+    private final double measurementNoise;
+    private final double initialVelocity;
+
+    // Tracks as structure of arrays, [0, size) live
+    private int size;
+    private int[] ids;
+    private int[] classIds;
+    private int[] hits;
+    private int[] misses;
+    private float[] scores;
+    private double[] state;
+    private double[] covariance;
+    private int nextId;
+    // Time every filter has been advanced to, or -1 before the first update
+    private long updatedAtNanos = -1;
+    private DetectionResult lastSource;
+
+    // Scratch, reused between calls
+    private final DetectionBuffer output = new DetectionBuffer();
+    private final double[] measurement = new double[AXES];
+    private int[] outputIds = new int[16];
+    private long[] pairs = new long[64];
+    private boolean[] trackMatched = new boolean[16];
+    private boolean[] detectionMatched = new boolean[64];
+
+    public ObjectTracker() {
+        this(new Builder());
+    }
+
+    private ObjectTracker(Builder builder) {
+        this.iouThreshold = builder.iouThreshold;
+        this.minHits = builder.minHits;
+        this.maxMisses = builder.maxMisses;
+        this.maxUncertainty = builder.maxUncertainty;
+        this.accelerationNoise = builder.accelerationNoise;
+        this.measurementNoise = builder.measurementNoise;
+        this.initialVelocity = builder.initialVelocity;
+        allocate(16);
+    }
+
+    /**
+     * Advances every track to {@code timestampNanos}, corrects them with {@code detections}
+     * and returns the confirmed tracks at that time. A failed result leaves the tracks as
+     * they are and returns their prediction, or the failure itself if nothing is tracked yet.
+     */
+    public synchronized DetectionResult update(DetectionResult detections, long timestampNanos) {
+        if (!detections.isSuccess()) {
+            DetectionResult predicted = predict(timestampNanos);
+            return predicted != null ? predicted : detections;
+        }
+        double dt = updatedAtNanos < 0 ? 0 : Math.max(0, timestampNanos - updatedAtNanos) / NANOS_PER_SECOND;
+        for (int i = 0; i < size; i++) {
+            advance(i, dt);
+        }
+        updatedAtNanos = Math.max(updatedAtNanos, timestampNanos);
+        lastSource = detections;
+
+        int count = Math.min(detections.size(), MAX_MATCHED);
+        match(detections, count);
+
+        // Missed tracks age, and are dropped once they have been gone too long
+        for (int i = size - 1; i >= 0; i--) {
+            if (trackMatched[i]) {
+                continue;
+            }
+            misses[i]++;
+            if (hits[i] < minHits || misses[i] > maxMisses) {
+                remove(i);
+            }
+        }
+        for (int d = 0; d < count; d++) {
+            if (!detectionMatched[d]) {
+                start(detections, d);
+            }
+        }
+        return snapshot(0, true);
+    }
+
+    /**
+     * The confirmed tracks extrapolated to {@code timestampNanos}, or null before the first
+     * update. The filters are left as they are.
+     */
+    public synchronized DetectionResult predict(long timestampNanos) {
+        if (lastSource == null) {
+            return null;
+        }
+        double dt = Math.max(0, timestampNanos - updatedAtNanos) / NANOS_PER_SECOND;
+        return snapshot(dt, false);
+    }
+
+    /**
+     * True if the model should run on the frame at {@code timestampNanos}: nothing has been
+     * detected yet, a new track is waiting for confirmation, or a confirmed track's predicted
+     * centre has become too uncertain.
+     */
+    public synchronized boolean needsDetection(long timestampNanos) {
+        if (updatedAtNanos < 0) {
+            return true;
+        }
+        double dt = Math.max(0, timestampNanos - updatedAtNanos) / NANOS_PER_SECOND;
+        for (int i = 0; i < size; i++) {
+            if (hits[i] < minHits || relativeUncertainty(i, dt) > maxUncertainty) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Live tracks, tentative ones included. */
+    public synchronized int getTrackCount() {
+        return size;
+    }
+
+    /** Forgets every track; ids keep counting up. */
+    public synchronized void reset() {
+        size = 0;
+        updatedAtNanos = -1;
+        lastSource = null;
+    }
+
+    private void match(DetectionResult detections, int count) {
+        if (trackMatched.length < size) {
+            trackMatched = new boolean[Math.max(size, trackMatched.length * 2)];
+        }
+        if (detectionMatched.length < count) {
+            detectionMatched = new boolean[Math.max(count, detectionMatched.length * 2)];
+        }
+        Arrays.fill(trackMatched, 0, size, false);
+        Arrays.fill(detectionMatched, 0, count, false);
+
+        // Every candidate pair packed as (IoU bits, track, detection): for non-negative floats
+        // the bit patterns sort like the values, so one primitive sort orders them by IoU
+        int pairCount = 0;
+        int tracks = Math.min(size, MAX_MATCHED);
+        for (int i = 0; i < tracks; i++) {
+            int s = i * STATE;
+            float halfW = (float) state[s + 4] / 2f;
+            float halfH = (float) state[s + 6] / 2f;
+            float left = (float) state[s] - halfW;
+            float top = (float) state[s + 2] - halfH;
+            float right = (float) state[s] + halfW;
+            float bottom = (float) state[s + 2] + halfH;
+            for (int d = 0; d < count; d++) {
+                if (detections.getClassId(d) != classIds[i]) {
+                    continue;
+                }
+                float iou = iou(left, top, right, bottom, detections.getLeft(d), detections.getTop(d),
+                        detections.getRight(d), detections.getBottom(d));
+                if (iou >= iouThreshold && iou > 0f) {
+                    if (pairCount == pairs.length) {
+                        pairs = Arrays.copyOf(pairs, pairCount * 2);
+                    }
+                    pairs[pairCount++] = ((long) Float.floatToIntBits(iou) << 32) | ((long) i << 16) | d;
+                }
+            }
+        }
+        Arrays.sort(pairs, 0, pairCount);
+        for (int k = pairCount - 1; k >= 0; k--) {
+            int i = (int) (pairs[k] >>> 16) & MAX_MATCHED;
+            int d = (int) pairs[k] & MAX_MATCHED;
+            if (trackMatched[i] || detectionMatched[d]) {
+                continue;
+            }
+            trackMatched[i] = true;
+            detectionMatched[d] = true;
+            correct(i, detections, d);
+        }
+    }
+
+    /** Kalman predict step: moves track {@code i} forward by {@code dt} seconds. */
+    private void advance(int i, double dt) {
+        if (dt <= 0) {
+            return;
+        }
+        double q = square(accelerationNoise * boxSize(i));
+        double q00 = dt * dt * dt * dt / 4 * q;
+        double q01 = dt * dt * dt / 2 * q;
+        double q11 = dt * dt * q;
+        for (int a = 0; a < AXES; a++) {
+            int s = i * STATE + a * 2;
+            int c = i * COVARIANCE + a * 3;
+            state[s] += state[s + 1] * dt;
+            double p00 = covariance[c];
+            double p01 = covariance[c + 1];
+            double p11 = covariance[c + 2];
+            covariance[c] = p00 + 2 * dt * p01 + dt * dt * p11 + q00;
+            covariance[c + 1] = p01 + dt * p11 + q01;
+            covariance[c + 2] = p11 + q11;
+        }
+        // Width and height never shrink past a pixel, however fast they were changing
+        state[i * STATE + 4] = Math.max(1, state[i * STATE + 4]);
+        state[i * STATE + 6] = Math.max(1, state[i * STATE + 6]);
+    }
+
+    /** Kalman update step with detection {@code d}. */
+    private void correct(int i, DetectionResult detections, int d) {
+        double[] z = measure(detections, d, measurement);
+        double r = square(measurementNoise * Math.max(z[2], z[3]));
+        for (int a = 0; a < AXES; a++) {
+            int s = i * STATE + a * 2;
+            int c = i * COVARIANCE + a * 3;
+            double p00 = covariance[c];
+            double p01 = covariance[c + 1];
+            double p11 = covariance[c + 2];
+            double innovation = z[a] - state[s];
+            double k0 = p00 / (p00 + r);
+            double k1 = p01 / (p00 + r);
+            state[s] += k0 * innovation;
+            state[s + 1] += k1 * innovation;
+            covariance[c] = (1 - k0) * p00;
+            covariance[c + 1] = (1 - k0) * p01;
+            covariance[c + 2] = p11 - k1 * p01;
+        }
+        hits[i]++;
+        misses[i] = 0;
+        scores[i] = detections.getScore(d);
+    }
+
+    private void start(DetectionResult detections, int d) {
+        if (size == ids.length) {
+            allocate(size * 2);
+        }
+        int i = size++;
+        double[] z = measure(detections, d, measurement);
+        double boxSize = Math.max(z[2], z[3]);
+        double r = square(measurementNoise * boxSize);
+        double v = square(initialVelocity * boxSize);
+        for (int a = 0; a < AXES; a++) {
+            int s = i * STATE + a * 2;
+            int c = i * COVARIANCE + a * 3;
+            state[s] = z[a];
+            state[s + 1] = 0;
+            covariance[c] = r;
+            covariance[c + 1] = 0;
+            covariance[c + 2] = v;
+        }
+        ids[i] = nextId++;
+        classIds[i] = detections.getClassId(d);
+        hits[i] = 1;
+        misses[i] = 0;
+        scores[i] = detections.getScore(d);
+    }
+
+    private void remove(int i) {
+        int last = --size;
+        if (i == last) {
+            return;
+        }
+        // Keeps the arrays dense; order carries no meaning
+        ids[i] = ids[last];
+        classIds[i] = classIds[last];
+        hits[i] = hits[last];
+        misses[i] = misses[last];
+        scores[i] = scores[last];
+        trackMatched[i] = trackMatched[last];
+        System.arraycopy(state, last * STATE, state, i * STATE, STATE);
+        System.arraycopy(covariance, last * COVARIANCE, covariance, i * COVARIANCE, COVARIANCE);
+    }
+
+    private DetectionResult snapshot(double dt, boolean inferred) {
+        output.clear();
+        if (outputIds.length < size) {
+            outputIds = new int[Math.max(size, outputIds.length * 2)];
+        }
+        for (int i = 0; i < size; i++) {
+            if (hits[i] < minHits) {
+                continue;
+            }
+            int s = i * STATE;
+            float cx = (float) (state[s] + state[s + 1] * dt);
+            float cy = (float) (state[s + 2] + state[s + 3] * dt);
+            float halfW = (float) Math.max(1, state[s + 4] + state[s + 5] * dt) / 2f;
+            float halfH = (float) Math.max(1, state[s + 6] + state[s + 7] * dt) / 2f;
+            outputIds[output.size()] = ids[i];
+            output.add(cx - halfW, cy - halfH, cx + halfW, cy + halfH, scores[i], classIds[i]);
+        }
+        return DetectionResult.tracked(lastSource, output, outputIds, inferred);
+    }
+
+    /** Standard deviation of the predicted centre after {@code dt} seconds, in box sizes. */
+    private double relativeUncertainty(int i, double dt) {
+        double q = square(accelerationNoise * boxSize(i));
+        double worst = 0;
+        for (int a = 0; a < 2; a++) {
+            int c = i * COVARIANCE + a * 3;
+            double variance = covariance[c] + 2 * dt * covariance[c + 1] + dt * dt * covariance[c + 2]
+                    + dt * dt * dt * dt / 4 * q;
+            worst = Math.max(worst, variance);
+        }
+        return Math.sqrt(worst) / boxSize(i);
+    }
+
+    private double boxSize(int i) {
+        return Math.max(1, Math.max(state[i * STATE + 4], state[i * STATE + 6]));
+    }
+
+    private void allocate(int capacity) {
+        ids = ids == null ? new int[capacity] : Arrays.copyOf(ids, capacity);
+        classIds = classIds == null ? new int[capacity] : Arrays.copyOf(classIds, capacity);
+        hits = hits == null ? new int[capacity] : Arrays.copyOf(hits, capacity);
+        misses = misses == null ? new int[capacity] : Arrays.copyOf(misses, capacity);
+        scores = scores == null ? new float[capacity] : Arrays.copyOf(scores, capacity);
+        state = state == null ? new double[capacity * STATE] : Arrays.copyOf(state, capacity * STATE);
+        covariance = covariance == null ? new double[capacity * COVARIANCE]
+                : Arrays.copyOf(covariance, capacity * COVARIANCE);
+        if (trackMatched.length < capacity) {
+            trackMatched = Arrays.copyOf(trackMatched, capacity);
+        }
+    }
+
+    /** Detection {@code d} as centre x, centre y, width and height, written into {@code z}. */
+    private static double[] measure(DetectionResult detections, int d, double[] z) {
+        float left = detections.getLeft(d);
+        float top = detections.getTop(d);
+        float right = detections.getRight(d);
+        float bottom = detections.getBottom(d);
+        z[0] = (left + right) / 2.0;
+        z[1] = (top + bottom) / 2.0;
+        z[2] = Math.max(1, right - left);
+        z[3] = Math.max(1, bottom - top);
+        return z;
+    }
+
+    private static float iou(float aLeft, float aTop, float aRight, float aBottom,
+                             float bLeft, float bTop, float bRight, float bBottom) {
+        float w = Math.min(aRight, bRight) - Math.max(aLeft, bLeft);
+        float h = Math.min(aBottom, bBottom) - Math.max(aTop, bTop);
+        if (w <= 0f || h <= 0f) {
+            return 0f;
+        }
+        float intersection = w * h;
+        float union = (aRight - aLeft) * (aBottom - aTop) + (bRight - bLeft) * (bBottom - bTop) - intersection;
+        return union > 0f ? intersection / union : 0f;
+    }
+
+    private static double square(double x) {
+        return x * x;
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.rimagine.ml;
+
+import java.util.Arrays;
+
+/**
+ * A second-stage model run on the crops of detected objects, such as a classifier or a
+ * keypoint model, as declared for the detection pipeline.
+ *
+ * A stage applies to detections with one of its labels and at least its score. Each one is
+ * cropped as a square around its box, padded by a fraction of the longer side, and the crops
+ * of one image go to the model in batches of at most {@link #getMaxBatch()}.
+ */
+public final class PipelineStage {
+
+    public enum Kind {
+        /** One score per output class for each crop. */
+        CLASSIFIER,
+        /** Interleaved x, y pairs for each crop, normalized to the model input. */
+        KEYPOINTS
+    }
+
+    private final String name;
+    private final String assetName;
+    private final Kind kind;
+    private final String[] labels;
+    private final float minScore;
+    private final float padding;
+    private final int maxBatch;
+
+    private PipelineStage(Builder builder) {
+        this.name = builder.name;
+        this.assetName = builder.assetName;
+        this.kind = builder.kind;
+        this.labels = builder.labels;
+        this.minScore = builder.minScore;
+        this.padding = builder.padding;
+        this.maxBatch = builder.maxBatch;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getAssetName() {
+        return assetName;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public float getMinScore() {
+        return minScore;
+    }
+
+    /** Context added on every side of a box, as a fraction of its longer side. */
+    public float getPadding() {
+        return padding;
+    }
+
+    public int getMaxBatch() {
+        return maxBatch;
+    }
+
+    /** True if detection {@code i} is one this stage runs on. */
+    public boolean appliesTo(DetectionResult detections, int i) {
+        if (detections.getScore(i) < minScore) {
+            return false;
+        }
+        if (labels.length == 0) {
+            return true;
+        }
+        String label = detections.getLabel(i);
+        for (String candidate : labels) {
+            if (candidate.equals(label)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * True if {@code other} runs on the same detections cropped the same way, so both can
+     * share one crop buffer when their models also take the same input.
+     */
+    public boolean sharesCropsWith(PipelineStage other) {
+        return Arrays.equals(labels, other.labels) && minScore == other.minScore
+                && padding == other.padding && maxBatch == other.maxBatch;
+    }
+
+    /**
+     * Square region around detection {@code i}, padded and shifted to lie inside the
+     * {@code imageWidth x imageHeight} image, clipped only where the image is smaller than
+     * the square. Writes left, top, right, bottom into {@code out}.
+     */
+    public void cropRegion(DetectionResult detections, int i, int imageWidth, int imageHeight, int[] out) {
+        float boxWidth = detections.getRight(i) - detections.getLeft(i);
+        float boxHeight = detections.getBottom(i) - detections.getTop(i);
+        int side = Math.max(1, (int) Math.ceil(Math.max(boxWidth, boxHeight) * (1f + 2f * padding)));
+        int width = Math.min(side, imageWidth);
+        int height = Math.min(side, imageHeight);
+        int left = Math.round((detections.getLeft(i) + detections.getRight(i) - width) / 2f);
+        int top = Math.round((detections.getTop(i) + detections.getBottom(i) - height) / 2f);
+        left = Math.max(0, Math.min(left, imageWidth - width));
+        top = Math.max(0, Math.min(top, imageHeight - height));
+        out[0] = left;
+        out[1] = top;
+        out[2] = left + width;
+        out[3] = top + height;
+    }
+
+    @Override
+    public String toString() {
+        return name + "(" + kind + ", " + assetName + ", labels=" + Arrays.toString(labels)
+                + ", score=" + minScore + ", padding=" + padding + ", batch=" + maxBatch + ")";
+    }
+
+    public static final class Builder {
+        private final String name;
+        private final String assetName;
+        private final Kind kind;
+        private String[] labels = new String[0];
+        private float minScore = 0.25f;
+        private float padding = 0.1f;
+        private int maxBatch = 8;
+
+        public Builder(String name, String assetName, Kind kind) {
+            this.name = name;
+            this.assetName = assetName;
+            this.kind = kind;
+        }
+
+        /** Detector labels the stage runs on; none means every detection. */
+        public Builder setLabels(String... labels) {
+            this.labels = labels.clone();
+            return this;
+        }
+
+        public Builder setMinScore(float minScore) {
+            this.minScore = minScore;
+            return this;
+        }
+
+        public Builder setPadding(float padding) {
+            this.padding = Math.max(0f, padding);
+            return this;
+        }
+
+        public Builder setMaxBatch(int maxBatch) {
+            this.maxBatch = Math.max(1, maxBatch);
+            return this;
+        }
+
+        public PipelineStage build() {
+            return new PipelineStage(this);
+        }
+    }
+}
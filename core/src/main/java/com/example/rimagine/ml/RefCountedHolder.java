@@ -0,0 +1,113 @@
+package com.example.rimagine.ml;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lazily created, reference-counted value that can be dropped while nobody holds it.
+ *
+ * {@link #acquire()} only takes a reference and never blocks on loading, so it is safe on
+ * the main thread; the value is created on the first {@link Handle#get()}, usually from a
+ * worker thread. {@link #releaseIfIdle()} frees the value when no handle is open, and the
+ * next {@code get()} recreates it.
+ */
+public final class RefCountedHolder<T> {
+
+    public interface Factory<T> {
+        T create() throws Exception;
+    }
+
+    public interface Releaser<T> {
+        void release(T value);
+    }
+
+    public final class Handle implements AutoCloseable {
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Handle() {
+        }
+
+        /** Returns the shared value, creating it first if needed. */
+        public T get() throws Exception {
+            if (closed.get()) {
+                throw new IllegalStateException("Handle already closed");
+            }
+            return getOrCreate();
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                synchronized (RefCountedHolder.this) {
+                    refCount--;
+                }
+            }
+        }
+    }
+
+    private final Factory<T> factory;
+    private final Releaser<T> releaser;
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private volatile T value;
+    private int refCount;
+
+    public RefCountedHolder(Factory<T> factory, Releaser<T> releaser) {
+        this.factory = factory;
+        this.releaser = releaser;
+    }
+
+    public synchronized Handle acquire() {
+        refCount++;
+        return new Handle();
+    }
+
+    public synchronized int getRefCount() {
+        return refCount;
+    }
+
+    public boolean isLoaded() {
+        return value != null;
+    }
+
+    /**
+     * Releases the value if it is loaded and unreferenced. A load in progress is left alone,
+     * since somebody is about to use it.
+     */
+    public boolean releaseIfIdle() {
+        if (!loadLock.tryLock()) {
+            return false;
+        }
+        T released;
+        try {
+            synchronized (this) {
+                if (refCount > 0 || value == null) {
+                    return false;
+                }
+                released = value;
+                value = null;
+            }
+        } finally {
+            loadLock.unlock();
+        }
+        if (releaser != null) {
+            releaser.release(released);
+        }
+        return true;
+    }
+
+    private T getOrCreate() throws Exception {
+        T current = value;
+        if (current != null) {
+            return current;
+        }
+        loadLock.lock();
+        try {
+            if (value == null) {
+                value = factory.create();
+            }
+            return value;
+        } finally {
+            loadLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.rimagine.ml;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fixed set of non-thread-safe resources handed out one caller at a time.
+ *
+ * Callers block on a fair semaphore, so waiters are served in arrival order and a burst of batch
+ * work cannot starve a single interactive request. Each {@link Lease} gives back its resource
+ * exactly once when closed. After {@link #close()} idle resources are released immediately
+ * and leased ones as soon as they come back.
+ */
+public final class ResourcePool<T> implements AutoCloseable {
+
+    /** Releases a resource when the pool shuts down. */
+    public interface Releaser<T> {
+        void release(T resource);
+    }
+
+    public final class Lease implements AutoCloseable {
+        private final T resource;
+        private final AtomicBoolean returned = new AtomicBoolean();
+
+        private Lease(T resource) {
+            this.resource = resource;
+        }
+
+        public T get() {
+            if (returned.get()) {
+                throw new IllegalStateException("Lease already returned");
+            }
+            return resource;
+        }
+
+        @Override
+        public void close() {
+            if (returned.compareAndSet(false, true)) {
+                giveBack(resource);
+            }
+        }
+    }
+
+    private final Semaphore permits;
+    private final ConcurrentLinkedQueue<T> idle;
+    private final Releaser<T> releaser;
+    private final int size;
+    private volatile boolean closed;
+
+    public ResourcePool(List<T> resources, Releaser<T> releaser) {
+        if (resources.isEmpty()) {
+            throw new IllegalArgumentException("Pool needs at least one resource");
+        }
+        this.size = resources.size();
+        this.idle = new ConcurrentLinkedQueue<>(resources);
+        this.permits = new Semaphore(size, true);
+        this.releaser = releaser;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int available() {
+        return idle.size();
+    }
+
+    /** Blocks until a resource is free. */
+    public Lease acquire() throws InterruptedException {
+        checkOpen();
+        permits.acquire();
+        return take();
+    }
+
+    /** Returns null if no resource became free within the timeout. */
+    public Lease tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        checkOpen();
+        if (!permits.tryAcquire(timeout, unit)) {
+            return null;
+        }
+        return take();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        releaseIdle();
+        // Wake every blocked caller so it can observe the closed flag
+        permits.release(Integer.MAX_VALUE / 2);
+    }
+
+    private Lease take() {
+        T resource = closed ? null : idle.poll();
+        if (resource == null) {
+            // Only possible once close() has drained the idle queue
+            throw new IllegalStateException("Pool is closed");
+        }
+        return new Lease(resource);
+    }
+
+    private void giveBack(T resource) {
+        idle.offer(resource);
+        if (closed) {
+            releaseIdle();
+        } else {
+            permits.release();
+        }
+    }
+
+    private void releaseIdle() {
+        T resource;
+        while ((resource = idle.poll()) != null) {
+            if (releaser != null) {
+                releaser.release(resource);
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Pool is closed");
+        }
+    }
+}
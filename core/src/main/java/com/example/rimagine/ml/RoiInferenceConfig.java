@@ -0,0 +1,96 @@
+package com.example.rimagine.ml;
+
+/**
+ * Settings for re-running the model on regions around earlier detections, see {@link RoiPlan}.
+ */
+public final class RoiInferenceConfig {
+    private final float margin;
+    private final float minScore;
+    private final int maxRegions;
+    private final float maxCoverage;
+    private final float mergeThreshold;
+
+    private RoiInferenceConfig(Builder builder) {
+        this.margin = builder.margin;
+        this.minScore = builder.minScore;
+        this.maxRegions = builder.maxRegions;
+        this.maxCoverage = builder.maxCoverage;
+        this.mergeThreshold = builder.mergeThreshold;
+    }
+
+    public static RoiInferenceConfig defaults() {
+        return new Builder().build();
+    }
+
+    /** Context added on every side of an earlier box, as a fraction of its longer side. */
+    public float getMargin() {
+        return margin;
+    }
+
+    /** Earlier detections scored below this are not worth a region of their own. */
+    public float getMinScore() {
+        return minScore;
+    }
+
+    /** More regions than this cost more than one pass over the whole image. */
+    public int getMaxRegions() {
+        return maxRegions;
+    }
+
+    /** Largest fraction of the image the regions may cover before a full pass is cheaper. */
+    public float getMaxCoverage() {
+        return maxCoverage;
+    }
+
+    /** Intersection-over-smaller above which detections from different regions are merged. */
+    public float getMergeThreshold() {
+        return mergeThreshold;
+    }
+
+    /** Every setting that changes the refined result, for keying requests. */
+    @Override
+    public String toString() {
+        return "roi(margin=" + margin + ",score=" + minScore + ",regions=" + maxRegions
+                + ",coverage=" + maxCoverage + ",merge=" + mergeThreshold + ")";
+    }
+
+    public static final class Builder {
+        private float margin = 0.25f;
+        private float minScore = 0.25f;
+        private int maxRegions = 6;
+        private float maxCoverage = 0.6f;
+        private float mergeThreshold = 0.5f;
+
+        public Builder setMargin(float margin) {
+            this.margin = Math.max(0f, margin);
+            return this;
+        }
+
+        public Builder setMinScore(float minScore) {
+            this.minScore = minScore;
+            return this;
+        }
+
+        public Builder setMaxRegions(int maxRegions) {
+            this.maxRegions = Math.max(1, maxRegions);
+            return this;
+        }
+
+        public Builder setMaxCoverage(float maxCoverage) {
+            if (!(maxCoverage > 0f && maxCoverage <= 1f)) {
+                throw new IllegalArgumentException("Coverage must be in (0, 1], got " + maxCoverage);
+            }
+            this.maxCoverage = maxCoverage;
+            return this;
+        }
+
+        public Builder setMergeThreshold(float mergeThreshold) {
+            this.mergeThreshold = mergeThreshold;
+            return this;
+        }
+
+        public RoiInferenceConfig build() {
+            return new RoiInferenceConfig(this);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.rimagine.ml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Regions of an image worth running the model on again, planned from earlier detections.
+ *
+ * Each confident box gets a square region centred on it, with some context around it and at
+ * least the model input in size, shifted to lie inside the image. Regions are merged while
+ * their bounding rectangle is no larger than the two of them apart, so neighbouring disks
+ * share one inference. A region is decoded at full resolution unless it is twice the model
+ * input or more, in which case it is sampled down to no less than the input, so small objects
+ * reach the model at their native size instead of being squashed with the whole image.
+ */
+public final class RoiPlan {
+    private final int imageWidth;
+    private final int imageHeight;
+    private final int[] lefts;
+    private final int[] tops;
+    private final int[] widths;
+    private final int[] heights;
+    private final int[] sampleSizes;
+    private final float coverage;
+    private final boolean worthwhile;
+
+    private RoiPlan(int imageWidth, int imageHeight, List<int[]> regions, int inputSide, RoiInferenceConfig config) {
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        int n = regions.size();
+        lefts = new int[n];
+        tops = new int[n];
+        widths = new int[n];
+        heights = new int[n];
+        sampleSizes = new int[n];
+        long area = 0;
+        for (int i = 0; i < n; i++) {
+            int[] region = regions.get(i);
+            lefts[i] = region[0];
+            tops[i] = region[1];
+            widths[i] = region[2] - region[0];
+            heights[i] = region[3] - region[1];
+            sampleSizes[i] = BitmapSampling.inSampleSize(widths[i], heights[i], inputSide, inputSide);
+            area += (long) widths[i] * heights[i];
+        }
+        coverage = area / ((float) imageWidth * imageHeight);
+        worthwhile = n > 0 && n <= config.getMaxRegions() && coverage <= config.getMaxCoverage();
+    }
+
+    /**
+     * @param prior     earlier detections, in the pixels of the {@code imageWidth x imageHeight} image
+     * @param inputSide model input side; regions are never smaller than this
+     */
+    public static RoiPlan of(DetectionResult prior, int imageWidth, int imageHeight, int inputSide,
+                             RoiInferenceConfig config) {
+        if (imageWidth <= 0 || imageHeight <= 0 || inputSide <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid regions of " + imageWidth + "x" + imageHeight + " for input " + inputSide);
+        }
+        List<int[]> regions = new ArrayList<>();
+        for (int i = 0; i < prior.size(); i++) {
+            if (prior.getScore(i) < config.getMinScore()) {
+                continue;
+            }
+            float boxWidth = prior.getRight(i) - prior.getLeft(i);
+            float boxHeight = prior.getBottom(i) - prior.getTop(i);
+            int side = Math.max(inputSide,
+                    (int) Math.ceil(Math.max(boxWidth, boxHeight) * (1f + 2f * config.getMargin())));
+            int width = Math.min(side, imageWidth);
+            int height = Math.min(side, imageHeight);
+            int left = clamp(Math.round((prior.getLeft(i) + prior.getRight(i) - width) / 2f), imageWidth - width);
+            int top = clamp(Math.round((prior.getTop(i) + prior.getBottom(i) - height) / 2f), imageHeight - height);
+            regions.add(new int[]{left, top, left + width, top + height});
+        }
+        merge(regions);
+        return new RoiPlan(imageWidth, imageHeight, regions, inputSide, config);
+    }
+
+    private static int clamp(int position, int max) {
+        return Math.max(0, Math.min(position, max));
+    }
+
+    private static void merge(List<int[]> regions) {
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int a = 0; a < regions.size() && !merged; a++) {
+                for (int b = a + 1; b < regions.size(); b++) {
+                    int[] x = regions.get(a);
+                    int[] y = regions.get(b);
+                    int[] union = {Math.min(x[0], y[0]), Math.min(x[1], y[1]),
+                            Math.max(x[2], y[2]), Math.max(x[3], y[3])};
+                    if (area(union) <= area(x) + area(y)) {
+                        regions.set(a, union);
+                        regions.remove(b);
+                        merged = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private static long area(int[] region) {
+        return (long) (region[2] - region[0]) * (region[3] - region[1]);
+    }
+
+    /**
+     * False if there is nothing to refine, or if the regions are too many or too large to be
+     * cheaper than running the whole image again.
+     */
+    public boolean isWorthwhile() {
+        return worthwhile;
+    }
+
+    /** Fraction of the image covered by the regions. */
+    public float getCoverage() {
+        return coverage;
+    }
+
+    public int size() {
+        return lefts.length;
+    }
+
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    public int left(int region) {
+        return lefts[region];
+    }
+
+    public int top(int region) {
+        return tops[region];
+    }
+
+    public int width(int region) {
+        return widths[region];
+    }
+
+    public int height(int region) {
+        return heights[region];
+    }
+
+    /** Power-of-two {@code inSampleSize} to decode the region with. */
+    public int sampleSize(int region) {
+        return sampleSizes[region];
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.rimagine.ml;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Outputs of one {@link PipelineStage} for the detections of one image, indexed like the
+ * detections, with the time spent cropping and in the model.
+ *
+ * Detections the stage does not apply to have no output. Keypoints are stored in the pixels
+ * of the image the detections are in, so they can be drawn and mapped like the boxes.
+ */
+public final class StageResult {
+    private final String name;
+    private final PipelineStage.Kind kind;
+    private final String[] outputLabels;
+    private final float[][] outputs;
+    private final int crops;
+    private final int invocations;
+    private final long cropNanos;
+    private final long invokeNanos;
+
+    private StageResult(String name, PipelineStage.Kind kind, String[] outputLabels, float[][] outputs,
+                        int crops, int invocations, long cropNanos, long invokeNanos) {
+        this.name = name;
+        this.kind = kind;
+        this.outputLabels = outputLabels;
+        this.outputs = outputs;
+        this.crops = crops;
+        this.invocations = invocations;
+        this.cropNanos = cropNanos;
+        this.invokeNanos = invokeNanos;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public PipelineStage.Kind getKind() {
+        return kind;
+    }
+
+    public int size() {
+        return outputs.length;
+    }
+
+    public boolean hasOutput(int detection) {
+        return outputs[detection] != null;
+    }
+
+    /** Raw scores, or keypoint coordinates in image pixels; null if the stage skipped it. */
+    public float[] getOutput(int detection) {
+        return outputs[detection];
+    }
+
+    /** Highest-scoring class of a classifier output, or -1 without output. */
+    public int getTopClass(int detection) {
+        float[] scores = outputs[detection];
+        if (scores == null || scores.length == 0) {
+            return -1;
+        }
+        int best = 0;
+        for (int c = 1; c < scores.length; c++) {
+            if (scores[c] > scores[best]) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    public float getTopScore(int detection) {
+        int top = getTopClass(detection);
+        return top >= 0 ? outputs[detection][top] : 0f;
+    }
+
+    /** Label of the top class, or its index when the model has no labels; null without output. */
+    public String getTopLabel(int detection) {
+        int top = getTopClass(detection);
+        if (top < 0) {
+            return null;
+        }
+        return top < outputLabels.length ? outputLabels[top] : String.valueOf(top);
+    }
+
+    public int getKeypointCount(int detection) {
+        float[] points = outputs[detection];
+        return points != null ? points.length / 2 : 0;
+    }
+
+    public float getKeypointX(int detection, int keypoint) {
+        return outputs[detection][keypoint * 2];
+    }
+
+    public float getKeypointY(int detection, int keypoint) {
+        return outputs[detection][keypoint * 2 + 1];
+    }
+
+    public int getCrops() {
+        return crops;
+    }
+
+    /** Interpreter calls; crops are batched, so usually far fewer than {@link #getCrops()}. */
+    public int getInvocations() {
+        return invocations;
+    }
+
+    public long getCropNanos() {
+        return cropNanos;
+    }
+
+    public long getInvokeNanos() {
+        return invokeNanos;
+    }
+
+    /** Returns a copy with keypoints mapped through {@code transform}; scores are unchanged. */
+    public StageResult mapped(CoordinateTransform transform) {
+        if (kind != PipelineStage.Kind.KEYPOINTS) {
+            return this;
+        }
+        float[][] mapped = new float[outputs.length][];
+        for (int i = 0; i < outputs.length; i++) {
+            float[] points = outputs[i];
+            if (points == null) {
+                continue;
+            }
+            mapped[i] = new float[points.length];
+            for (int k = 0; k + 1 < points.length; k += 2) {
+                mapped[i][k] = transform.mapX(points[k]);
+                mapped[i][k + 1] = transform.mapY(points[k + 1]);
+            }
+        }
+        return new StageResult(name, kind, outputLabels, mapped, crops, invocations, cropNanos, invokeNanos);
+    }
+
+    /** One line per stage with its crops, calls and time, for logs and toasts. */
+    public static String summarize(List<StageResult> stages) {
+        StringBuilder text = new StringBuilder();
+        for (StageResult stage : stages) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(stage);
+        }
+        return text.toString();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s: %d crops in %d calls, crop %.1f ms, model %.1f ms",
+                name, crops, invocations, cropNanos / 1e6, invokeNanos / 1e6);
+    }
+
+    /** Collects a stage's outputs as its batches complete. Not thread-safe. */
+    public static final class Builder {
+        private final PipelineStage stage;
+        private final String[] outputLabels;
+        private final float[][] outputs;
+        private int crops;
+        private int invocations;
+        private long cropNanos;
+        private long invokeNanos;
+
+        /** @param outputLabels class names of a classifier's outputs, or empty */
+        public Builder(PipelineStage stage, int detectionCount, String[] outputLabels) {
+            this.stage = stage;
+            this.outputLabels = outputLabels;
+            this.outputs = new float[detectionCount][];
+        }
+
+        /**
+         * Stores the output of one crop. Keypoints are normalized to the model input and
+         * mapped to image pixels with {@code inputToImage}, which is ignored for classifiers.
+         */
+        public Builder setOutput(int detection, float[] values, CoordinateTransform inputToImage) {
+            float[] copy = values.clone();
+            if (stage.getKind() == PipelineStage.Kind.KEYPOINTS) {
+                for (int k = 0; k + 1 < copy.length; k += 2) {
+                    copy[k] = inputToImage.mapX(copy[k]);
+                    copy[k + 1] = inputToImage.mapY(copy[k + 1]);
+                }
+            }
+            outputs[detection] = copy;
+            return this;
+        }
+
+        public Builder addCrops(int count, long nanos) {
+            crops += count;
+            cropNanos += nanos;
+            return this;
+        }
+
+        public Builder addInvocation(long nanos) {
+            invocations++;
+            invokeNanos += nanos;
+            return this;
+        }
+
+        public StageResult build() {
+            return new StageResult(stage.getName(), stage.getKind(), outputLabels, outputs.clone(),
+                    crops, invocations, cropNanos, invokeNanos);
+        }
+    }
+}
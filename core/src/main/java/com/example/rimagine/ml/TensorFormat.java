@@ -0,0 +1,100 @@
+package com.example.rimagine.ml;
+
+/**
+ * Element type of a model tensor and, for 8-bit types, its affine quantization:
+ * {@code real = scale * (quantized - zeroPoint)}.
+ *
+ * FP16 models keep float32 inputs and outputs, so they use {@link #float32()} as well.
+ */
+public final class TensorFormat {
+
+    public enum DataType {
+        FLOAT32(4),
+        UINT8(1),
+        INT8(1);
+
+        private final int bytes;
+
+        DataType(int bytes) {
+            this.bytes = bytes;
+        }
+
+        public int getBytes() {
+            return bytes;
+        }
+    }
+
+    private static final TensorFormat FLOAT32 = new TensorFormat(DataType.FLOAT32, 1f, 0);
+
+    private final DataType dataType;
+    private final float scale;
+    private final int zeroPoint;
+
+    private TensorFormat(DataType dataType, float scale, int zeroPoint) {
+        this.dataType = dataType;
+        this.scale = scale;
+        this.zeroPoint = zeroPoint;
+    }
+
+    public static TensorFormat float32() {
+        return FLOAT32;
+    }
+
+    public static TensorFormat quantized(DataType dataType, float scale, int zeroPoint) {
+        if (dataType == DataType.FLOAT32) {
+            return FLOAT32;
+        }
+        if (!(scale > 0f)) {
+            throw new IllegalArgumentException("Quantized tensor needs a positive scale, got " + scale);
+        }
+        return new TensorFormat(dataType, scale, zeroPoint);
+    }
+
+    public DataType getDataType() {
+        return dataType;
+    }
+
+    public boolean isQuantized() {
+        return dataType != DataType.FLOAT32;
+    }
+
+    public float getScale() {
+        return scale;
+    }
+
+    public int getZeroPoint() {
+        return zeroPoint;
+    }
+
+    public int getBytesPerElement() {
+        return dataType.getBytes();
+    }
+
+    public int minQuantized() {
+        return dataType == DataType.INT8 ? -128 : 0;
+    }
+
+    public int maxQuantized() {
+        return dataType == DataType.INT8 ? 127 : 255;
+    }
+
+    /** Rounds {@code real} to the nearest representable value, saturating at the type range. */
+    public int quantize(float real) {
+        int q = Math.round(real / scale) + zeroPoint;
+        return Math.max(minQuantized(), Math.min(maxQuantized(), q));
+    }
+
+    public float dequantize(int quantized) {
+        return scale * (quantized - zeroPoint);
+    }
+
+    /** Reads a raw tensor byte as a signed or unsigned quantized value. */
+    public int toQuantized(byte raw) {
+        return dataType == DataType.UINT8 ? raw & 0xFF : raw;
+    }
+
+    @Override
+    public String toString() {
+        return isQuantized() ? dataType + "(scale=" + scale + ", zeroPoint=" + zeroPoint + ")" : dataType.toString();
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.rimagine.ml;
+
+/**
+ * Overlapping square tiles covering an image, in row-major order.
+ *
+ * Along each axis the first tile starts at 0 and the last one ends at the image edge; the
+ * ones in between are spread evenly, so neighbours overlap by at least the requested ratio
+ * and no tile reaches outside the image. A side shorter than the tile gets a single tile
+ * clipped to the image.
+ */
+public final class TileGrid {
+    private final int imageWidth;
+    private final int imageHeight;
+    private final int[] xs;
+    private final int[] ys;
+    private final int tileWidth;
+    private final int tileHeight;
+
+    private TileGrid(int imageWidth, int imageHeight, int[] xs, int[] ys, int tileWidth, int tileHeight) {
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        this.xs = xs;
+        this.ys = ys;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+    }
+
+    /**
+     * @param tileSize tile side in image pixels
+     * @param overlap  minimum overlap between neighbouring tiles, as a fraction of the tile side
+     */
+    public static TileGrid of(int imageWidth, int imageHeight, int tileSize, float overlap) {
+        if (imageWidth <= 0 || imageHeight <= 0 || tileSize <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid tiling of " + imageWidth + "x" + imageHeight + " by " + tileSize);
+        }
+        if (!(overlap >= 0f && overlap < 1f)) {
+            throw new IllegalArgumentException("Overlap must be in [0, 1), got " + overlap);
+        }
+        return new TileGrid(imageWidth, imageHeight,
+                positions(imageWidth, tileSize, overlap), positions(imageHeight, tileSize, overlap),
+                Math.min(tileSize, imageWidth), Math.min(tileSize, imageHeight));
+    }
+
+    private static int[] positions(int length, int tile, float overlap) {
+        if (length <= tile) {
+            return new int[]{0};
+        }
+        int stride = Math.max(1, (int) (tile * (1f - overlap)));
+        int count = (length - tile + stride - 1) / stride + 1;
+        int[] positions = new int[count];
+        int span = length - tile;
+        for (int i = 0; i < count; i++) {
+            positions[i] = (int) ((long) span * i / (count - 1));
+        }
+        return positions;
+    }
+
+    public int size() {
+        return xs.length * ys.length;
+    }
+
+    public int getColumns() {
+        return xs.length;
+    }
+
+    public int getRows() {
+        return ys.length;
+    }
+
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    public int left(int tile) {
+        return xs[tile % xs.length];
+    }
+
+    public int top(int tile) {
+        return ys[tile / xs.length];
+    }
+
+    public int width(int tile) {
+        return tileWidth;
+    }
+
+    public int height(int tile) {
+        return tileHeight;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.rimagine.ml;
+
+/**
+ * Collects per-tile detections in image coordinates and merges them with cross-tile NMS.
+ *
+ * Overlap is measured as intersection over the smaller box, so a disk cut in half by a tile
+ * edge is absorbed by the complete detection from the neighbouring tile. Tiles may be added
+ * from several threads.
+ */
+public final class TileMerger {
+    private final DetectionBuffer collected = new DetectionBuffer();
+    private final DetectionBuffer merged = new DetectionBuffer();
+    private final NonMaxSuppression nms;
+    private long preprocessNanos;
+    private long inferenceNanos;
+
+    public TileMerger(float mergeThreshold) {
+        nms = new NonMaxSuppression(NonMaxSuppression.Mode.PER_CLASS, mergeThreshold);
+        nms.setOverlap(NonMaxSuppression.Overlap.IOS);
+    }
+
+    /** Adds the detections of a tile whose top-left corner sits at {@code (offsetX, offsetY)}. */
+    public synchronized void add(DetectionResult tile, float offsetX, float offsetY) {
+        for (int i = 0; i < tile.size(); i++) {
+            collected.add(tile.getLeft(i) + offsetX, tile.getTop(i) + offsetY,
+                    tile.getRight(i) + offsetX, tile.getBottom(i) + offsetY,
+                    tile.getScore(i), tile.getClassId(i));
+        }
+        preprocessNanos += tile.getPreprocessNanos();
+        inferenceNanos += tile.getInferenceNanos();
+    }
+
+    public synchronized int getCollected() {
+        return collected.size();
+    }
+
+    /**
+     * Merges everything added so far into an {@code imageWidth x imageHeight} result. Stage
+     * timings are the totals over all tiles, not wall time.
+     */
+    public synchronized DetectionResult merge(String[] labels, int imageWidth, int imageHeight) {
+        long start = System.nanoTime();
+        nms.apply(collected, merged);
+        return DetectionResult.of(merged, labels, imageWidth, imageHeight,
+                preprocessNanos, inferenceNanos, System.nanoTime() - start);
+    }
+}
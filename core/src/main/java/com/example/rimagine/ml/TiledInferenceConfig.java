@@ -0,0 +1,112 @@
+package com.example.rimagine.ml;
+
+/**
+ * Settings for sliced inference over a high-resolution image, see {@link TiledDetector}.
+ */
+public final class TiledInferenceConfig {
+    private final int tileSize;
+    private final float overlap;
+    private final int parallelism;
+    private final boolean includeFullImage;
+    private final float mergeThreshold;
+    private final int minImageSide;
+
+    private TiledInferenceConfig(Builder builder) {
+        this.tileSize = builder.tileSize;
+        this.overlap = builder.overlap;
+        this.parallelism = builder.parallelism;
+        this.includeFullImage = builder.includeFullImage;
+        this.mergeThreshold = builder.mergeThreshold;
+        this.minImageSide = builder.minImageSide;
+    }
+
+    public static TiledInferenceConfig defaults() {
+        return new Builder().build();
+    }
+
+    /** Tile side in working-image pixels; 0 uses the model input size, so tiles run unscaled. */
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int tileSizeFor(int modelInputSide) {
+        return tileSize > 0 ? tileSize : modelInputSide;
+    }
+
+    public float getOverlap() {
+        return overlap;
+    }
+
+    /** Tiles in flight at once; 0 uses one per pooled interpreter. */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public boolean isIncludeFullImage() {
+        return includeFullImage;
+    }
+
+    /** Intersection-over-smaller above which detections from different tiles are merged. */
+    public float getMergeThreshold() {
+        return mergeThreshold;
+    }
+
+    /** Shortest side the photo is decoded at before tiling; larger photos are downsampled. */
+    public int getMinImageSide() {
+        return minImageSide;
+    }
+
+    /** Every setting that changes the merged result, for keying cached results. */
+    @Override
+    public String toString() {
+        return "tiles(size=" + tileSize + ",overlap=" + overlap + ",full=" + includeFullImage
+                + ",merge=" + mergeThreshold + ",side=" + minImageSide + ")";
+    }
+
+    public static final class Builder {
+        private int tileSize = 0;
+        private float overlap = 0.2f;
+        private int parallelism = 0;
+        private boolean includeFullImage = true;
+        private float mergeThreshold = 0.5f;
+        private int minImageSide = 1920;
+
+        public Builder setTileSize(int tileSize) {
+            this.tileSize = Math.max(0, tileSize);
+            return this;
+        }
+
+        public Builder setOverlap(float overlap) {
+            if (!(overlap >= 0f && overlap < 1f)) {
+                throw new IllegalArgumentException("Overlap must be in [0, 1), got " + overlap);
+            }
+            this.overlap = overlap;
+            return this;
+        }
+
+        public Builder setParallelism(int parallelism) {
+            this.parallelism = Math.max(0, parallelism);
+            return this;
+        }
+
+        /** Also runs the whole image once, so objects larger than a tile are still found. */
+        public Builder setIncludeFullImage(boolean includeFullImage) {
+            this.includeFullImage = includeFullImage;
+            return this;
+        }
+
+        public Builder setMergeThreshold(float mergeThreshold) {
+            this.mergeThreshold = mergeThreshold;
+            return this;
+        }
+
+        public Builder setMinImageSide(int minImageSide) {
+            this.minImageSide = Math.max(1, minImageSide);
+            return this;
+        }
+
+        public TiledInferenceConfig build() {
+            return new TiledInferenceConfig(this);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.rimagine.ml;
+
+import java.util.Arrays;
+
+/**
+ * Decodes a YOLOv8-style detection head laid out as [1, 4 + numClasses, numAnchors].
+ *
+ * The tensor is read as one flat array in its native channel-major order: row 0..3 hold
+ * cx, cy, w, h (normalized to [0, 1]) and row 4 + c holds the score of class c. Each row is
+ * walked contiguously, so the class pass is a sequential max-reduction over primitive arrays
+ * and only anchors that clear the threshold are written to the output buffer.
+ *
+ * Quantized heads are reduced in the integer domain against a quantized threshold, so only
+ * the survivors' scores and boxes are dequantized.
+ */
+public final class YoloOutputDecoder {
+    private static final int BOX_ROWS = 4;
+
+    private final int numClasses;
+    private final int numAnchors;
+    private final float[] bestScore;
+    private final int[] bestClass;
+    private int[] bestQuantized;
+
+    public YoloOutputDecoder(int numClasses, int numAnchors) {
+        if (numClasses <= 0 || numAnchors <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid output layout: classes=" + numClasses + ", anchors=" + numAnchors);
+        }
+        this.numClasses = numClasses;
+        this.numAnchors = numAnchors;
+        this.bestScore = new float[numAnchors];
+        this.bestClass = new int[numAnchors];
+    }
+
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    public int getNumAnchors() {
+        return numAnchors;
+    }
+
+    public int outputSize() {
+        return (BOX_ROWS + numClasses) * numAnchors;
+    }
+
+    /**
+     * Writes every anchor whose best class score exceeds {@code threshold} into {@code out},
+     * scaled to an {@code imageWidth x imageHeight} image and clamped to its bounds.
+     *
+     * @return the number of detections written
+     */
+    public int decode(float[] output, float threshold, float imageWidth, float imageHeight,
+                      DetectionBuffer out) {
+        decode(output, threshold, stretch(imageWidth, imageHeight), out);
+        return out.clampTo(imageWidth, imageHeight);
+    }
+
+    /**
+     * Writes every anchor whose best class score exceeds {@code threshold} into {@code out},
+     * with its box mapped from normalized model coordinates through {@code toImage}, e.g. a
+     * {@link Letterbox#getOutputToSource() letterbox inverse}. Boxes are not clamped; clamp the
+     * few that survive NMS instead.
+     *
+     * @return the number of detections written
+     */
+    public int decode(float[] output, float threshold, CoordinateTransform toImage, DetectionBuffer out) {
+        if (output.length < outputSize()) {
+            throw new IllegalArgumentException(
+                    "Output has " + output.length + " values, expected " + outputSize());
+        }
+        final int n = numAnchors;
+        final float[] best = bestScore;
+        final int[] cls = bestClass;
+
+        // Class pass: running max over contiguous score rows
+        System.arraycopy(output, BOX_ROWS * n, best, 0, n);
+        Arrays.fill(cls, 0);
+        for (int c = 1; c < numClasses; c++) {
+            int base = (BOX_ROWS + c) * n;
+            for (int i = 0; i < n; i++) {
+                float s = output[base + i];
+                if (s > best[i]) {
+                    best[i] = s;
+                    cls[i] = c;
+                }
+            }
+        }
+
+        // Box pass: only survivors touch the coordinate rows
+        out.clear();
+        final int cyBase = n;
+        final int wBase = 2 * n;
+        final int hBase = 3 * n;
+        final float scaleX = toImage.getScaleX();
+        final float scaleY = toImage.getScaleY();
+        final float offsetX = toImage.getOffsetX();
+        final float offsetY = toImage.getOffsetY();
+        final float halfScaleX = scaleX * 0.5f;
+        final float halfScaleY = scaleY * 0.5f;
+        for (int i = 0; i < n; i++) {
+            float s = best[i];
+            if (s <= threshold) {
+                continue;
+            }
+            float cx = output[i] * scaleX + offsetX;
+            float cy = output[cyBase + i] * scaleY + offsetY;
+            float halfW = output[wBase + i] * halfScaleX;
+            float halfH = output[hBase + i] * halfScaleY;
+            out.add(cx - halfW, cy - halfH, cx + halfW, cy + halfH, s, cls[i]);
+        }
+        return out.size();
+    }
+
+    private static CoordinateTransform stretch(float imageWidth, float imageHeight) {
+        return new CoordinateTransform(imageWidth, imageHeight, 0f, 0f, (int) imageWidth, (int) imageHeight);
+    }
+
+    /**
+     * Same as {@link #decode(float[], float, float, float, DetectionBuffer)} for an 8-bit
+     * output tensor quantized with {@code format}.
+     *
+     * @return the number of detections written
+     */
+    public int decodeQuantized(byte[] output, TensorFormat format, float threshold,
+                               float imageWidth, float imageHeight, DetectionBuffer out) {
+        decodeQuantized(output, format, threshold, stretch(imageWidth, imageHeight), out);
+        return out.clampTo(imageWidth, imageHeight);
+    }
+
+    /**
+     * Same as {@link #decode(float[], float, CoordinateTransform, DetectionBuffer)} for an 8-bit
+     * output tensor quantized with {@code format}.
+     *
+     * @return the number of detections written
+     */
+    public int decodeQuantized(byte[] output, TensorFormat format, float threshold,
+                               CoordinateTransform toImage, DetectionBuffer out) {
+        if (output.length < outputSize()) {
+            throw new IllegalArgumentException(
+                    "Output has " + output.length + " values, expected " + outputSize());
+        }
+        if (bestQuantized == null) {
+            bestQuantized = new int[numAnchors];
+        }
+        final int n = numAnchors;
+        final int[] best = bestQuantized;
+        final int[] cls = bestClass;
+
+        // Class pass on raw quantized values; the affine map preserves ordering
+        int base0 = BOX_ROWS * n;
+        for (int i = 0; i < n; i++) {
+            best[i] = format.toQuantized(output[base0 + i]);
+        }
+        Arrays.fill(cls, 0);
+        for (int c = 1; c < numClasses; c++) {
+            int base = (BOX_ROWS + c) * n;
+            for (int i = 0; i < n; i++) {
+                int s = format.toQuantized(output[base + i]);
+                if (s > best[i]) {
+                    best[i] = s;
+                    cls[i] = c;
+                }
+            }
+        }
+
+        // score > threshold  <=>  q > threshold / scale + zeroPoint
+        final int quantizedThreshold = (int) Math.floor(threshold / format.getScale() + format.getZeroPoint());
+        out.clear();
+        final int cyBase = n;
+        final int wBase = 2 * n;
+        final int hBase = 3 * n;
+        final float scaleX = toImage.getScaleX();
+        final float scaleY = toImage.getScaleY();
+        final float offsetX = toImage.getOffsetX();
+        final float offsetY = toImage.getOffsetY();
+        for (int i = 0; i < n; i++) {
+            if (best[i] <= quantizedThreshold) {
+                continue;
+            }
+            float s = format.dequantize(best[i]);
+            float cx = format.dequantize(format.toQuantized(output[i])) * scaleX + offsetX;
+            float cy = format.dequantize(format.toQuantized(output[cyBase + i])) * scaleY + offsetY;
+            float halfW = format.dequantize(format.toQuantized(output[wBase + i])) * scaleX * 0.5f;
+            float halfH = format.dequantize(format.toQuantized(output[hBase + i])) * scaleY * 0.5f;
+            out.add(cx - halfW, cy - halfH, cx + halfW, cy + halfH, s, cls[i]);
+        }
+        return out.size();
+    }
+}
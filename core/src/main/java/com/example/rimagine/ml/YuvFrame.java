@@ -0,0 +1,99 @@
+package com.example.rimagine.ml;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Camera-independent view of a YUV_420_888 frame.
+ *
+ * Mirrors the plane layout of {@code android.media.Image} / CameraX {@code ImageProxy}
+ * so the conversion code can be fed from the camera or from synthetic test frames.
+ * Mutable so the analyzer can reuse one instance for every frame.
+ */
+public final class YuvFrame {
+    private int width;
+    private int height;
+    private int rotationDegrees;
+    private long timestampNanos;
+    private ByteBuffer yPlane;
+    private ByteBuffer uPlane;
+    private ByteBuffer vPlane;
+    private int yRowStride;
+    private int yPixelStride;
+    private int uvRowStride;
+    private int uvPixelStride;
+
+    public YuvFrame set(int width, int height, int rotationDegrees, long timestampNanos,
+                        ByteBuffer yPlane, int yRowStride, int yPixelStride,
+                        ByteBuffer uPlane, ByteBuffer vPlane, int uvRowStride, int uvPixelStride) {
+        if (rotationDegrees % 90 != 0) {
+            throw new IllegalArgumentException("Unsupported rotation: " + rotationDegrees);
+        }
+        this.width = width;
+        this.height = height;
+        this.rotationDegrees = ((rotationDegrees % 360) + 360) % 360;
+        this.timestampNanos = timestampNanos;
+        this.yPlane = yPlane;
+        this.yRowStride = yRowStride;
+        this.yPixelStride = yPixelStride;
+        this.uPlane = uPlane;
+        this.vPlane = vPlane;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+        return this;
+    }
+
+    /** Sensor width, before rotation. */
+    public int getWidth() {
+        return width;
+    }
+
+    /** Sensor height, before rotation. */
+    public int getHeight() {
+        return height;
+    }
+
+    /** Clockwise rotation that makes the frame upright. */
+    public int getRotationDegrees() {
+        return rotationDegrees;
+    }
+
+    public int getUprightWidth() {
+        return rotationDegrees % 180 == 0 ? width : height;
+    }
+
+    public int getUprightHeight() {
+        return rotationDegrees % 180 == 0 ? height : width;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    ByteBuffer yPlane() {
+        return yPlane;
+    }
+
+    ByteBuffer uPlane() {
+        return uPlane;
+    }
+
+    ByteBuffer vPlane() {
+        return vPlane;
+    }
+
+    int yRowStride() {
+        return yRowStride;
+    }
+
+    int yPixelStride() {
+        return yPixelStride;
+    }
+
+    int uvRowStride() {
+        return uvRowStride;
+    }
+
+    int uvPixelStride() {
+        return uvPixelStride;
+    }
+}
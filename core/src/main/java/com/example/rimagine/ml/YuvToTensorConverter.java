@@ -0,0 +1,127 @@
+package com.example.rimagine.ml;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts a YUV_420_888 frame straight into an {@link InputTensorBuffer}.
+ *
+ * Rotation and scaling to the tensor size are folded into nearest-neighbour lookup
+ * tables, so each tensor pixel reads one Y and one U/V sample and no intermediate RGB
+ * bitmap is produced. Uses BT.601 full-range coefficients, as camera JPEGs do.
+ * Not thread-safe.
+ */
+public final class YuvToTensorConverter {
+    private int[] columnToSource = new int[0];
+    private int[] rowToSource = new int[0];
+    private int cachedWidth = -1;
+    private int cachedHeight = -1;
+    private int cachedRotation = -1;
+    private int cachedTensorWidth = -1;
+    private int cachedTensorHeight = -1;
+
+    public ByteBuffer convert(YuvFrame frame, InputTensorBuffer tensor) {
+        int tensorWidth = tensor.getWidth();
+        int tensorHeight = tensor.getHeight();
+        updateTables(frame, tensorWidth, tensorHeight);
+
+        // For 90/270 the tensor x axis walks sensor rows instead of columns
+        boolean transposed = frame.getRotationDegrees() % 180 != 0;
+        ByteBuffer yPlane = frame.yPlane();
+        ByteBuffer uPlane = frame.uPlane();
+        ByteBuffer vPlane = frame.vPlane();
+        int yRowStride = frame.yRowStride();
+        int yPixelStride = frame.yPixelStride();
+        int uvRowStride = frame.uvRowStride();
+        int uvPixelStride = frame.uvPixelStride();
+
+        int[] row = tensor.rgbRowScratch();
+        tensor.beginFill();
+        for (int ty = 0; ty < tensorHeight; ty++) {
+            int j = 0;
+            for (int tx = 0; tx < tensorWidth; tx++) {
+                int sx;
+                int sy;
+                if (transposed) {
+                    sx = rowToSource[ty];
+                    sy = columnToSource[tx];
+                } else {
+                    sx = columnToSource[tx];
+                    sy = rowToSource[ty];
+                }
+                int y = yPlane.get(sy * yRowStride + sx * yPixelStride) & 0xFF;
+                int uvIndex = (sy >> 1) * uvRowStride + (sx >> 1) * uvPixelStride;
+                int u = (uPlane.get(uvIndex) & 0xFF) - 128;
+                int v = (vPlane.get(uvIndex) & 0xFF) - 128;
+
+                // Fixed-point BT.601: 1.402, 0.344136, 0.714136, 1.772 scaled by 2^10
+                int r = y + ((1436 * v) >> 10);
+                int g = y - ((352 * u + 731 * v) >> 10);
+                int b = y + ((1815 * u) >> 10);
+                row[j++] = clamp(r);
+                row[j++] = clamp(g);
+                row[j++] = clamp(b);
+            }
+            tensor.putRgbRow(row, j);
+        }
+        return tensor.buffer();
+    }
+
+    private void updateTables(YuvFrame frame, int tensorWidth, int tensorHeight) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int rotation = frame.getRotationDegrees();
+        if (width == cachedWidth && height == cachedHeight && rotation == cachedRotation
+                && tensorWidth == cachedTensorWidth && tensorHeight == cachedTensorHeight) {
+            return;
+        }
+        if (columnToSource.length != tensorWidth) {
+            columnToSource = new int[tensorWidth];
+        }
+        if (rowToSource.length != tensorHeight) {
+            rowToSource = new int[tensorHeight];
+        }
+
+        int uprightWidth = frame.getUprightWidth();
+        int uprightHeight = frame.getUprightHeight();
+        for (int tx = 0; tx < tensorWidth; tx++) {
+            int ux = (int) ((tx + 0.5f) * uprightWidth / tensorWidth);
+            // Upright x is sensor x (0/180) or sensor y (90/270), mirrored for 90 and 180
+            switch (rotation) {
+                case 90:
+                    columnToSource[tx] = height - 1 - ux;
+                    break;
+                case 180:
+                    columnToSource[tx] = width - 1 - ux;
+                    break;
+                default:
+                    columnToSource[tx] = ux;
+                    break;
+            }
+        }
+        for (int ty = 0; ty < tensorHeight; ty++) {
+            int uy = (int) ((ty + 0.5f) * uprightHeight / tensorHeight);
+            // Upright y is sensor y (0/180) or sensor x (90/270), mirrored for 180 and 270
+            switch (rotation) {
+                case 180:
+                    rowToSource[ty] = height - 1 - uy;
+                    break;
+                case 270:
+                    rowToSource[ty] = width - 1 - uy;
+                    break;
+                default:
+                    rowToSource[ty] = uy;
+                    break;
+            }
+        }
+
+        cachedWidth = width;
+        cachedHeight = height;
+        cachedRotation = rotation;
+        cachedTensorWidth = tensorWidth;
+        cachedTensorHeight = tensorHeight;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
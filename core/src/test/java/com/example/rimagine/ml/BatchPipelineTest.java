@@ -0,0 +1,229 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BatchPipelineTest {
+
+    private static List<Integer> range(int n) {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            items.add(i);
+        }
+        return items;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void run_writesEveryItemAndReleasesDecodedData() throws Exception {
+        AtomicInteger live = new AtomicInteger();
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        List<BatchProgress> progress = Collections.synchronizedList(new ArrayList<>());
+
+        BatchPipeline<Integer, int[], String> pipeline = new BatchPipeline.Builder<Integer, int[], String>(
+                item -> {
+                    live.incrementAndGet();
+                    return new int[]{item};
+                },
+                decoded -> "result-" + decoded[0],
+                (item, result) -> written.add(result))
+                .setDiscarder(decoded -> live.decrementAndGet())
+                .setProgressListener(progress::add)
+                .build();
+
+        pipeline.start(range(50));
+        assertTrue(pipeline.awaitCompletion(5, TimeUnit.SECONDS));
+
+        BatchProgress done = pipeline.snapshot();
+        assertEquals(BatchProgress.State.COMPLETED, done.getState());
+        assertEquals(50, done.getWritten());
+        assertEquals(0, done.getFailed());
+        assertEquals(50, written.size());
+        assertEquals(0, live.get());
+        assertEquals(BatchProgress.State.COMPLETED, progress.get(progress.size() - 1).getState());
+    }
+
+    @Test
+    public void run_countsFailuresFromEachStage() throws Exception {
+        BatchPipeline<Integer, Integer, Integer> pipeline = new BatchPipeline.Builder<Integer, Integer, Integer>(
+                item -> {
+                    if (item % 10 == 0) throw new IllegalStateException("corrupt image");
+                    return item;
+                },
+                decoded -> {
+                    if (decoded % 10 == 1) throw new IllegalStateException("bad tensor");
+                    return decoded;
+                },
+                (item, result) -> {
+                    if (item % 10 == 2) throw new java.io.IOException("disk full");
+                })
+                .build();
+
+        pipeline.start(range(30));
+        assertTrue(pipeline.awaitCompletion(5, TimeUnit.SECONDS));
+
+        BatchProgress done = pipeline.snapshot();
+        assertEquals(9, done.getFailed());
+        assertEquals(21, done.getWritten());
+        assertEquals(30, done.getCompleted());
+    }
+
+    @Test
+    public void run_boundsDecodedItemsInFlight() throws Exception {
+        AtomicInteger live = new AtomicInteger();
+        AtomicInteger maxLive = new AtomicInteger();
+        BatchPipeline<Integer, Integer, Integer> pipeline = new BatchPipeline.Builder<Integer, Integer, Integer>(
+                item -> {
+                    maxLive.accumulateAndGet(live.incrementAndGet(), Math::max);
+                    return item;
+                },
+                decoded -> {
+                    sleep(2);
+                    return decoded;
+                },
+                (item, result) -> { })
+                .setDecodeThreads(3)
+                .setQueueCapacity(2)
+                .setDiscarder(decoded -> live.decrementAndGet())
+                .build();
+
+        pipeline.start(range(40));
+        assertTrue(pipeline.awaitCompletion(5, TimeUnit.SECONDS));
+
+        // queue capacity + one per decode thread + one being inferred
+        assertTrue("max in flight " + maxLive.get(), maxLive.get() <= 2 + 3 + 1);
+        assertEquals(0, live.get());
+    }
+
+    @Test
+    public void cancel_stopsEarlyAndDiscardsQueuedItems() throws Exception {
+        AtomicInteger live = new AtomicInteger();
+        BatchPipeline<Integer, Integer, Integer> pipeline = new BatchPipeline.Builder<Integer, Integer, Integer>(
+                item -> {
+                    live.incrementAndGet();
+                    return item;
+                },
+                decoded -> {
+                    sleep(20);
+                    return decoded;
+                },
+                (item, result) -> { })
+                .setDiscarder(decoded -> live.decrementAndGet())
+                .build();
+
+        pipeline.start(range(200));
+        sleep(60);
+        pipeline.cancel();
+        assertTrue(pipeline.awaitCompletion(5, TimeUnit.SECONDS));
+
+        BatchProgress done = pipeline.snapshot();
+        assertEquals(BatchProgress.State.CANCELLED, done.getState());
+        assertTrue(done.getWritten() < 200);
+        assertEquals(0, live.get());
+    }
+
+    @Test
+    public void run_keepsInferenceBusyWhenDecodeIsFast() throws Exception {
+        BatchPipeline<Integer, Integer, Integer> pipeline = new BatchPipeline.Builder<Integer, Integer, Integer>(
+                item -> {
+                    sleep(1);
+                    return item;
+                },
+                decoded -> {
+                    sleep(5);
+                    return decoded;
+                },
+                (item, result) -> sleep(1))
+                .build();
+
+        pipeline.start(range(40));
+        assertTrue(pipeline.awaitCompletion(10, TimeUnit.SECONDS));
+
+        float utilization = pipeline.snapshot().getInferenceUtilization(pipeline.getInferenceThreads());
+        assertTrue("utilization " + utilization, utilization > 0.7f);
+    }
+
+    @Test
+    public void run_infersWaitingItemsTogetherWithBatchInference() throws Exception {
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        List<String> mismatches = Collections.synchronizedList(new ArrayList<>());
+        BatchPipeline<Integer, Integer, String> pipeline = new BatchPipeline.Builder<Integer, Integer, String>(
+                item -> item,
+                decoded -> {
+                    throw new AssertionError("per-item inference used");
+                },
+                (item, result) -> {
+                    if (!result.equals("result-" + item)) {
+                        mismatches.add(item + " -> " + result);
+                    }
+                })
+                .setBatchInference(decoded -> {
+                    batchSizes.add(decoded.size());
+                    sleep(5);
+                    List<String> results = new ArrayList<>();
+                    for (Integer value : decoded) {
+                        results.add("result-" + value);
+                    }
+                    return results;
+                }, 4)
+                .setQueueCapacity(8)
+                .build();
+
+        pipeline.start(range(40));
+        assertTrue(pipeline.awaitCompletion(5, TimeUnit.SECONDS));
+
+        assertEquals(40, pipeline.snapshot().getWritten());
+        assertTrue(mismatches.toString(), mismatches.isEmpty());
+        int total = 0;
+        int largest = 0;
+        for (int size : batchSizes) {
+            total += size;
+            largest = Math.max(largest, size);
+        }
+        assertEquals(40, total);
+        assertTrue("largest batch " + largest, largest > 1 && largest <= 4);
+    }
+
+    @Test
+    public void run_failsEveryItemOfAFailedBatch() throws Exception {
+        BatchPipeline<Integer, Integer, Integer> pipeline = new BatchPipeline.Builder<Integer, Integer, Integer>(
+                item -> item, decoded -> decoded, (item, result) -> { })
+                .setBatchInference(decoded -> {
+                    if (decoded.contains(7)) {
+                        throw new IllegalStateException("bad tensor");
+                    }
+                    return new ArrayList<>(decoded);
+                }, 4)
+                .setQueueCapacity(4)
+                .build();
+
+        pipeline.start(range(20));
+        assertTrue(pipeline.awaitCompletion(5, TimeUnit.SECONDS));
+
+        BatchProgress done = pipeline.snapshot();
+        assertTrue(done.getFailed() >= 1);
+        assertEquals(20, done.getWritten() + done.getFailed());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void start_twiceIsRejected() {
+        BatchPipeline<Integer, Integer, Integer> pipeline = new BatchPipeline.Builder<Integer, Integer, Integer>(
+                item -> item, decoded -> decoded, (item, result) -> { }).build();
+        pipeline.start(range(1));
+        pipeline.start(range(1));
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BatchSizeControllerTest {
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void startsAtOneAndGrowsAtMostTwofoldPerCall() {
+        BatchSizeController controller = new BatchSizeController(8, 100 * MS);
+        assertEquals(1, controller.getBatchSize());
+
+        controller.record(1, 5 * MS);
+        assertEquals(2, controller.getBatchSize());
+        controller.record(2, 10 * MS);
+        assertEquals(4, controller.getBatchSize());
+        controller.record(4, 20 * MS);
+        assertEquals(8, controller.getBatchSize());
+        controller.record(8, 40 * MS);
+        assertEquals(8, controller.getBatchSize());
+    }
+
+    @Test
+    public void settlesAtWhatFitsTheBudget() {
+        BatchSizeController controller = new BatchSizeController(8, 100 * MS);
+
+        controller.record(1, 30 * MS);
+        controller.record(2, 60 * MS);
+        controller.record(3, 90 * MS);
+        controller.record(3, 90 * MS);
+
+        assertEquals(3, controller.getBatchSize());
+        assertEquals(30 * MS, controller.getPerInputNanos(), 1.0);
+    }
+
+    @Test
+    public void shrinksAtOnceWhenACallRunsOverBudget() {
+        BatchSizeController controller = new BatchSizeController(8, 100 * MS);
+        controller.record(1, 5 * MS);
+        controller.record(2, 10 * MS);
+        controller.record(4, 20 * MS);
+        assertEquals(8, controller.getBatchSize());
+
+        // Slowed to 50 ms an input, e.g. under thermal throttling
+        controller.record(8, 400 * MS);
+
+        assertEquals(2, controller.getBatchSize());
+    }
+
+    @Test
+    public void neverGoesBelowOne() {
+        BatchSizeController controller = new BatchSizeController(4, 10 * MS);
+
+        controller.record(1, 1000 * MS);
+
+        assertEquals(1, controller.getBatchSize());
+    }
+
+    @Test
+    public void ignoresEmptyCalls() {
+        BatchSizeController controller = new BatchSizeController(4, 10 * MS);
+
+        controller.record(0, 50 * MS);
+
+        assertEquals(1, controller.getBatchSize());
+        assertEquals(-1, controller.getPerInputNanos(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnEmptyBudget() {
+        new BatchSizeController(4, 0);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BitmapSamplingTest {
+
+    @Test
+    public void inSampleSize_neverGoesBelowRequestedSize() {
+        // 12 MP photo for a 640 model input decodes at 1/4 (1000x750)
+        assertEquals(4, BitmapSampling.inSampleSize(4000, 3000, 640, 640));
+        // 48 MP photo decodes at 1/8 (1000x750)
+        assertEquals(8, BitmapSampling.inSampleSize(8000, 6000, 640, 640));
+        assertEquals(1, BitmapSampling.inSampleSize(1279, 1279, 640, 640));
+        assertEquals(2, BitmapSampling.inSampleSize(1280, 1280, 640, 640));
+    }
+
+    @Test
+    public void inSampleSize_isLimitedByTheShortSide() {
+        assertEquals(1, BitmapSampling.inSampleSize(8000, 700, 640, 640));
+    }
+
+    @Test
+    public void inSampleSize_keepsSmallImagesAsIs() {
+        assertEquals(1, BitmapSampling.inSampleSize(320, 240, 640, 640));
+        assertEquals(1, BitmapSampling.inSampleSize(4000, 3000, 0, 0));
+    }
+
+    @Test
+    public void swapsAxes_onlyForQuarterTurns() {
+        for (int orientation = 0; orientation <= 4; orientation++) {
+            assertFalse(BitmapSampling.swapsAxes(orientation));
+        }
+        for (int orientation = 5; orientation <= 8; orientation++) {
+            assertTrue(BitmapSampling.swapsAxes(orientation));
+        }
+    }
+
+    @Test
+    public void storedRegion_findsEveryUprightPixelWhereItIsStored() {
+        int width = 5;
+        int height = 3;
+        int[] out = new int[4];
+        for (int orientation = 1; orientation <= 8; orientation++) {
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int[] upright = upright(orientation, x, y, width, height);
+                    BitmapSampling.storedRegion(orientation, width, height,
+                            upright[0], upright[1], upright[0] + 1, upright[1] + 1, out);
+                    assertArrayEquals("orientation " + orientation, new int[]{x, y, x + 1, y + 1}, out);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void storedRegion_swapsTheSidesOfQuarterTurns() {
+        int[] out = new int[4];
+        // 4000x3000 stored, shown rotated 90 degrees as 3000x4000: the top strip is the left strip
+        BitmapSampling.storedRegion(6, 4000, 3000, 0, 0, 3000, 100, out);
+
+        assertArrayEquals(new int[]{0, 0, 100, 3000}, out);
+    }
+
+    /** Where stored pixel {@code (x, y)} ends up once the orientation is applied, per the EXIF spec. */
+    private static int[] upright(int orientation, int x, int y, int width, int height) {
+        switch (orientation) {
+            case 2:
+                return new int[]{width - 1 - x, y};
+            case 3:
+                return new int[]{width - 1 - x, height - 1 - y};
+            case 4:
+                return new int[]{x, height - 1 - y};
+            case 5:
+                return new int[]{y, x};
+            case 6:
+                return new int[]{height - 1 - y, x};
+            case 7:
+                return new int[]{height - 1 - y, width - 1 - x};
+            case 8:
+                return new int[]{y, width - 1 - x};
+            default:
+                return new int[]{x, y};
+        }
+    }
+}
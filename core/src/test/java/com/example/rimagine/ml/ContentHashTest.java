@@ -0,0 +1,40 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class ContentHashTest {
+
+    @Test
+    public void of_matchesKnownSha256() {
+        byte[] abc = "abc".getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                ContentHash.of(ByteBuffer.wrap(abc)));
+    }
+
+    @Test
+    public void of_streamAndBufferAgreeAcrossChunks() throws Exception {
+        byte[] bytes = new byte[200_000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * 31);
+        }
+
+        assertEquals(ContentHash.of(ByteBuffer.wrap(bytes)), ContentHash.of(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    public void of_buffer_hashesWholeBufferAndKeepsPosition() {
+        ByteBuffer buffer = ByteBuffer.wrap("hello".getBytes(StandardCharsets.US_ASCII));
+        String whole = ContentHash.of(buffer.duplicate());
+        buffer.position(3);
+
+        assertEquals(whole, ContentHash.of(buffer));
+        assertEquals(3, buffer.position());
+    }
+}
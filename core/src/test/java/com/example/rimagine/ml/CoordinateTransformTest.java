@@ -0,0 +1,41 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CoordinateTransformTest {
+
+    @Test
+    public void scale_mapsDecodedPixelsToOriginal() {
+        CoordinateTransform transform = CoordinateTransform.scale(1000, 750, 4000, 3000);
+
+        assertEquals(400f, transform.mapX(100), 1e-4f);
+        assertEquals(3000f, transform.mapY(750), 1e-4f);
+        assertEquals(4000, transform.getTargetWidth());
+        assertEquals(3000, transform.getTargetHeight());
+        assertFalse(transform.isIdentity());
+    }
+
+    @Test
+    public void then_appliesThisFirst() {
+        // Remove 10 px of padding, then undo a 2x downscale
+        CoordinateTransform unpad = new CoordinateTransform(1f, 1f, -10f, -20f, 620, 600);
+        CoordinateTransform upscale = CoordinateTransform.scale(620, 600, 1240, 1200);
+
+        CoordinateTransform combined = unpad.then(upscale);
+
+        assertEquals(upscale.mapX(unpad.mapX(110)), combined.mapX(110), 1e-4f);
+        assertEquals(upscale.mapY(unpad.mapY(70)), combined.mapY(70), 1e-4f);
+        assertEquals(1240, combined.getTargetWidth());
+    }
+
+    @Test
+    public void identity_leavesCoordinatesAlone() {
+        CoordinateTransform identity = CoordinateTransform.identity(640, 480);
+
+        assertTrue(identity.isIdentity());
+        assertEquals(12.5f, identity.mapX(12.5f), 0f);
+        assertEquals(480, identity.getTargetHeight());
+    }
+}
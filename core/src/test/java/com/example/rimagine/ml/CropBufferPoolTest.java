@@ -0,0 +1,53 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CropBufferPoolTest {
+    private final List<int[]> released = new ArrayList<>();
+    private final CropBufferPool<int[]> pool = new CropBufferPool<>(1, released::add);
+
+    @Test
+    public void acquire_reusesBuffersGivenBackUnderTheSameKey() {
+        int[] first = pool.acquire("224x224", () -> new int[224]);
+        pool.release("224x224", first);
+
+        assertSame(first, pool.acquire("224x224", () -> new int[224]));
+        assertNotSame(first, pool.acquire("96x96", () -> new int[96]));
+    }
+
+    @Test
+    public void release_dropsBuffersBeyondTheIdleLimit() {
+        int[] a = pool.acquire("224x224", () -> new int[224]);
+        int[] b = pool.acquire("224x224", () -> new int[224]);
+        pool.release("224x224", a);
+        pool.release("224x224", b);
+
+        assertEquals(1, pool.idleCount("224x224"));
+        assertEquals(1, released.size());
+        assertSame(b, released.get(0));
+    }
+
+    @Test
+    public void close_releasesIdleBuffersAndLateReturns() {
+        int[] idle = pool.acquire("224x224", () -> new int[224]);
+        int[] inUse = pool.acquire("96x96", () -> new int[96]);
+        pool.release("224x224", idle);
+
+        pool.close();
+        pool.release("96x96", inUse);
+
+        assertEquals(2, released.size());
+        assertEquals(0, pool.idleCount("224x224"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void acquire_failsOnceClosed() {
+        pool.close();
+        pool.acquire("224x224", () -> new int[224]);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DelegateSelectorTest {
+
+    private static final DelegateConfig GPU = DelegateConfig.of(DelegateConfig.Accelerator.GPU, 0);
+    private static final DelegateConfig NNAPI = DelegateConfig.of(DelegateConfig.Accelerator.NNAPI, 0);
+
+    @Test
+    public void candidates_cpuOnlyDeviceComparesOnlyCpuVariants() {
+        List<DelegateConfig> candidates = DelegateSelector.candidates(8, false, false);
+
+        assertEquals(8, candidates.size());
+        for (DelegateConfig candidate : candidates) {
+            assertTrue(candidate.toString(), candidate.isCpuOnly());
+        }
+        assertTrue(candidates.contains(DelegateConfig.xnnpack(8)));
+        assertTrue(candidates.contains(DelegateConfig.cpu(1)));
+    }
+
+    @Test
+    public void candidates_skipThreadCountsAboveCoreCount() {
+        List<DelegateConfig> candidates = DelegateSelector.candidates(2, true, true);
+
+        assertEquals(Arrays.asList(DelegateConfig.xnnpack(1), DelegateConfig.xnnpack(2),
+                DelegateConfig.cpu(1), DelegateConfig.cpu(2), NNAPI, GPU), candidates);
+    }
+
+    @Test
+    public void calibrate_picksFastestOverallAndFastestCpu() {
+        Map<DelegateConfig, Long> latency = new HashMap<>();
+        latency.put(DelegateConfig.xnnpack(4), 40L);
+        latency.put(DelegateConfig.cpu(4), 90L);
+        latency.put(GPU, 15L);
+
+        DelegateSelector.Calibration calibration = DelegateSelector.calibrate(
+                Arrays.asList(DelegateConfig.xnnpack(4), DelegateConfig.cpu(4), GPU), latency::get, 4);
+
+        assertEquals(GPU, calibration.getBest());
+        assertEquals(DelegateConfig.xnnpack(4), calibration.getBestCpu());
+        assertEquals(3, calibration.getTimings().size());
+    }
+
+    @Test
+    public void calibrate_skipsFailingDelegates() {
+        DelegateSelector.Calibration calibration = DelegateSelector.calibrate(
+                Arrays.asList(GPU, NNAPI, DelegateConfig.cpu(2)),
+                config -> {
+                    if (!config.isCpuOnly()) {
+                        throw new IllegalStateException("driver crashed");
+                    }
+                    return 50L;
+                }, 4);
+
+        assertEquals(DelegateConfig.cpu(2), calibration.getBest());
+        assertEquals(1, calibration.getTimings().size());
+    }
+
+    @Test
+    public void calibrate_fallsBackWhenNothingRuns() {
+        DelegateSelector.Calibration calibration = DelegateSelector.calibrate(
+                Arrays.asList(GPU, DelegateConfig.cpu(2)),
+                config -> {
+                    throw new IllegalStateException("no model");
+                }, 8);
+
+        assertEquals(DelegateSelector.fallback(8), calibration.getBest());
+        assertEquals(DelegateSelector.fallback(8), calibration.getBestCpu());
+        assertTrue(calibration.getTimings().isEmpty());
+    }
+
+    @Test
+    public void median_handlesOddAndEvenCounts() {
+        assertEquals(5, DelegateSelector.median(new long[]{9, 1, 5}));
+        assertEquals(4, DelegateSelector.median(new long[]{9, 1, 3, 5}));
+        assertEquals(0, DelegateSelector.median(new long[0]));
+    }
+
+    @Test
+    public void config_roundTripsThroughEncoding() {
+        for (DelegateConfig config : DelegateSelector.candidates(8, true, true)) {
+            assertEquals(config, DelegateConfig.decode(config.encode()));
+        }
+        assertNull(DelegateConfig.decode("TPU:4"));
+        assertNull(DelegateConfig.decode("XNNPACK"));
+        assertNull(DelegateConfig.decode(null));
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.rimagine.ml;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class DetectionCacheTest {
+    private static final String[] LABELS = {"back_disk", "front_disk"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static DetectionResult result(float score) {
+        DetectionBuffer boxes = new DetectionBuffer();
+        boxes.add(10f, 20f, 110f, 140f, score, 1);
+        boxes.add(300f, 40f, 360f, 90f, score / 2, 0);
+        return DetectionResult.of(boxes, LABELS, 4000, 3000, 1_000, 2_000, 3_000);
+    }
+
+    private static void assertSameResult(DetectionResult expected, DetectionResult actual) {
+        assertNotNull(actual);
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.getImageWidth(), actual.getImageWidth());
+        assertEquals(expected.getImageHeight(), actual.getImageHeight());
+        assertEquals(expected.getTotalNanos(), actual.getTotalNanos());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.getLeft(i), actual.getLeft(i), 0f);
+            assertEquals(expected.getTop(i), actual.getTop(i), 0f);
+            assertEquals(expected.getRight(i), actual.getRight(i), 0f);
+            assertEquals(expected.getBottom(i), actual.getBottom(i), 0f);
+            assertEquals(expected.getScore(i), actual.getScore(i), 0f);
+            assertEquals(expected.getClassId(i), actual.getClassId(i));
+            assertEquals(expected.getLabel(i), actual.getLabel(i));
+        }
+    }
+
+    @Test
+    public void key_dependsOnContentModelAndSettings() {
+        String key = DetectionCache.key("abc", "int8-1234", "single");
+
+        assertEquals(key, DetectionCache.key("abc", "int8-1234", "single"));
+        assertNotEquals(key, DetectionCache.key("abd", "int8-1234", "single"));
+        assertNotEquals(key, DetectionCache.key("abc", "float16-1234", "single"));
+        assertNotEquals(key, DetectionCache.key("abc", "int8-1234", "tiles"));
+    }
+
+    @Test
+    public void get_missesThenHitsMemory() throws IOException {
+        DetectionCache cache = new DetectionCache(folder.getRoot(), 1 << 20, 1 << 20);
+        DetectionResult result = result(0.9f);
+
+        assertNull(cache.get("a"));
+        cache.put("a", result);
+
+        assertSame(result, cache.get("a"));
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getMemoryHits());
+    }
+
+    @Test
+    public void get_readsDiskAfterRestart() throws IOException {
+        DetectionResult result = result(0.8f);
+        new DetectionCache(folder.getRoot(), 1 << 20, 1 << 20).put("a", result);
+
+        DetectionCache reopened = new DetectionCache(folder.getRoot(), 1 << 20, 1 << 20);
+
+        assertSameResult(result, reopened.get("a"));
+        assertEquals(1, reopened.getDiskHits());
+        assertNotNull(reopened.get("a"));
+        assertEquals(1, reopened.getMemoryHits());
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsedFromMemory() throws IOException {
+        DetectionCache probe = new DetectionCache(folder.newFolder("probe"), 1 << 20, 0);
+        probe.put("x", result(0.5f));
+        long entry = probe.getMemoryBytes();
+        DetectionCache cache = new DetectionCache(folder.newFolder("cache"), 2 * entry, 0);
+
+        cache.put("a", result(0.5f));
+        cache.put("b", result(0.6f));
+        cache.get("a");
+        cache.put("c", result(0.7f));
+
+        assertEquals(2 * entry, cache.getMemoryBytes());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsedFromDisk() throws IOException {
+        File probeDir = folder.newFolder("probe");
+        DetectionCache probe = new DetectionCache(probeDir, 0, 1 << 20);
+        probe.put("x", result(0.5f));
+        long entry = probe.getDiskBytes();
+        File dir = folder.newFolder("cache");
+        DetectionCache cache = new DetectionCache(dir, 0, 2 * entry);
+
+        cache.put("a", result(0.5f));
+        cache.put("b", result(0.6f));
+        assertNotNull(cache.get("a"));
+        cache.put("c", result(0.7f));
+
+        assertEquals(2 * entry, cache.getDiskBytes());
+        assertTrue(new File(dir, "a.det").exists());
+        assertFalse(new File(dir, "b.det").exists());
+        assertTrue(new File(dir, "c.det").exists());
+    }
+
+    @Test
+    public void put_skipsErrors() throws IOException {
+        DetectionCache cache = new DetectionCache(folder.getRoot(), 1 << 20, 1 << 20);
+
+        cache.put("a", DetectionResult.error("boom"));
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getDiskBytes());
+    }
+
+    @Test
+    public void get_dropsCorruptEntry() throws IOException {
+        File corrupt = new File(folder.getRoot(), "a.det");
+        try (FileOutputStream out = new FileOutputStream(corrupt)) {
+            out.write(new byte[]{0, 0, 0, 1, 0, 0});
+        }
+        DetectionCache cache = new DetectionCache(folder.getRoot(), 1 << 20, 1 << 20);
+
+        assertNull(cache.get("a"));
+        assertFalse(corrupt.exists());
+        assertEquals(0, cache.getDiskBytes());
+    }
+}
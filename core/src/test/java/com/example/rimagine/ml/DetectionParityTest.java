@@ -0,0 +1,74 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DetectionParityTest {
+
+    private static DetectionResult result(float[]... detections) {
+        DetectionBuffer buffer = new DetectionBuffer();
+        for (float[] d : detections) {
+            buffer.add(d[0], d[1], d[2], d[3], d[4], (int) d[5]);
+        }
+        return DetectionResult.of(buffer, new String[0], 100, 100, 0, 0, 0);
+    }
+
+    @Test
+    public void compare_matchesOverlappingBoxesOfSameClass() {
+        DetectionResult reference = result(
+                new float[]{10, 10, 50, 50, 0.9f, 0},
+                new float[]{60, 60, 90, 90, 0.8f, 1});
+        DetectionResult candidate = result(
+                new float[]{61, 61, 90, 90, 0.75f, 1},
+                new float[]{11, 10, 50, 51, 0.86f, 0});
+
+        DetectionParity parity = DetectionParity.compare(reference, candidate, 0.5f);
+
+        assertEquals(2, parity.getMatched());
+        assertEquals(0, parity.getMissed());
+        assertEquals(0, parity.getExtra());
+        assertEquals(0.05f, parity.getMaxScoreDelta(), 1e-5f);
+        assertTrue(parity.getMinMatchedIou() > 0.9f);
+        assertEquals(1f, parity.getRecall(), 0f);
+    }
+
+    @Test
+    public void compare_countsClassMismatchAsMissedAndExtra() {
+        DetectionResult reference = result(new float[]{10, 10, 50, 50, 0.9f, 0});
+        DetectionResult candidate = result(new float[]{10, 10, 50, 50, 0.9f, 1});
+
+        DetectionParity parity = DetectionParity.compare(reference, candidate, 0.5f);
+
+        assertEquals(0, parity.getMatched());
+        assertEquals(1, parity.getMissed());
+        assertEquals(1, parity.getExtra());
+        assertEquals(0f, parity.getRecall(), 0f);
+    }
+
+    @Test
+    public void compare_givesEachCandidateToOneReferenceOnly() {
+        DetectionResult reference = result(
+                new float[]{10, 10, 50, 50, 0.7f, 0},
+                new float[]{12, 12, 52, 52, 0.9f, 0});
+        DetectionResult candidate = result(new float[]{12, 12, 52, 52, 0.9f, 0});
+
+        DetectionParity parity = DetectionParity.compare(reference, candidate, 0.5f);
+
+        assertEquals(1, parity.getMatched());
+        assertEquals(1, parity.getMissed());
+        assertEquals(0f, parity.getMaxScoreDelta(), 0f);
+    }
+
+    @Test
+    public void plus_accumulatesAcrossImages() {
+        DetectionResult a = result(new float[]{10, 10, 50, 50, 0.9f, 0});
+        DetectionParity total = DetectionParity.empty()
+                .plus(DetectionParity.compare(a, a, 0.5f))
+                .plus(DetectionParity.compare(a, result(), 0.5f));
+
+        assertEquals(1, total.getMatched());
+        assertEquals(1, total.getMissed());
+        assertEquals(0.5f, total.getRecall(), 0f);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DetectionQueryTest {
+
+    @Test
+    public void all_firstPage_hasNoCondition() {
+        DetectionQuery query = DetectionQuery.all(20);
+
+        assertTrue(query.isFirstPage());
+        assertNull(query.selection());
+        assertNull(query.selectionArgs());
+        assertEquals(20, query.getLimit());
+    }
+
+    @Test
+    public void classFilter_usesDetectionSubquery() {
+        DetectionQuery query = new DetectionQuery.Builder().setClassId(1).setMinScore(0.5f).build();
+
+        assertTrue(query.selection().contains("class_id = ? AND score >= ?"));
+        assertArrayEquals(new String[]{"1", "0.5"}, query.selectionArgs());
+    }
+
+    @Test
+    public void minScoreWithoutClass_usesBestScore() {
+        DetectionQuery query = new DetectionQuery.Builder().setMinScore(0.7f).build();
+
+        assertEquals("best_score >= ?", query.selection());
+        assertArrayEquals(new String[]{"0.7"}, query.selectionArgs());
+    }
+
+    @Test
+    public void after_continuesStrictlyBeforeLastEntryAndKeepsFilters() {
+        DetectionQuery first = new DetectionQuery.Builder().setClassId(0).setLimit(10).build();
+        DetectionQuery next = first.after(1_000L, 42L);
+
+        assertFalse(next.isFirstPage());
+        assertEquals(10, next.getLimit());
+        assertTrue(next.selection().endsWith("(created_at < ? OR (created_at = ? AND _id < ?))"));
+        assertArrayEquals(new String[]{"0", "0.0", "1000", "1000", "42"}, next.selectionArgs());
+    }
+}
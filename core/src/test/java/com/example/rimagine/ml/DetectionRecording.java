@@ -0,0 +1,62 @@
+package com.example.rimagine.ml;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Detector output recorded frame by frame, read from a CSV file under {@code recordings/}. */
+final class DetectionRecording {
+    private static final String[] LABELS = {"disk"};
+
+    final List<Long> timestamps = new ArrayList<>();
+    final List<DetectionResult> frames = new ArrayList<>();
+
+    private DetectionRecording() {
+    }
+
+    static DetectionRecording load(String name) throws IOException {
+        InputStream in = DetectionRecording.class.getClassLoader().getResourceAsStream("recordings/" + name);
+        if (in == null) {
+            throw new IOException("No recording " + name);
+        }
+        DetectionRecording recording = new DetectionRecording();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            DetectionBuffer boxes = new DetectionBuffer();
+            long frame = -1;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                long timestamp = Long.parseLong(fields[0]);
+                if (timestamp != frame && frame >= 0) {
+                    recording.add(frame, boxes);
+                }
+                frame = timestamp;
+                if (fields.length > 1) {
+                    boxes.add(Float.parseFloat(fields[3]), Float.parseFloat(fields[4]), Float.parseFloat(fields[5]),
+                            Float.parseFloat(fields[6]), Float.parseFloat(fields[2]), Integer.parseInt(fields[1]));
+                }
+            }
+            if (frame >= 0) {
+                recording.add(frame, boxes);
+            }
+        }
+        return recording;
+    }
+
+    int size() {
+        return frames.size();
+    }
+
+    private void add(long timestamp, DetectionBuffer boxes) {
+        timestamps.add(timestamp);
+        frames.add(DetectionResult.of(boxes, LABELS, 640, 480, 0, 0, 0));
+        boxes.clear();
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DetectionResultTest {
+
+    @Test
+    public void of_copiesDetectionsSoBufferCanBeReused() {
+        DetectionBuffer buffer = new DetectionBuffer();
+        buffer.add(1, 2, 3, 4, 0.9f, 1);
+        buffer.add(5, 6, 7, 8, 0.7f, 5);
+
+        DetectionResult result = DetectionResult.of(buffer, new String[]{"back_disk", "front_disk"},
+                640, 480, 1_000_000, 2_000_000, 500_000);
+        buffer.clear();
+        buffer.add(0, 0, 0, 0, 0f, 0);
+
+        assertTrue(result.isSuccess());
+        assertEquals(2, result.size());
+        assertEquals(1f, result.getLeft(0), 0f);
+        assertEquals(8f, result.getBottom(1), 0f);
+        assertEquals("front_disk", result.getLabel(0));
+        assertEquals("Class 5", result.getLabel(1));
+        assertEquals(3_500_000, result.getTotalNanos());
+    }
+
+    @Test
+    public void mapped_scalesBoxesToTargetImage() {
+        DetectionBuffer buffer = new DetectionBuffer();
+        buffer.add(10, 20, 110, 220, 0.8f, 0);
+        DetectionResult result = DetectionResult.of(buffer, new String[]{"back_disk"},
+                1000, 750, 0, 0, 0);
+
+        DetectionResult original = result.mapped(CoordinateTransform.scale(1000, 750, 4000, 3000));
+
+        assertEquals(4000, original.getImageWidth());
+        assertEquals(3000, original.getImageHeight());
+        assertEquals(40f, original.getLeft(0), 1e-3f);
+        assertEquals(880f, original.getBottom(0), 1e-3f);
+        assertEquals(0.8f, original.getScore(0), 0f);
+        assertEquals("back_disk", original.getLabel(0));
+    }
+
+    @Test
+    public void error_hasNoDetections() {
+        DetectionResult result = DetectionResult.error("boom");
+
+        assertFalse(result.isSuccess());
+        assertEquals("boom", result.getErrorMessage());
+        assertEquals(0, result.size());
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.rimagine.ml;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ImageRetentionPolicyTest {
+    private static final long NOW = TimeUnit.DAYS.toMillis(1000);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file(String name, int bytes, long ageMillis) throws IOException {
+        File file = folder.newFile(name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[bytes]);
+        }
+        assertTrue(file.setLastModified(NOW - ageMillis));
+        return file;
+    }
+
+    @Test
+    public void selectForDeletion_dropsOldestBeyondFileCount() throws IOException {
+        File newest = file("image_3.jpg", 10, 1_000);
+        File middle = file("image_2.jpg", 10, 2_000);
+        File oldest = file("image_1.jpg", 10, 3_000);
+        ImageRetentionPolicy policy = new ImageRetentionPolicy(2, Long.MAX_VALUE, Long.MAX_VALUE);
+
+        List<File> expired = policy.selectForDeletion(Arrays.asList(oldest, newest, middle), NOW);
+
+        assertEquals(Arrays.asList(oldest), expired);
+    }
+
+    @Test
+    public void selectForDeletion_respectsByteBudget() throws IOException {
+        File newest = file("image_3.jpg", 600, 1_000);
+        File middle = file("image_2.jpg", 600, 2_000);
+        File small = file("image_1.jpg", 100, 3_000);
+        ImageRetentionPolicy policy = new ImageRetentionPolicy(10, 1_000, Long.MAX_VALUE);
+
+        List<File> expired = policy.selectForDeletion(Arrays.asList(newest, middle, small), NOW);
+
+        // The second 600 byte file does not fit, but the smaller, older one still does
+        assertEquals(Arrays.asList(middle), expired);
+    }
+
+    @Test
+    public void selectForDeletion_expiresByAge() throws IOException {
+        File fresh = file("image_2.jpg", 10, TimeUnit.HOURS.toMillis(1));
+        File stale = file("image_1.jpg", 10, TimeUnit.DAYS.toMillis(8));
+        ImageRetentionPolicy policy = new ImageRetentionPolicy(10, Long.MAX_VALUE, TimeUnit.DAYS.toMillis(7));
+
+        assertEquals(Arrays.asList(stale), policy.selectForDeletion(Arrays.asList(fresh, stale), NOW));
+    }
+
+    @Test
+    public void prune_onlyTouchesMatchingFiles() throws IOException {
+        file("image_2.jpg", 10, 1_000);
+        file("image_1.jpg", 10, 2_000);
+        File unrelated = file("batch_1.jsonl", 10, TimeUnit.DAYS.toMillis(30));
+        ImageRetentionPolicy policy = new ImageRetentionPolicy(1, Long.MAX_VALUE, TimeUnit.DAYS.toMillis(7));
+
+        int deleted = policy.prune(folder.getRoot(), "image_", NOW);
+
+        assertEquals(1, deleted);
+        assertTrue(new File(folder.getRoot(), "image_2.jpg").exists());
+        assertFalse(new File(folder.getRoot(), "image_1.jpg").exists());
+        assertTrue(unrelated.exists());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsNegativeLimits() {
+        new ImageRetentionPolicy(-1, 0, 0);
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class InferenceMetricsTest {
+
+    @Test
+    public void record_andCount_arePerStageAndCounter() {
+        InferenceMetrics metrics = new InferenceMetrics();
+
+        metrics.record(InferenceMetrics.Stage.INVOKE, 20_000_000L);
+        metrics.record(InferenceMetrics.Stage.INVOKE, 30_000_000L);
+        metrics.record(InferenceMetrics.Stage.NMS, 100_000L);
+        metrics.increment(InferenceMetrics.Counter.INFERENCES);
+        metrics.add(InferenceMetrics.Counter.DETECTIONS, 7);
+
+        assertEquals(2, metrics.snapshot(InferenceMetrics.Stage.INVOKE).getCount());
+        assertEquals(1, metrics.snapshot(InferenceMetrics.Stage.NMS).getCount());
+        assertEquals(0, metrics.snapshot(InferenceMetrics.Stage.DECODE).getCount());
+        assertEquals(1, metrics.count(InferenceMetrics.Counter.INFERENCES));
+        assertEquals(7, metrics.count(InferenceMetrics.Counter.DETECTIONS));
+    }
+
+    @Test
+    public void toJson_listsCountersAndStagesInMicroseconds() {
+        InferenceMetrics metrics = new InferenceMetrics();
+        metrics.record(InferenceMetrics.Stage.INVOKE, 25_000_000L);
+        metrics.add(InferenceMetrics.Counter.DETECTIONS, 3);
+
+        String json = metrics.toJson();
+
+        assertTrue(json, json.startsWith("{\"since_ms\":"));
+        assertTrue(json, json.contains("\"detections\":3"));
+        assertTrue(json, json.contains("\"errors\":0"));
+        assertTrue(json, json.contains("\"invoke\":{\"count\":1,\"mean\":25000,"));
+        assertTrue(json, json.contains("\"max\":25000}"));
+        assertTrue(json, json.contains("\"persist\":{\"count\":0,"));
+        assertTrue(json, json.endsWith("}}"));
+    }
+
+    @Test
+    public void reset_clearsStagesAndCounters() {
+        InferenceMetrics metrics = new InferenceMetrics();
+        metrics.record(InferenceMetrics.Stage.DECODE, 1_000L);
+        metrics.increment(InferenceMetrics.Counter.ERRORS);
+
+        metrics.reset();
+
+        assertEquals(0, metrics.snapshot(InferenceMetrics.Stage.DECODE).getCount());
+        assertEquals(0, metrics.count(InferenceMetrics.Counter.ERRORS));
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.rimagine.ml;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class InferenceSchedulerTest {
+    private final InferenceScheduler scheduler = new InferenceScheduler(1, 4);
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    /** Collects results and errors, and counts them down. */
+    private static final class Collector<T> implements InferenceScheduler.Listener<T> {
+        final List<T> results = Collections.synchronizedList(new ArrayList<>());
+        final List<Exception> errors = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch done;
+
+        Collector(int expected) {
+            done = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onResult(T result) {
+            results.add(result);
+            done.countDown();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            errors.add(e);
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    /** Occupies the single worker until the returned latch is released. */
+    private CountDownLatch blockWorker() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit("blocker", InferenceScheduler.Priority.BACKGROUND, request -> {
+            started.countDown();
+            release.await();
+            return null;
+        }, new Collector<>(1));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    @Test
+    public void interactiveRequestsRunBeforeQueuedBackgroundOnes() throws Exception {
+        CountDownLatch release = blockWorker();
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        Collector<String> collector = new Collector<>(3);
+
+        scheduler.submit("batch-1", InferenceScheduler.Priority.BACKGROUND, request -> {
+            order.add("batch-1");
+            return "batch-1";
+        }, collector);
+        scheduler.submit("batch-2", InferenceScheduler.Priority.BACKGROUND, request -> {
+            order.add("batch-2");
+            return "batch-2";
+        }, collector);
+        scheduler.submit("photo", InferenceScheduler.Priority.INTERACTIVE, request -> {
+            order.add("photo");
+            return "photo";
+        }, collector);
+        release.countDown();
+        collector.await();
+
+        assertEquals(Arrays.asList("photo", "batch-1", "batch-2"), order);
+    }
+
+    @Test
+    public void sameKeyJoinsThePendingRequest() throws Exception {
+        CountDownLatch release = blockWorker();
+        AtomicInteger runs = new AtomicInteger();
+        Collector<Integer> first = new Collector<>(1);
+        Collector<Integer> second = new Collector<>(1);
+        InferenceScheduler.Task<Integer> task = request -> runs.incrementAndGet();
+
+        InferenceScheduler.Request<Integer> a =
+                scheduler.submit("image", InferenceScheduler.Priority.INTERACTIVE, task, first);
+        InferenceScheduler.Request<Integer> b =
+                scheduler.submit("image", InferenceScheduler.Priority.INTERACTIVE, task, second);
+        release.countDown();
+        first.await();
+        second.await();
+
+        assertSame(a, b);
+        assertEquals(1, runs.get());
+        assertEquals(Collections.singletonList(1), second.results);
+    }
+
+    @Test
+    public void sameKeyRunsAgainOnceTheFirstIsDone() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        InferenceScheduler.Task<Integer> task = request -> runs.incrementAndGet();
+
+        Collector<Integer> first = new Collector<>(1);
+        scheduler.submit("image", InferenceScheduler.Priority.INTERACTIVE, task, first);
+        first.await();
+        Collector<Integer> second = new Collector<>(1);
+        scheduler.submit("image", InferenceScheduler.Priority.INTERACTIVE, task, second);
+        second.await();
+
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void cancelledQueuedRequestNeverRuns() throws Exception {
+        CountDownLatch release = blockWorker();
+        AtomicInteger runs = new AtomicInteger();
+        Collector<Integer> cancelled = new Collector<>(1);
+
+        InferenceScheduler.Request<Integer> request = scheduler.submit("image",
+                InferenceScheduler.Priority.INTERACTIVE, r -> runs.incrementAndGet(), cancelled);
+        request.cancel();
+        assertTrue(request.isCancelled());
+        assertTrue(scheduler.awaitInteractiveIdle(0, TimeUnit.MILLISECONDS));
+
+        Collector<Integer> after = new Collector<>(1);
+        scheduler.submit("after", InferenceScheduler.Priority.INTERACTIVE, r -> 7, after);
+        release.countDown();
+        after.await();
+
+        assertEquals(0, runs.get());
+        assertEquals(1, cancelled.done.getCount());
+    }
+
+    @Test
+    public void cancelledRunningRequestDropsItsResult() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Collector<String> collector = new Collector<>(1);
+
+        InferenceScheduler.Request<String> request = scheduler.submit("image",
+                InferenceScheduler.Priority.INTERACTIVE, r -> {
+                    started.countDown();
+                    release.await();
+                    r.throwIfCancelled();
+                    return "stale";
+                }, collector);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        request.cancel();
+        release.countDown();
+
+        assertTrue(scheduler.awaitInteractiveIdle(5, TimeUnit.SECONDS));
+        assertTrue(collector.results.isEmpty());
+        assertTrue(collector.errors.isEmpty());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    @Test
+    public void taskFailureReachesTheListener() throws Exception {
+        Collector<String> collector = new Collector<>(1);
+        scheduler.submit("image", InferenceScheduler.Priority.INTERACTIVE, r -> {
+            throw new IllegalStateException("boom");
+        }, collector);
+        collector.await();
+
+        assertEquals(1, collector.errors.size());
+        assertEquals("boom", collector.errors.get(0).getMessage());
+    }
+
+    @Test
+    public void awaitInteractiveIdleWaitsForRunningInteractiveWork() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        scheduler.submit("image", InferenceScheduler.Priority.INTERACTIVE, r -> {
+            started.countDown();
+            release.await();
+            return null;
+        }, new Collector<>(1));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertFalse(scheduler.awaitInteractiveIdle(20, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(scheduler.awaitInteractiveIdle(5, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void backgroundLaneIsBounded() throws Exception {
+        blockWorker();
+        for (int i = 0; i < 4; i++) {
+            scheduler.submit("batch-" + i, InferenceScheduler.Priority.BACKGROUND, r -> null, new Collector<>(1));
+        }
+    }
+}
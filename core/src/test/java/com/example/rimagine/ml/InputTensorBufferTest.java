@@ -0,0 +1,191 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class InputTensorBufferTest {
+
+    @Test
+    public void fillFromPixels_writesNormalizedRgbInNhwcOrder() {
+        InputTensorBuffer tensor = new InputTensorBuffer(2, 1);
+        tensor.pixels()[0] = 0xFFFF8000;
+        tensor.pixels()[1] = 0xFF0000FF;
+
+        FloatBuffer floats = tensor.fillFromPixels().asFloatBuffer();
+
+        assertEquals(6, floats.remaining());
+        assertEquals(1.0f, floats.get(0), 1e-6f);
+        assertEquals(128 / 255.0f, floats.get(1), 1e-6f);
+        assertEquals(0.0f, floats.get(2), 1e-6f);
+        assertEquals(0.0f, floats.get(3), 1e-6f);
+        assertEquals(0.0f, floats.get(4), 1e-6f);
+        assertEquals(1.0f, floats.get(5), 1e-6f);
+    }
+
+    @Test
+    public void fillFromPixels_quantizesForUint8Input() {
+        TensorFormat format = TensorFormat.quantized(TensorFormat.DataType.UINT8, 1f / 255, 0);
+        InputTensorBuffer tensor = new InputTensorBuffer(2, 1, format);
+        tensor.pixels()[0] = 0xFFFF8000;
+        tensor.pixels()[1] = 0xFF0000FF;
+
+        ByteBuffer bytes = tensor.fillFromPixels();
+
+        assertEquals(2 * 3, bytes.capacity());
+        assertEquals(255, bytes.get(0) & 0xFF);
+        assertEquals(128, bytes.get(1) & 0xFF);
+        assertEquals(0, bytes.get(2) & 0xFF);
+        assertEquals(255, bytes.get(5) & 0xFF);
+    }
+
+    @Test
+    public void fillFromPixels_appliesInt8ZeroPoint() {
+        TensorFormat format = TensorFormat.quantized(TensorFormat.DataType.INT8, 1f / 255, -128);
+        InputTensorBuffer tensor = new InputTensorBuffer(1, 1, format);
+        tensor.pixels()[0] = 0xFFFF8000;
+
+        ByteBuffer bytes = tensor.fillFromPixels();
+
+        assertEquals(127, bytes.get(0));
+        assertEquals(0, bytes.get(1));
+        assertEquals(-128, bytes.get(2));
+    }
+
+    @Test
+    public void fillFromPixels_appliesMeanAndStd() {
+        InputTensorBuffer tensor = new InputTensorBuffer(1, 1, TensorFormat.float32(), 127.5f, 127.5f);
+        tensor.pixels()[0] = 0xFFFF8000;
+
+        FloatBuffer floats = tensor.fillFromPixels().asFloatBuffer();
+
+        assertEquals(1f, floats.get(0), 1e-6f);
+        assertEquals(0.5f / 127.5f, floats.get(1), 1e-6f);
+        assertEquals(-1f, floats.get(2), 1e-6f);
+    }
+
+    @Test
+    public void fillFromPixels_reusesSameBuffer() {
+        InputTensorBuffer tensor = new InputTensorBuffer(4, 4);
+
+        ByteBuffer first = tensor.fillFromPixels();
+        ByteBuffer second = tensor.fillFromPixels();
+
+        assertSame(first, second);
+        assertEquals(0, second.position());
+        assertEquals(4 * 4 * 3 * 4, second.capacity());
+    }
+
+    @Test
+    public void fillFromPixels_allocatesNothingInSteadyState() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        InputTensorBuffer tensor = new InputTensorBuffer(64, 64);
+        int[] pixels = tensor.pixels();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | (i * 0x010203);
+        }
+
+        // Warm up so the measured calls run compiled code
+        for (int i = 0; i < 2_000; i++) {
+            tensor.fillFromPixels();
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1_000; i++) {
+            tensor.fillFromPixels();
+        }
+        long after = threadBean.getThreadAllocatedBytes(threadId);
+
+        assertEquals("bytes allocated by steady-state fills", 0, after - before);
+    }
+
+    @Test
+    public void fillFromPixels_stripedMatchesSequentialForEveryFormat() {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            TensorFormat[] formats = {TensorFormat.float32(),
+                    TensorFormat.quantized(TensorFormat.DataType.UINT8, 1f / 255, 0),
+                    TensorFormat.quantized(TensorFormat.DataType.INT8, 1f / 255, -128)};
+            for (TensorFormat format : formats) {
+                // 601 rows do not split evenly into stripes
+                InputTensorBuffer sequential = new InputTensorBuffer(640, 601, format, 127.5f, 127.5f);
+                InputTensorBuffer striped = new InputTensorBuffer(640, 601, format, 127.5f, 127.5f);
+                int[] pixels = sequential.pixels();
+                for (int i = 0; i < pixels.length; i++) {
+                    pixels[i] = 0xFF000000 | (i * 0x010203);
+                }
+                System.arraycopy(pixels, 0, striped.pixels(), 0, pixels.length);
+
+                ByteBuffer expected = sequential.fillFromPixels();
+                ByteBuffer actual = striped.fillFromPixels(pool);
+
+                assertEquals(4, striped.getStripeCount());
+                assertEquals(0, actual.position());
+                assertEquals(format.toString(), expected, actual);
+                // Stripes are reused and rewritten in place
+                assertEquals(format.toString(), expected, striped.fillFromPixels(pool));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void fillFromPixels_smallInputsAreNotStriped() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            InputTensorBuffer tensor = new InputTensorBuffer(64, 64);
+            tensor.pixels()[0] = 0xFFFFFFFF;
+
+            FloatBuffer floats = tensor.fillFromPixels(pool).asFloatBuffer();
+
+            assertEquals(0, tensor.getStripeCount());
+            assertEquals(1f, floats.get(0), 0f);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void fillSlot_writesEachImageIntoItsOwnSlice() {
+        InputTensorBuffer tensor = new InputTensorBuffer(2, 1, TensorFormat.float32(), 0f, 255f, 3);
+        tensor.pixels()[0] = 0xFFFFFFFF;
+        tensor.pixels()[1] = 0xFFFFFFFF;
+        tensor.fillSlot(1);
+        tensor.pixels()[0] = 0xFF000000;
+        tensor.pixels()[1] = 0xFF000000;
+        tensor.fillSlot(0);
+
+        FloatBuffer two = tensor.batch(2).asFloatBuffer();
+
+        assertEquals(2 * 2 * 3 * 4, tensor.batch(2).capacity());
+        assertEquals(12, two.remaining());
+        assertEquals(0f, two.get(5), 0f);
+        assertEquals(1f, two.get(6), 0f);
+        assertEquals(1f, two.get(11), 0f);
+        assertSame(tensor.batch(2), tensor.batch(2));
+        assertEquals(3 * 2 * 3 * 4, tensor.batch(3).capacity());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void fillSlot_rejectsSlotBeyondCapacity() {
+        new InputTensorBuffer(2, 2, TensorFormat.float32(), 0f, 255f, 2).fillSlot(2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsEmptyShape() {
+        new InputTensorBuffer(0, 640);
+    }
+}
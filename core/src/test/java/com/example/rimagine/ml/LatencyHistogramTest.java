@@ -0,0 +1,86 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketOf_upperBound_coverEveryValueWithinAQuarter() {
+        long[] values = {0, 1, 3, 4, 5, 7, 8, 15, 1_000, 16_777_215L, 1_000_000_000L, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(bucket >= 0 && bucket < LatencyHistogram.BUCKETS);
+            long upper = LatencyHistogram.upperBound(bucket);
+            assertTrue(value + " <= " + upper, value <= upper);
+            assertTrue(value + " close to " + upper, upper - value <= Math.max(1L, value / 4));
+            if (bucket > 0) {
+                assertTrue(LatencyHistogram.upperBound(bucket - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    public void snapshot_percentilesWithinBucketResolution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1_000_000L);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500_500_000L, snapshot.getMeanNanos());
+        assertEquals(1_000_000_000L, snapshot.getMaxNanos());
+        assertEquals(500_000_000.0, snapshot.percentileNanos(50), 500_000_000.0 * 0.25);
+        assertEquals(990_000_000.0, snapshot.percentileNanos(99), 990_000_000.0 * 0.25);
+        assertEquals(1_000_000_000L, snapshot.percentileNanos(100));
+    }
+
+    @Test
+    public void snapshot_emptyIsZero() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.percentileNanos(99));
+        assertEquals(0, snapshot.getMeanNanos());
+    }
+
+    @Test
+    public void record_isSafeFromManyThreads() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            long value = (t + 1) * 1_000L;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(value);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(40_000, snapshot.getCount());
+        assertEquals(4_000L, snapshot.getMaxNanos());
+    }
+
+    @Test
+    public void reset_clearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(123_456L);
+
+        histogram.reset();
+
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getMaxNanos());
+    }
+}
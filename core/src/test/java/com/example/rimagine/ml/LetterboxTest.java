@@ -0,0 +1,48 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LetterboxTest {
+
+    @Test
+    public void fit_padsShortAxisAndKeepsAspect() {
+        Letterbox letterbox = Letterbox.fit(4000, 3000, 640, 640);
+
+        assertEquals(0.16f, letterbox.getScale(), 1e-6f);
+        assertEquals(640, letterbox.getContentWidth());
+        assertEquals(480, letterbox.getContentHeight());
+        assertEquals(0, letterbox.getPadLeft());
+        assertEquals(80, letterbox.getPadTop());
+    }
+
+    @Test
+    public void outputToSource_mapsContentCornersToImageCorners() {
+        Letterbox letterbox = Letterbox.fit(1000, 3000, 640, 640);
+        CoordinateTransform transform = letterbox.getOutputToSource();
+
+        float left = letterbox.getPadLeft() / 640f;
+        float right = (letterbox.getPadLeft() + letterbox.getContentWidth()) / 640f;
+        assertEquals(0f, transform.mapX(left), 1e-2f);
+        assertEquals(1000f, transform.mapX(right), 1e-2f);
+        assertEquals(0f, transform.mapY(0f), 1e-3f);
+        assertEquals(3000f, transform.mapY(1f), 1e-2f);
+        assertEquals(1000, transform.getTargetWidth());
+    }
+
+    @Test
+    public void sameLayout_ignoresSourceSizeWithSameAspect() {
+        Letterbox small = Letterbox.fit(800, 600, 640, 640);
+        Letterbox large = Letterbox.fit(4000, 3000, 640, 640);
+
+        assertTrue(small.sameLayout(large));
+        assertFalse(small.matches(4000, 3000, 640, 640));
+        assertFalse(small.sameLayout(Letterbox.fit(600, 800, 640, 640)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fit_rejectsEmptySource() {
+        Letterbox.fit(0, 100, 640, 640);
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LiveFrameProcessorTest {
+
+    private static final int SIZE = 8;
+
+    /** Reads back which synthetic frame a tensor came from via its luma level. */
+    private static int levelOf(java.nio.ByteBuffer tensor) {
+        return Math.round(tensor.asFloatBuffer().get(0) * 255f);
+    }
+
+    @Test
+    public void replay_processesOnlyLatestFrameWhileDetectorIsBusy() throws Exception {
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        List<Integer> seenLevels = Collections.synchronizedList(new ArrayList<>());
+        List<Long> seenTimestamps = Collections.synchronizedList(new ArrayList<>());
+
+        LiveFrameProcessor processor = new LiveFrameProcessor(SIZE, SIZE, (tensor, w, h) -> {
+            seenLevels.add(levelOf(tensor));
+            firstStarted.countDown();
+            try {
+                releaseFirst.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return DetectionResult.of(new DetectionBuffer(), new String[0], w, h, 0, 0, 0);
+        }, (result, timestamp) -> seenTimestamps.add(timestamp), worker);
+
+        processor.onFrame(SyntheticFrames.uniform(SIZE, SIZE, 0, 10));
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        // Detector is busy: these frames pile up and only the last one survives
+        for (int i = 1; i <= 9; i++) {
+            processor.onFrame(SyntheticFrames.uniform(SIZE, SIZE, i, 10 + i * 10));
+        }
+        releaseFirst.countDown();
+        worker.shutdown();
+        assertTrue(worker.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(10, processor.getReceivedFrames());
+        assertEquals(2, processor.getProcessedFrames());
+        assertEquals(8, processor.getDroppedFrames());
+        assertEquals(Integer.valueOf(10), seenLevels.get(0));
+        assertEquals(Integer.valueOf(100), seenLevels.get(1));
+        assertEquals(Long.valueOf(9), seenTimestamps.get(1));
+    }
+
+    @Test
+    public void replay_everyFrameCountedExactlyOnce() throws Exception {
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        LiveFrameProcessor processor = new LiveFrameProcessor(SIZE, SIZE, (tensor, w, h) -> {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return DetectionResult.of(new DetectionBuffer(), new String[0], w, h, 0, 0, 0);
+        }, (result, timestamp) -> { }, worker);
+
+        for (int i = 0; i < 200; i++) {
+            processor.onFrame(SyntheticFrames.uniform(SIZE, SIZE, i, i % 256));
+        }
+        worker.shutdown();
+        assertTrue(worker.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(200, processor.getReceivedFrames());
+        assertEquals(200, processor.getProcessedFrames() + processor.getDroppedFrames());
+        assertTrue(processor.getProcessedFrames() >= 1);
+    }
+
+    @Test
+    public void replay_reportsUprightFrameSize() throws Exception {
+        ExecutorService worker = Executors.newSingleThreadExecutor();
+        int[] size = new int[2];
+        LiveFrameProcessor processor = new LiveFrameProcessor(SIZE, SIZE, (tensor, w, h) -> {
+            size[0] = w;
+            size[1] = h;
+            return DetectionResult.of(new DetectionBuffer(), new String[0], w, h, 0, 0, 0);
+        }, (result, timestamp) -> { }, worker);
+
+        processor.onFrame(SyntheticFrames.frame(4, 2, 90, 0, new byte[8], 128, 128));
+        worker.shutdown();
+        assertTrue(worker.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(2, size[0]);
+        assertEquals(4, size[1]);
+    }
+
+    @Test
+    public void close_stopsAcceptingFrames() {
+        LiveFrameProcessor processor = new LiveFrameProcessor(SIZE, SIZE,
+                (tensor, w, h) -> DetectionResult.error("unused"), (result, timestamp) -> { }, Runnable::run);
+
+        processor.close();
+        processor.onFrame(SyntheticFrames.uniform(SIZE, SIZE, 0, 0));
+
+        assertEquals(0, processor.getReceivedFrames());
+    }
+
+    @Test
+    public void replay_withTrackerRunsTheDetectorOnlyEveryFewFrames() {
+        long frameNanos = 33_333_333L;
+        List<DetectionResult> shown = new ArrayList<>();
+        List<Long> detectedAt = new ArrayList<>();
+        long[] timestamp = new long[1];
+        // A box sliding right 4 px per frame
+        LiveFrameProcessor processor = new LiveFrameProcessor(SIZE, SIZE, (tensor, w, h) -> {
+            detectedAt.add(timestamp[0]);
+            float x = 100 + 4 * (timestamp[0] / frameNanos);
+            DetectionBuffer boxes = new DetectionBuffer();
+            boxes.add(x, 100, x + 60, 160, 0.9f, 0);
+            return DetectionResult.of(boxes, new String[]{"disk"}, 640, 480, 0, 0, 0);
+        }, (result, t) -> shown.add(result), Runnable::run);
+        processor.setTracker(new ObjectTracker(), 3);
+
+        for (int f = 0; f < 30; f++) {
+            timestamp[0] = f * frameNanos;
+            processor.onFrame(SyntheticFrames.uniform(SIZE, SIZE, timestamp[0], 0));
+        }
+
+        assertEquals(30, processor.getReceivedFrames());
+        assertEquals(30, processor.getProcessedFrames() + processor.getTrackedFrames());
+        assertTrue("detected " + detectedAt.size() + " of 30", detectedAt.size() <= 15);
+        assertEquals(30, shown.size());
+        // One object, one id, on every frame once confirmed
+        DetectionResult last = shown.get(shown.size() - 1);
+        assertEquals(1, last.size());
+        assertTrue(last.isTracked());
+        assertEquals(shown.get(2).getTrackId(0), last.getTrackId(0));
+        assertEquals(100 + 4 * 29, last.getLeft(0), 3f);
+    }
+
+    @Test
+    public void replay_withTrackerReportsAFailedFirstDetection() {
+        List<DetectionResult> shown = new ArrayList<>();
+        int[] calls = new int[1];
+        LiveFrameProcessor processor = new LiveFrameProcessor(SIZE, SIZE, (tensor, w, h) -> {
+            if (calls[0]++ == 0) {
+                return DetectionResult.error("model failed");
+            }
+            DetectionBuffer boxes = new DetectionBuffer();
+            boxes.add(100, 100, 160, 160, 0.9f, 0);
+            return DetectionResult.of(boxes, new String[]{"disk"}, 640, 480, 0, 0, 0);
+        }, (result, t) -> shown.add(result), Runnable::run);
+        processor.setTracker(new ObjectTracker(), 3);
+
+        processor.onFrame(SyntheticFrames.uniform(SIZE, SIZE, 0, 0));
+        processor.onFrame(SyntheticFrames.uniform(SIZE, SIZE, 33_333_333L, 0));
+
+        assertEquals(2, processor.getProcessedFrames());
+        assertEquals(2, shown.size());
+        assertFalse(shown.get(0).isSuccess());
+        assertTrue(shown.get(1).isSuccess());
+    }
+}
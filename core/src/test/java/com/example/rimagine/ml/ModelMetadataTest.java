@@ -0,0 +1,49 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ModelMetadataTest {
+
+    @Test
+    public void default_hasOneLabelPerTrainedClass() {
+        assertArrayEquals(new String[]{"back_disk", "front_disk"}, ModelMetadata.DEFAULT.getLabels());
+        assertEquals(1f, ModelMetadata.DEFAULT.normalize(255), 0f);
+    }
+
+    @Test
+    public void parseLabels_readsOneLabelPerLine() {
+        assertArrayEquals(new String[]{"back_disk", "front_disk"},
+                ModelMetadata.parseLabels("back_disk\r\n\nfront_disk\n"));
+    }
+
+    @Test
+    public void parseLabels_readsExporterNamesMap() {
+        String dump = "{'description': 'Ultralytics YOLOv8n model', 'stride': 32, 'task': 'detect', "
+                + "'batch': 1, 'imgsz': [640, 640], 'names': {0: 'back_disk', 2: 'rim'}}";
+
+        assertArrayEquals(new String[]{"back_disk", "Class 1", "rim"}, ModelMetadata.parseLabels(dump));
+    }
+
+    @Test
+    public void parseLabels_readsJsonNamesMap() {
+        assertArrayEquals(new String[]{"a", "b"},
+                ModelMetadata.parseLabels("{\"names\": {\"0\": \"a\", \"1\": \"b\"}}"));
+    }
+
+    @Test
+    public void withNormalization_keepsLabels() {
+        ModelMetadata metadata = ModelMetadata.DEFAULT.withNormalization(127.5f, 127.5f, "test");
+
+        assertEquals(-1f, metadata.normalize(0), 1e-6f);
+        assertEquals(1f, metadata.normalize(255), 1e-6f);
+        assertArrayEquals(ModelMetadata.DEFAULT.getLabels(), metadata.getLabels());
+        assertEquals("test", metadata.getSource());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsZeroStd() {
+        new ModelMetadata(new String[0], 0f, 0f, "test");
+    }
+}
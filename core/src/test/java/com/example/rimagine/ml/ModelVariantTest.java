@@ -0,0 +1,24 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class ModelVariantTest {
+
+    @Test
+    public void firstAvailable_prefersSmallestBundledVariant() {
+        assertEquals(ModelVariant.FLOAT16, ModelVariant.firstAvailable(
+                new HashSet<>(Arrays.asList("best_float32.tflite", "best_float16.tflite")),
+                ModelVariant.PREFERENCE));
+    }
+
+    @Test
+    public void firstAvailable_defaultsToFloat32() {
+        assertEquals(ModelVariant.FLOAT32, ModelVariant.firstAvailable(
+                new HashSet<String>(), ModelVariant.PREFERENCE));
+    }
+}
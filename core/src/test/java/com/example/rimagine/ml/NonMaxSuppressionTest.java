@@ -0,0 +1,189 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NonMaxSuppressionTest {
+
+    /** Random clustered boxes, similar to what a detector emits around a few objects. */
+    static DetectionBuffer randomCandidates(int count, int classes, long seed) {
+        Random random = new Random(seed);
+        DetectionBuffer buffer = new DetectionBuffer(count);
+        int clusters = Math.max(1, count / 20);
+        float[] cx = new float[clusters];
+        float[] cy = new float[clusters];
+        for (int c = 0; c < clusters; c++) {
+            cx[c] = 50 + random.nextFloat() * 1180;
+            cy[c] = 50 + random.nextFloat() * 1180;
+        }
+        for (int i = 0; i < count; i++) {
+            int c = random.nextInt(clusters);
+            float x = cx[c] + (float) random.nextGaussian() * 8;
+            float y = cy[c] + (float) random.nextGaussian() * 8;
+            float w = 30 + random.nextFloat() * 40;
+            float h = 30 + random.nextFloat() * 40;
+            buffer.add(x - w / 2, y - h / 2, x + w / 2, y + h / 2,
+                    0.3f + random.nextFloat() * 0.7f, random.nextInt(classes));
+        }
+        return buffer;
+    }
+
+    /** The original sort + O(n^2) greedy scan, used as the reference result. */
+    static List<Integer> referenceNms(DetectionBuffer in, float threshold, boolean classAware) {
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < in.size(); i++) {
+            indices.add(i);
+        }
+        Collections.sort(indices, (a, b) -> {
+            int byScore = Float.compare(in.score(b), in.score(a));
+            return byScore != 0 ? byScore : Integer.compare(a, b);
+        });
+        List<Integer> kept = new ArrayList<>();
+        boolean[] suppressed = new boolean[indices.size()];
+        for (int i = 0; i < indices.size(); i++) {
+            if (suppressed[i]) continue;
+            int a = indices.get(i);
+            kept.add(a);
+            for (int j = i + 1; j < indices.size(); j++) {
+                int b = indices.get(j);
+                if (!suppressed[j] && (!classAware || in.classId(a) == in.classId(b))
+                        && NonMaxSuppression.iou(in, a, b) > threshold) {
+                    suppressed[j] = true;
+                }
+            }
+        }
+        return kept;
+    }
+
+    private static void assertSameBoxes(DetectionBuffer in, List<Integer> expected, DetectionBuffer actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int r = 0; r < expected.size(); r++) {
+            int i = expected.get(r);
+            assertEquals(in.left(i), actual.left(r), 0f);
+            assertEquals(in.top(i), actual.top(r), 0f);
+            assertEquals(in.score(i), actual.score(r), 0f);
+            assertEquals(in.classId(i), actual.classId(r));
+        }
+    }
+
+    @Test
+    public void perClass_matchesReferenceImplementation() {
+        for (long seed = 1; seed <= 5; seed++) {
+            DetectionBuffer in = randomCandidates(800, 3, seed);
+            NonMaxSuppression nms = new NonMaxSuppression(NonMaxSuppression.Mode.PER_CLASS, 0.2f);
+            nms.setMaxCandidates(in.size());
+            nms.setMaxDetections(in.size());
+            DetectionBuffer out = new DetectionBuffer();
+
+            nms.apply(in, out);
+
+            assertSameBoxes(in, referenceNms(in, 0.2f, true), out);
+        }
+    }
+
+    @Test
+    public void classAgnostic_matchesReferenceImplementation() {
+        DetectionBuffer in = randomCandidates(1000, 3, 42);
+        NonMaxSuppression nms = new NonMaxSuppression(NonMaxSuppression.Mode.CLASS_AGNOSTIC, 0.45f);
+        nms.setMaxCandidates(in.size());
+        nms.setMaxDetections(in.size());
+        DetectionBuffer out = new DetectionBuffer();
+
+        nms.apply(in, out);
+
+        assertSameBoxes(in, referenceNms(in, 0.45f, false), out);
+    }
+
+    @Test
+    public void perClass_keepsOverlappingBoxesOfDifferentClasses() {
+        DetectionBuffer in = new DetectionBuffer();
+        in.add(0, 0, 10, 10, 0.9f, 0);
+        in.add(0, 0, 10, 10, 0.8f, 1);
+        in.add(1, 1, 10, 10, 0.7f, 0);
+        DetectionBuffer out = new DetectionBuffer();
+
+        new NonMaxSuppression(NonMaxSuppression.Mode.PER_CLASS, 0.5f).apply(in, out);
+        assertEquals(2, out.size());
+
+        new NonMaxSuppression(NonMaxSuppression.Mode.CLASS_AGNOSTIC, 0.5f).apply(in, out);
+        assertEquals(1, out.size());
+        assertEquals(0.9f, out.score(0), 0f);
+    }
+
+    @Test
+    public void maxCandidates_keepsOnlyHighestScores() {
+        DetectionBuffer in = new DetectionBuffer();
+        for (int i = 0; i < 10; i++) {
+            in.add(i * 20, 0, i * 20 + 10, 10, i / 10f, 0);
+        }
+        NonMaxSuppression nms = new NonMaxSuppression(NonMaxSuppression.Mode.PER_CLASS, 0.5f);
+        nms.setMaxCandidates(3);
+        DetectionBuffer out = new DetectionBuffer();
+
+        assertEquals(3, nms.apply(in, out));
+        assertEquals(0.9f, out.score(0), 1e-6f);
+        assertEquals(0.8f, out.score(1), 1e-6f);
+        assertEquals(0.7f, out.score(2), 1e-6f);
+    }
+
+    @Test
+    public void soft_decaysOverlapsInsteadOfDroppingThem() {
+        DetectionBuffer in = new DetectionBuffer();
+        in.add(0, 0, 10, 10, 0.9f, 0);
+        in.add(0, 0, 10, 8, 0.8f, 0);   // IoU 0.8 with the first box
+        in.add(50, 50, 60, 60, 0.7f, 0); // disjoint
+        NonMaxSuppression nms = new NonMaxSuppression(NonMaxSuppression.Mode.SOFT, 0.5f);
+        nms.setSoftParameters(0.5f, 0.01f);
+        DetectionBuffer out = new DetectionBuffer();
+
+        assertEquals(3, nms.apply(in, out));
+        assertEquals(0.9f, out.score(0), 1e-6f);
+        assertEquals(0.7f, out.score(1), 1e-6f);
+        float decayed = 0.8f * (float) Math.exp(-(0.8f * 0.8f) / 0.5f);
+        assertEquals(decayed, out.score(2), 1e-5f);
+    }
+
+    @Test
+    public void soft_dropsBoxesDecayedBelowThreshold() {
+        DetectionBuffer in = new DetectionBuffer();
+        in.add(0, 0, 10, 10, 0.9f, 0);
+        in.add(0, 0, 10, 10, 0.5f, 0);
+        NonMaxSuppression nms = new NonMaxSuppression(NonMaxSuppression.Mode.SOFT, 0.5f);
+        nms.setSoftParameters(0.1f, 0.3f);
+        DetectionBuffer out = new DetectionBuffer();
+
+        assertEquals(1, nms.apply(in, out));
+    }
+
+    @Test
+    public void apply_handlesEmptyInput() {
+        DetectionBuffer out = new DetectionBuffer();
+        out.add(0, 0, 1, 1, 1f, 0);
+
+        assertEquals(0, new NonMaxSuppression(NonMaxSuppression.Mode.PER_CLASS, 0.5f)
+                .apply(new DetectionBuffer(), out));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    public void ios_suppressesBoxContainedInLargerOne() {
+        DetectionBuffer in = new DetectionBuffer();
+        in.add(0, 0, 100, 100, 0.9f, 0);
+        in.add(60, 0, 100, 100, 0.8f, 0);
+        DetectionBuffer out = new DetectionBuffer();
+
+        NonMaxSuppression iou = new NonMaxSuppression(NonMaxSuppression.Mode.PER_CLASS, 0.5f);
+        assertEquals(2, iou.apply(in, out));
+
+        NonMaxSuppression ios = new NonMaxSuppression(NonMaxSuppression.Mode.PER_CLASS, 0.5f);
+        ios.setOverlap(NonMaxSuppression.Overlap.IOS);
+        assertEquals(1, ios.apply(in, out));
+        assertEquals(0.9f, out.score(0), 0f);
+    }
+}
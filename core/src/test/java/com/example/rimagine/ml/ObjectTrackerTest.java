@@ -0,0 +1,247 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ObjectTrackerTest {
+    private static final String[] LABELS = {"disk", "puck"};
+    private static final long FRAME_NANOS = 33_333_333L;
+
+    private static DetectionResult boxes(float... ltrbClass) {
+        DetectionBuffer buffer = new DetectionBuffer();
+        for (int i = 0; i < ltrbClass.length; i += 5) {
+            buffer.add(ltrbClass[i], ltrbClass[i + 1], ltrbClass[i + 2], ltrbClass[i + 3], 0.8f,
+                    (int) ltrbClass[i + 4]);
+        }
+        return DetectionResult.of(buffer, LABELS, 640, 480, 0, 0, 0);
+    }
+
+    private static float centreX(DetectionResult result, int i) {
+        return (result.getLeft(i) + result.getRight(i)) / 2f;
+    }
+
+    private static float centreY(DetectionResult result, int i) {
+        return (result.getTop(i) + result.getBottom(i)) / 2f;
+    }
+
+    /** Index of the box whose centre is nearest (x, y), or -1 if there is none within 20 px. */
+    private static int nearest(DetectionResult result, float x, float y) {
+        int best = -1;
+        double bestDistance = 20;
+        for (int i = 0; i < result.size(); i++) {
+            double distance = Math.hypot(centreX(result, i) - x, centreY(result, i) - y);
+            if (distance < bestDistance) {
+                best = i;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void recording_keepsOneIdPerDiskThroughCrossingAndMisses() throws Exception {
+        DetectionRecording recording = DetectionRecording.load("crossing_disks.csv");
+        ObjectTracker tracker = new ObjectTracker();
+        Set<Integer> idsOfA = new HashSet<>();
+        Set<Integer> idsOfB = new HashSet<>();
+
+        for (int f = 0; f < recording.size(); f++) {
+            long timestamp = recording.timestamps.get(f);
+            DetectionResult tracked = tracker.update(recording.frames.get(f), timestamp);
+            assertTrue(tracked.isTracked());
+            if (f == 0) {
+                // Tentative until seen twice
+                assertEquals(0, tracked.size());
+                continue;
+            }
+            float t = (timestamp - recording.timestamps.get(0)) / 1e9f;
+            int a = nearest(tracked, 80 + 300 * t, 200);
+            int b = nearest(tracked, 560 - 300 * t, 230);
+            assertTrue("disk A at frame " + f, a >= 0);
+            assertTrue("disk B at frame " + f, b >= 0);
+            idsOfA.add(tracked.getTrackId(a));
+            idsOfB.add(tracked.getTrackId(b));
+        }
+
+        assertEquals(1, idsOfA.size());
+        assertEquals(1, idsOfB.size());
+        assertNotEquals(idsOfA, idsOfB);
+        assertEquals(2, tracker.getTrackCount());
+    }
+
+    @Test
+    public void recording_predictsSkippedFramesCloseToTheDetector() throws Exception {
+        DetectionRecording recording = DetectionRecording.load("crossing_disks.csv");
+        ObjectTracker tracker = new ObjectTracker();
+        int skipped = 0;
+        int inferred = 0;
+        float worstError = 0f;
+
+        for (int f = 0; f < 40; f++) {
+            long timestamp = recording.timestamps.get(f);
+            DetectionResult recorded = recording.frames.get(f);
+            if (f % 3 == 0 || tracker.needsDetection(timestamp)) {
+                tracker.update(recorded, timestamp);
+                inferred++;
+                continue;
+            }
+            skipped++;
+            DetectionResult predicted = tracker.predict(timestamp);
+            assertEquals(recorded.size(), predicted.size());
+            assertEquals(0, predicted.getTotalNanos());
+            if (f < 6) {
+                // Velocity is still settling from the first two detections
+                continue;
+            }
+            for (int i = 0; i < recorded.size(); i++) {
+                int match = nearest(predicted, centreX(recorded, i), centreY(recorded, i));
+                assertTrue("frame " + f, match >= 0);
+                worstError = Math.max(worstError, (float) Math.hypot(centreX(predicted, match) - centreX(recorded, i),
+                        centreY(predicted, match) - centreY(recorded, i)));
+            }
+        }
+
+        // Detector jitter is +-2 px per edge on an 80 px box moving 10 px per frame
+        assertTrue("worst error " + worstError, worstError < 5f);
+        assertTrue("skipped " + skipped + " of 40", skipped >= inferred);
+    }
+
+    @Test
+    public void predict_extrapolatesConstantVelocity() {
+        ObjectTracker tracker = new ObjectTracker();
+        for (int f = 0; f < 10; f++) {
+            float x = 100 + f * 10;
+            tracker.update(boxes(x, 100, x + 50, 150, 0), f * FRAME_NANOS);
+        }
+
+        DetectionResult predicted = tracker.predict(12 * FRAME_NANOS);
+        assertEquals(1, predicted.size());
+        assertEquals(100 + 12 * 10 + 25, centreX(predicted, 0), 2f);
+        assertEquals(125f, centreY(predicted, 0), 1f);
+        assertEquals(50f, predicted.getRight(0) - predicted.getLeft(0), 1f);
+    }
+
+    @Test
+    public void predict_isNullBeforeTheFirstUpdateAndLeavesTheFiltersAlone() {
+        ObjectTracker tracker = new ObjectTracker();
+        assertNull(tracker.predict(0));
+
+        tracker.update(boxes(100, 100, 150, 150, 0), 0);
+        tracker.update(boxes(110, 100, 160, 150, 0), FRAME_NANOS);
+        DetectionResult first = tracker.predict(3 * FRAME_NANOS);
+        tracker.predict(30 * FRAME_NANOS);
+        DetectionResult again = tracker.predict(3 * FRAME_NANOS);
+
+        assertEquals(first.getLeft(0), again.getLeft(0), 0f);
+        assertEquals(first.getTrackId(0), again.getTrackId(0));
+    }
+
+    @Test
+    public void needsDetection_untilConfirmedAndOnceUncertain() {
+        ObjectTracker tracker = new ObjectTracker();
+        assertTrue(tracker.needsDetection(0));
+
+        tracker.update(boxes(100, 100, 180, 180, 0), 0);
+        // A tentative track wants a second look straight away
+        assertTrue(tracker.needsDetection(FRAME_NANOS));
+
+        for (int f = 1; f < 6; f++) {
+            tracker.update(boxes(100 + f * 5, 100, 180 + f * 5, 180, 0), f * FRAME_NANOS);
+        }
+        assertFalse(tracker.needsDetection(7 * FRAME_NANOS));
+        // A second later the prediction has drifted too far to trust
+        assertTrue(tracker.needsDetection(35 * FRAME_NANOS));
+    }
+
+    @Test
+    public void needsDetection_isFalseForAnEmptyScene() {
+        ObjectTracker tracker = new ObjectTracker();
+        tracker.update(boxes(), 0);
+
+        assertFalse(tracker.needsDetection(10 * FRAME_NANOS));
+        assertEquals(0, tracker.predict(10 * FRAME_NANOS).size());
+    }
+
+    @Test
+    public void update_dropsTracksAfterTooManyMisses() {
+        ObjectTracker tracker = new ObjectTracker.Builder().setMaxMisses(2).build();
+        tracker.update(boxes(100, 100, 150, 150, 0), 0);
+        tracker.update(boxes(100, 100, 150, 150, 0), FRAME_NANOS);
+
+        assertEquals(1, tracker.update(boxes(), 2 * FRAME_NANOS).size());
+        assertEquals(1, tracker.update(boxes(), 3 * FRAME_NANOS).size());
+        assertEquals(0, tracker.update(boxes(), 4 * FRAME_NANOS).size());
+        assertEquals(0, tracker.getTrackCount());
+    }
+
+    @Test
+    public void update_dropsTentativeTracksAtTheirFirstMiss() {
+        ObjectTracker tracker = new ObjectTracker();
+        tracker.update(boxes(100, 100, 150, 150, 0), 0);
+        tracker.update(boxes(), FRAME_NANOS);
+
+        assertEquals(0, tracker.getTrackCount());
+    }
+
+    @Test
+    public void update_matchesOnlyWithinAClass() {
+        ObjectTracker tracker = new ObjectTracker();
+        tracker.update(boxes(100, 100, 150, 150, 0), 0);
+        DetectionResult result = tracker.update(boxes(100, 100, 150, 150, 1), FRAME_NANOS);
+
+        // The disk track missed, the puck starts over as tentative
+        assertEquals(0, result.size());
+        assertEquals(1, tracker.getTrackCount());
+    }
+
+    @Test
+    public void update_newObjectsGetNewIds() {
+        ObjectTracker tracker = new ObjectTracker();
+        tracker.update(boxes(100, 100, 150, 150, 0), 0);
+        DetectionResult one = tracker.update(boxes(100, 100, 150, 150, 0), FRAME_NANOS);
+        tracker.update(boxes(100, 100, 150, 150, 0, 400, 300, 450, 350, 0), 2 * FRAME_NANOS);
+        DetectionResult two = tracker.update(boxes(100, 100, 150, 150, 0, 400, 300, 450, 350, 0), 3 * FRAME_NANOS);
+
+        assertEquals(2, two.size());
+        int disk = nearest(two, 125, 125);
+        int other = nearest(two, 425, 325);
+        assertEquals(one.getTrackId(0), two.getTrackId(disk));
+        assertNotEquals(two.getTrackId(disk), two.getTrackId(other));
+        assertEquals("disk", two.getLabel(other));
+    }
+
+    @Test
+    public void update_returnsAFailureBeforeAnythingIsTracked() {
+        ObjectTracker tracker = new ObjectTracker();
+
+        DetectionResult result = tracker.update(DetectionResult.error("model failed"), 0);
+
+        assertNotNull(result);
+        assertFalse(result.isSuccess());
+        assertEquals("model failed", result.getErrorMessage());
+    }
+
+    @Test
+    public void update_keepsPredictingThroughAFailure() {
+        ObjectTracker tracker = new ObjectTracker();
+        tracker.update(boxes(100, 100, 150, 150, 0), 0);
+        tracker.update(boxes(100, 100, 150, 150, 0), FRAME_NANOS);
+
+        DetectionResult result = tracker.update(DetectionResult.error("model failed"), 2 * FRAME_NANOS);
+
+        assertTrue(result.isSuccess());
+        assertEquals(1, result.size());
+    }
+
+    @Test
+    public void untrackedResultsHaveNoTrackIds() {
+        DetectionResult result = boxes(100, 100, 150, 150, 0);
+
+        assertFalse(result.isTracked());
+        assertEquals(ObjectTracker.NO_TRACK, result.getTrackId(0));
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PipelineStageTest {
+
+    private static DetectionResult detections(float... values) {
+        DetectionBuffer buffer = new DetectionBuffer();
+        for (int i = 0; i < values.length; i += 6) {
+            buffer.add(values[i], values[i + 1], values[i + 2], values[i + 3], values[i + 4], (int) values[i + 5]);
+        }
+        return DetectionResult.of(buffer, new String[]{"back_disk", "front_disk"}, 1000, 800, 0, 0, 0);
+    }
+
+    @Test
+    public void appliesTo_filtersByLabelAndScore() {
+        PipelineStage stage = new PipelineStage.Builder("side", "side.tflite", PipelineStage.Kind.CLASSIFIER)
+                .setLabels("front_disk")
+                .setMinScore(0.5f)
+                .build();
+        DetectionResult result = detections(
+                0, 0, 10, 10, 0.9f, 1,
+                0, 0, 10, 10, 0.9f, 0,
+                0, 0, 10, 10, 0.4f, 1);
+
+        assertTrue(stage.appliesTo(result, 0));
+        assertFalse(stage.appliesTo(result, 1));
+        assertFalse(stage.appliesTo(result, 2));
+    }
+
+    @Test
+    public void appliesTo_everyLabelWhenNoneAreGiven() {
+        PipelineStage stage = new PipelineStage.Builder("all", "all.tflite", PipelineStage.Kind.KEYPOINTS).build();
+
+        assertTrue(stage.appliesTo(detections(0, 0, 10, 10, 0.9f, 0, 0, 0, 10, 10, 0.9f, 1), 1));
+    }
+
+    @Test
+    public void cropRegion_isAPaddedSquareAroundTheBox() {
+        PipelineStage stage = new PipelineStage.Builder("side", "side.tflite", PipelineStage.Kind.CLASSIFIER)
+                .setPadding(0.25f)
+                .build();
+        int[] region = new int[4];
+
+        stage.cropRegion(detections(400, 300, 500, 360, 0.9f, 0), 0, 1000, 800, region);
+
+        // 100 px wide box plus 25 px on each side, centred on (450, 330)
+        assertArrayEquals(new int[]{375, 255, 525, 405}, region);
+    }
+
+    @Test
+    public void cropRegion_staysInsideTheImage() {
+        PipelineStage stage = new PipelineStage.Builder("side", "side.tflite", PipelineStage.Kind.CLASSIFIER).build();
+        int[] region = new int[4];
+
+        stage.cropRegion(detections(960, 0, 1000, 40, 0.9f, 0), 0, 1000, 800, region);
+
+        assertEquals(1000, region[2]);
+        assertEquals(0, region[1]);
+        assertEquals(region[2] - region[0], region[3] - region[1]);
+    }
+
+    @Test
+    public void sharesCropsWith_onlyForTheSameSelectionAndCrop() {
+        PipelineStage.Builder base = new PipelineStage.Builder("a", "a.tflite", PipelineStage.Kind.CLASSIFIER)
+                .setLabels("back_disk", "front_disk");
+        PipelineStage a = base.build();
+        PipelineStage b = new PipelineStage.Builder("b", "b.tflite", PipelineStage.Kind.KEYPOINTS)
+                .setLabels("back_disk", "front_disk")
+                .build();
+        PipelineStage padded = base.setPadding(0.3f).build();
+
+        assertTrue(a.sharesCropsWith(b));
+        assertFalse(a.sharesCropsWith(padded));
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RefCountedHolderTest {
+
+    @Test
+    public void acquire_doesNotLoadUntilFirstGet() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        RefCountedHolder<String> holder = new RefCountedHolder<>(() -> "model-" + created.incrementAndGet(), null);
+
+        RefCountedHolder<String>.Handle handle = holder.acquire();
+        assertFalse(holder.isLoaded());
+        assertEquals("model-1", handle.get());
+        assertEquals("model-1", handle.get());
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    public void get_sharesOneValueAcrossHandles() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        RefCountedHolder<Object> holder = new RefCountedHolder<>(() -> {
+            created.incrementAndGet();
+            Thread.sleep(20);
+            return new Object();
+        }, null);
+
+        List<Object> seen = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            threads.add(new Thread(() -> {
+                try (RefCountedHolder<Object>.Handle handle = holder.acquire()) {
+                    seen.add(handle.get());
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, created.get());
+        assertEquals(6, seen.size());
+        for (Object value : seen) {
+            assertSame(seen.get(0), value);
+        }
+        assertEquals(0, holder.getRefCount());
+    }
+
+    @Test
+    public void releaseIfIdle_keepsReferencedValue() throws Exception {
+        List<String> released = new ArrayList<>();
+        RefCountedHolder<String> holder = new RefCountedHolder<>(() -> "model", released::add);
+
+        RefCountedHolder<String>.Handle handle = holder.acquire();
+        handle.get();
+        assertFalse(holder.releaseIfIdle());
+        assertTrue(released.isEmpty());
+
+        handle.close();
+        handle.close();
+        assertEquals(0, holder.getRefCount());
+        assertTrue(holder.releaseIfIdle());
+        assertEquals(Collections.singletonList("model"), released);
+        assertFalse(holder.isLoaded());
+    }
+
+    @Test
+    public void get_reloadsAfterRelease() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        RefCountedHolder<Integer> holder = new RefCountedHolder<>(created::incrementAndGet, null);
+
+        try (RefCountedHolder<Integer>.Handle handle = holder.acquire()) {
+            assertEquals(Integer.valueOf(1), handle.get());
+        }
+        assertTrue(holder.releaseIfIdle());
+        try (RefCountedHolder<Integer>.Handle handle = holder.acquire()) {
+            assertEquals(Integer.valueOf(2), handle.get());
+        }
+    }
+
+    @Test
+    public void get_retriesAfterFailedLoad() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        RefCountedHolder<String> holder = new RefCountedHolder<>(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IOException("asset missing");
+            }
+            return "model";
+        }, null);
+
+        RefCountedHolder<String>.Handle handle = holder.acquire();
+        try {
+            handle.get();
+            fail("expected the first load to fail");
+        } catch (IOException expected) {
+            assertFalse(holder.isLoaded());
+        }
+        assertEquals("model", handle.get());
+    }
+
+    @Test
+    public void releaseIfIdle_skipsLoadInProgress() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        RefCountedHolder<String> holder = new RefCountedHolder<>(() -> {
+            loading.countDown();
+            finish.await();
+            return "model";
+        }, null);
+
+        RefCountedHolder<String>.Handle handle = holder.acquire();
+        Thread loader = new Thread(() -> {
+            try {
+                handle.get();
+            } catch (Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+        loader.start();
+        assertTrue(loading.await(2, TimeUnit.SECONDS));
+        handle.close();
+
+        assertFalse(holder.releaseIfIdle());
+        finish.countDown();
+        loader.join();
+        assertTrue(holder.isLoaded());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void get_afterCloseIsRejected() throws Exception {
+        RefCountedHolder<String> holder = new RefCountedHolder<>(() -> "model", null);
+        RefCountedHolder<String>.Handle handle = holder.acquire();
+        handle.close();
+        handle.get();
+    }
+}
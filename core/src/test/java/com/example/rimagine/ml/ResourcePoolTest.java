@@ -0,0 +1,148 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ResourcePoolTest {
+
+    @Test
+    public void lease_returnsResourceOnce() throws Exception {
+        ResourcePool<String> pool = new ResourcePool<>(Arrays.asList("a", "b"), null);
+
+        ResourcePool<String>.Lease lease = pool.acquire();
+        assertEquals(1, pool.available());
+        lease.close();
+        lease.close();
+        assertEquals(2, pool.available());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void lease_getAfterCloseIsRejected() throws Exception {
+        ResourcePool<String> pool = new ResourcePool<>(Collections.singletonList("a"), null);
+        ResourcePool<String>.Lease lease = pool.acquire();
+        lease.close();
+        lease.get();
+    }
+
+    @Test
+    public void tryAcquire_timesOutWhenExhausted() throws Exception {
+        ResourcePool<String> pool = new ResourcePool<>(Collections.singletonList("a"), null);
+        try (ResourcePool<String>.Lease ignored = pool.acquire()) {
+            assertNull(pool.tryAcquire(20, TimeUnit.MILLISECONDS));
+        }
+        assertNotNull(pool.tryAcquire(20, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void acquire_neverHandsOneResourceToTwoCallers() throws Exception {
+        List<AtomicInteger> users = Arrays.asList(new AtomicInteger(), new AtomicInteger(), new AtomicInteger());
+        ResourcePool<AtomicInteger> pool = new ResourcePool<>(users, null);
+        AtomicInteger overlaps = new AtomicInteger();
+        AtomicInteger maxConcurrent = new AtomicInteger();
+        AtomicInteger concurrent = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 200; i++) {
+                    try (ResourcePool<AtomicInteger>.Lease lease = pool.acquire()) {
+                        maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+                        if (lease.get().incrementAndGet() != 1) {
+                            overlaps.incrementAndGet();
+                        }
+                        Thread.yield();
+                        lease.get().decrementAndGet();
+                        concurrent.decrementAndGet();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, overlaps.get());
+        assertTrue(maxConcurrent.get() <= 3);
+        assertEquals(3, pool.available());
+    }
+
+    @Test
+    public void acquire_servesWaitersInArrivalOrder() throws Exception {
+        ResourcePool<String> pool = new ResourcePool<>(Collections.singletonList("a"), null);
+        ResourcePool<String>.Lease held = pool.acquire();
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+
+        List<Thread> waiters = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final int id = i;
+            Thread waiter = new Thread(() -> {
+                try (ResourcePool<String>.Lease lease = pool.acquire()) {
+                    order.add(id);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            waiters.add(waiter);
+            waiter.start();
+            // Let each waiter park on the queue before the next one arrives
+            while (waiter.getState() != Thread.State.WAITING) {
+                Thread.sleep(1);
+            }
+        }
+        held.close();
+        for (Thread waiter : waiters) {
+            waiter.join();
+        }
+
+        assertEquals(Arrays.asList(0, 1, 2, 3), order);
+    }
+
+    @Test
+    public void close_releasesIdleNowAndLeasedOnReturn() throws Exception {
+        List<String> released = Collections.synchronizedList(new ArrayList<>());
+        ResourcePool<String> pool = new ResourcePool<>(Arrays.asList("a", "b"), released::add);
+
+        ResourcePool<String>.Lease lease = pool.acquire();
+        pool.close();
+        assertEquals(1, released.size());
+        assertFalse(released.contains(lease.get()));
+
+        lease.close();
+        assertEquals(2, released.size());
+    }
+
+    @Test
+    public void close_failsBlockedAcquire() throws Exception {
+        ResourcePool<String> pool = new ResourcePool<>(Collections.singletonList("a"), null);
+        ResourcePool<String>.Lease held = pool.acquire();
+        CountDownLatch failed = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                pool.acquire();
+            } catch (IllegalStateException e) {
+                failed.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+
+        pool.close();
+        assertTrue(failed.await(2, TimeUnit.SECONDS));
+        held.close();
+    }
+}
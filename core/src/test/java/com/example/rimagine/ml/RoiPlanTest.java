@@ -0,0 +1,92 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RoiPlanTest {
+    private static final RoiInferenceConfig CONFIG = RoiInferenceConfig.defaults();
+
+    private static DetectionResult prior(int width, int height, float... detections) {
+        DetectionBuffer buffer = new DetectionBuffer();
+        for (int i = 0; i < detections.length; i += 5) {
+            buffer.add(detections[i], detections[i + 1], detections[i + 2], detections[i + 3],
+                    detections[i + 4], 0);
+        }
+        return DetectionResult.of(buffer, new String[]{"back_disk"}, width, height, 0, 0, 0);
+    }
+
+    @Test
+    public void of_centresAnInputSizedRegionOnASmallBox() {
+        RoiPlan plan = RoiPlan.of(prior(4000, 3000, 1950, 1450, 2050, 1550, 0.9f), 4000, 3000, 640, CONFIG);
+
+        assertEquals(1, plan.size());
+        assertEquals(1680, plan.left(0));
+        assertEquals(1180, plan.top(0));
+        assertEquals(640, plan.width(0));
+        assertEquals(640, plan.height(0));
+        assertEquals(1, plan.sampleSize(0));
+        assertTrue(plan.isWorthwhile());
+    }
+
+    @Test
+    public void of_shiftsRegionsInsideTheImage() {
+        RoiPlan plan = RoiPlan.of(prior(4000, 3000, 3950, 0, 4000, 40, 0.9f), 4000, 3000, 640, CONFIG);
+
+        assertEquals(3360, plan.left(0));
+        assertEquals(0, plan.top(0));
+        assertEquals(4000, plan.left(0) + plan.width(0));
+    }
+
+    @Test
+    public void of_addsContextAroundLargeBoxesAndSamplesThemDown() {
+        // 1200 px disk plus a quarter on each side is 1800 px, decoded at 1/2 (900 px)
+        RoiPlan plan = RoiPlan.of(prior(4000, 3000, 1000, 900, 2200, 2100, 0.9f), 4000, 3000, 640, CONFIG);
+
+        assertEquals(1800, plan.width(0));
+        assertEquals(1800, plan.height(0));
+        assertEquals(2, plan.sampleSize(0));
+    }
+
+    @Test
+    public void of_mergesNeighboursButNotDistantBoxes() {
+        RoiPlan plan = RoiPlan.of(prior(4000, 3000,
+                1000, 1000, 1100, 1100, 0.9f,
+                1150, 1000, 1250, 1100, 0.8f,
+                3000, 2000, 3100, 2100, 0.9f), 4000, 3000, 640, CONFIG);
+
+        assertEquals(2, plan.size());
+        assertEquals(790, plan.width(0));
+        assertEquals(640, plan.height(0));
+        assertEquals(640, plan.width(1));
+    }
+
+    @Test
+    public void of_ignoresUnsureBoxes() {
+        RoiPlan plan = RoiPlan.of(prior(4000, 3000, 1000, 1000, 1100, 1100, 0.1f), 4000, 3000, 640, CONFIG);
+
+        assertEquals(0, plan.size());
+        assertFalse(plan.isWorthwhile());
+    }
+
+    @Test
+    public void isWorthwhile_falseWhenRegionsCoverMostOfTheImage() {
+        RoiPlan plan = RoiPlan.of(prior(1000, 800, 100, 100, 900, 700, 0.9f), 1000, 800, 640, CONFIG);
+
+        assertEquals(1, plan.size());
+        assertTrue(plan.getCoverage() > CONFIG.getMaxCoverage());
+        assertFalse(plan.isWorthwhile());
+    }
+
+    @Test
+    public void isWorthwhile_falseForTooManyRegions() {
+        RoiInferenceConfig config = new RoiInferenceConfig.Builder().setMaxRegions(2).build();
+        RoiPlan plan = RoiPlan.of(prior(8000, 6000,
+                500, 500, 600, 600, 0.9f,
+                4000, 500, 4100, 600, 0.9f,
+                500, 4000, 600, 4100, 0.9f), 8000, 6000, 640, config);
+
+        assertEquals(3, plan.size());
+        assertFalse(plan.isWorthwhile());
+    }
+}
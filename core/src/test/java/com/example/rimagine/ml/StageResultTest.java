@@ -0,0 +1,74 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class StageResultTest {
+    private static final PipelineStage CLASSIFIER =
+            new PipelineStage.Builder("side", "side.tflite", PipelineStage.Kind.CLASSIFIER).build();
+    private static final PipelineStage KEYPOINTS =
+            new PipelineStage.Builder("rim", "rim.tflite", PipelineStage.Kind.KEYPOINTS).build();
+
+    @Test
+    public void classifier_reportsTopClassPerDetection() {
+        StageResult result = new StageResult.Builder(CLASSIFIER, 3, new String[]{"back", "front"})
+                .setOutput(0, new float[]{0.2f, 0.8f}, null)
+                .setOutput(2, new float[]{0.7f, 0.3f}, null)
+                .build();
+
+        assertEquals("front", result.getTopLabel(0));
+        assertEquals(0.8f, result.getTopScore(0), 0f);
+        assertFalse(result.hasOutput(1));
+        assertNull(result.getTopLabel(1));
+        assertEquals(-1, result.getTopClass(1));
+        assertEquals("back", result.getTopLabel(2));
+    }
+
+    @Test
+    public void classifier_fallsBackToClassIndexWithoutLabels() {
+        StageResult result = new StageResult.Builder(CLASSIFIER, 1, new String[0])
+                .setOutput(0, new float[]{0.1f, 0.2f, 0.7f}, null)
+                .build();
+
+        assertEquals("2", result.getTopLabel(0));
+    }
+
+    @Test
+    public void keypoints_areMappedIntoImagePixels() {
+        // Crop of 200 px at (100, 50), model output normalized to the crop
+        CoordinateTransform toImage = new CoordinateTransform(200f, 200f, 100f, 50f, 1000, 800);
+        StageResult result = new StageResult.Builder(KEYPOINTS, 1, new String[0])
+                .setOutput(0, new float[]{0.5f, 0.5f, 0f, 1f}, toImage)
+                .build();
+
+        assertEquals(2, result.getKeypointCount(0));
+        assertEquals(200f, result.getKeypointX(0, 0), 1e-4f);
+        assertEquals(150f, result.getKeypointY(0, 0), 1e-4f);
+        assertEquals(100f, result.getKeypointX(0, 1), 1e-4f);
+        assertEquals(250f, result.getKeypointY(0, 1), 1e-4f);
+
+        StageResult scaled = result.mapped(CoordinateTransform.scale(1000, 800, 2000, 1600));
+        assertEquals(400f, scaled.getKeypointX(0, 0), 1e-4f);
+        assertEquals(200f, result.getKeypointX(0, 0), 1e-4f);
+    }
+
+    @Test
+    public void timings_addUpOverBatches() {
+        StageResult result = new StageResult.Builder(CLASSIFIER, 12, new String[0])
+                .addCrops(8, 2_000_000)
+                .addInvocation(5_000_000)
+                .addCrops(4, 1_000_000)
+                .addInvocation(3_000_000)
+                .build();
+
+        assertEquals(12, result.getCrops());
+        assertEquals(2, result.getInvocations());
+        assertEquals(3_000_000, result.getCropNanos());
+        assertEquals(8_000_000, result.getInvokeNanos());
+        assertEquals("side: 12 crops in 2 calls, crop 3.0 ms, model 8.0 ms",
+                StageResult.summarize(Arrays.asList(result)));
+    }
+}
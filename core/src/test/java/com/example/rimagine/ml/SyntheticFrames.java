@@ -0,0 +1,34 @@
+package com.example.rimagine.ml;
+
+import java.nio.ByteBuffer;
+
+/** Builds YUV_420_888 frames in memory for replaying through the live pipeline. */
+final class SyntheticFrames {
+
+    private SyntheticFrames() {
+    }
+
+    /** Planar frame (pixel stride 1) with the given luma and a constant chroma. */
+    static YuvFrame frame(int width, int height, int rotation, long timestamp, byte[] luma, int u, int v) {
+        int chromaWidth = (width + 1) / 2;
+        int chromaHeight = (height + 1) / 2;
+        ByteBuffer uPlane = ByteBuffer.allocateDirect(chromaWidth * chromaHeight);
+        ByteBuffer vPlane = ByteBuffer.allocateDirect(chromaWidth * chromaHeight);
+        for (int i = 0; i < chromaWidth * chromaHeight; i++) {
+            uPlane.put(i, (byte) u);
+            vPlane.put(i, (byte) v);
+        }
+        ByteBuffer yPlane = ByteBuffer.allocateDirect(luma.length);
+        yPlane.put(luma);
+        yPlane.rewind();
+        return new YuvFrame().set(width, height, rotation, timestamp,
+                yPlane, width, 1, uPlane, vPlane, chromaWidth, 1);
+    }
+
+    /** Gray frame whose luma encodes {@code level} everywhere. */
+    static YuvFrame uniform(int width, int height, long timestamp, int level) {
+        byte[] luma = new byte[width * height];
+        java.util.Arrays.fill(luma, (byte) level);
+        return frame(width, height, 0, timestamp, luma, 128, 128);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TensorFormatTest {
+
+    @Test
+    public void quantize_roundsAndSaturates() {
+        TensorFormat format = TensorFormat.quantized(TensorFormat.DataType.INT8, 0.1f, 3);
+
+        assertEquals(3, format.quantize(0f));
+        assertEquals(13, format.quantize(1.04f));
+        assertEquals(127, format.quantize(100f));
+        assertEquals(-128, format.quantize(-100f));
+    }
+
+    @Test
+    public void dequantize_invertsQuantizeWithinHalfAStep() {
+        TensorFormat format = TensorFormat.quantized(TensorFormat.DataType.UINT8, 1f / 255, 0);
+        for (int i = 0; i <= 255; i++) {
+            float real = i / 255f;
+            assertEquals(real, format.dequantize(format.quantize(real)), 0.5f / 255);
+        }
+    }
+
+    @Test
+    public void toQuantized_respectsSignedness() {
+        TensorFormat uint8 = TensorFormat.quantized(TensorFormat.DataType.UINT8, 1f, 0);
+        TensorFormat int8 = TensorFormat.quantized(TensorFormat.DataType.INT8, 1f, 0);
+
+        assertEquals(200, uint8.toQuantized((byte) 200));
+        assertEquals(-56, int8.toQuantized((byte) 200));
+    }
+
+    @Test
+    public void float32_isNotQuantized() {
+        assertFalse(TensorFormat.float32().isQuantized());
+        assertEquals(4, TensorFormat.float32().getBytesPerElement());
+        assertSame(TensorFormat.float32(), TensorFormat.quantized(TensorFormat.DataType.FLOAT32, 0.5f, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void quantized_rejectsNonPositiveScale() {
+        TensorFormat.quantized(TensorFormat.DataType.UINT8, 0f, 0);
+    }
+}
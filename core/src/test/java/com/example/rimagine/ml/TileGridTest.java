@@ -0,0 +1,57 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TileGridTest {
+
+    @Test
+    public void of_coversImageWithOverlappingTilesInsideBounds() {
+        TileGrid grid = TileGrid.of(4000, 3000, 640, 0.2f);
+
+        assertEquals(grid.getColumns() * grid.getRows(), grid.size());
+        int last = grid.size() - 1;
+        assertEquals(0, grid.left(0));
+        assertEquals(0, grid.top(0));
+        assertEquals(4000, grid.left(last) + grid.width(last));
+        assertEquals(3000, grid.top(last) + grid.height(last));
+        for (int col = 1; col < grid.getColumns(); col++) {
+            int overlap = grid.left(col - 1) + grid.width(col - 1) - grid.left(col);
+            assertTrue("overlap " + overlap, overlap >= 0.2f * 640);
+        }
+    }
+
+    @Test
+    public void of_usesOneTileForSidesShorterThanTile() {
+        TileGrid grid = TileGrid.of(2000, 500, 640, 0.25f);
+
+        assertEquals(1, grid.getRows());
+        assertEquals(500, grid.height(0));
+        assertEquals(0, grid.top(grid.size() - 1));
+    }
+
+    @Test
+    public void of_exactFitNeedsNoOverlapTiles() {
+        TileGrid grid = TileGrid.of(640, 640, 640, 0.2f);
+
+        assertEquals(1, grid.size());
+        assertEquals(640, grid.width(0));
+    }
+
+    @Test
+    public void of_indexesTilesRowMajor() {
+        TileGrid grid = TileGrid.of(1280, 1280, 640, 0f);
+
+        assertEquals(4, grid.size());
+        assertEquals(640, grid.left(1));
+        assertEquals(0, grid.top(1));
+        assertEquals(0, grid.left(2));
+        assertEquals(640, grid.top(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void of_rejectsFullOverlap() {
+        TileGrid.of(1000, 1000, 640, 1f);
+    }
+}
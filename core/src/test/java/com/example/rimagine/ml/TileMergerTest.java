@@ -0,0 +1,57 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TileMergerTest {
+
+    private static DetectionResult tile(int size, float... detections) {
+        DetectionBuffer buffer = new DetectionBuffer();
+        for (int i = 0; i < detections.length; i += 6) {
+            buffer.add(detections[i], detections[i + 1], detections[i + 2], detections[i + 3],
+                    detections[i + 4], (int) detections[i + 5]);
+        }
+        return DetectionResult.of(buffer, new String[]{"back_disk", "front_disk"}, size, size, 1, 2, 0);
+    }
+
+    @Test
+    public void merge_offsetsTilesIntoImageCoordinates() {
+        TileMerger merger = new TileMerger(0.5f);
+        merger.add(tile(640, 10, 20, 30, 40, 0.9f, 1), 512, 256);
+
+        DetectionResult merged = merger.merge(new String[]{"back_disk", "front_disk"}, 2000, 1500);
+
+        assertEquals(1, merged.size());
+        assertEquals(522f, merged.getLeft(0), 0f);
+        assertEquals(276f, merged.getTop(0), 0f);
+        assertEquals("front_disk", merged.getLabel(0));
+        assertEquals(2000, merged.getImageWidth());
+    }
+
+    @Test
+    public void merge_absorbsPartialBoxFromNeighbouringTile() {
+        TileMerger merger = new TileMerger(0.5f);
+        // Disk spans x 600..700: complete in the right tile, cut at x=640 in the left one
+        merger.add(tile(640, 600, 100, 640, 200, 0.7f, 0), 0, 0);
+        merger.add(tile(640, 88, 100, 188, 200, 0.9f, 0), 512, 0);
+
+        DetectionResult merged = merger.merge(new String[]{"back_disk"}, 1152, 640);
+
+        assertEquals(2, merger.getCollected());
+        assertEquals(1, merged.size());
+        assertEquals(600f, merged.getLeft(0), 0f);
+        assertEquals(700f, merged.getRight(0), 0f);
+        assertEquals(2, merged.getPreprocessNanos());
+        assertEquals(4, merged.getInferenceNanos());
+    }
+
+    @Test
+    public void merge_keepsDifferentClassesApart() {
+        TileMerger merger = new TileMerger(0.5f);
+        merger.add(tile(640, 0, 0, 50, 50, 0.9f, 0), 0, 0);
+        merger.add(tile(640, 0, 0, 50, 50, 0.8f, 1), 0, 0);
+
+        assertEquals(2, merger.merge(new String[0], 640, 640).size());
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class YoloOutputDecoderTest {
+
+    private static final int CLASSES = 3;
+    private static final int ANCHORS = 5;
+
+    private static void setAnchor(float[] output, int anchor, float cx, float cy, float w, float h,
+                                  float... scores) {
+        output[anchor] = cx;
+        output[ANCHORS + anchor] = cy;
+        output[2 * ANCHORS + anchor] = w;
+        output[3 * ANCHORS + anchor] = h;
+        for (int c = 0; c < scores.length; c++) {
+            output[(4 + c) * ANCHORS + anchor] = scores[c];
+        }
+    }
+
+    @Test
+    public void decode_keepsOnlyAnchorsAboveThreshold() {
+        YoloOutputDecoder decoder = new YoloOutputDecoder(CLASSES, ANCHORS);
+        float[] output = new float[decoder.outputSize()];
+        setAnchor(output, 1, 0.5f, 0.5f, 0.2f, 0.4f, 0.1f, 0.9f, 0.3f);
+        setAnchor(output, 3, 0.25f, 0.25f, 0.1f, 0.1f, 0.7f, 0.2f, 0.65f);
+        setAnchor(output, 4, 0.8f, 0.8f, 0.1f, 0.1f, 0.5f, 0.6f, 0.55f);
+
+        DetectionBuffer out = new DetectionBuffer(1);
+        int count = decoder.decode(output, 0.6f, 100f, 200f, out);
+
+        assertEquals(2, count);
+        assertEquals(1, out.classId(0));
+        assertEquals(0.9f, out.score(0), 1e-6f);
+        assertEquals(40f, out.left(0), 1e-4f);
+        assertEquals(60f, out.top(0), 1e-4f);
+        assertEquals(60f, out.right(0), 1e-4f);
+        assertEquals(140f, out.bottom(0), 1e-4f);
+
+        assertEquals(0, out.classId(1));
+        assertEquals(0.7f, out.score(1), 1e-6f);
+    }
+
+    @Test
+    public void decode_clampsBoxesToImageBounds() {
+        YoloOutputDecoder decoder = new YoloOutputDecoder(CLASSES, ANCHORS);
+        float[] output = new float[decoder.outputSize()];
+        setAnchor(output, 0, 0.05f, 0.95f, 0.2f, 0.2f, 0.95f, 0f, 0f);
+
+        DetectionBuffer out = new DetectionBuffer();
+        decoder.decode(output, 0.5f, 100f, 100f, out);
+
+        assertEquals(1, out.size());
+        assertEquals(0f, out.left(0), 1e-4f);
+        assertEquals(85f, out.top(0), 1e-4f);
+        assertEquals(15f, out.right(0), 1e-4f);
+        assertEquals(100f, out.bottom(0), 1e-4f);
+    }
+
+    @Test
+    public void decode_resetsBufferBetweenCalls() {
+        YoloOutputDecoder decoder = new YoloOutputDecoder(CLASSES, ANCHORS);
+        float[] output = new float[decoder.outputSize()];
+        setAnchor(output, 2, 0.5f, 0.5f, 0.1f, 0.1f, 0f, 0f, 0.99f);
+        DetectionBuffer out = new DetectionBuffer();
+
+        decoder.decode(output, 0.5f, 10f, 10f, out);
+        decoder.decode(output, 0.5f, 10f, 10f, out);
+
+        assertEquals(1, out.size());
+        assertEquals(2, out.classId(0));
+    }
+
+    @Test
+    public void decode_mapsThroughLetterboxWithoutClamping() {
+        YoloOutputDecoder decoder = new YoloOutputDecoder(CLASSES, ANCHORS);
+        float[] output = new float[decoder.outputSize()];
+        // 4000x3000 letterboxed into 640x640: content rows 80..560
+        setAnchor(output, 0, 0.5f, 0.5f, 0.25f, 0.25f, 0.9f, 0f, 0f);
+        setAnchor(output, 1, 0.5f, 0.125f, 0.1f, 0.1f, 0.8f, 0f, 0f);
+        Letterbox letterbox = Letterbox.fit(4000, 3000, 640, 640);
+
+        DetectionBuffer out = new DetectionBuffer();
+        decoder.decode(output, 0.5f, letterbox.getOutputToSource(), out);
+
+        assertEquals(2, out.size());
+        assertEquals(1500f, out.left(0), 0.5f);
+        assertEquals(1000f, out.top(0), 0.5f);
+        assertEquals(2500f, out.right(0), 0.5f);
+        assertEquals(2000f, out.bottom(0), 0.5f);
+        // A box in the top padding maps above the image and is left for the caller to clamp
+        assertTrue(out.top(1) < 0f);
+        out.clampTo(4000f, 3000f);
+        assertEquals(0f, out.top(1), 0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsShortOutput() {
+        YoloOutputDecoder decoder = new YoloOutputDecoder(CLASSES, ANCHORS);
+        decoder.decode(new float[10], 0.5f, 1f, 1f, new DetectionBuffer());
+    }
+
+    @Test
+    public void decodeQuantized_matchesFloatDecodeWithinOneStep() {
+        YoloOutputDecoder decoder = new YoloOutputDecoder(CLASSES, ANCHORS);
+        float[] output = new float[decoder.outputSize()];
+        setAnchor(output, 1, 0.5f, 0.5f, 0.2f, 0.4f, 0.1f, 0.9f, 0.3f);
+        setAnchor(output, 3, 0.25f, 0.25f, 0.1f, 0.1f, 0.7f, 0.2f, 0.65f);
+        setAnchor(output, 4, 0.8f, 0.8f, 0.1f, 0.1f, 0.5f, 0.6f, 0.55f);
+        TensorFormat format = TensorFormat.quantized(TensorFormat.DataType.INT8, 1f / 255, -128);
+        byte[] quantized = new byte[output.length];
+        for (int i = 0; i < output.length; i++) {
+            quantized[i] = (byte) format.quantize(output[i]);
+        }
+
+        DetectionBuffer expected = new DetectionBuffer();
+        DetectionBuffer actual = new DetectionBuffer();
+        decoder.decode(output, 0.6f, 100f, 200f, expected);
+        int count = decoder.decodeQuantized(quantized, format, 0.6f, 100f, 200f, actual);
+
+        assertEquals(expected.size(), count);
+        for (int i = 0; i < count; i++) {
+            assertEquals(expected.classId(i), actual.classId(i));
+            assertEquals(expected.score(i), actual.score(i), format.getScale());
+            assertEquals(expected.left(i), actual.left(i), 200f * format.getScale());
+            assertEquals(expected.bottom(i), actual.bottom(i), 200f * format.getScale());
+        }
+    }
+
+    @Test
+    public void decodeQuantized_readsUint8AsUnsigned() {
+        YoloOutputDecoder decoder = new YoloOutputDecoder(CLASSES, ANCHORS);
+        TensorFormat format = TensorFormat.quantized(TensorFormat.DataType.UINT8, 1f / 255, 0);
+        byte[] output = new byte[decoder.outputSize()];
+        output[2] = (byte) 128;
+        output[ANCHORS + 2] = (byte) 128;
+        output[2 * ANCHORS + 2] = (byte) 51;
+        output[3 * ANCHORS + 2] = (byte) 51;
+        output[6 * ANCHORS + 2] = (byte) 250;
+
+        DetectionBuffer out = new DetectionBuffer();
+        decoder.decodeQuantized(output, format, 0.5f, 100f, 100f, out);
+
+        assertEquals(1, out.size());
+        assertEquals(2, out.classId(0));
+        assertEquals(250 / 255f, out.score(0), 1e-6f);
+        assertEquals(128 / 255f * 100f - 10f, out.left(0), 1e-3f);
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.rimagine.ml;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+public class YuvToTensorConverterTest {
+
+    // 3x2 sensor frame with distinct luma per pixel:
+    //   10 20 30
+    //   40 50 60
+    private static final byte[] LUMA = {10, 20, 30, 40, 50, 60};
+
+    private static float[] lumaOf(FloatBuffer floats, int pixels) {
+        float[] out = new float[pixels];
+        for (int i = 0; i < pixels; i++) {
+            out[i] = Math.round(floats.get(i * 3) * 255f);
+        }
+        return out;
+    }
+
+    private static float[] convert(int rotation, int tensorWidth, int tensorHeight) {
+        YuvFrame frame = SyntheticFrames.frame(3, 2, rotation, 0, LUMA, 128, 128);
+        InputTensorBuffer tensor = new InputTensorBuffer(tensorWidth, tensorHeight);
+        FloatBuffer floats = new YuvToTensorConverter().convert(frame, tensor).asFloatBuffer();
+        return lumaOf(floats, tensorWidth * tensorHeight);
+    }
+
+    @Test
+    public void convert_noRotation_keepsLayout() {
+        assertArrayEquals(new float[]{10, 20, 30, 40, 50, 60}, convert(0, 3, 2), 0f);
+    }
+
+    @Test
+    public void convert_rotate90_turnsFrameClockwise() {
+        assertArrayEquals(new float[]{40, 10, 50, 20, 60, 30}, convert(90, 2, 3), 0f);
+    }
+
+    @Test
+    public void convert_rotate180_flipsBothAxes() {
+        assertArrayEquals(new float[]{60, 50, 40, 30, 20, 10}, convert(180, 3, 2), 0f);
+    }
+
+    @Test
+    public void convert_rotate270_turnsFrameCounterClockwise() {
+        assertArrayEquals(new float[]{30, 60, 20, 50, 10, 40}, convert(270, 2, 3), 0f);
+    }
+
+    @Test
+    public void convert_appliesBt601Chroma() {
+        byte[] luma = new byte[4];
+        java.util.Arrays.fill(luma, (byte) 76);
+        // Y=76, U=85, V=255 is close to pure red
+        YuvFrame frame = SyntheticFrames.frame(2, 2, 0, 0, luma, 85, 255);
+        InputTensorBuffer tensor = new InputTensorBuffer(2, 2);
+
+        FloatBuffer floats = new YuvToTensorConverter().convert(frame, tensor).asFloatBuffer();
+
+        assertEquals(1.0f, floats.get(0), 0.01f);
+        assertEquals(0.0f, floats.get(1), 0.02f);
+        assertEquals(0.0f, floats.get(2), 0.02f);
+    }
+
+    @Test
+    public void convert_scalesToTensorSize() {
+        float[] luma = convert(0, 6, 4);
+
+        assertEquals(10f, luma[0], 0f);
+        assertEquals(10f, luma[1], 0f);
+        assertEquals(60f, luma[23], 0f);
+    }
+}
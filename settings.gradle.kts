@@ -15,4 +15,6 @@ dependencyResolutionManagement {
 
 rootProject.name = "Rimagine"
 include(":app")
+include(":core")
+include(":benchmark")
  
\ No newline at end of file